@@ -7,6 +7,7 @@ import org.kimios.kernel.controller.IDocumentController;
 import org.kimios.kernel.controller.IFolderController;
 import org.kimios.kernel.controller.ISecurityController;
 import org.kimios.kernel.dms.model.Folder;
+import org.kimios.kernel.security.model.EntityRights;
 import org.kimios.kernel.ws.pojo.DMEntityWrapper;
 import org.kimios.kernel.ws.pojo.DataMessage;
 import org.kimios.kernel.ws.pojo.Document;
@@ -14,6 +15,7 @@ import org.kimios.kernel.ws.pojo.task.TaskGetFoldersAndSendData;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class GetFoldersAndSendDataRouteBuilder extends RouteBuilder {
@@ -102,38 +104,26 @@ public class GetFoldersAndSendDataRouteBuilder extends RouteBuilder {
                     .collect(Collectors.toList())
             );
 
-            // add permissions canRead, canWrite, hasFullAccess 
-            entityList.stream().map(dmEntityWrapper -> {
-                long dmEntityUid = dmEntityWrapper.getDmEntity().getUid();
-                dmEntityWrapper.setCanRead(
-                        this.securityController.canRead(taskGetFoldersAndSendData.getSession(), dmEntityUid));
-                dmEntityWrapper.setCanWrite(
-                        this.securityController.canWrite(taskGetFoldersAndSendData.getSession(), dmEntityUid));
-                dmEntityWrapper.setHasFullAccess(
-                        this.securityController.hasFullAccess(taskGetFoldersAndSendData.getSession(), dmEntityUid));
-
-                return dmEntityWrapper;
-            });
+            // add permissions canRead, canWrite, hasFullAccess, for the parent too
+            DMEntityWrapper parentWrapper = new DMEntityWrapper(taskGetFoldersAndSendData.getParent());
+            List<DMEntityWrapper> wrappers = new ArrayList<>(entityList);
+            wrappers.add(parentWrapper);
+            Map<Long, Integer> rights = this.securityController.getRights(
+                    taskGetFoldersAndSendData.getSession(),
+                    wrappers.stream().map(wrapper -> wrapper.getDmEntity().getUid()).collect(Collectors.toList())
+            );
+            for (DMEntityWrapper dmEntityWrapper : wrappers) {
+                Integer entityRights = rights.get(dmEntityWrapper.getDmEntity().getUid());
+                dmEntityWrapper.setCanRead(EntityRights.has(entityRights, EntityRights.READ));
+                dmEntityWrapper.setCanWrite(EntityRights.has(entityRights, EntityRights.WRITE));
+                dmEntityWrapper.setHasFullAccess(EntityRights.has(entityRights, EntityRights.FULL_ACCESS));
+            }
 
             DataMessage dataMessage = new DataMessage(
                     taskGetFoldersAndSendData.getSession().getWebSocketToken(),
                     taskGetFoldersAndSendData.getSession().getUid(),
                     entityList,
-                    new DMEntityWrapper(
-                            taskGetFoldersAndSendData.getParent(),
-                            this.securityController.canRead(
-                                    taskGetFoldersAndSendData.getSession(),
-                                    taskGetFoldersAndSendData.getParent().getUid()
-                            ),
-                            this.securityController.canWrite(
-                                    taskGetFoldersAndSendData.getSession(),
-                                    taskGetFoldersAndSendData.getParent().getUid()
-                            ),
-                            this.securityController.hasFullAccess(
-                                    taskGetFoldersAndSendData.getSession(),
-                                    taskGetFoldersAndSendData.getParent().getUid()
-                            )
-                    )
+                    parentWrapper
             );
             exchange.getOut().setBody(dataMessage);
             exchange.getOut().setHeaders(exchange.getIn().getHeaders());
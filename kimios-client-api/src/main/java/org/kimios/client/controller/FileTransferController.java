@@ -379,7 +379,7 @@ public class FileTransferController
 
                 if ( !isCompressed )
                 {
-                    IOUtils.copyLarge( (InputStream)client.downloadDocumentVersion( sessionId, transac.getUid(), false ).getEntity(), os );
+                    IOUtils.copyLarge( (InputStream)client.downloadDocumentVersion( sessionId, transac.getUid(), false, null ).getEntity(), os );
 
                     try{
 
@@ -397,7 +397,7 @@ public class FileTransferController
                     tmpFileName = FileCompressionHelper.getTempFilePath( temporaryFilesPath, "dl" + sessionId );
                     tmp = new BufferedOutputStream( new FileOutputStream( temporaryFilesPath + tmpFileName ) );
 
-                    IOUtils.copyLarge( (InputStream)client.downloadDocumentVersion( sessionId, transac.getUid(), false ).getEntity(), tmp );
+                    IOUtils.copyLarge( (InputStream)client.downloadDocumentVersion( sessionId, transac.getUid(), false, null ).getEntity(), tmp );
 
                     InputStream inFull = new FileInputStream( temporaryFilesPath + tmpFileName );
 
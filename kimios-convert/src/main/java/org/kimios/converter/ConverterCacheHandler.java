@@ -17,55 +17,432 @@
 package org.kimios.converter;
 
 
+import org.apache.commons.io.FileUtils;
 import org.kimios.api.InputSource;
+import org.kimios.kernel.configuration.Config;
+import org.kimios.utils.configuration.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Converted previews by document version and by token.
+ *
+ * The cache is bounded by the size on disk of the converted files (the _dir directory of the conversion
+ * when there is one, the file of the public url otherwise): the least recently used previews are removed
+ * beyond, and previews older than the time to live are removed on access. Removing a preview deletes its
+ * files, and removes it from both lookups. Concurrent conversions of the same version are run once, and
+ * the result of a conversion running when the preview of its version is cancelled is not cached.
+ */
 public class ConverterCacheHandler {
 
+    private static Logger log = LoggerFactory.getLogger(ConverterCacheHandler.class);
 
-    private Map<Long, InputSource> _cache = new ConcurrentHashMap<Long, InputSource>();
-    private Map<String, InputSource> _cacheToken = new ConcurrentHashMap<String, InputSource>();
+    private static final int DEFAULT_MAX_SIZE = 1024;
 
+    private static final long DEFAULT_TTL = 86400;
 
-    private static ConverterCacheHandler converterCacheHandler;
+    /* min delay between two scans for expired previews */
+    private static final long EXPIRATION_SCAN_INTERVAL = 60000;
+
+    private static final String DIRECTORY_SUFFIX = "_dir";
+
+    private static class Entry {
+        private final Long versionId;
+        private final InputSource inputSource;
+        private final File files;
+        private final long size;
+        private final long expires;
+
+        private Entry(Long versionId, InputSource inputSource, File files, long size, long expires) {
+            this.versionId = versionId;
+            this.inputSource = inputSource;
+            this.files = files;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+
+    private final long maxSize;
+    private final long ttl;
+
+    /* version id -> entry, in access order */
+    private final LinkedHashMap<Long, Entry> _cache = new LinkedHashMap<Long, Entry>(256, 0.75f, true);
+    private final Map<String, Entry> _cacheToken = new HashMap<String, Entry>();
+    private long size = 0;
+    private long lastExpirationScan = System.currentTimeMillis();
+
+    /* conversions running, by version id */
+    private final ConcurrentHashMap<Long, FutureTask<InputSource>> conversions =
+            new ConcurrentHashMap<Long, FutureTask<InputSource>>();
 
-    private ConverterCacheHandler(){
+    /* version id -> number of cancels while a conversion of the version was running */
+    private final Map<Long, Long> generations = new HashMap<Long, Long>();
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong sharedConversions = new AtomicLong();
+
+    private static ConverterCacheHandler converterCacheHandler;
+
+    /**
+     * @param maxSize max size of the cached files (bytes)
+     * @param ttl     time to live of a preview (ms)
+     */
+    public ConverterCacheHandler(long maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
     }
 
-    public static ConverterCacheHandler getInstance(){
-        if(converterCacheHandler == null){
-            converterCacheHandler = new ConverterCacheHandler();
+    public static synchronized ConverterCacheHandler getInstance() {
+        if (converterCacheHandler == null) {
+            converterCacheHandler = new ConverterCacheHandler(
+                    longSetting(Config.PREVIEW_CACHE_SIZE, DEFAULT_MAX_SIZE) * 1024L * 1024L,
+                    longSetting(Config.PREVIEW_CACHE_TTL, DEFAULT_TTL) * 1000L);
+            log.info("preview cache: max size {} bytes, ttl {} ms", converterCacheHandler.maxSize,
+                    converterCacheHandler.ttl);
         }
         return converterCacheHandler;
     }
 
-    public static void cachePreviewData(Long versionId, InputSource inputSource){
-        getInstance()._cache.put(versionId, inputSource);
-        getInstance()._cacheToken.put(inputSource.getToken(), inputSource);
+    private static long longSetting(String key, long defaultValue) {
+        try {
+            String value = ConfigurationManager.getValue(key);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}", key, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    public static void cachePreviewData(Long versionId, InputSource inputSource) {
+        getInstance().put(versionId, inputSource);
+    }
+
+    public static boolean cacheExist(Long versionId) {
+        return getInstance().get(versionId) != null;
+    }
+
+    public static boolean cacheExistsFromToken(String token) {
+        return getInstance().get(token) != null;
+    }
+
+    public static InputSource load(Long versionId) {
+        return getInstance().get(versionId);
+    }
+
+    public static InputSource load(String token) {
+        return getInstance().get(token);
+    }
+
+    public static void cancelCache(Long versionId) {
+        getInstance().cancel(versionId);
+    }
+
+    /**
+     * Preview of a version, from the cache or converted and cached. A conversion of the version already
+     * running is waited for instead of being run again.
+     */
+    public static InputSource load(Long versionId, Callable<InputSource> conversion) throws Exception {
+        return getInstance().get(versionId, conversion);
+    }
+
+    public InputSource get(Long versionId) {
+        if (versionId == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = _cache.get(versionId);
+        }
+        return hitOrMiss(entry);
+    }
 
+    public InputSource get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = _cacheToken.get(token);
+            if (entry != null) {
+                // access order
+                _cache.get(entry.versionId);
+            }
+        }
+        return hitOrMiss(entry);
     }
 
-    public static boolean cacheExist(Long versionId){
-        return getInstance()._cache.get(versionId) != null;
+    private InputSource hitOrMiss(Entry entry) {
+        if (entry != null && (entry.expires <= System.currentTimeMillis()
+                || (entry.files != null && !entry.files.exists()))) {
+            remove(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.inputSource;
     }
 
-    public static boolean cacheExistsFromToken(String token){
-        return getInstance()._cacheToken.get(token) != null;
+    public InputSource get(Long versionId, Callable<InputSource> conversion) throws Exception {
+        InputSource inputSource = get(versionId);
+        if (inputSource != null) {
+            return inputSource;
+        }
+        FutureTask<InputSource> task = new FutureTask<InputSource>(conversion);
+        FutureTask<InputSource> running = conversions.putIfAbsent(versionId, task);
+        if (running != null) {
+            sharedConversions.incrementAndGet();
+            task = running;
+        } else {
+            long generation = generation(versionId);
+            try {
+                task.run();
+                try {
+                    put(versionId, task.get(), generation);
+                } catch (ExecutionException e) {
+                    // thrown below
+                }
+            } finally {
+                synchronized (this) {
+                    generations.remove(versionId);
+                    conversions.remove(versionId, task);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
     }
 
-    public static InputSource load(Long versionId){
-        return getInstance()._cache.get(versionId);
+    private synchronized long generation(Long versionId) {
+        Long generation = generations.get(versionId);
+        return generation != null ? generation : 0;
     }
 
-    public static InputSource load(String token){
-        return getInstance()._cacheToken.get(token);
+    public void put(Long versionId, InputSource inputSource) {
+        put(versionId, inputSource, -1);
     }
 
-    public static void cancelCache(Long versionId){
-        getInstance()._cache.remove(versionId);
+    /*
+        conversionGeneration: generation of the version when its conversion started, -1 to put anyway
+     */
+    private void put(Long versionId, InputSource inputSource, long conversionGeneration) {
+        if (versionId == null || inputSource == null) {
+            return;
+        }
+        File files = files(inputSource);
+        long length = files != null ? FileUtils.sizeOf(files) : 0;
+        Entry entry = new Entry(versionId, inputSource, files, length, System.currentTimeMillis() + ttl);
+        List<Entry> removed = new ArrayList<Entry>();
+        synchronized (this) {
+            if (conversionGeneration >= 0 && generation(versionId) != conversionGeneration) {
+                log.debug("preview of version {} cancelled during its conversion, not cached", versionId);
+                return;
+            }
+            Entry previous = _cache.put(versionId, entry);
+            if (previous != null) {
+                unlink(previous);
+                if (previous.inputSource != inputSource) {
+                    removed.add(previous);
+                }
+            }
+            if (inputSource.getToken() != null) {
+                Entry previousToken = _cacheToken.put(inputSource.getToken(), entry);
+                if (previousToken != null && previousToken != previous) {
+                    _cache.remove(previousToken.versionId);
+                    unlink(previousToken);
+                    removed.add(previousToken);
+                }
+            }
+            size += length;
+            evict(removed);
+        }
+        delete(removed);
     }
 
+    /**
+     * Remove the preview of a version, and keep a conversion of the version running from caching its result
+     */
+    public void cancel(Long versionId) {
+        if (versionId == null) {
+            return;
+        }
+        synchronized (this) {
+            if (conversions.containsKey(versionId)) {
+                generations.put(versionId, generation(versionId) + 1);
+            }
+        }
+        remove(versionId);
+    }
+
+    public void remove(Long versionId) {
+        Entry entry;
+        synchronized (this) {
+            entry = _cache.get(versionId);
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        synchronized (this) {
+            if (_cache.get(entry.versionId) != entry) {
+                // already removed or replaced
+                return;
+            }
+            _cache.remove(entry.versionId);
+            unlink(entry);
+        }
+        delete(entry);
+    }
+
+    /*
+        remove an entry from the token lookup and the size, once removed from the version lookup
+     */
+    private void unlink(Entry entry) {
+        if (entry.inputSource.getToken() != null && _cacheToken.get(entry.inputSource.getToken()) == entry) {
+            _cacheToken.remove(entry.inputSource.getToken());
+        }
+        size -= entry.size;
+    }
+
+    private void evict(List<Entry> removed) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Long, Entry>> it = _cache.entrySet().iterator();
+        if (now - lastExpirationScan >= EXPIRATION_SCAN_INTERVAL) {
+            lastExpirationScan = now;
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.expires <= now) {
+                    it.remove();
+                    unlink(entry);
+                    removed.add(entry);
+                    evictions.incrementAndGet();
+                }
+            }
+            it = _cache.entrySet().iterator();
+        }
+        // the most recent preview is kept even when larger than the cache
+        while (size > maxSize && _cache.size() > 1 && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            unlink(eldest);
+            removed.add(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void delete(List<Entry> entries) {
+        for (Entry entry : entries) {
+            delete(entry);
+        }
+    }
+
+    private void delete(Entry entry) {
+        if (entry.files != null) {
+            log.debug("deleting preview files {} of version {}", entry.files, entry.versionId);
+            FileUtils.deleteQuietly(entry.files);
+        }
+    }
+
+    /*
+        files of a converted preview, only when in the temporary directory: the directory of the
+        conversion when its public url is inside one, the public url file otherwise
+     */
+    private static File files(InputSource inputSource) {
+        if (inputSource.getPublicUrl() == null) {
+            return null;
+        }
+        String temporaryRepository = ConfigurationManager.getValue(Config.DEFAULT_TEMPORARY_PATH);
+        if (temporaryRepository == null || temporaryRepository.trim().length() == 0) {
+            return null;
+        }
+        try {
+            File temporaryDirectory = new File(temporaryRepository.trim()).getCanonicalFile();
+            File file = new File(inputSource.getPublicUrl()).getCanonicalFile();
+            File files = file;
+            for (File parent = file.getParentFile(); parent != null && !parent.equals(temporaryDirectory);
+                 parent = parent.getParentFile()) {
+                if (parent.getName().endsWith(DIRECTORY_SUFFIX)) {
+                    files = parent;
+                }
+            }
+            for (File parent = files.getParentFile(); parent != null; parent = parent.getParentFile()) {
+                if (parent.equals(temporaryDirectory)) {
+                    return files;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("unable to resolve preview files of {}: {}", inputSource.getPublicUrl(), e.getMessage());
+        }
+        return null;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return _cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getSharedConversions() {
+        return sharedConversions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConverterCacheHandler{" +
+                "maxSize=" + maxSize +
+                ", ttl=" + ttl +
+                ", size=" + getSize() +
+                ", entries=" + getEntryCount() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", sharedConversions=" + sharedConversions +
+                '}';
+    }
 }
@@ -31,7 +31,7 @@ public class PreviewCacheHandler extends GenericEventHandler {
 
     private static Logger logger = LoggerFactory.getLogger(PreviewCacheHandler.class);
 
-    @DmsEvent(eventName = {DmsEventName.FILE_UPLOAD}, when = DmsEventOccur.AFTER)
+    @DmsEvent(eventName = {DmsEventName.FILE_UPLOAD}, when = DmsEventOccur.AFTER, async = true)
     public void documentVersionUpdateUpload(Object[] obj, Object retour, EventContext ctx) throws Exception {
 
         if (logger.isDebugEnabled())
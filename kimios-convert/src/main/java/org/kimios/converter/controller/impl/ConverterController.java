@@ -47,7 +47,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -94,7 +93,7 @@ public class ConverterController extends AKimiosController implements IConverter
     public InputSource convertDocumentVersion(Session session, Long documentVersionId,
                                               String converterImpl, String outputFormat) throws ConverterException {
 
-        String retainedMimeType = null;
+        final String[] retainedMimeType = {null};
         try {
             // Check rights
             DocumentVersion version = dmsFactoryInstantiator.getDocumentVersionFactory().getDocumentVersion(documentVersionId);
@@ -102,60 +101,45 @@ public class ConverterController extends AKimiosController implements IConverter
                 throw new AccessDeniedException();
             }
 
-            InputSource inputSource = null;
-            if (ConverterCacheHandler.cacheExist(version.getUid())) {
-                if(log.isDebugEnabled())
-                    log.debug("input source already exists in cache, returning it");
+            // from the cache, or converted once for all the concurrent requests of the version
+            return ConverterCacheHandler.load(version.getUid(), () -> {
+                // Build InputSource
+                if (log.isDebugEnabled())
+                    log.debug("building inputSource for {}", version.getDocument().getName());
+                InputSource source = InputSourceFactory.getInputSource(version, UUID.randomUUID().toString());
 
-                inputSource = ConverterCacheHandler.load(version.getUid());
-                if (inputSource != null) {
+                InputSource inputSource = null;
+                if (outputFormat.equalsIgnoreCase("pdf")) {
+                    // try to use JodConverter
                     try {
-                        inputSource.getInputStream().available();
-                    } catch (FileNotFoundException e) {
-                        ConverterCacheHandler.cancelCache(version.getUid());
-                        log.info("input source not readable, doing conversion again: " + e.getMessage());
+                        inputSource = this.convertWithJodConverter(source);
+                    } catch (Exception e) {
+                        log.info("Exception raised while using JodConverter :");
+                        log.info(e.getMessage());
                     }
-                    return inputSource;
-                }
-            }
-
-            // Build InputSource
-            if (log.isDebugEnabled())
-                log.debug("building inputSource for {}", version.getDocument().getName());
-            InputSource source = InputSourceFactory.getInputSource(version, UUID.randomUUID().toString());
-
-            if (outputFormat.equalsIgnoreCase("pdf")) {
-                // try to use JodConverter
-                try {
-                    inputSource = this.convertWithJodConverter(source);
-                } catch (Exception e) {
-                    log.info("Exception raised while using JodConverter :");
-                    log.info(e.getMessage());
-                }
-            }
-            if (inputSource == null) {
-                // Get converter
-                if (log.isDebugEnabled())
-                    log.debug("converter implementation: " + converterImpl);
-                Converter converter = converterFactory.getConverter(converterImpl, outputFormat);
-                retainedMimeType = converter.converterTargetMimeType();
-                if (retainedMimeType == null) {
-                    log.warn("{} not available for converter {}", retainedMimeType, converterImpl);
-                    throw new ConverterException("MimeTypeNotFound");
                 }
-                if (log.isDebugEnabled()) {
-                    log.debug("converter will output");
+                if (inputSource == null) {
+                    // Get converter
+                    if (log.isDebugEnabled())
+                        log.debug("converter implementation: " + converterImpl);
+                    Converter converter = converterFactory.getConverter(converterImpl, outputFormat);
+                    retainedMimeType[0] = converter.converterTargetMimeType();
+                    if (retainedMimeType[0] == null) {
+                        log.warn("{} not available for converter {}", retainedMimeType[0], converterImpl);
+                        throw new ConverterException("MimeTypeNotFound");
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("converter will output");
+                    }
+                    // Convert and return the result source
+                    inputSource = converter.convertInputSource(source);
                 }
-                // Convert and return the result source
-                inputSource = converter.convertInputSource(source);
-            }
-
-            ConverterCacheHandler.cachePreviewData(documentVersionId, inputSource);
-            return inputSource;
+                return inputSource;
+            });
         } catch (Exception e) {
             log.error("error while generating error view", e);
-            if(e instanceof ConverterException && retainedMimeType != null &&
-                    retainedMimeType.equals("text/html")){
+            if(e instanceof ConverterException && retainedMimeType[0] != null &&
+                    retainedMimeType[0].equals("text/html")){
                 //return custom html error
                 try{
                     File tempFile  = File.createTempFile("kmsprev", "");
@@ -227,8 +211,11 @@ public class ConverterController extends AKimiosController implements IConverter
                 sources.add(InputSourceFactory.getInputSource(version, UUID.randomUUID().toString()));
             }
             // Cache enabled for singles versions processing only.
-            if (documentVersionIds.size() == 1 && ConverterCacheHandler.cacheExist(documentVersionIds.get(0))) {
-                return ConverterCacheHandler.load(documentVersionIds.get(0));
+            if (documentVersionIds.size() == 1) {
+                InputSource cached = ConverterCacheHandler.load(documentVersionIds.get(0));
+                if (cached != null) {
+                    return cached;
+                }
             }
 
             // Get converter
@@ -284,8 +271,9 @@ public class ConverterController extends AKimiosController implements IConverter
     }
 
     public InputSource loadPreviewDataFromCache(Session session, String idPreview) throws ConverterException {
-        if(ConverterCacheHandler.cacheExistsFromToken(idPreview)){
-            return ConverterCacheHandler.load(idPreview);
+        InputSource inputSource = ConverterCacheHandler.load(idPreview);
+        if(inputSource != null){
+            return inputSource;
         } else
             throw new ConverterException("PreviewNotFound");
     }
@@ -0,0 +1,278 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kimios.kernel.dms.model.DocumentVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of extracted file datas (body and file metadatas), keyed by the content hash of
+ * document versions, so identical bytes are parsed only once (reindex, copies, duplicated uploads).
+ *
+ * Entries are gzipped json files, sharded by the last two characters of the hash. The least
+ * recently used entries are removed once the cache exceeds its max size; the usage order survives
+ * restarts through the file modification dates.
+ */
+public class ExtractionCache {
+
+    private static Logger log = LoggerFactory.getLogger(ExtractionCache.class);
+
+    private static final String EXTENSION = ".json.gz";
+
+    private static final TypeReference<Map<String, Object>> DATAS_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final File directory;
+    private final long maxSize;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /* key -> entry size, in access order */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(1024, 0.75f, true);
+    private long size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExtractionCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("unable to create extraction cache directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Cache key of a version: its SHA-1, or its MD5 when SHA-1 is not available
+     *
+     * @return null when the version has no hash
+     */
+    public static String key(DocumentVersion version) {
+        if (version == null) {
+            return null;
+        }
+        String hash = version.getHashSHA1() != null && version.getHashSHA1().length() > 0 ?
+                "sha1-" + version.getHashSHA1() :
+                version.getHashMD5() != null && version.getHashMD5().length() > 0 ?
+                        "md5-" + version.getHashMD5() : null;
+        return hash != null ? hash.toLowerCase() : null;
+    }
+
+    private void load() {
+        List<File> files = new ArrayList<File>();
+        File[] shards = directory.listFiles();
+        if (shards != null) {
+            for (File shard : shards) {
+                File[] shardFiles = shard.isDirectory() ? shard.listFiles() : null;
+                if (shardFiles == null) {
+                    continue;
+                }
+                for (File f : shardFiles) {
+                    if (f.getName().endsWith(EXTENSION)) {
+                        files.add(f);
+                    } else {
+                        // partial write
+                        f.delete();
+                    }
+                }
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        synchronized (this) {
+            for (File f : files) {
+                String name = f.getName();
+                long length = f.length();
+                entries.put(name.substring(0, name.length() - EXTENSION.length()), length);
+                size += length;
+            }
+            evict();
+        }
+        log.info("extraction cache {}: {} entries, {} bytes", directory, entries.size(), size);
+    }
+
+    private File file(String key) {
+        return new File(new File(directory, key.substring(key.length() - 2)), key + EXTENSION);
+    }
+
+    public synchronized boolean contains(String key) {
+        return key != null && entries.containsKey(key);
+    }
+
+    /**
+     * Read the cached file datas of a content hash
+     *
+     * @return null when the content is not in cache
+     */
+    public Map<String, Object> get(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        File f = file(key);
+        InputStream in = null;
+        try {
+            in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(f)));
+            Map<String, Object> datas = mapper.readValue(in, DATAS_TYPE);
+            f.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return datas;
+        } catch (IOException e) {
+            log.warn("unable to read extraction cache entry {}: {}", key, e.getMessage());
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the file datas extracted from a content. The entry is written to a temporary file,
+     * then renamed, so concurrent readers never see a partial entry.
+     */
+    public void put(String key, Map<String, Object> datas) {
+        if (key == null || datas == null) {
+            return;
+        }
+        File f = file(key);
+        File tmp = new File(f.getParentFile(), key + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = null;
+        try {
+            f.getParentFile().mkdirs();
+            out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            mapper.writeValue(out, datas);
+            out.close();
+            out = null;
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("unable to write extraction cache entry {}: {}", key, e.getMessage());
+            closeQuietly(out);
+            tmp.delete();
+            return;
+        }
+        long length = f.length();
+        synchronized (this) {
+            Long previous = entries.put(key, length);
+            size += length - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        file(key).delete();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            file(eldest.getKey()).delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractionCache{" +
+                "directory=" + directory +
+                ", maxSize=" + maxSize +
+                ", size=" + getSize() +
+                ", entries=" + getEntryCount() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -16,14 +16,17 @@
 package org.kimios.kernel.index;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.SolrDocumentList;
 import org.kimios.exceptions.ConfigException;
 import org.kimios.kernel.dms.model.DMEntity;
 import org.kimios.kernel.dms.model.VirtualFolderMetaData;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.exceptions.IndexException;
 import org.kimios.kernel.index.query.model.SearchResponse;
+import org.kimios.kernel.security.model.DMEntityACL;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,6 +37,13 @@ public interface ISolrIndexManager
     public SearchResponse executeSolrQuery(SolrQuery query)
             throws IndexException;
 
+    /**
+     * Raw documents of the main core matching the query, holding only the fields
+     * requested on the query (no search pojos built)
+     */
+    public SolrDocumentList executeSolrFieldsQuery(SolrQuery query)
+            throws IndexException;
+
     public void indexDocumentList(List<DMEntity> documentEntities)
             throws IndexException, DataSourceException, ConfigException;
 
@@ -44,12 +54,44 @@ public interface ISolrIndexManager
                                           int poolSize)
             throws IndexException, DataSourceException, ConfigException;
 
+    /**
+     * Staged pipeline (meta data load, content extraction, index write) for bulk reindex.
+     * A pool size of 0 sizes the extraction pool to the available processors.
+     */
+    public ReindexPipeline newReindexPipeline(String name,
+                                              long readVersionTimeOut,
+                                              TimeUnit readVersionTimeoutTimeUnit,
+                                              boolean updateDocsMetaWrapper,
+                                              int extractionPoolSize);
+
 
     public void deleteByQuery(String query)
             throws IndexException;
 
+    /*
+        Index writes are queued and become searchable through commitWithin. The methods below
+        let callers needing read-your-writes wait until their update is visible.
+     */
+    public void indexDocument(DMEntity documentEntity, boolean waitForVisibility)
+            throws IndexException, DataSourceException, ConfigException;
+
+    public void deleteDocument(DMEntity document, boolean waitForVisibility)
+            throws IndexException;
+
+    public void deletePath(String path, boolean waitForVisibility)
+            throws IndexException;
+
+    public void deleteByQuery(String query, boolean waitForVisibility)
+            throws IndexException;
+
     public List<String> filterFields();
 
+    /**
+     * Replace the ACLs of indexed documents (document uid to ACLs) with partial updates
+     */
+    public void updateAcls(Map<Long, List<DMEntityACL>> documentAcls, boolean waitForVisibility)
+            throws IndexException;
+
 
     void indexFolder(DMEntity documentEntity, List<VirtualFolderMetaData> metaValues)
             throws IndexException, DataSourceException, ConfigException;
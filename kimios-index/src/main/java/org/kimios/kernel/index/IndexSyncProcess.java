@@ -0,0 +1,334 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.kimios.kernel.dms.FactoryInstantiator;
+import org.kimios.kernel.dms.model.DMEntity;
+import org.kimios.kernel.dms.model.DMEntityType;
+import org.kimios.kernel.index.query.factory.IndexSyncFactory;
+import org.kimios.kernel.index.query.model.IndexSyncCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental repair of the index of a path, instead of a full delete and reindex.
+ *
+ * Documents are walked by blocks ordered by uid, reading only their uid, update date and last version
+ * (uid and modification date) from the database, and compared with the same fields in the index.
+ * Missing and stale documents are reindexed. A full synchronization checks every document of the path;
+ * an incremental one only checks the documents modified, or moved and renamed with one of their parent
+ * containers, since the last completed synchronization recorded in the path cursor. Only a full one
+ * removes orphans (indexed documents no longer under the path), found while walking the uid ranges of the
+ * documents: finding them otherwise means walking every document indexed under the path.
+ *
+ * Progress is reported through the inherited reindex result: entities count is the number of
+ * documents to check, reindexed count the number of documents repaired.
+ */
+public class IndexSyncProcess extends ReindexerProcess {
+
+    private static Logger log = LoggerFactory.getLogger(IndexSyncProcess.class);
+
+    /*
+        Documents updated by a transaction still running when a synchronization starts are committed
+        with an update date older than the sync start: the next one looks back this far to catch them.
+     */
+    private static final long SYNC_OVERLAP = 10 * 60 * 1000;
+
+    private static final String[] STATE_FIELDS = new String[]{
+            "DocumentUid", "DocumentUpdateDate", "DocumentVersionId", "DocumentVersionUpdateDate", "DocumentPath"};
+
+    /*
+        Uids ORed in one index query, below the maxBooleanClauses limit (1024) of the solr config
+     */
+    private static final int UID_CLAUSES = 512;
+
+    private final boolean full;
+
+    private IndexSyncFactory syncFactory;
+
+    private long checked;
+
+    private long missing;
+
+    private long stale;
+
+    private long orphans;
+
+    public IndexSyncProcess(ISolrIndexManager indexManager, String path, int blockSize, boolean full) {
+        super(indexManager, path, blockSize, null, null, null, null, 0, false, true, DMEntityType.DOCUMENT);
+        this.full = full;
+    }
+
+    public IndexSyncFactory getSyncFactory() {
+        return syncFactory;
+    }
+
+    public void setSyncFactory(IndexSyncFactory syncFactory) {
+        this.syncFactory = syncFactory;
+    }
+
+    @Override
+    public ReindexResult call() {
+        String path = getPath();
+        int blockSize = getBlockSize();
+        TransactionHelper th = new TransactionHelper();
+        Object txStatus = null;
+        long start = System.currentTimeMillis();
+        Date syncStart = new Date(start);
+        ReindexResult result = getReindexResult();
+        result.setStart(start);
+        setReindexProgression(0);
+        try {
+            txStatus = th.startNew(null);
+            IndexSyncCursor cursor = syncFactory.getCursor(path);
+            if (cursor == null) {
+                cursor = new IndexSyncCursor(path);
+            }
+            Date since = !full && cursor.getLastSyncDate() != null ?
+                    new Date(cursor.getLastSyncDate().getTime() - SYNC_OVERLAP) : null;
+            long total = syncFactory.countDocumentStates(path, since);
+            th.commit(txStatus);
+            result.setEntitiesCount((int) total);
+            log.info("{} index synchronization of {}: {} documents to check{}", full ? "full" : "incremental",
+                    path, total, since != null ? " (modified since " + since + ")" : "");
+
+            long lastUid = 0;
+            while (true) {
+                txStatus = th.startNew(null);
+                List<Object[]> states = syncFactory.getDocumentStates(path, lastUid, since, blockSize);
+                List<Long> toIndex = new ArrayList<Long>();
+                List<Long> unindexable = new ArrayList<Long>();
+                Map<Long, SolrDocument> indexed;
+                Long blockLastUid = states.isEmpty() ? null : (Long) states.get(states.size() - 1)[0];
+                if (since == null) {
+                    // whole uid range of the block, to see orphans too
+                    indexed = indexedRange(lastUid, blockLastUid);
+                } else {
+                    indexed = indexedUids(states);
+                }
+                for (Object[] state : states) {
+                    SolrDocument doc = indexed.remove(state[0]);
+                    if (state[2] == null) {
+                        // no version: not indexable, only removed from the index
+                        if (doc != null) {
+                            unindexable.add((Long) state[0]);
+                        }
+                    } else if (doc == null) {
+                        missing++;
+                        toIndex.add((Long) state[0]);
+                    } else if (isStale(doc, state)) {
+                        stale++;
+                        toIndex.add((Long) state[0]);
+                    }
+                }
+                if (!unindexable.isEmpty()) {
+                    deleteFromIndex(unindexable);
+                    stale += unindexable.size();
+                }
+                if (!indexed.isEmpty()) {
+                    repairOrphans(new ArrayList<Long>(indexed.keySet()), toIndex);
+                }
+                reindex(toIndex);
+                th.rollback(txStatus);
+
+                checked += states.size();
+                result.setReindexedCount(missing + stale + orphans);
+                result.setDuration(System.currentTimeMillis() - start);
+                setReindexProgression(total > 0 ? (int) Math.min(100, checked * 100 / total) : 100);
+                result.setReindexProgression(getReindexProgression());
+                if (blockLastUid == null) {
+                    break;
+                }
+                lastUid = blockLastUid;
+                if (log.isInfoEnabled()) {
+                    log.info("index synchronization of {}: {}/{} checked, {} missing, {} stale, {} orphans",
+                            path, checked, total, missing, stale, orphans);
+                }
+                if (Thread.interrupted()) {
+                    log.info("index synchronization of {} canceled after entity {}", path, lastUid);
+                    result.setLastEntityUid(lastUid);
+                    return result;
+                }
+            }
+            result.setLastEntityUid(lastUid);
+
+            txStatus = th.startNew(null);
+            cursor.setLastSyncDate(syncStart);
+            cursor.setCheckedCount(checked);
+            cursor.setRepairedCount(missing + stale + orphans);
+            cursor.setUpdateDate(new Date());
+            syncFactory.saveCursor(cursor);
+            th.commit(txStatus);
+            txStatus = null;
+            log.info("index synchronization of {} done in {} ms: {} checked, {} missing, {} stale, {} orphans",
+                    path, System.currentTimeMillis() - start, checked, missing, stale, orphans);
+        } catch (Exception ex) {
+            log.error("Exception during index synchronization of " + path + ". Process stopped", ex);
+            result.setException(ex);
+            try {
+                th.rollback(txStatus);
+            } catch (Exception e) {
+                //
+            }
+        } finally {
+            result.setDuration(System.currentTimeMillis() - start);
+            result.setReindexedCount(missing + stale + orphans);
+            setReindexProgression(-1);
+        }
+        return result;
+    }
+
+    /*
+        Indexed documents of the path with uid in (afterUid, toUid], or after afterUid when toUid is null
+     */
+    private Map<Long, SolrDocument> indexedRange(long afterUid, Long toUid) {
+        Map<Long, SolrDocument> indexed = new LinkedHashMap<Long, SolrDocument>();
+        long from = afterUid;
+        while (true) {
+            SolrDocumentList docs = indexedPage(from, toUid, STATE_FIELDS);
+            for (SolrDocument doc : docs) {
+                from = (Long) doc.getFieldValue("DocumentUid");
+                indexed.put(from, doc);
+            }
+            if (docs.size() < getBlockSize()) {
+                return indexed;
+            }
+        }
+    }
+
+    /*
+        Next block of documents indexed under the path, ordered by uid
+     */
+    private SolrDocumentList indexedPage(long afterUid, Long toUid, String[] fields) {
+        String path = getPath();
+        String pathQuery = ClientUtils.escapeQueryChars(path.endsWith("/") ? path : path + "/") + "*";
+        SolrQuery query = new SolrQuery("DocumentUid:{" + afterUid + " TO " + (toUid != null ? toUid : "*") + "]");
+        query.addFilterQuery("DocumentPath:" + pathQuery);
+        query.setFields(fields);
+        query.setSort("DocumentUid", SolrQuery.ORDER.asc);
+        query.setRows(getBlockSize());
+        return getIndexManager().executeSolrFieldsQuery(query);
+    }
+
+    private Map<Long, SolrDocument> indexedUids(List<Object[]> states) {
+        Map<Long, SolrDocument> indexed = new LinkedHashMap<Long, SolrDocument>();
+        for (int i = 0; i < states.size(); i += UID_CLAUSES) {
+            List<Object[]> chunk = states.subList(i, Math.min(i + UID_CLAUSES, states.size()));
+            StringBuilder uids = new StringBuilder();
+            for (Object[] state : chunk) {
+                uids.append(uids.length() > 0 ? " OR " : "").append(state[0]);
+            }
+            SolrQuery query = new SolrQuery("DocumentUid:(" + uids + ")");
+            query.setFields(STATE_FIELDS);
+            query.setRows(chunk.size());
+            for (SolrDocument doc : getIndexManager().executeSolrFieldsQuery(query)) {
+                indexed.put((Long) doc.getFieldValue("DocumentUid"), doc);
+            }
+        }
+        return indexed;
+    }
+
+    private static boolean isStale(SolrDocument doc, Object[] state) {
+        return !state[2].equals(doc.getFieldValue("DocumentVersionId"))
+                || !sameTime((Date) state[1], doc.getFieldValue("DocumentUpdateDate"))
+                || !sameTime((Date) state[3], doc.getFieldValue("DocumentVersionUpdateDate"))
+                || !((String) state[4]).replaceAll("__TRASHED_ENTITY__", "").equals(doc.getFieldValue("DocumentPath"));
+    }
+
+    private static boolean sameTime(Date date, Object indexed) {
+        if (date == null || indexed == null) {
+            return date == null && indexed == null;
+        }
+        return indexed instanceof Date && ((Date) indexed).getTime() == date.getTime();
+    }
+
+    /*
+        Indexed under the path but not found there in the database: documents moved elsewhere are
+        reindexed at their new path, the others are deleted from the index
+     */
+    private void repairOrphans(List<Long> uids, List<Long> toIndex) {
+        List<Long> existing = syncFactory.getExistingDocumentUids(uids);
+        toIndex.addAll(existing);
+        stale += existing.size();
+        uids.removeAll(existing);
+        if (uids.isEmpty()) {
+            return;
+        }
+        deleteFromIndex(uids);
+        orphans += uids.size();
+        log.info("index synchronization of {}: removed orphans {}", getPath(), uids);
+    }
+
+    private void deleteFromIndex(List<Long> uids) {
+        for (int i = 0; i < uids.size(); i += UID_CLAUSES) {
+            StringBuilder query = new StringBuilder();
+            for (Long uid : uids.subList(i, Math.min(i + UID_CLAUSES, uids.size()))) {
+                query.append(query.length() > 0 ? " OR " : "").append(uid);
+            }
+            getIndexManager().deleteByQuery("DocumentUid:(" + query + ")");
+        }
+    }
+
+    private void reindex(List<Long> uids) {
+        if (!uids.isEmpty()) {
+            List<DMEntity> entities = FactoryInstantiator.getInstance().getDmEntityFactory()
+                    .getEntitiesFromIds(uids, DMEntityType.DOCUMENT);
+            getIndexManager().indexDocumentList(entities);
+        }
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public long getChecked() {
+        return checked;
+    }
+
+    public long getMissing() {
+        return missing;
+    }
+
+    public long getStale() {
+        return stale;
+    }
+
+    public long getOrphans() {
+        return orphans;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexSyncProcess{" +
+                "path='" + getPath() + '\'' +
+                ", full=" + full +
+                ", checked=" + checked +
+                ", missing=" + missing +
+                ", stale=" + stale +
+                ", orphans=" + orphans +
+                '}';
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.solr.common.SolrInputDocument;
+import org.kimios.kernel.dms.FactoryInstantiator;
+import org.kimios.kernel.dms.model.DMEntity;
+import org.kimios.kernel.dms.model.DMEntityImpl;
+import org.kimios.kernel.dms.model.Document;
+import org.kimios.kernel.dms.model.Folder;
+import org.kimios.kernel.dms.model.VirtualFolderMetaData;
+import org.kimios.kernel.index.query.factory.DocumentIndexStatusFactory;
+import org.kimios.kernel.index.query.model.DocumentIndexStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged reindex pipeline.
+ *
+ * The thread calling {@link #submit(List)} is the load stage: it owns the database transaction and
+ * builds the meta data part of each document. Documents then go through a pool of extraction workers
+ * parsing version files, and a single writer pushes them by batches to the index update queues and
+ * saves their index status. Stages are linked by bounded queues, so a stage that falls behind blocks
+ * the one feeding it; the time spent blocked is reported with the other stage counters.
+ */
+public class ReindexPipeline {
+
+    private static Logger log = LoggerFactory.getLogger(ReindexPipeline.class);
+
+    /**
+     * Throughput counters of a pipeline stage
+     */
+    public static class Stage {
+
+        private final String name;
+        private final int threads;
+        private final BlockingQueue<?> input;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong blockedNanos = new AtomicLong();
+
+        Stage(String name, int threads, BlockingQueue<?> input) {
+            this.name = name;
+            this.threads = threads;
+            this.input = input;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Items waiting in the queue feeding this stage
+         */
+        public int getQueued() {
+            return input != null ? input.size() : 0;
+        }
+
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * Share of the stage threads time spent working (0 to 100)
+         */
+        public int getBusyPercent() {
+            long elapsed = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - startTime) * threads;
+            return elapsed > 0 ? (int) Math.min(100, busyNanos.get() * 100 / elapsed) : 0;
+        }
+
+        /**
+         * Time spent waiting for room in the next stage queue
+         */
+        public long getBlockedTime() {
+            return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+        }
+
+        /**
+         * Items processed per second since the stage started
+         */
+        public double getRate() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            return elapsed > 0 ? (double) processed.get() * 1000 / elapsed : 0;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{" +
+                    "threads=" + threads +
+                    ", queued=" + getQueued() +
+                    ", processed=" + processed +
+                    ", errors=" + errors +
+                    ", rate=" + String.format("%.1f", getRate()) + "/s" +
+                    ", busy=" + getBusyPercent() + "%" +
+                    ", blocked=" + getBlockedTime() + "ms" +
+                    '}';
+        }
+    }
+
+    /**
+     * Entities submitted together. Done once every entity went through the writer.
+     */
+    public static class Batch {
+
+        private final int size;
+        private final AtomicInteger remaining;
+        private volatile boolean failed;
+
+        Batch(int size) {
+            this.size = size;
+            this.remaining = new AtomicInteger(size);
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isDone() {
+            return remaining.get() <= 0;
+        }
+
+        /**
+         * True when some of its documents could not be written to the index
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        void done() {
+            remaining.decrementAndGet();
+        }
+
+        void failed() {
+            failed = true;
+            remaining.decrementAndGet();
+        }
+    }
+
+    private static class Item {
+
+        private final Batch batch;
+        private final DocumentIndexStatus status;
+        private final SolrDocGenerator generator;
+        private final SolrInputDocument[] documents = new SolrInputDocument[2];
+
+        Item(Batch batch, DocumentIndexStatus status, SolrDocGenerator generator) {
+            this.batch = batch;
+            this.status = status;
+            this.generator = generator;
+        }
+    }
+
+    private static final Item END = new Item(null, null, null);
+
+    private final String name;
+    private final SolrIndexManager indexManager;
+    private final ObjectMapper mp;
+    private final DocumentIndexStatusFactory documentIndexStatusFactory;
+    private final long readVersionTimeOut;
+    private final TimeUnit readVersionTimeoutTimeUnit;
+    private final boolean updateDocsMetaWrapper;
+    private final int writeBatchSize;
+    private final long writeBatchDelay;
+
+    private final BlockingQueue<Item> extractQueue;
+    private final BlockingQueue<Item> writeQueue;
+
+    private final Stage loadStage;
+    private final Stage extractionStage;
+    private final Stage writeStage;
+
+    private final List<Thread> extractionThreads = new ArrayList<Thread>();
+    private Thread writerThread;
+
+    private volatile boolean cancelled = false;
+    private boolean finished = false;
+
+    ReindexPipeline(String name, SolrIndexManager indexManager, ObjectMapper mp,
+                    DocumentIndexStatusFactory documentIndexStatusFactory,
+                    long readVersionTimeOut, TimeUnit readVersionTimeoutTimeUnit, boolean updateDocsMetaWrapper,
+                    int extractionPoolSize, int queueSize, int writeBatchSize, long writeBatchDelay) {
+        this.name = name;
+        this.indexManager = indexManager;
+        this.mp = mp;
+        this.documentIndexStatusFactory = documentIndexStatusFactory;
+        this.readVersionTimeOut = readVersionTimeOut;
+        this.readVersionTimeoutTimeUnit = readVersionTimeoutTimeUnit;
+        this.updateDocsMetaWrapper = updateDocsMetaWrapper;
+        this.writeBatchSize = writeBatchSize;
+        this.writeBatchDelay = writeBatchDelay;
+        this.extractQueue = new ArrayBlockingQueue<Item>(queueSize);
+        this.writeQueue = new ArrayBlockingQueue<Item>(queueSize);
+        this.loadStage = new Stage("load", 1, null);
+        this.extractionStage = new Stage("extraction", extractionPoolSize, extractQueue);
+        this.writeStage = new Stage("write", 1, writeQueue);
+    }
+
+    public synchronized void start() {
+        for (int i = 0; i < extractionStage.getThreads(); i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    extract();
+                }
+            }, "ReindexPipeline-" + name + "-extraction-" + i);
+            t.setDaemon(true);
+            extractionThreads.add(t);
+            t.start();
+        }
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "ReindexPipeline-" + name + "-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Load stage: reads the meta data of the given entities in the caller transaction and hands them
+     * to the next stages. Blocks while the extraction queue is full.
+     */
+    public Batch submit(List<DMEntity> entities) throws InterruptedException {
+        Batch batch = new Batch(entities.size());
+        List<Document> documents = new ArrayList<Document>();
+        for (DMEntity entity : entities) {
+            if (entity instanceof Document) {
+                documents.add((Document) entity);
+            }
+        }
+        long t0 = System.nanoTime();
+        Map<Long, SolrDocGenerator> generators = SolrDocGenerator.forDocuments(documents, mp);
+        loadStage.busyNanos.addAndGet(System.nanoTime() - t0);
+
+        for (DMEntity entity : entities) {
+            if (cancelled) {
+                throw new InterruptedException("reindex pipeline " + name + " cancelled");
+            }
+            long t = System.nanoTime();
+            Item item = null;
+            boolean loadFailed = false;
+            try {
+                DocumentIndexStatus status = new DocumentIndexStatus();
+                status.setDmEntity((DMEntityImpl) entity);
+                status.setEntityId(entity.getUid());
+                if (entity instanceof Document) {
+                    SolrDocGenerator generator = generators.get(entity.getUid());
+                    item = new Item(batch, status, generator);
+                    item.documents[0] = generator.toSolrInputDocument(false, updateDocsMetaWrapper, status);
+                    if (updateDocsMetaWrapper) {
+                        FactoryInstantiator.getInstance().getDocumentFactory().saveDocument((Document) entity);
+                    }
+                } else if (entity instanceof Folder) {
+                    List<VirtualFolderMetaData> metaDatas = FactoryInstantiator.getInstance()
+                            .getVirtualFolderFactory()
+                            .virtualFolderMetaDataList((Folder) entity);
+                    item = new Item(batch, status, null);
+                    item.documents[0] = new SolrFolderGenerator((Folder) entity, metaDatas, mp)
+                            .toSolrInputDocument((Folder) entity, metaDatas);
+                    if (updateDocsMetaWrapper) {
+                        FactoryInstantiator.getInstance().getFolderFactory().saveFolder((Folder) entity);
+                    }
+                }
+                loadStage.processed.incrementAndGet();
+            } catch (Exception ex) {
+                log.error("error while loading entity #" + entity.getUid() + " for reindex", ex);
+                loadStage.errors.incrementAndGet();
+                item = null;
+                loadFailed = true;
+            }
+            loadStage.busyNanos.addAndGet(System.nanoTime() - t);
+
+            if (loadFailed) {
+                // never written: the batch must not complete the checkpoint
+                batch.failed();
+            } else if (item == null) {
+                batch.done();
+            } else if (item.generator != null && item.documents[0] != null) {
+                put(extractQueue, item, loadStage);
+            } else {
+                put(writeQueue, item, loadStage);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Waits until every submitted entity went through all stages, then stops the stage threads.
+     */
+    public synchronized void finish() throws InterruptedException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        for (int i = 0; i < extractionThreads.size(); i++) {
+            extractQueue.put(END);
+        }
+        for (Thread t : extractionThreads) {
+            t.join();
+        }
+        writeQueue.put(END);
+        writerThread.join();
+        log.info("reindex pipeline {} done: {}", name, this);
+    }
+
+    /**
+     * Stops the stage threads without waiting for queued entities.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Thread t : extractionThreads) {
+            t.interrupt();
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        extractQueue.clear();
+        writeQueue.clear();
+    }
+
+    public Stage getLoadStage() {
+        return loadStage;
+    }
+
+    public Stage getExtractionStage() {
+        return extractionStage;
+    }
+
+    public Stage getWriteStage() {
+        return writeStage;
+    }
+
+    private void put(BlockingQueue<Item> queue, Item item, Stage from) throws InterruptedException {
+        if (!queue.offer(item)) {
+            long t = System.nanoTime();
+            queue.put(item);
+            from.blockedNanos.addAndGet(System.nanoTime() - t);
+        }
+    }
+
+    private void extract() {
+        TextExtractionService extractionService = indexManager.getExtractionService();
+        try {
+            while (!cancelled) {
+                Item item = extractQueue.take();
+                if (item == END) {
+                    break;
+                }
+                long t = System.nanoTime();
+                try {
+                    Map<String, Object> fileData = extractionService.extract((Document) item.status.getDmEntity(),
+                            item.generator.getVersion(), item.status, readVersionTimeOut, readVersionTimeoutTimeUnit);
+                    if (fileData != null) {
+                        for (String solrInputField : fileData.keySet()) {
+                            item.documents[0].addField(solrInputField, fileData.get(solrInputField));
+                        }
+                        item.documents[1] = item.generator.toSolrContentInputDocument(false,
+                                updateDocsMetaWrapper, fileData, item.status);
+                    }
+                    extractionStage.processed.incrementAndGet();
+                } catch (Exception ex) {
+                    log.error("error while extracting content of document #" + item.status.getEntityId(), ex);
+                    extractionStage.errors.incrementAndGet();
+                }
+                extractionStage.busyNanos.addAndGet(System.nanoTime() - t);
+                put(writeQueue, item, extractionStage);
+            }
+        } catch (InterruptedException ex) {
+            log.debug("extraction worker of reindex pipeline {} interrupted", name);
+        }
+    }
+
+    private void write() {
+        TransactionHelper th = new TransactionHelper();
+        List<Item> items = new ArrayList<Item>();
+        boolean ended = false;
+        try {
+            while (!ended && !cancelled) {
+                Item item = writeQueue.take();
+                if (item == END) {
+                    ended = true;
+                } else {
+                    items.add(item);
+                }
+                long deadline = System.currentTimeMillis() + writeBatchDelay;
+                while (!ended && items.size() < writeBatchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    Item next = wait > 0 ? writeQueue.poll(wait, TimeUnit.MILLISECONDS) : writeQueue.poll();
+                    if (next == null) {
+                        break;
+                    } else if (next == END) {
+                        ended = true;
+                    } else {
+                        items.add(next);
+                    }
+                }
+                if (!items.isEmpty()) {
+                    flush(items, th);
+                    items.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.debug("writer of reindex pipeline {} interrupted", name);
+        }
+    }
+
+    private void flush(List<Item> items, TransactionHelper th) {
+        long t = System.nanoTime();
+        List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>();
+        List<SolrInputDocument> contentDocuments = new ArrayList<SolrInputDocument>();
+        List<String> contentDeletes = new ArrayList<String>();
+        for (Item item : items) {
+            if (item.documents[0] != null) {
+                documents.add(item.documents[0]);
+            }
+            if (item.documents[1] != null) {
+                contentDocuments.add(item.documents[1]);
+            } else if (!TextExtractionService.isNotExtracted(item.status)) {
+                contentDeletes.add(Long.toString(item.status.getEntityId()));
+            }
+        }
+        boolean written = false;
+        try {
+            indexManager.queueSolrDocuments(documents, contentDocuments, contentDeletes);
+            writeStage.processed.addAndGet(items.size());
+            written = true;
+        } catch (Exception ex) {
+            log.error("error while writing " + items.size() + " documents to index", ex);
+            writeStage.errors.addAndGet(items.size());
+        }
+
+        if (written && documentIndexStatusFactory != null) {
+            Object txStatus = null;
+            try {
+                txStatus = th.startNew(null);
+                for (Item item : items) {
+                    documentIndexStatusFactory.saveItem(item.status);
+                }
+                th.commit(txStatus);
+            } catch (Exception ex) {
+                log.error("error while saving index status of " + items.size() + " documents", ex);
+                try {
+                    th.rollback(txStatus);
+                } catch (Exception e) {
+                    //
+                }
+            }
+        }
+        for (Item item : items) {
+            if (written && !TextExtractionService.isNotExtracted(item.status)) {
+                item.batch.done();
+            } else {
+                item.batch.failed();
+            }
+        }
+        writeStage.busyNanos.addAndGet(System.nanoTime() - t);
+    }
+
+    @Override
+    public String toString() {
+        return "ReindexPipeline{" +
+                "name='" + name + '\'' +
+                ", " + loadStage +
+                ", " + extractionStage +
+                ", " + writeStage +
+                '}';
+    }
+}
@@ -20,6 +20,8 @@ import org.apache.solr.client.solrj.util.ClientUtils;
 import org.kimios.kernel.dms.model.DMEntity;
 import org.kimios.kernel.dms.model.DMEntityType;
 import org.kimios.kernel.dms.FactoryInstantiator;
+import org.kimios.kernel.index.query.factory.ReindexCheckpointFactory;
+import org.kimios.kernel.index.query.model.ReindexCheckpoint;
 import org.kimios.kernel.index.query.model.SearchResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +30,8 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +54,7 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
         private Exception exception;
         private String path;
         private long startTime;
+        private long lastEntityUid;
 
 
         public ReindexResult(String path, long reindexedCount, long duration, int entitiesCount, Exception ex) {
@@ -116,6 +121,14 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
             this.startTime = startTime;
         }
 
+        public long getLastEntityUid() {
+            return lastEntityUid;
+        }
+
+        public void setLastEntityUid(long lastEntityUid) {
+            this.lastEntityUid = lastEntityUid;
+        }
+
         @Override
         public String toString() {
             return "ReindexResult{" +
@@ -124,12 +137,37 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
                     ", entitiesCount=" + entitiesCount +
                     ", exception=" + exception +
                     ", path='" + path + '\'' +
+                    ", lastEntityUid=" + lastEntityUid +
                     '}';
         }
     }
 
     private static Logger log = LoggerFactory.getLogger(ReindexerProcess.class);
 
+    /*
+        Block handed to the reindex pipeline, complete once all its entities are written
+     */
+    private static class PendingBlock {
+
+        private ReindexPipeline.Batch batch;
+        private int count;
+        private long lastUid;
+        private boolean failed;
+
+        PendingBlock(int count, long lastUid) {
+            this.count = count;
+            this.lastUid = lastUid;
+        }
+
+        boolean isDone() {
+            return batch == null || batch.isDone();
+        }
+
+        boolean isFailed() {
+            return failed || (batch != null && batch.isFailed());
+        }
+    }
+
     private int reindexProgression = -1;
 
     private String finalPath;
@@ -152,6 +190,15 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
 
     private int threadPoolSize;
 
+    private ReindexCheckpointFactory checkpointFactory;
+
+    private ReindexCheckpoint checkpoint;
+
+    private boolean resume;
+
+    /* a block failed: the checkpoint stays before it */
+    private boolean blockFailed;
+
     public ReindexerProcess(ISolrIndexManager indexManager, String path, int blockSize, List<Long> excludedIds, List<String> extensionsExcluded,
                             Long threadReadTimeOut, TimeUnit threadReadTimeoutTimeUnit, int threadPoolSize,
                             boolean updateDocsMetaWrapper,
@@ -210,10 +257,31 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
         this.reindexResult = reindexResult;
     }
 
+    public ReindexCheckpointFactory getCheckpointFactory() {
+        return checkpointFactory;
+    }
+
+    public void setCheckpointFactory(ReindexCheckpointFactory checkpointFactory) {
+        this.checkpointFactory = checkpointFactory;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * When set, a path reindex restarts after the last entity recorded in its checkpoint
+     * and keeps the documents already present in the index.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
     public ReindexResult call() {
 
         TransactionHelper th = new TransactionHelper();
         Object txStatus = null;
+        ReindexPipeline pipeline = null;
         try {
 
             reindexProgression = 0;
@@ -226,7 +294,23 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
             SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
             DecimalFormat df = new DecimalFormat("#0.##");
 
-            if(finalPath != null){
+            long lastUid = 0;
+            if(finalPath != null && checkpointFactory != null){
+                txStatus = th.startNew(null);
+                checkpoint = checkpointFactory.getCheckpoint(finalPath, entityType);
+                th.commit(txStatus);
+                if(checkpoint == null){
+                    checkpoint = new ReindexCheckpoint(finalPath, entityType);
+                } else if(resume){
+                    lastUid = checkpoint.getLastEntityId();
+                    indexed = (int) checkpoint.getIndexedCount();
+                    log.info("resuming reindex of {} after entity {} ({} already indexed)", finalPath, lastUid, indexed);
+                }
+            }
+            boolean resumed = lastUid > 0;
+            this.reindexResult.setLastEntityUid(lastUid);
+
+            if(finalPath != null && !resumed){
                 String indexPath = this.finalPath != null ? this.finalPath.trim() : "/";
                 try {
                     String fPath = ClientUtils.escapeQueryChars(indexPath);
@@ -278,16 +362,28 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
 
             th.rollback(txStatus);
 
-            for (int u = 0; u < indexingBlockCount; u++) {
+            if (threadReadTimeoutTimeUnit != null && threadReadTimeOut != null) {
+                pipeline = indexManager.newReindexPipeline(finalPath != null ? finalPath : "ids",
+                        threadReadTimeOut, threadReadTimeoutTimeUnit, updateDocsMetaWrapper, threadPoolSize);
+                pipeline.start();
+            }
+            LinkedList<PendingBlock> pendingBlocks = new LinkedList<PendingBlock>();
+
+            for (int u = 0; finalPath != null || u < indexingBlockCount; u++) {
                 txStatus = th.startNew(null);
 
                 List<DMEntity> entityList = null;
                 if(finalPath != null){
                     entityList = FactoryInstantiator.getInstance()
-                            .getDmEntityFactory().getEntitiesByPathAndType(finalPath, entityType, u * documentBlockSize,
-                                    ((docLeak > 0 && u == (indexingBlockCount - 1)) ? docLeak : documentBlockSize),
+                            .getDmEntityFactory().getEntitiesByPathAndTypeAfter(finalPath, entityType, lastUid,
+                                    documentBlockSize,
                                     excludedIds,
                                     extensionsExcluded);
+                    if(entityList.isEmpty()){
+                        th.rollback(txStatus);
+                        break;
+                    }
+                    lastUid = entityList.get(entityList.size() - 1).getUid();
                 } else {
                     //use list
                     int startIdx =  u * documentBlockSize;
@@ -301,25 +397,30 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
 
                 }
 
+                PendingBlock block = new PendingBlock(entityList.size(), lastUid);
                 try {
-                    if (threadReadTimeoutTimeUnit != null && threadReadTimeOut != null) {
-                        indexManager.threadedIndexDocumentList(entityList, threadReadTimeOut,
-                                threadReadTimeoutTimeUnit,
-                                updateDocsMetaWrapper, threadPoolSize);
+                    if (pipeline != null) {
+                        block.batch = pipeline.submit(entityList);
                     } else {
                         indexManager.indexDocumentList(entityList);
                     }
-                    indexed += entityList.size();
+                } catch (InterruptedException ex) {
+                    // not submitted: the checkpoint must stay before it (canceled below)
+                    block.failed = true;
+                    Thread.currentThread().interrupt();
                 } catch (Exception ex) {
+                    block.failed = true;
                     log.error("an error happen during indexing for block " +  u + 1 + " / " + indexingBlockCount, ex);
                 }
+                pendingBlocks.add(block);
 
-                this.reindexResult.setReindexedCount(indexed);
                 if(updateDocsMetaWrapper)
                     th.commit(txStatus);
                 else
                     th.rollback(txStatus);
 
+                completeBlocks(pendingBlocks, th);
+
 
                 if (reindexProgression < 100) {
                     reindexProgression = (int) Math.round((double) indexed / (double) total * 100);
@@ -349,19 +450,42 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
                             + ". Elapsed Time: " + (this.duration / 1000 / 60) + " minutes"
                             + ". Indexing rate: " + formattedRate + " per minutes"
                             + ". Average Remaining Duration "
-                            + formattedRemaining + " minutes.");
+                            + formattedRemaining + " minutes."
+                            + (pipeline != null ? " " + pipeline : ""));
                 }
 
                 if (Thread.interrupted()) {
-                    log.info("reindex thread for path {} has been canceled", finalPath);
+                    if (pipeline != null) {
+                        pipeline.cancel();
+                        completeBlocks(pendingBlocks, th);
+                    }
+                    log.info("reindex thread for path {} has been canceled after entity {}",
+                            finalPath, this.reindexResult.getLastEntityUid());
                     return this.reindexResult;
                 }
 
             }
+
+            if (pipeline != null) {
+                pipeline.finish();
+                completeBlocks(pendingBlocks, th);
+            }
+
+            if (blockFailed) {
+                log.warn("reindex of path {} ended with failed blocks, checkpoint kept on entity {}",
+                        finalPath, this.reindexResult.getLastEntityUid());
+            } else if(finalPath != null && checkpointFactory != null){
+                txStatus = th.startNew(null);
+                checkpointFactory.deleteCheckpoint(finalPath, entityType);
+                th.commit(txStatus);
+            }
         } catch (Exception ex) {
             log.error("Exception during reindex! Process stopped", ex);
             this.reindexResult.setException(ex);
         } finally {
+            if (pipeline != null) {
+                pipeline.cancel();
+            }
             try {
                 new TransactionHelper().commit(txStatus);
             } catch (Exception e) {
@@ -376,6 +500,55 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
         }
     }
 
+    /*
+        Count blocks completed in submission order, and move the checkpoint after the last of them,
+        never past the first failed block
+     */
+    private void completeBlocks(LinkedList<PendingBlock> pendingBlocks, TransactionHelper th) {
+        long completedUid = -1;
+        while (!pendingBlocks.isEmpty() && pendingBlocks.getFirst().isDone()) {
+            PendingBlock block = pendingBlocks.removeFirst();
+            if (block.isFailed()) {
+                if (!blockFailed) {
+                    log.warn("block ending on entity {} failed, checkpoint of path {} will not move anymore",
+                            block.lastUid, finalPath);
+                }
+                blockFailed = true;
+                continue;
+            }
+            indexed += block.count;
+            if (!blockFailed) {
+                completedUid = block.lastUid;
+            }
+        }
+        this.reindexResult.setReindexedCount(indexed);
+        if (finalPath != null && completedUid >= 0) {
+            this.reindexResult.setLastEntityUid(completedUid);
+            saveCheckpoint(th, completedUid);
+        }
+    }
+
+    private void saveCheckpoint(TransactionHelper th, long lastUid) {
+        if(checkpointFactory == null)
+            return;
+        Object txStatus = null;
+        try {
+            txStatus = th.startNew(null);
+            checkpoint.setLastEntityId(lastUid);
+            checkpoint.setIndexedCount(indexed);
+            checkpoint.setUpdateDate(new Date());
+            checkpointFactory.saveCheckpoint(checkpoint);
+            th.commit(txStatus);
+        } catch (Exception e) {
+            log.error("unable to save reindex checkpoint for path " + finalPath, e);
+            try {
+                th.rollback(txStatus);
+            } catch (Exception ex) {
+                //
+            }
+        }
+    }
+
     public int getReindexProgression() {
         return reindexProgression;
     }
@@ -383,4 +556,16 @@ public class ReindexerProcess implements Callable<ReindexerProcess.ReindexResult
     public void setReindexProgression(int reindexProgression) {
         this.reindexProgression = reindexProgression;
     }
+
+    protected ISolrIndexManager getIndexManager() {
+        return indexManager;
+    }
+
+    protected String getPath() {
+        return finalPath;
+    }
+
+    protected int getBlockSize() {
+        return blockSize;
+    }
 }
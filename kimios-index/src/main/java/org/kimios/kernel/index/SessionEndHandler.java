@@ -21,6 +21,7 @@ import org.kimios.kernel.events.GenericEventHandler;
 import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventName;
 import org.kimios.api.events.annotations.DmsEventOccur;
+import org.kimios.kernel.index.query.QueryBuilder;
 import org.kimios.kernel.index.query.factory.SearchRequestFactory;
 import org.kimios.kernel.security.model.Session;
 import org.slf4j.Logger;
@@ -52,6 +53,7 @@ public class SessionEndHandler extends GenericEventHandler
             for(Session s: items){
                 logger.debug("removing quick searches for {}", s.getUid());
                 requestFactory.deleteSearchRequestBySession(s.getUid());
+                QueryBuilder.evictAclQuery(s.getUid());
             }
         }
     }
@@ -47,6 +47,7 @@ public class SolrDocCallable implements Callable<SolrInputDocument[]> {
     private ObjectMapper mp;
     private Map<String, Object> fileData;
     private DocumentIndexStatus documentIndexStatus;
+    private SolrDocGenerator generator;
 
     public SolrDocCallable(DocumentIndexStatus documentIndexStatus,
                            SolrIndexManager solrIndexManager,
@@ -70,13 +71,21 @@ public class SolrDocCallable implements Callable<SolrInputDocument[]> {
         this.fileData = fileData;
     }
 
+    /**
+     * Generator with the document data already loaded (see {@link SolrDocGenerator#forDocuments})
+     */
+    public void setGenerator(SolrDocGenerator generator){
+        this.generator = generator;
+    }
+
     @Override
     public SolrInputDocument[] call() throws Exception {
         if (documentIndexStatus.getDmEntity() instanceof Document) {
             Document document = (Document)documentIndexStatus.getDmEntity();
             log.debug("started solr input document for doc #" + document.getUid()
                     + " (" + document.getPath() + ")");
-            SolrInputDocument solrInputDocument = new SolrDocGenerator(document, this.mp)
+            SolrDocGenerator documentGenerator = generator != null ? generator : new SolrDocGenerator(document, this.mp);
+            SolrInputDocument solrInputDocument = documentGenerator
                     .toSolrInputDocument(flush, updateDocsMetaWrapper, documentIndexStatus);
             SolrInputDocument contentSolrInputDocument = null;
             if(fileData != null){
@@ -84,7 +93,7 @@ public class SolrDocCallable implements Callable<SolrInputDocument[]> {
                 for(String solrInputField: fileData.keySet())
                     solrInputDocument.addField(solrInputField, fileData.get(solrInputField));
 
-                contentSolrInputDocument = new SolrDocGenerator(document, this.mp)
+                contentSolrInputDocument = documentGenerator
                         .toSolrContentInputDocument(flush, updateDocsMetaWrapper, fileData, documentIndexStatus);
             }
             return new SolrInputDocument[]{solrInputDocument, contentSolrInputDocument};
@@ -42,14 +42,23 @@ public class SolrDocFileReaderCallable implements Callable<Map<Long,Map<String,O
     private TimeUnit readVersionTimeoutTimeUnit;
     private Map<DocumentIndexStatus, DocumentVersion> docFiles;
     private BlockingQueue blockingQueue;
+    private TextExtractionService extractionService;
 
     public SolrDocFileReaderCallable(Map<DocumentIndexStatus, DocumentVersion> docFiles,
                                      long readVersionTimeOut, TimeUnit readVersionTimeoutTimeUnit,
                                      BlockingQueue blockingQueue) {
+        this(docFiles, readVersionTimeOut, readVersionTimeoutTimeUnit, blockingQueue, null);
+    }
+
+    public SolrDocFileReaderCallable(Map<DocumentIndexStatus, DocumentVersion> docFiles,
+                                     long readVersionTimeOut, TimeUnit readVersionTimeoutTimeUnit,
+                                     BlockingQueue blockingQueue,
+                                     TextExtractionService extractionService) {
         this.readVersionTimeOut = readVersionTimeOut;
         this.readVersionTimeoutTimeUnit = readVersionTimeoutTimeUnit;
         this.docFiles = docFiles;
         this.blockingQueue = blockingQueue;
+        this.extractionService = extractionService;
     }
 
     @Override
@@ -62,40 +71,16 @@ public class SolrDocFileReaderCallable implements Callable<Map<Long,Map<String,O
             final DocumentVersion v = docFiles.get(d);
             //start thread with timeout
             if(d.getDmEntity() instanceof Document){
-                Callable<Map<String, Object>> rn = new Callable<Map<String, Object>>() {
-                    @Override
-                    public Map<String, Object> call() {
-                        return readVersionFileToData((Document)d.getDmEntity(), v, d);
-                    }
-                };
-
-                ExecutorService executorService = Executors.newSingleThreadExecutor();
-                Future<Map<String,Object>> result = executorService.submit(rn);
-
-                try {
-                    Map<String, Object> item = result.get(readVersionTimeOut, readVersionTimeoutTimeUnit);
-                    globalResults.put(d.getDmEntity().getUid(), item);
+                Map<String, Object> item;
+                if(extractionService != null){
+                    item = extractionService.extract((Document)d.getDmEntity(), v, d,
+                            readVersionTimeOut, readVersionTimeoutTimeUnit);
+                } else {
+                    item = readVersionFileToData((Document)d.getDmEntity(), v, d);
                     d.setReadFileDatas(item);
-                }catch (InterruptedException ex){
-                    result.cancel(true);
-                    d.setError("Interrupted error " + ex.getMessage());
-                    d.setBodyIndexed(false);
-                }
-                catch (TimeoutException ex){
-                    //Important to kill running thread !!
-                    boolean cancelled = result.cancel(true);
-                    d.setError("Timeout Error (def: " + readVersionTimeOut + " " + readVersionTimeoutTimeUnit.toString() + "). " + ex.getMessage());
-                    log.error("timeout: cancelled read thread for #" + d.getDmEntity().getUid() + "(" + cancelled + ")");
-                    d.setBodyIndexed(false);
                 }
-                catch (ExecutionException ex){
-                    result.cancel(true);
-                    d.setError("Exception Error: " + ex.getMessage());
-                    d.setBodyIndexed(false);
-                    log.error("exception: cancelled read thread for #" + d.getDmEntity().getUid(), ex);
-                }
-
-                executorService.shutdownNow();
+                if(item != null)
+                    globalResults.put(d.getDmEntity().getUid(), item);
             }
 
             //put in queue !
@@ -108,19 +93,33 @@ public class SolrDocFileReaderCallable implements Callable<Map<Long,Map<String,O
         return globalResults;
     }
 
-
     protected Map<String, Object> readVersionFileToData(Document document, DocumentVersion version,
                                                         DocumentIndexStatus documentIndexStatus){
         Object body = IndexHelper.EMPTY_STRING;;
         Map<String, Object> metaDatas = null;
         Map<String, Object> finalDatas = new HashMap<String, Object>();
+        ExtractionCache cache = extractionService != null ? extractionService.getCache() : null;
+        String cacheKey = cache != null ? ExtractionCache.key(version) : null;
+        if(cacheKey != null){
+            Map<String, Object> cachedDatas = cache.get(cacheKey);
+            if(cachedDatas != null){
+                if(log.isDebugEnabled())
+                    log.debug("extraction cache hit for document #{} ({})", document.getUid(), cacheKey);
+                if(cachedDatas.get("DocumentBody") != null)
+                    documentIndexStatus.setBodyIndexed(true);
+                return cachedDatas;
+            }
+        }
+        boolean extracted = false;
+        InputStream versionStream = null;
         try {
             if(log.isDebugEnabled())
                 log.debug("starting tika filtering for document #{} ({})", document.getUid(), document.getPath());
             GlobalFilter globalFilter = new GlobalFilter();
-            InputStream versionStream = RepositoryManager.accessVersionStream(version);
+            versionStream = TextExtractionService.interruptible(RepositoryManager.accessVersionStream(version));
             body = globalFilter.getFileBody(document, versionStream);
             metaDatas = globalFilter.getMetaDatas();
+            extracted = !Thread.currentThread().isInterrupted();
             if(log.isDebugEnabled())
                 log.debug("ending tika filtering for document #{} ({})", document.getUid(), document.getPath());
         } catch (Throwable ex) {
@@ -132,6 +131,14 @@ public class SolrDocFileReaderCallable implements Callable<Map<Long,Map<String,O
             ex.printStackTrace(prw);
             documentIndexStatus.setError(ex.getMessage() + " ==> "
                     + stringWriterStackTrace);
+        } finally {
+            if(versionStream != null){
+                try {
+                    versionStream.close();
+                } catch (Exception ex){
+                    //
+                }
+            }
         }
         if(metaDatas != null){
             for (String mKey : metaDatas.keySet()) {
@@ -142,6 +149,8 @@ public class SolrDocFileReaderCallable implements Callable<Map<Long,Map<String,O
             finalDatas.put("DocumentBody", body);
             documentIndexStatus.setBodyIndexed(true);
         }
+        if(extracted && cacheKey != null)
+            cache.put(cacheKey, finalDatas);
         return finalDatas;
     }
 }
@@ -29,8 +29,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -43,6 +46,11 @@ public class SolrDocGenerator {
 
     private static Logger log = LoggerFactory.getLogger(SolrDocGenerator.class);
 
+    /*
+        Max number of ids in the IN clauses of the block loader
+     */
+    private static final int IN_CLAUSE_SIZE = 500;
+
 
     private Document document;
     private DocumentVersion version;
@@ -63,6 +71,152 @@ public class SolrDocGenerator {
         loadDocumentData(document);
     }
 
+    private SolrDocGenerator(Document document, ObjectMapper mp, DocumentVersion version,
+                             DocumentWorkflowStatusRequest req, Workflow workflow,
+                             DocumentWorkflowStatus st, WorkflowStatus stOrg,
+                             List<MetaValue> values, List<DMEntityACL> acls, Lock documentLock){
+        this.document = document;
+        this.mp = mp;
+        this.version = version;
+        this.req = req;
+        this.workflow = workflow;
+        this.st = st;
+        this.stOrg = stOrg;
+        this.values = values;
+        this.acls = acls;
+        this.documentLock = documentLock;
+    }
+
+    /**
+     * Generators for a block of documents, keyed by document uid. Versions, workflow state, meta values,
+     * ACLs and locks of the whole block are loaded with a few IN queries instead of one query each per document.
+     */
+    public static Map<Long, SolrDocGenerator> forDocuments(List<Document> documents, ObjectMapper mp){
+
+        TransactionHelper txHelper = new TransactionHelper();
+        Object txStatus = null;
+        boolean shouldRollback = false;
+
+        if(!txHelper.isRunningInTransaction()){
+            try {
+                txStatus = txHelper.startNew(null);
+                shouldRollback = true;
+            }catch (Exception ex){
+                log.error("error while beginning tx", ex);
+            }
+        }
+
+        try {
+            Map<Long, SolrDocGenerator> generators = new LinkedHashMap<Long, SolrDocGenerator>();
+            Map<Long, WorkflowStatus> workflowStatuses = new HashMap<Long, WorkflowStatus>();
+            Map<Long, Workflow> workflows = new HashMap<Long, Workflow>();
+            for(int i = 0; i < documents.size(); i += IN_CLAUSE_SIZE){
+                loadDocumentsData(documents.subList(i, Math.min(documents.size(), i + IN_CLAUSE_SIZE)), mp,
+                        workflowStatuses, workflows, generators);
+            }
+            return generators;
+        } finally {
+            if(shouldRollback){
+                try {
+                    txHelper.rollback(txStatus);
+                }catch (Exception ex){
+                    log.error("error while rollbacking tx", ex);
+                }
+            }
+        }
+    }
+
+    private static void loadDocumentsData(List<Document> documents, ObjectMapper mp,
+                                          Map<Long, WorkflowStatus> workflowStatuses,
+                                          Map<Long, Workflow> workflows,
+                                          Map<Long, SolrDocGenerator> generators){
+        List<Long> uids = new ArrayList<Long>();
+        for(Document document: documents)
+            uids.add(document.getUid());
+        if(uids.isEmpty())
+            return;
+
+        Map<Long, DocumentVersion> versions = new HashMap<Long, DocumentVersion>();
+        for(DocumentVersion v: FactoryInstantiator.getInstance().getDocumentVersionFactory().getLastDocumentVersions(uids)){
+            DocumentVersion known = versions.get(v.getDocumentUid());
+            if(known == null || known.getUid() < v.getUid())
+                versions.put(v.getDocumentUid(), v);
+        }
+        Map<Long, DocumentWorkflowStatusRequest> requests = new HashMap<Long, DocumentWorkflowStatusRequest>();
+        for(DocumentWorkflowStatusRequest r: FactoryInstantiator.getInstance()
+                .getDocumentWorkflowStatusRequestFactory().getPendingRequests(uids)){
+            if(!requests.containsKey(r.getDocumentUid()))
+                requests.put(r.getDocumentUid(), r);
+        }
+        Map<Long, DocumentWorkflowStatus> statuses = new HashMap<Long, DocumentWorkflowStatus>();
+        for(DocumentWorkflowStatus s: FactoryInstantiator.getInstance()
+                .getDocumentWorkflowStatusFactory().getLastDocumentWorkflowStatuses(uids)){
+            if(!statuses.containsKey(s.getDocumentUid()))
+                statuses.put(s.getDocumentUid(), s);
+        }
+        Map<Long, List<MetaValue>> metaValues = new HashMap<Long, List<MetaValue>>();
+        if(!versions.isEmpty()){
+            List<Long> versionUids = new ArrayList<Long>();
+            for(DocumentVersion v: versions.values())
+                versionUids.add(v.getUid());
+            for(MetaValue value: FactoryInstantiator.getInstance().getMetaValueFactory().getMetaValues(versionUids))
+                metaValues.computeIfAbsent(value.getDocumentVersionUid(), k -> new ArrayList<MetaValue>()).add(value);
+        }
+        Map<Long, List<DMEntityACL>> acls = new HashMap<Long, List<DMEntityACL>>();
+        for(DMEntityACL acl: org.kimios.kernel.security.FactoryInstantiator.getInstance()
+                .getDMEntitySecurityFactory().getDMEntityACLs(uids))
+            acls.computeIfAbsent(acl.getDmEntityUid(), k -> new ArrayList<DMEntityACL>()).add(acl);
+        Map<Long, Lock> locks = new HashMap<Long, Lock>();
+        for(Lock lock: FactoryInstantiator.getInstance().getLockFactory().getDocumentLocks(uids))
+            locks.put(lock.getUid(), lock);
+
+        for(Document document: documents){
+            DocumentVersion version = versions.get(document.getUid());
+            DocumentWorkflowStatusRequest req = requests.get(document.getUid());
+            Workflow workflow = null;
+            if(req != null){
+                WorkflowStatus statusPending = workflowStatus(req.getWorkflowStatusUid(), workflowStatuses);
+                workflow = workflow(statusPending.getWorkflowUid(), workflows);
+            }
+            DocumentWorkflowStatus st = statuses.get(document.getUid());
+            WorkflowStatus stOrg = null;
+            if(st != null){
+                stOrg = workflowStatus(st.getWorkflowStatusUid(), workflowStatuses);
+                if(workflow == null){
+                    workflow = workflow(stOrg.getWorkflowUid(), workflows);
+                }
+            }
+            List<MetaValue> values = version != null ? metaValues.get(version.getUid()) : null;
+            List<DMEntityACL> documentAcls = acls.get(document.getUid());
+            generators.put(document.getUid(), new SolrDocGenerator(document, mp, version, req, workflow, st, stOrg,
+                    values != null ? values : new ArrayList<MetaValue>(),
+                    documentAcls != null ? documentAcls : new ArrayList<DMEntityACL>(),
+                    locks.get(document.getUid())));
+        }
+    }
+
+    private static WorkflowStatus workflowStatus(long uid, Map<Long, WorkflowStatus> workflowStatuses){
+        WorkflowStatus status = workflowStatuses.get(uid);
+        if(status == null){
+            status = FactoryInstantiator.getInstance().getWorkflowStatusFactory().getWorkflowStatus(uid);
+            workflowStatuses.put(uid, status);
+        }
+        return status;
+    }
+
+    private static Workflow workflow(long uid, Map<Long, Workflow> workflows){
+        Workflow workflow = workflows.get(uid);
+        if(workflow == null){
+            workflow = FactoryInstantiator.getInstance().getWorkflowFactory().getWorkflow(uid);
+            workflows.put(uid, workflow);
+        }
+        return workflow;
+    }
+
+    DocumentVersion getVersion() {
+        return version;
+    }
+
     private void loadDocumentData(Document document){
 
         TransactionHelper txHelper = new TransactionHelper();
@@ -51,6 +51,8 @@ public class SolrIndexFactory {
 
     private static SolrServer contentSolrServer;
 
+    private static SolrIndexManager indexManager;
+
     private String solrUrl;
 
     private String solrHome;
@@ -162,6 +164,9 @@ public class SolrIndexFactory {
     }
 
     public static void shutdownSolr() {
+        if (indexManager != null) {
+            indexManager.shutdownUpdateQueues();
+        }
         if(solrServer instanceof EmbeddedSolrServer){
             ((EmbeddedSolrServer)solrServer).getCoreContainer().shutdown();
         } else {
@@ -188,6 +193,10 @@ public class SolrIndexFactory {
         manager.setPathController(pathController);
         manager.setSolrDocumentFactory(solrDocumentFactory);
         manager.setDocumentIndexStatusFactory(documentIndexStatusFactory);
+        if (indexManager != null) {
+            indexManager.shutdownUpdateQueues();
+        }
+        indexManager = manager;
 
         eventHandlerManager.addHandler(addonDataHandler);
         SolrIndexer si = new SolrIndexer();
@@ -29,49 +29,47 @@ import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.kimios.exceptions.ConfigException;
+import org.kimios.kernel.configuration.Config;
 import org.kimios.kernel.controller.IPathController;
 import org.kimios.kernel.dms.*;
 import org.kimios.kernel.dms.model.*;
 import org.kimios.kernel.events.impl.AddonDataHandler;
-import org.kimios.kernel.events.model.EventContext;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.exceptions.IndexException;
 import org.kimios.kernel.index.query.factory.DocumentFactory;
 import org.kimios.kernel.index.query.factory.DocumentIndexStatusFactory;
 import org.kimios.kernel.index.query.model.DocumentIndexStatus;
 import org.kimios.kernel.index.query.model.SearchResponse;
-import org.kimios.kernel.jobs.Job;
-import org.kimios.kernel.jobs.JobImpl;
-import org.kimios.kernel.jobs.ThreadManager;
 import org.kimios.kernel.security.model.DMEntityACL;
-import org.kimios.kernel.security.model.Session;
+import org.kimios.utils.configuration.ConfigurationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.Vector;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 
 public class SolrIndexManager
         implements ISolrIndexManager {
     private static Logger log = LoggerFactory.getLogger(SolrIndexManager.class);
 
+    /* documents per query / update request for partial updates (below maxBooleanClauses) */
+    private static final int ATOMIC_UPDATE_BLOCK_SIZE = 500;
+
     private Reindexer reindexer = null;
 
     private Thread reindexThread = null;
@@ -103,12 +101,79 @@ public class SolrIndexManager
         mp = new ObjectMapper();
         mp.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         mp.addMixIn(Meta.class, AddonDataHandler.MetaMixIn.class);
+
+        int queueSize = intSetting(Config.INDEX_UPDATE_QUEUE_SIZE, 10000);
+        int batchSize = intSetting(Config.INDEX_UPDATE_BATCH_SIZE, 500);
+        int batchDelay = intSetting(Config.INDEX_UPDATE_BATCH_DELAY, 200);
+        int commitWithin = intSetting(Config.INDEX_COMMIT_WITHIN, 1000);
+        this.updateQueue = new SolrUpdateQueue("main", solr, queueSize, batchSize, batchDelay, commitWithin);
+        this.contentUpdateQueue = contentSolr != null ?
+                new SolrUpdateQueue("content", contentSolr, queueSize, batchSize, batchDelay, commitWithin) : null;
+
+        int extractionThreads = intSetting(Config.INDEX_EXTRACTION_THREADS, 0);
+        this.extractionService = new TextExtractionService("index",
+                extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors(),
+                intSetting(Config.INDEX_EXTRACTION_QUEUE_SIZE, 1000),
+                intSetting(Config.INDEX_EXTRACTION_TIMEOUT, 60), TimeUnit.SECONDS);
+        String extractionCachePath = ConfigurationManager.getValue(Config.INDEX_EXTRACTION_CACHE_PATH);
+        if (extractionCachePath != null && extractionCachePath.trim().length() > 0) {
+            try {
+                this.extractionService.setCache(new ExtractionCache(new File(extractionCachePath.trim()),
+                        intSetting(Config.INDEX_EXTRACTION_CACHE_SIZE, 1024) * 1024L * 1024L));
+            } catch (Exception e) {
+                log.error("unable to open extraction cache " + extractionCachePath + ", extraction cache disabled", e);
+            }
+        }
     }
 
     private final SolrServer solr;
 
     private final SolrServer contentSolrServer;
 
+    private final SolrUpdateQueue updateQueue;
+
+    private final SolrUpdateQueue contentUpdateQueue;
+
+    private final TextExtractionService extractionService;
+
+    static int intSetting(String key, int defaultValue) {
+        try {
+            String value = ConfigurationManager.getValue(key);
+            if (value != null && value.trim().length() > 0) {
+                return Integer.parseInt(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}", key, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    public SolrUpdateQueue getUpdateQueue() {
+        return updateQueue;
+    }
+
+    public SolrUpdateQueue getContentUpdateQueue() {
+        return contentUpdateQueue;
+    }
+
+    public TextExtractionService getExtractionService() {
+        return extractionService;
+    }
+
+    public ReindexPipeline newReindexPipeline(String name,
+                                              long readVersionTimeOut,
+                                              TimeUnit readVersionTimeoutTimeUnit,
+                                              boolean updateDocsMetaWrapper,
+                                              int extractionPoolSize) {
+        int poolSize = extractionPoolSize > 0 ? extractionPoolSize : extractionService.getThreads();
+        return new ReindexPipeline(name, this, this.mp, this.documentIndexStatusFactory,
+                readVersionTimeOut, readVersionTimeoutTimeUnit, updateDocsMetaWrapper,
+                poolSize,
+                intSetting(Config.INDEX_REINDEX_QUEUE_SIZE, 200),
+                intSetting(Config.INDEX_UPDATE_BATCH_SIZE, 500),
+                intSetting(Config.INDEX_UPDATE_BATCH_DELAY, 200));
+    }
+
     public synchronized void reindex(String path)
             throws DataSourceException, ConfigException, IndexException {
         final String finalPath = path;
@@ -147,14 +212,15 @@ public class SolrIndexManager
 
     public void deleteDocument(DMEntity document)
             throws IndexException {
+        deleteDocument(document, false);
+    }
+
+    public void deleteDocument(DMEntity document, boolean waitForVisibility)
+            throws IndexException {
         try {
-            this.solr.deleteById(String.valueOf(document.getUid()));
-            log.debug("Commited deletion of document " + document.getUid());
-            this.solr.commit();
-        } catch (IOException e) {
-            throw new IndexException(e, "An exception occured while deleting document " + document.getUid() + " : "
-                    + e.getMessage());
-        } catch (SolrServerException e) {
+            this.updateQueue.deleteById(String.valueOf(document.getUid()), waitForVisibility);
+            log.debug("Queued deletion of document " + document.getUid());
+        } catch (IndexException e) {
             throw new IndexException(e, "An exception occured while deleting document " + document.getUid() + " : "
                     + e.getMessage());
         }
@@ -162,118 +228,64 @@ public class SolrIndexManager
 
     public void indexDocument(DMEntity documentEntity)
             throws IndexException, DataSourceException, ConfigException {
+        indexDocument(documentEntity, false);
+    }
+
+    public void indexDocument(DMEntity documentEntity, boolean waitForVisibility)
+            throws IndexException, DataSourceException, ConfigException {
         try {
 
             Document document = (Document) documentEntity;
-            String docQuery = "DocumentUid:" + documentEntity.getUid();
-            SolrQuery solrQuery = new SolrQuery();
-            solrQuery.setQuery(docQuery);
-            this.deleteDocument(document);
             //load data
             final DocumentVersion version =
                     FactoryInstantiator.getInstance().getDocumentVersionFactory().getLastDocumentVersion(document);
             final DocumentIndexStatus documentIndexStatus = new DocumentIndexStatus();
             documentIndexStatus.setDmEntity((DMEntityImpl)documentEntity);
 
-            final long readVersionTimeOut = 60;
-            final TimeUnit readVersionTimeoutTimeUnit = TimeUnit.SECONDS;
-
-
             final Document doc = (Document)documentEntity;
 
 
-            final String docPath = documentEntity.getPath();
-
-
             final SolrDocGenerator solrDocGenerator = new SolrDocGenerator(document, mp);
             SolrInputDocument solrInputDocument = solrDocGenerator.toSolrInputDocument(true, true, documentIndexStatus);
 
-
-            Session session = EventContext.get().getSession();
-            String taskId = UUID.randomUUID().toString();
-            Job<Map<String, Object>> rn = new JobImpl<Map<String,Object>>(taskId) {
-
-
-                @Override
-                public Map<String, Object> execute() {
-
-                    Callable<Map<String,Object>> reader = new Callable<Map<String, Object>>() {
-                        @Override
-                        public Map<String, Object> call() throws Exception {
-                            return new SolrDocFileReaderCallable(null, -1, null, null)
-                                    .readVersionFileToData((Document) doc,
-                                            version,
-                                            documentIndexStatus);
+            //handle asynchronous indexing ! (waits for room when the extraction queue is full)
+            try {
+                extractionService.submitAndWait(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Map<String, Object> item = extractionService.read(doc, version, documentIndexStatus);
+                        if (Thread.currentThread().isInterrupted()) {
+                            //cancelled on timeout: file data is incomplete
+                            documentIndexStatus.setError("Timeout Error while reading file");
+                            documentIndexStatus.setBodyIndexed(false);
+                            log.error("timeout: cancelled read thread for #{}", doc.getUid());
+                            return null;
                         }
-                    };
-                    //handle asynchronous indexing !
-
-                    ExecutorService executorService = Executors.newSingleThreadExecutor();
-                    Future<Map<String, Object>> result = executorService.submit(reader);
-                    Map<String, Object> item = null;
-                    try {
-                        item = result.get(readVersionTimeOut, readVersionTimeoutTimeUnit);
                         documentIndexStatus.setReadFileDatas(item);
 
                         //put in index !!
-
                         SolrInputDocument contentSolrInputDocument = solrDocGenerator.toSolrContentInputDocument(true, true,
                                 documentIndexStatus.getReadFileDatas(), documentIndexStatus);
 
-                        contentSolrServer.add(contentSolrInputDocument);
-                        contentSolrServer.commit();
-                        log.info("content added & committed to body index !!");
-
-
-                    }catch (InterruptedException ex){
-                        result.cancel(true);
-                        documentIndexStatus.setError("Interrupted error " + ex.getMessage());
-                        documentIndexStatus.setBodyIndexed(false);
-
-                        return null;
-                    }
-                    catch (TimeoutException ex){
-                        //Important to kill running thread !!
-                        boolean cancelled = result.cancel(true);
-                        documentIndexStatus.setError("Timeout Error (def: " + readVersionTimeOut + " " + readVersionTimeoutTimeUnit.toString() + "). " + ex.getMessage());
-                        log.error("timeout: cancelled read thread for #" + documentIndexStatus.getDmEntity().getUid() + "(" + cancelled + ")");
-                        documentIndexStatus.setBodyIndexed(false);
-
-                        return null;
-                    }
-                    catch (ExecutionException ex){
-                        result.cancel(true);
-                        documentIndexStatus.setError("Exception Error: " + ex.getMessage());
-                        documentIndexStatus.setBodyIndexed(false);
-                        log.error("exception: cancelled read thread for #" + documentIndexStatus.getDmEntity().getUid(), ex);
-
-                        return null;
-                    }
-                    catch (Exception ex){
-                        log.error("error while indexing doc", ex);
-                    }
-                    finally {
-                        try{
-                            executorService.shutdown();
-                        } catch (Exception ex){
-
+                        if (contentUpdateQueue != null && contentSolrInputDocument != null) {
+                            contentUpdateQueue.add(contentSolrInputDocument, false);
+                            log.debug("content queued to body index for #{}", doc.getUid());
                         }
+                        return null;
                     }
-                    executorService.shutdownNow();
-
-                    return item;
-                }
-            };
-            rn.setSession(session);
-            ThreadManager.getInstance().startJob(session, rn);
-            this.solr.add(solrInputDocument);
-            this.solr.commit();
-        } catch (IOException io) {
-            throw new IndexException(io,
-                    "An exception occured while indexing document " + documentEntity.getUid() + " : "
-                            +
-                            io.getMessage());
-        } catch (SolrServerException ex) {
+                });
+            } catch (RejectedExecutionException ex) {
+                log.error("text extraction service is shut down: content of document #{} will not be indexed",
+                        doc.getUid());
+            } catch (InterruptedException ex) {
+                log.error("interrupted while waiting for text extraction: content of document #{} will not be indexed",
+                        doc.getUid());
+                Thread.currentThread().interrupt();
+            }
+            if (solrInputDocument != null) {
+                this.updateQueue.add(solrInputDocument, waitForVisibility);
+            }
+        } catch (IndexException ex) {
             throw new IndexException(ex,
                     "An exception occured while indexing document " + documentEntity.getUid() + " : "
                             +
@@ -287,17 +299,10 @@ public class SolrIndexManager
         try {
 
             Folder folder = (Folder) documentEntity;
-            this.deleteDocument(folder);
             SolrFolderGenerator generator = new SolrFolderGenerator(folder, metaValues, this.mp);
             SolrInputDocument solrInputDocument = generator.toSolrInputDocument(folder, metaValues);
-            this.solr.add(solrInputDocument);
-            this.solr.commit();
-        } catch (IOException io) {
-            throw new IndexException(io,
-                    "An exception occured while indexing folder " + documentEntity.getUid() + " : "
-                            +
-                            io.getMessage());
-        } catch (SolrServerException ex) {
+            this.updateQueue.add(solrInputDocument, false);
+        } catch (IndexException ex) {
             throw new IndexException(ex,
                     "An exception occured while indexing folder " + documentEntity.getUid() + " : "
                             +
@@ -320,6 +325,7 @@ public class SolrIndexManager
             Map<DocumentIndexStatus, DocumentVersion> documentVersionMap = new HashMap<DocumentIndexStatus, DocumentVersion>();
             final Map<DocumentIndexStatus, SolrDocCallable> docIndexTasks = new HashMap<DocumentIndexStatus, SolrDocCallable>();
             final BlockingQueue<DocumentIndexStatus> sharedQueue = new LinkedBlockingQueue<DocumentIndexStatus>();
+            Map<Long, SolrDocGenerator> generators = SolrDocGenerator.forDocuments(documentsOf(documentEntities), this.mp);
             for (final DMEntity doc : documentEntities) {
                 if (log.isDebugEnabled()) {
                     log.debug("Adding TO File Read Queue Document doc: #" + doc.getUid() + " " +
@@ -330,10 +336,9 @@ public class SolrIndexManager
                 DocumentIndexStatus documentIndexStatus = new DocumentIndexStatus();
                 documentIndexStatus.setDmEntity((DMEntityImpl) doc);
                 documentIndexStatus.setEntityId(doc.getUid());
+                SolrDocGenerator generator = generators.get(doc.getUid());
                 if(doc instanceof Document){
-                    DocumentVersion version =
-                            FactoryInstantiator.getInstance().getDocumentVersionFactory().getLastDocumentVersion((Document)doc);
-                    documentVersionMap.put(documentIndexStatus, version);
+                    documentVersionMap.put(documentIndexStatus, generator.getVersion());
                 } else {
                     documentVersionMap.put(documentIndexStatus, new DocumentVersion());
                 }
@@ -344,18 +349,10 @@ public class SolrIndexManager
                                 updateDocsMetaWrapper, false,
                                 readVersionTimeOut, readVersionTimeoutTimeUnit,
                                 mp);
+                solrInputDocumentCallable.setGenerator(generator);
                 docIndexTasks.put(documentIndexStatus, solrInputDocumentCallable);
 
             }
-            //launcg thread to read files in parallel and get future
-            //1 thread to read files, and put data on queue
-            Future<Map<Long, Map<String, Object>>> futuresFilesMetaDatas =
-                    Executors.newSingleThreadExecutor().submit(new SolrDocFileReaderCallable(documentVersionMap,
-                            readVersionTimeOut, readVersionTimeoutTimeUnit, sharedQueue));
-
-
-            log.info("started File Reader. Status Queue Size: {} ", sharedQueue.size());
-
             Future<?> globalFuture = executorService.submit(new Callable<Integer>() {
 
                 @Override
@@ -390,13 +387,7 @@ public class SolrIndexManager
 
                                 try {
                                     SolrInputDocument[] docData = doc.get();
-                                    solr.deleteById(Long.toString(indexStatus.getDmEntity().getUid()));
-                                    solr.add(docData[0]);
-                                    contentSolrServer.deleteById(Long.toString(indexStatus.getDmEntity().getUid()));
-                                    if(docData[1] != null){
-                                        contentSolrServer.add(docData[1]);
-                                    }
-
+                                    queueSolrDocuments(indexStatus, docData);
                                 } catch (Exception ex) {
                                     log.error("error while adding doc #" + indexStatus.getDmEntity().getUid(), ex);
                                 }
@@ -429,12 +420,7 @@ public class SolrIndexManager
 
                             try {
                                 SolrInputDocument[] slDocs = doc.get();
-                                solr.deleteById(Long.toString(indexStatus.getDmEntity().getUid()));
-                                solr.add(slDocs[0]);
-                                contentSolrServer.deleteById(Long.toString(indexStatus.getDmEntity().getUid()));
-                                if(slDocs[1] != null){
-                                    contentSolrServer.add(slDocs[1]);
-                                }
+                                queueSolrDocuments(indexStatus, slDocs);
                             } catch (Exception ex) {
                                 log.error("error while adding doc #" + indexStatus.getDmEntity().getUid(), ex);
                             }
@@ -444,25 +430,22 @@ public class SolrIndexManager
                         }
                     }
                     log.debug("returning doc count processed {}", docCount);
-                    try {
-                        solr.commit();
-
-                    }catch (Exception ex){
-                        log.error("error while committing block !!!", ex);
-                    }
-                    try {
-                        contentSolrServer.commit();
-
-                    }catch (Exception ex){
-                        log.error("error while committing content block !!!", ex);
-                    }
-
                     return  docCount;
 
                 }
             });
 
 
+            //read files on this thread, through the shared extraction pool, and put data on queue
+            try {
+                new SolrDocFileReaderCallable(documentVersionMap, readVersionTimeOut, readVersionTimeoutTimeUnit,
+                        sharedQueue, extractionService).call();
+            } catch (Exception ex) {
+                globalFuture.cancel(true);
+                executorService.shutdownNow();
+                throw ex;
+            }
+
             Object ret = globalFuture.get();
             log.debug("Global result {}", ret);
             executorService.shutdown();
@@ -501,6 +484,7 @@ public class SolrIndexManager
             List<SolrInputDocument> updatedDocument = new ArrayList<SolrInputDocument>();
             List<SolrInputDocument> updatedDocumentContent = new ArrayList<SolrInputDocument>();
             List<String> updatedDocumentIds = new ArrayList<String>();
+            Map<Long, SolrDocGenerator> generators = SolrDocGenerator.forDocuments(documentsOf(documentEntities), this.mp);
             for (DMEntity doc : documentEntities) {
 
                 if (log.isDebugEnabled()) {
@@ -524,15 +508,18 @@ public class SolrIndexManager
                     DocumentIndexStatus st = new DocumentIndexStatus();
                     st.setDmEntity((DMEntityImpl)doc);
                     st.setEntityId(doc.getUid());
-                    Map<String, Object> fileDatas =
-                            new SolrDocFileReaderCallable(null, -1, null, null)
-                            .readVersionFileToData((Document)doc,
-                                    FactoryInstantiator.getInstance()
-                                            .getDocumentVersionFactory().getLastDocumentVersion((Document)doc),
-                                    st);
-                    SolrDocGenerator n = new SolrDocGenerator((Document)doc, this.mp);
+                    SolrDocGenerator n = generators.get(doc.getUid());
+                    // through the shared pool, cancelled on timeout
+                    extractionService.extract((Document)doc, n.getVersion(), st);
                     solrInputDocument = n.toSolrInputDocument(false, true,  st);
 
+                    if (TextExtractionService.isNotExtracted(st)) {
+                        // body unknown: the indexed one is kept
+                        if (solrInputDocument != null) {
+                            updatedDocument.add(solrInputDocument);
+                        }
+                        continue;
+                    }
                     //content
                     contentSolrInputDoc = n.toSolrContentInputDocument(false, true, st.getReadFileDatas(), st);
                 }
@@ -557,16 +544,54 @@ public class SolrIndexManager
                 }
             }
 
-            this.solr.deleteById(updatedDocumentIds);
-            this.solr.add(updatedDocument);
-            this.contentSolrServer.deleteById(updatedDocumentIds);
-            this.contentSolrServer.add(updatedDocumentContent);
-            this.solr.commit();
-            this.contentSolrServer.commit();
-        } catch (IOException io) {
-            throw new IndexException(io, "An exception occured while indexing document list " + io.getMessage());
-        } catch (SolrServerException ex) {
-            throw new IndexException(ex, "An exception occured while indexing document " + ex.getMessage());
+            this.updateQueue.add(updatedDocument, false);
+            if (this.contentUpdateQueue != null) {
+                this.contentUpdateQueue.deleteById(updatedDocumentIds, false);
+                this.contentUpdateQueue.add(updatedDocumentContent, false);
+            }
+        } catch (IndexException ex) {
+            throw new IndexException(ex, "An exception occured while indexing document list " + ex.getMessage());
+        }
+    }
+
+    private static List<Document> documentsOf(List<DMEntity> entities) {
+        List<Document> documents = new ArrayList<Document>();
+        for (DMEntity entity : entities) {
+            if (entity instanceof Document) {
+                documents.add((Document) entity);
+            }
+        }
+        return documents;
+    }
+
+    void queueSolrDocuments(List<SolrInputDocument> documents,
+                            List<SolrInputDocument> contentDocuments,
+                            List<String> contentDeletes) throws IndexException {
+        if (!documents.isEmpty()) {
+            this.updateQueue.add(documents, false);
+        }
+        if (this.contentUpdateQueue != null) {
+            if (!contentDocuments.isEmpty()) {
+                this.contentUpdateQueue.add(contentDocuments, false);
+            }
+            if (!contentDeletes.isEmpty()) {
+                this.contentUpdateQueue.deleteById(contentDeletes, false);
+            }
+        }
+    }
+
+    private void queueSolrDocuments(DocumentIndexStatus indexStatus, SolrInputDocument[] docData)
+            throws IndexException {
+        if (docData[0] != null) {
+            this.updateQueue.add(docData[0], false);
+        }
+        if (this.contentUpdateQueue != null) {
+            if (docData[1] != null) {
+                this.contentUpdateQueue.add(docData[1], false);
+            } else if (!TextExtractionService.isNotExtracted(indexStatus)) {
+                // no body: remove the indexed one, unless the extraction did not run
+                this.contentUpdateQueue.deleteById(Long.toString(indexStatus.getDmEntity().getUid()), false);
+            }
         }
     }
 
@@ -602,6 +627,15 @@ public class SolrIndexManager
     }
 
 
+    public SolrDocumentList executeSolrFieldsQuery(SolrQuery query)
+            throws IndexException {
+        try {
+            return solr.query(query).getResults();
+        } catch (Exception ex) {
+            throw new IndexException(ex, ex.getMessage());
+        }
+    }
+
     public SearchResponse executeSolrQuery(SolrQuery query)
             throws IndexException {
         QueryResponse rsp;
@@ -701,40 +735,60 @@ public class SolrIndexManager
 
     public void updateAcls(long docUid, List<DMEntityACL> acls, boolean commit)
             throws IndexException {
+        Map<Long, List<DMEntityACL>> documentAcls = new HashMap<Long, List<DMEntityACL>>();
+        documentAcls.put(docUid, acls);
+        updateAcls(documentAcls, commit);
+    }
+
+    public void updateAcls(Map<Long, List<DMEntityACL>> documentAcls, boolean waitForVisibility)
+            throws IndexException {
         try {
-            log.trace("Updating ACL for document #" + docUid);
-            QueryResponse rsp = this.solr.query(new SolrQuery("DocumentUid:" + docUid));
-            if (rsp.getResults().getNumFound() > 0) {
-                SolrDocument doc = rsp.getResults().get(0);
-                this.solr.deleteById(String.valueOf(docUid));
-                doc.removeFields("DocumentACL");
-                doc.removeFields("score");
-                SolrInputDocument docUpdate = ClientUtils.toSolrInputDocument(doc);
-                for (int j = 0; j < acls.size(); j++) {
-                    docUpdate.addField("DocumentACL", acls.get(j).getRuleHash());
+            List<Long> uids = new ArrayList<Long>(documentAcls.keySet());
+            for (int i = 0; i < uids.size(); i += ATOMIC_UPDATE_BLOCK_SIZE) {
+                List<Long> block = uids.subList(i, Math.min(i + ATOMIC_UPDATE_BLOCK_SIZE, uids.size()));
+                boolean pending = false;
+                StringBuilder uidQuery = new StringBuilder();
+                for (Long uid : block) {
+                    pending |= this.updateQueue.isPending(String.valueOf(uid));
+                    uidQuery.append(uidQuery.length() > 0 ? " OR " : "").append(uid);
+                }
+                if (pending) {
+                    this.updateQueue.sync();
                 }
                 /*
-                    Regenerate document body
+                    An atomic update of a document missing from the index would create
+                    an incomplete one: only update the indexed documents
                  */
-                this.solr.add(docUpdate);
+                SolrQuery query = new SolrQuery("DocumentUid:(" + uidQuery + ")");
+                query.setFields("DocumentUid");
+                query.setRows(block.size());
+                List<SolrInputDocument> updates = new ArrayList<SolrInputDocument>();
+                for (SolrDocument doc : this.solr.query(query).getResults()) {
+                    Long uid = (Long) doc.getFieldValue("DocumentUid");
+                    List<String> ruleHashes = new ArrayList<String>();
+                    for (DMEntityACL acl : documentAcls.get(uid)) {
+                        ruleHashes.add(acl.getRuleHash());
+                    }
+                    log.trace("Updating ACL for document #" + uid);
+                    updates.add(atomicUpdate(uid, "DocumentACL", ruleHashes.isEmpty() ? null : ruleHashes));
+                }
+                if (updates.size() > 0) {
+                    this.updateQueue.add(updates,
+                            waitForVisibility && i + ATOMIC_UPDATE_BLOCK_SIZE >= uids.size());
+                }
             }
         } catch (Exception e) {
             throw new IndexException(e, e.getMessage());
-        } finally {
-
-            if (commit) {
-                try {
-                    this.solr.commit();
-                } catch (Exception e) {
-                    throw new IndexException(e, e.getMessage());
-                }
-            }
-
         }
     }
 
     public void deletePath(String path)
             throws IndexException {
+        deletePath(path, false);
+    }
+
+    public void deletePath(String path, boolean waitForVisibility)
+            throws IndexException {
         try {
 
             log.debug("Path delete: " + path);
@@ -742,9 +796,8 @@ public class SolrIndexManager
                 path = path.substring(0, path.lastIndexOf("/"));
             }
 
-            UpdateResponse response = this.solr.deleteByQuery("DocumentParent:" + ClientUtils.escapeQueryChars(path + "/") + "*");
-            log.debug(response.toString());
-            this.solr.commit();
+            this.updateQueue.deleteByQuery("DocumentParent:" + ClientUtils.escapeQueryChars(path + "/") + "*",
+                    waitForVisibility);
         } catch (Exception ex) {
             throw new IndexException(ex, ex.getMessage());
         }
@@ -752,14 +805,30 @@ public class SolrIndexManager
 
     public void deleteByQuery(String query)
             throws IndexException {
+        deleteByQuery(query, false);
+    }
+
+    public void deleteByQuery(String query, boolean waitForVisibility)
+            throws IndexException {
         try {
-            this.solr.deleteByQuery(query);
-            this.solr.commit();
+            this.updateQueue.deleteByQuery(query, waitForVisibility);
         } catch (Exception ex) {
             throw new IndexException(ex, ex.getMessage());
         }
     }
 
+    /*
+        Partial update of an indexed document: stored fields are kept, given fields are replaced
+     */
+    private static SolrInputDocument atomicUpdate(long uid, Object... fieldValues) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("DocumentUid", uid);
+        for (int i = 0; i < fieldValues.length; i += 2) {
+            doc.addField((String) fieldValues[i], Collections.singletonMap("set", fieldValues[i + 1]));
+        }
+        return doc;
+    }
+
     public void updatePath(String oldPath, String newPath)
             throws IndexException {
         try {
@@ -775,31 +844,44 @@ public class SolrIndexManager
 
             log.debug("find documents to update {}", pathQuery);
 
-            SolrDocumentList items = this.solr.query(new SolrQuery(pathQuery)).getResults();
+            this.updateQueue.sync();
+            /*
+                Walk every matching document by uid, one block at a time
+             */
+            long lastUid = -1;
+            int updated = 0;
+            while (true) {
+                SolrQuery query = new SolrQuery(pathQuery);
+                query.addFilterQuery("DocumentUid:{" + lastUid + " TO *]");
+                query.setFields("DocumentUid", "DocumentPath", "DocumentParent");
+                query.setSort("DocumentUid", SolrQuery.ORDER.asc);
+                query.setRows(ATOMIC_UPDATE_BLOCK_SIZE);
+                SolrDocumentList items = this.solr.query(query).getResults();
 
-
-            if (items.getNumFound() > 0) {
                 List<SolrInputDocument> documentList = new ArrayList<SolrInputDocument>();
-                this.solr.deleteByQuery(q.toString());
                 for (SolrDocument doc : items) {
+                    lastUid = (Long) doc.getFieldValue("DocumentUid");
                     String parentPath = doc.getFieldValue("DocumentParent").toString();
                     parentPath = newPath + parentPath.substring(oldPath.length() + 1);
 
                     String path = doc.getFieldValue("DocumentPath").toString();
                     path = newPath + path.substring(oldPath.length() + 1);
 
-
-                    doc.removeFields("DocumentPath");
-                    doc.removeFields("DocumentParent");
-                    doc.removeFields("score");
-                    SolrInputDocument updatedDocument = ClientUtils.toSolrInputDocument(doc);
-                    updatedDocument.addField("DocumentParent", parentPath);
-                    updatedDocument.addField("DocumentPath", path);
-                    documentList.add(updatedDocument);
+                    documentList.add(atomicUpdate(lastUid, "DocumentParent", parentPath, "DocumentPath", path));
                 }
-                this.solr.add(documentList);
-                this.solr.commit();
+                if (documentList.size() > 0) {
+                    this.updateQueue.add(documentList, false);
+                    updated += documentList.size();
+                }
+                if (items.size() < ATOMIC_UPDATE_BLOCK_SIZE) {
+                    break;
+                }
+            }
+            if (updated > 0) {
+                // moved paths visible before returning, whatever the size of the last block
+                this.updateQueue.sync();
             }
+            log.debug("updated path of {} documents from {} to {}", updated, oldPath, newPath);
         } catch (Exception ex) {
             throw new IndexException(ex, ex.getMessage());
         }
@@ -830,15 +912,25 @@ public class SolrIndexManager
 
 
     public void commit() throws IndexException {
+        this.updateQueue.commit();
+        if (this.contentUpdateQueue != null) {
+            this.contentUpdateQueue.commit();
+        }
+    }
 
-        try {
-            this.solr.commit();
-        } catch (Exception e) {
-            throw new IndexException(e);
+    /**
+     * Flush and stop the index update queues, and stop the text extraction workers
+     */
+    public void shutdownUpdateQueues() {
+        this.updateQueue.shutdown();
+        if (this.contentUpdateQueue != null) {
+            this.contentUpdateQueue.shutdown();
         }
+        this.extractionService.shutdown();
     }
 
     public void closeSolr() {
+        shutdownUpdateQueues();
         try {
             this.solr.shutdown();
         } catch (Exception e) {
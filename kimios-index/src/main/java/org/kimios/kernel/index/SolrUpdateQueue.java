@@ -0,0 +1,534 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.kimios.exceptions.IndexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous write pipeline in front of a {@link SolrServer}.
+ *
+ * Updates are put on a bounded queue (callers block when it is full) and a single writer thread
+ * groups consecutive operations of the same kind into one add / deleteById request. Written data
+ * becomes searchable through Solr commitWithin; callers needing read-your-writes ask for visibility,
+ * which makes the writer issue a soft commit right after the batch holding their update.
+ *
+ * A failed write is retried in place with an exponential backoff, so later updates of the same documents
+ * are not reordered before it. When retries are exhausted the error is reported to the callers waiting for
+ * the update; otherwise the uids of the documents are logged, to be repaired by an index synchronization.
+ */
+public class SolrUpdateQueue {
+
+    private static Logger log = LoggerFactory.getLogger(SolrUpdateQueue.class);
+
+    private static final long VISIBILITY_TIMEOUT_MS = 120000;
+
+    private static final int WRITE_RETRIES = 4;
+
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private enum OperationType {
+        ADD, DELETE_BY_ID, DELETE_BY_QUERY, SOFT_COMMIT, HARD_COMMIT
+    }
+
+    private static class Operation {
+        private final OperationType type;
+        private final List<SolrInputDocument> documents;
+        private final List<String> ids;
+        private final String query;
+        private final CountDownLatch done;
+        private volatile Exception error;
+
+        private Operation(OperationType type, List<SolrInputDocument> documents, List<String> ids, String query,
+                          boolean waitForVisibility) {
+            this.type = type;
+            this.documents = documents;
+            this.ids = ids;
+            this.query = query;
+            this.done = waitForVisibility ? new CountDownLatch(1) : null;
+        }
+
+        private int size() {
+            if (documents != null)
+                return documents.size();
+            if (ids != null)
+                return ids.size();
+            return 1;
+        }
+    }
+
+    private final String name;
+
+    private final SolrServer server;
+
+    private final BlockingQueue<Operation> queue;
+
+    private final int maxBatchSize;
+
+    private final long maxBatchDelay;
+
+    private final int commitWithin;
+
+    /*
+        Uid of documents written (or about to be) but maybe not searchable yet, with the time
+        after which commitWithin guarantees their visibility.
+     */
+    private final Map<String, Long> pendingIds = new ConcurrentHashMap<String, Long>();
+
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+
+    /*
+        Time after which every write applied so far is searchable through commitWithin
+     */
+    private volatile long dirtyUntil = 0;
+
+    private volatile boolean applying = false;
+
+    private final AtomicLong submittedOperations = new AtomicLong();
+
+    private final AtomicLong addedDocuments = new AtomicLong();
+
+    private final AtomicLong deletedDocuments = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong commits = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param name          queue name, used for the writer thread name and logs
+     * @param server        target solr server
+     * @param capacity      max number of queued operations before callers are blocked
+     * @param maxBatchSize  max number of operations grouped in one write cycle
+     * @param maxBatchDelay max time (ms) the writer waits for more operations before writing a batch
+     * @param commitWithin  commitWithin (ms) sent with each update. Zero or less disables it.
+     */
+    public SolrUpdateQueue(String name, SolrServer server, int capacity, int maxBatchSize, long maxBatchDelay,
+                           int commitWithin) {
+        this.name = name;
+        this.server = server;
+        this.queue = new LinkedBlockingQueue<Operation>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+        this.commitWithin = commitWithin > 0 ? commitWithin : -1;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        });
+        this.writerThread.setName("SolrUpdateQueue-" + name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public void add(SolrInputDocument document, boolean waitForVisibility) throws IndexException {
+        add(Collections.singletonList(document), waitForVisibility);
+    }
+
+    public void add(List<SolrInputDocument> documents, boolean waitForVisibility) throws IndexException {
+        if (documents.isEmpty())
+            return;
+        Operation operation = new Operation(OperationType.ADD, new ArrayList<SolrInputDocument>(documents), null,
+                null, waitForVisibility);
+        for (String id : idsOf(operation))
+            pendingIds.put(id, Long.MAX_VALUE);
+        submit(operation);
+    }
+
+    public void deleteById(String id, boolean waitForVisibility) throws IndexException {
+        deleteById(Collections.singletonList(id), waitForVisibility);
+    }
+
+    public void deleteById(List<String> ids, boolean waitForVisibility) throws IndexException {
+        if (ids.isEmpty())
+            return;
+        for (String id : ids)
+            pendingIds.put(id, Long.MAX_VALUE);
+        submit(new Operation(OperationType.DELETE_BY_ID, null, new ArrayList<String>(ids), null, waitForVisibility));
+    }
+
+    public void deleteByQuery(String query, boolean waitForVisibility) throws IndexException {
+        submit(new Operation(OperationType.DELETE_BY_QUERY, null, null, query, waitForVisibility));
+    }
+
+    /**
+     * Make every update submitted so far searchable. Returns immediately when nothing is pending.
+     */
+    public void sync() throws IndexException {
+        if (System.currentTimeMillis() < dirtyUntil || applying || !queue.isEmpty()) {
+            submit(new Operation(OperationType.SOFT_COMMIT, null, null, null, true));
+        }
+    }
+
+    /**
+     * Write every update submitted so far and hard commit them.
+     */
+    public void commit() throws IndexException {
+        submit(new Operation(OperationType.HARD_COMMIT, null, null, null, true));
+    }
+
+    /**
+     * @return true if the document may have been updated without being searchable yet.
+     */
+    public boolean isPending(String id) {
+        Long visibleAt = pendingIds.get(id);
+        if (visibleAt == null)
+            return false;
+        if (visibleAt < System.currentTimeMillis()) {
+            pendingIds.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting updates, write the remaining ones and hard commit them.
+     */
+    public void shutdown() {
+        if (!running)
+            return;
+        try {
+            commit();
+        } catch (Exception e) {
+            log.error("error while flushing update queue " + name, e);
+        }
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(VISIBILITY_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Operation operation) throws IndexException {
+        if (!running) {
+            throw new IndexException("Solr update queue " + name + " is closed");
+        }
+        try {
+            queue.put(operation);
+            submittedOperations.incrementAndGet();
+            if (operation.done != null) {
+                if (!operation.done.await(VISIBILITY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    throw new IndexException("Timeout while waiting for index update visibility on " + name);
+                }
+                if (operation.error != null) {
+                    throw new IndexException(operation.error, operation.error.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException(e, "Interrupted while submitting index update on " + name);
+        }
+    }
+
+    private void writeLoop() {
+        List<Operation> batch = new ArrayList<Operation>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Operation first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    purgeVisibleIds();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                if (!hasWaiter(batch)) {
+                    long deadline = System.currentTimeMillis() + maxBatchDelay;
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            break;
+                        Operation next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null)
+                            break;
+                        batch.add(next);
+                        if (next.done != null)
+                            break;
+                    }
+                }
+                applying = true;
+                apply(batch);
+            } catch (InterruptedException e) {
+                if (running) {
+                    log.warn("update queue {} writer interrupted while running", name);
+                }
+                if (!batch.isEmpty()) {
+                    applying = true;
+                    apply(batch);
+                }
+            } catch (Throwable t) {
+                log.error("unexpected error in update queue " + name, t);
+            } finally {
+                for (Operation op : batch) {
+                    if (op.done != null)
+                        op.done.countDown();
+                }
+                batch.clear();
+                applying = false;
+            }
+        }
+        log.info("update queue {} writer stopped", name);
+    }
+
+    private boolean hasWaiter(List<Operation> operations) {
+        for (Operation op : operations) {
+            if (op.done != null)
+                return true;
+        }
+        return false;
+    }
+
+    private void apply(List<Operation> operations) {
+        boolean softCommit = false;
+        boolean hardCommit = false;
+        int i = 0;
+        while (i < operations.size()) {
+            Operation op = operations.get(i);
+            int j = i + 1;
+            List<SolrInputDocument> docs = null;
+            List<String> ids = null;
+            switch (op.type) {
+                case ADD:
+                    docs = new ArrayList<SolrInputDocument>(op.documents);
+                    while (j < operations.size() && operations.get(j).type == OperationType.ADD) {
+                        docs.addAll(operations.get(j).documents);
+                        j++;
+                    }
+                    break;
+                case DELETE_BY_ID:
+                    ids = new ArrayList<String>(op.ids);
+                    while (j < operations.size() && operations.get(j).type == OperationType.DELETE_BY_ID) {
+                        ids.addAll(operations.get(j).ids);
+                        j++;
+                    }
+                    break;
+                case SOFT_COMMIT:
+                    softCommit = true;
+                    break;
+                case HARD_COMMIT:
+                    hardCommit = true;
+                    break;
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    write(op, docs, ids);
+                    batches.incrementAndGet();
+                    break;
+                } catch (Exception e) {
+                    if (attempt <= WRITE_RETRIES && running && waitBeforeRetry(attempt)) {
+                        retries.incrementAndGet();
+                        log.warn("error while writing {} operation(s) of type {} on {}, retry {}/{}: {}",
+                                j - i, op.type, name, attempt, WRITE_RETRIES, e.getMessage());
+                        continue;
+                    }
+                    failed(operations.subList(i, j), e);
+                    break;
+                }
+            }
+            if (log.isDebugEnabled()) {
+                int count = 0;
+                for (int k = i; k < j; k++)
+                    count += operations.get(k).size();
+                log.debug("update queue {}: wrote {} item(s) of type {}", name, count, op.type);
+            }
+            i = j;
+        }
+
+        long now = System.currentTimeMillis();
+        if (hardCommit || softCommit || hasWaiter(operations)) {
+            try {
+                if (hardCommit) {
+                    server.commit();
+                } else {
+                    server.commit(false, true, true);
+                }
+                commits.incrementAndGet();
+                dirtyUntil = 0;
+                Iterator<Map.Entry<String, Long>> it = pendingIds.entrySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next().getValue() != Long.MAX_VALUE)
+                        it.remove();
+                }
+                for (Operation op : operations) {
+                    for (String id : idsOf(op))
+                        pendingIds.remove(id);
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                log.error("error while committing update queue " + name, e);
+                for (Operation op : operations) {
+                    if (op.done != null && op.error == null)
+                        op.error = e;
+                }
+            }
+        } else {
+            long visibleAt = commitWithin > 0 ? now + commitWithin : Long.MAX_VALUE;
+            dirtyUntil = visibleAt;
+            for (Operation op : operations) {
+                for (String id : idsOf(op))
+                    pendingIds.put(id, visibleAt);
+            }
+            purgeVisibleIds();
+        }
+    }
+
+    private void write(Operation op, List<SolrInputDocument> docs, List<String> ids) throws Exception {
+        switch (op.type) {
+            case ADD:
+                server.add(docs, commitWithin);
+                addedDocuments.addAndGet(docs.size());
+                break;
+            case DELETE_BY_ID:
+                server.deleteById(ids, commitWithin);
+                deletedDocuments.addAndGet(ids.size());
+                break;
+            case DELETE_BY_QUERY:
+                server.deleteByQuery(op.query, commitWithin);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+        Exponential backoff before a new attempt. Returns false when interrupted (shutdown).
+     */
+    private boolean waitBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_DELAY_MS << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /*
+        Retries exhausted: waiting callers get the error, the documents of the others are logged
+     */
+    private void failed(List<Operation> operations, Exception e) {
+        errors.incrementAndGet();
+        List<String> lost = new ArrayList<String>();
+        for (Operation op : operations) {
+            op.error = e;
+            if (op.done == null) {
+                if (op.query != null) {
+                    lost.add(op.query);
+                } else {
+                    lost.addAll(idsOf(op));
+                }
+            }
+        }
+        log.error("error while writing " + operations.size() + " operation(s) of type " + operations.get(0).type
+                + " on " + name + (lost.isEmpty() ? "" : ", not written (index synchronization needed): " + lost), e);
+    }
+
+    private List<String> idsOf(Operation op) {
+        if (op.ids != null)
+            return op.ids;
+        List<String> ids = new ArrayList<String>();
+        if (op.documents != null) {
+            for (SolrInputDocument doc : op.documents) {
+                Object uid = doc.getFieldValue("DocumentUid");
+                if (uid != null)
+                    ids.add(uid.toString());
+            }
+        }
+        return ids;
+    }
+
+    private void purgeVisibleIds() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = pendingIds.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() < now)
+                it.remove();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getSubmittedOperations() {
+        return submittedOperations.get();
+    }
+
+    public long getAddedDocuments() {
+        return addedDocuments.get();
+    }
+
+    public long getDeletedDocuments() {
+        return deletedDocuments.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SolrUpdateQueue{" +
+                "name='" + name + '\'' +
+                ", queueSize=" + queue.size() +
+                ", submittedOperations=" + submittedOperations +
+                ", addedDocuments=" + addedDocuments +
+                ", deletedDocuments=" + deletedDocuments +
+                ", batches=" + batches +
+                ", commits=" + commits +
+                ", retries=" + retries +
+                ", errors=" + errors +
+                '}';
+    }
+}
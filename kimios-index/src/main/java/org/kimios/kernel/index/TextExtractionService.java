@@ -0,0 +1,376 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index;
+
+import org.kimios.kernel.dms.model.Document;
+import org.kimios.kernel.dms.model.DocumentVersion;
+import org.kimios.kernel.index.query.model.DocumentIndexStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Text extraction (Tika parsing of version files) on a fixed pool of workers fed by a bounded queue.
+ *
+ * A task running longer than its timeout is cancelled, which interrupts its worker. Version streams
+ * read through {@link #interruptible(InputStream)} fail on the next read once the worker is interrupted,
+ * so the parser gives up instead of holding the worker.
+ *
+ * Single documents are rejected when the queue is full; bulk extractions wait for room instead, and a
+ * document whose extraction never ran is flagged on its index status so that its body is left untouched.
+ */
+public class TextExtractionService {
+
+    private static Logger log = LoggerFactory.getLogger(TextExtractionService.class);
+
+    /* error prefix of the index status of a document whose extraction did not run */
+    private static final String NOT_EXTRACTED = "Not extracted: ";
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final long timeout;
+    private final TimeUnit timeoutUnit;
+    private volatile ExtractionCache cache;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+
+    public TextExtractionService(String name, int threads, int queueSize, long timeout, TimeUnit timeoutUnit) {
+        this.name = name;
+        this.timeout = timeout;
+        this.timeoutUnit = timeoutUnit;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), threadFactory("TextExtraction-" + name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.watchdog = new ScheduledThreadPoolExecutor(1, threadFactory("TextExtraction-" + name + "-watchdog-"));
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Queue an extraction task with the service default timeout
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return submit(task, timeout, timeoutUnit);
+    }
+
+    /**
+     * Queue an extraction task, cancelled if it runs longer than taskTimeout once started
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public <T> Future<T> submit(Callable<T> task, long taskTimeout, TimeUnit taskTimeoutUnit) {
+        FutureTask<T> future = newTask(task, taskTimeout, taskTimeoutUnit);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            throw ex;
+        }
+        submitted.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * Queue an extraction task with the service default timeout, waiting for room when the queue is full
+     *
+     * @throws RejectedExecutionException when the service is shut down
+     * @throws InterruptedException when interrupted while waiting for room
+     */
+    public <T> Future<T> submitAndWait(Callable<T> task) throws InterruptedException {
+        return submitAndWait(task, timeout, timeoutUnit);
+    }
+
+    /**
+     * Queue an extraction task, waiting for room when the queue is full
+     *
+     * @throws RejectedExecutionException when the service is shut down
+     * @throws InterruptedException when interrupted while waiting for room
+     */
+    public <T> Future<T> submitAndWait(Callable<T> task, long taskTimeout, TimeUnit taskTimeoutUnit)
+            throws InterruptedException {
+        FutureTask<T> future = newTask(task, taskTimeout, taskTimeoutUnit);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException ex) {
+            if (executor.isShutdown()) {
+                rejected.incrementAndGet();
+                throw ex;
+            }
+            // queue full: all the workers are started, so queueing directly is enough
+            waited.incrementAndGet();
+            executor.getQueue().put(future);
+            if (executor.isShutdown() && executor.remove(future)) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("text extraction service " + name + " is shut down");
+            }
+        }
+        submitted.incrementAndGet();
+        return future;
+    }
+
+    private <T> FutureTask<T> newTask(final Callable<T> task, final long taskTimeout,
+                                      final TimeUnit taskTimeoutUnit) {
+        final FutureTask<T>[] self = new FutureTask[1];
+        FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                ScheduledFuture<?> timer = watchdog.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (self[0].cancel(true)) {
+                            timedOut.incrementAndGet();
+                        }
+                    }
+                }, taskTimeout, taskTimeoutUnit);
+                try {
+                    T result = task.call();
+                    completed.incrementAndGet();
+                    return result;
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    throw ex;
+                } finally {
+                    timer.cancel(false);
+                }
+            }
+        });
+        self[0] = future;
+        return future;
+    }
+
+    /**
+     * Read the version file of a document in the calling thread, from the extraction cache when
+     * its content was already extracted
+     */
+    public Map<String, Object> read(Document document, DocumentVersion version, DocumentIndexStatus status) {
+        return new SolrDocFileReaderCallable(null, -1, null, null, this)
+                .readVersionFileToData(document, version, status);
+    }
+
+    /**
+     * Extract the version file of a document with the service default timeout
+     *
+     * @see #extract(Document, DocumentVersion, DocumentIndexStatus, long, TimeUnit)
+     */
+    public Map<String, Object> extract(Document document, DocumentVersion version, DocumentIndexStatus status) {
+        return extract(document, version, status, timeout, timeoutUnit);
+    }
+
+    /**
+     * Extract the version file of a document and wait for the result, waiting for room first when the
+     * queue is full. Returns null, and records the error on the index status, when the extraction fails,
+     * times out or does not run (see {@link #isNotExtracted(DocumentIndexStatus)}).
+     */
+    public Map<String, Object> extract(final Document document, final DocumentVersion version,
+                                       final DocumentIndexStatus status, long taskTimeout, TimeUnit taskTimeoutUnit) {
+        ExtractionCache extractionCache = cache;
+        if (extractionCache != null && extractionCache.contains(ExtractionCache.key(version))) {
+            // no parsing needed: read the cached datas without going through the pool
+            Map<String, Object> item = read(document, version, status);
+            status.setReadFileDatas(item);
+            return item;
+        }
+        Future<Map<String, Object>> result;
+        try {
+            result = submitAndWait(new Callable<Map<String, Object>>() {
+                @Override
+                public Map<String, Object> call() {
+                    return read(document, version, status);
+                }
+            }, taskTimeout, taskTimeoutUnit);
+        } catch (RejectedExecutionException ex) {
+            status.setError(NOT_EXTRACTED + "text extraction service is shut down");
+            status.setBodyIndexed(false);
+            log.error("text extraction service shut down: rejected document #{}", document.getUid());
+            return null;
+        } catch (InterruptedException ex) {
+            status.setError(NOT_EXTRACTED + "interrupted while waiting for text extraction");
+            status.setBodyIndexed(false);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        try {
+            Map<String, Object> item = result.get();
+            status.setReadFileDatas(item);
+            return item;
+        } catch (CancellationException ex) {
+            status.setError("Timeout Error (def: " + taskTimeout + " " + taskTimeoutUnit.toString() + ").");
+            status.setBodyIndexed(false);
+            log.error("timeout: cancelled read thread for #" + document.getUid());
+        } catch (InterruptedException ex) {
+            result.cancel(true);
+            status.setError(NOT_EXTRACTED + "interrupted error " + ex.getMessage());
+            status.setBodyIndexed(false);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            status.setError("Exception Error: " + ex.getMessage());
+            status.setBodyIndexed(false);
+            log.error("exception: cancelled read thread for #" + document.getUid(), ex);
+        }
+        return null;
+    }
+
+    /**
+     * True when the extraction of the document did not run or was interrupted by its caller: its body
+     * is unknown, and must not be replaced by an empty one
+     */
+    public static boolean isNotExtracted(DocumentIndexStatus status) {
+        return status.getError() != null && status.getError().startsWith(NOT_EXTRACTED);
+    }
+
+    /**
+     * Wrap a stream so that reads fail once the reading thread is interrupted
+     */
+    public static InputStream interruptible(InputStream in) {
+        return new FilterInputStream(in) {
+            private void check() throws IOException {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("text extraction cancelled");
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                check();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                check();
+                return super.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                check();
+                return super.skip(n);
+            }
+        };
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    public ExtractionCache getCache() {
+        return cache;
+    }
+
+    public void setCache(ExtractionCache cache) {
+        this.cache = cache;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getWaited() {
+        return waited.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TextExtractionService{" +
+                "name='" + name + '\'' +
+                ", threads=" + getThreads() +
+                ", active=" + getActiveCount() +
+                ", queued=" + getQueueSize() +
+                ", submitted=" + submitted +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", timedOut=" + timedOut +
+                ", rejected=" + rejected +
+                ", waited=" + waited +
+                '}';
+    }
+}
@@ -60,6 +60,21 @@ public interface ISearchManagementController {
                                 int entityType)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException;
 
+    /**
+     * Reindex paths by blocks of entities ordered by id. With resume, each path restarts after the last
+     * entity recorded in its reindex checkpoint instead of clearing the index and starting over.
+     */
+    public void parallelReindex(Session session, List<String> paths, List<Long> excludedDocuments, List<String> excludedExtensions,
+                                Integer blockSize,
+                                Long readFileTimeOut,
+                                TimeUnit readFileTimeoutUnit,
+                                int threadPoolSize,
+                                boolean updateDocsMetaWrapper,
+                                boolean disableThreading,
+                                int entityType,
+                                boolean resume)
+            throws AccessDeniedException, IndexException, ConfigException, DataSourceException;
+
 
     public void parallelReindex(Session session, List<Long> ids,
                                              Integer blockSize,
@@ -71,6 +86,15 @@ public interface ISearchManagementController {
                                              int entityType)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException;
 
+    /**
+     * Repair the index of paths without clearing it: documents missing from the index or indexed with
+     * outdated data are reindexed. A full synchronization checks all documents and removes orphans from the
+     * index, an incremental one only checks documents modified, moved or renamed since the last completed
+     * synchronization of the path. Progress is reported with the reindex processes.
+     */
+    public void syncIndex(Session session, List<String> paths, Integer blockSize, boolean full)
+            throws AccessDeniedException, IndexException, ConfigException, DataSourceException;
+
     public void killAndCleanReindexProcess(Session session)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException;
 
@@ -24,9 +24,11 @@ import org.kimios.exceptions.AccessDeniedException;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.exceptions.IndexException;
 import org.kimios.kernel.index.ISolrIndexManager;
+import org.kimios.kernel.index.IndexSyncProcess;
 import org.kimios.kernel.index.ReindexerProcess;
 import org.kimios.kernel.index.SolrIndexManager;
-import org.kimios.kernel.security.model.Role;
+import org.kimios.kernel.index.query.factory.IndexSyncFactory;
+import org.kimios.kernel.index.query.factory.ReindexCheckpointFactory;
 import org.kimios.kernel.security.model.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,13 +58,32 @@ public class SearchManagementController extends AKimiosController implements ISe
         this.indexManager = indexManager;
     }
 
+    private ReindexCheckpointFactory reindexCheckpointFactory;
+
+    public ReindexCheckpointFactory getReindexCheckpointFactory() {
+        return reindexCheckpointFactory;
+    }
+
+    public void setReindexCheckpointFactory(ReindexCheckpointFactory reindexCheckpointFactory) {
+        this.reindexCheckpointFactory = reindexCheckpointFactory;
+    }
+
+    private IndexSyncFactory indexSyncFactory;
+
+    public IndexSyncFactory getIndexSyncFactory() {
+        return indexSyncFactory;
+    }
+
+    public void setIndexSyncFactory(IndexSyncFactory indexSyncFactory) {
+        this.indexSyncFactory = indexSyncFactory;
+    }
+
     /* (non-Javadoc)
         * @see org.kimios.kernel.controller.impl.IAdministrationController#reindex(org.kimios.kernel.security.Session, java.lang.String)
         */
     public void reindex(Session session, String path)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             indexManager.reindex(path);
         } else {
             throw new AccessDeniedException();
@@ -83,8 +104,23 @@ public class SearchManagementController extends AKimiosController implements ISe
                                              boolean disableThreading,
                                              int entityType)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        parallelReindex(session, paths, excludedIds, excludedExtensions, blockSize, readFileTimeOut,
+                readFileTimeoutUnit, threadPoolSize, updateDocsMetaWrapper, disableThreading, entityType, false);
+    }
+
+    synchronized public void parallelReindex(Session session, List<String> paths,
+                                             List<Long> excludedIds,
+                                             List<String> excludedExtensions,
+                                             Integer blockSize,
+                                             Long readFileTimeOut,
+                                             TimeUnit readFileTimeoutUnit,
+                                             int threadPoolSize,
+                                             boolean updateDocsMetaWrapper,
+                                             boolean disableThreading,
+                                             int entityType,
+                                             boolean resume)
+            throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
 
             int block = blockSize != null && blockSize > 0
                     ? blockSize : 20;
@@ -125,6 +161,8 @@ public class SearchManagementController extends AKimiosController implements ISe
                         disableThreading,
                         entityType
                 );
+                osgiReindexer.setCheckpointFactory(reindexCheckpointFactory);
+                osgiReindexer.setResume(resume);
                 executor.submit(osgiReindexer);
             }
 
@@ -144,8 +182,7 @@ public class SearchManagementController extends AKimiosController implements ISe
                                              boolean disableThreading,
                                              int entityType)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
 
             int block = blockSize != null && blockSize > 0
                     ? blockSize : 20;
@@ -177,10 +214,39 @@ public class SearchManagementController extends AKimiosController implements ISe
     }
 
 
+    synchronized public void syncIndex(Session session, List<String> paths, Integer blockSize, boolean full)
+            throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
+
+            int block = blockSize != null && blockSize > 0
+                    ? blockSize : 500;
+
+            if (executor == null || executor.isTerminated()) {
+                executor = new CustomThreadPoolExecutor(8, 8,
+                        0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>());
+            }
+            Map<String, ReindexerProcess> running = ((CustomThreadPoolExecutor) executor).getItems();
+            for (String path : paths) {
+                if (running != null && running.containsKey(path)) {
+                    log.error("path {} is already processed by index: stage {}%", path,
+                            running.get(path).getReindexProgression());
+                    continue;
+                }
+                IndexSyncProcess syncProcess = new IndexSyncProcess(indexManager, path, block, full);
+                syncProcess.setSyncFactory(indexSyncFactory);
+                executor.submit(syncProcess);
+                log.info("will start {} index synchronization for {}", full ? "full" : "incremental", path);
+            }
+        } else {
+            throw new AccessDeniedException();
+        }
+    }
+
+
     public List<ReindexerProcess.ReindexResult> viewIndexingProcess(Session session)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             if (executor != null && !executor.isTerminated()) {
 
                 Map<String, ReindexerProcess> reindexResults = ((CustomThreadPoolExecutor) executor).getItems();
@@ -203,8 +269,7 @@ public class SearchManagementController extends AKimiosController implements ISe
     public void killAndCleanReindexProcess(Session session)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
 
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             if (executor != null) {
                 List<Runnable> items = executor.shutdownNow();
                 for (Runnable r : items) {
@@ -227,8 +292,7 @@ public class SearchManagementController extends AKimiosController implements ISe
     */
     public int getReindexProgress(Session session)
             throws AccessDeniedException, IndexException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             return indexManager.getReindexProgression();
         } else {
             throw new AccessDeniedException();
@@ -27,9 +27,11 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 
@@ -40,7 +42,75 @@ public class QueryBuilder
 {
     private static Logger log = LoggerFactory.getLogger( QueryBuilder.class );
 
+    private static final int ACL_QUERY_CACHE_SIZE = 10000;
+
+    /*
+        ACL filter query of a session, with the user and group set it was built for
+     */
+    private static class AclQuery
+    {
+        private final String securityKey;
+
+        private final String query;
+
+        private AclQuery( String securityKey, String query )
+        {
+            this.securityKey = securityKey;
+            this.query = query;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, AclQuery> aclQueries = new ConcurrentHashMap<String, AclQuery>();
+
+    /**
+     * ACL filter query of the session user. The query is built once per session and group set: it is sent
+     * as filter query, so the same string lets Solr reuse the cached filter across searches and pages.
+     * A change of the session groups builds a new one.
+     */
     public static String buildAclQuery( Session session )
+    {
+        String securityKey = securityKey( session );
+        AclQuery aclQuery = session.getUid() != null ? aclQueries.get( session.getUid() ) : null;
+        if ( aclQuery != null && aclQuery.securityKey.equals( securityKey ) )
+        {
+            return aclQuery.query;
+        }
+        String query = compileAclQuery( session );
+        if ( session.getUid() != null )
+        {
+            if ( aclQueries.size() >= ACL_QUERY_CACHE_SIZE )
+            {
+                // expired sessions not evicted: start over
+                aclQueries.clear();
+            }
+            aclQueries.put( session.getUid(), new AclQuery( securityKey, query ) );
+        }
+        return query;
+    }
+
+    /**
+     * Forget the ACL filter query of an ended session
+     */
+    public static void evictAclQuery( String sessionUid )
+    {
+        aclQueries.remove( sessionUid );
+    }
+
+    private static String securityKey( Session session )
+    {
+        List<String> gids = new ArrayList<String>();
+        if ( session.getGroups() != null )
+        {
+            for ( Group g : session.getGroups() )
+            {
+                gids.add( g.getGid() );
+            }
+        }
+        Collections.sort( gids );
+        return session.getUserName() + "@" + session.getUserSource() + ":" + gids;
+    }
+
+    private static String compileAclQuery( Session session )
     {
 
         List<String> aclQueriesList = new ArrayList<String>();
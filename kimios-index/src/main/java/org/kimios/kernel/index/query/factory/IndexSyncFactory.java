@@ -0,0 +1,157 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index.query.factory;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.criterion.Restrictions;
+import org.kimios.exceptions.DataSourceException;
+import org.kimios.kernel.hibernate.HFactory;
+import org.kimios.kernel.index.query.model.IndexSyncCursor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index synchronization queries: sync cursors, and the indexed state of documents
+ * (uid, update date, last version uid and modification date) read without loading entities.
+ */
+public class IndexSyncFactory extends HFactory {
+
+    private static final String DOCUMENTS = "from Document d where d.path like :path and d.uid > :afterUid ";
+
+    /*
+        documents updated, with a version updated, or under a container updated (renamed or moved) since
+     */
+    private static final String MODIFIED_SINCE = "and (d.updateDate > :since "
+            + "or exists (select lv.uid from DocumentVersion lv "
+            + "where lv.documentUid = d.uid and lv.modificationDate > :since) "
+            + "or exists (select h.ancestorUid from DMEntityHierarchy h, DMEntityImpl a "
+            + "where h.descendantUid = d.folderUid and a.uid = h.ancestorUid and a.updateDate > :since)) ";
+
+    private static final String LAST_VERSIONS = "select v.documentUid, v.uid, v.modificationDate "
+            + "from DocumentVersion v where v.documentUid in (:uids) "
+            + "and v.creationDate = (select max(lv.creationDate) from DocumentVersion lv "
+            + "where lv.documentUid = v.documentUid)";
+
+    public IndexSyncCursor getCursor(String path) throws DataSourceException {
+        try {
+            return (IndexSyncCursor) getSession().createCriteria(IndexSyncCursor.class)
+                    .add(Restrictions.eq("path", path))
+                    .uniqueResult();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    public void saveCursor(IndexSyncCursor cursor) throws DataSourceException {
+        try {
+            getSession().saveOrUpdate(cursor);
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    /**
+     * Next documents of path after afterUid, ordered by uid, as arrays of
+     * {document uid, document update date, version uid, version modification date, document path};
+     * version fields are null for a document without version.
+     * With modifiedSince, only the documents, versions or parent containers updated after that date
+     * (the hierarchy of the containers must be complete).
+     */
+    public List<Object[]> getDocumentStates(String path, long afterUid, Date modifiedSince, int count)
+            throws DataSourceException {
+        try {
+            String query = "select d.uid, d.updateDate, d.path " + DOCUMENTS
+                    + (modifiedSince != null ? MODIFIED_SINCE : "")
+                    + "order by d.uid";
+            Query q = getSession().createQuery(query)
+                    .setString("path", pathPattern(path))
+                    .setLong("afterUid", afterUid);
+            if (modifiedSince != null) {
+                q.setTimestamp("since", modifiedSince);
+            }
+            List<Object[]> documents = q.setMaxResults(count).list();
+            if (documents.isEmpty()) {
+                return documents;
+            }
+            List<Long> uids = new ArrayList<Long>();
+            for (Object[] document : documents) {
+                uids.add((Long) document[0]);
+            }
+            // last version of each document, read apart: documents without version are kept
+            Map<Long, Object[]> versions = new HashMap<Long, Object[]>();
+            List<Object[]> lastVersions = getSession().createQuery(LAST_VERSIONS)
+                    .setParameterList("uids", uids)
+                    .list();
+            for (Object[] version : lastVersions) {
+                Object[] previous = versions.get(version[0]);
+                if (previous == null || (Long) previous[1] < (Long) version[1]) {
+                    versions.put((Long) version[0], version);
+                }
+            }
+            List<Object[]> states = new ArrayList<Object[]>();
+            for (Object[] document : documents) {
+                Object[] version = versions.get(document[0]);
+                states.add(new Object[]{document[0], document[1],
+                        version != null ? version[1] : null, version != null ? version[2] : null, document[2]});
+            }
+            return states;
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    public long countDocumentStates(String path, Date modifiedSince) throws DataSourceException {
+        try {
+            String query = "select count(d.uid) " + DOCUMENTS
+                    + (modifiedSince != null ? MODIFIED_SINCE : "");
+            Query q = getSession().createQuery(query)
+                    .setString("path", pathPattern(path))
+                    .setLong("afterUid", 0L);
+            if (modifiedSince != null) {
+                q.setTimestamp("since", modifiedSince);
+            }
+            return ((Number) q.uniqueResult()).longValue();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    /**
+     * Uids of the given list still matching a document
+     */
+    public List<Long> getExistingDocumentUids(List<Long> uids) throws DataSourceException {
+        if (uids.isEmpty()) {
+            return new ArrayList<Long>();
+        }
+        try {
+            return getSession().createQuery("select d.uid from Document d where d.uid in (:uids)")
+                    .setParameterList("uids", uids)
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    private static String pathPattern(String path) {
+        String finalPath = path != null ? path : "";
+        return finalPath.endsWith("/") ? finalPath + "%" : finalPath + "/%";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index.query.factory;
+
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.Restrictions;
+import org.kimios.exceptions.DataSourceException;
+import org.kimios.kernel.hibernate.HFactory;
+import org.kimios.kernel.index.query.model.ReindexCheckpoint;
+
+/**
+ * Persistence of reindex process checkpoints
+ */
+public class ReindexCheckpointFactory extends HFactory {
+
+    public ReindexCheckpoint getCheckpoint(String path, int entityType) throws DataSourceException {
+        try {
+            return (ReindexCheckpoint) getSession().createCriteria(ReindexCheckpoint.class)
+                    .add(Restrictions.eq("path", path))
+                    .add(Restrictions.eq("entityType", entityType))
+                    .uniqueResult();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    public void saveCheckpoint(ReindexCheckpoint checkpoint) throws DataSourceException {
+        try {
+            getSession().saveOrUpdate(checkpoint);
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    public void deleteCheckpoint(String path, int entityType) throws DataSourceException {
+        try {
+            getSession().createQuery("delete from ReindexCheckpoint where path = :path and entityType = :entityType")
+                    .setString("path", path)
+                    .setInteger("entityType", entityType)
+                    .executeUpdate();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+}
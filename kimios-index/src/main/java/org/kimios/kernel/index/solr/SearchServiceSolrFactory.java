@@ -44,6 +44,8 @@ public class SearchServiceSolrFactory implements FactoryBean<SolrIndexManager>
 
     private static SolrServer contentSolrServer;
 
+    private static SolrIndexManager indexManager;
+
     private String solrUrl;
 
     private String solrHome;
@@ -129,6 +131,9 @@ public class SearchServiceSolrFactory implements FactoryBean<SolrIndexManager>
 
     public synchronized static void shutdownSolr()
     {
+       if (indexManager != null) {
+           indexManager.shutdownUpdateQueues();
+       }
        if(solrServer instanceof EmbeddedSolrServer){
            ((EmbeddedSolrServer)solrServer).getCoreContainer().shutdown();
        } else {
@@ -157,6 +162,7 @@ public class SearchServiceSolrFactory implements FactoryBean<SolrIndexManager>
         manager.setPathController(pathController);
         manager.setSolrDocumentFactory( solrDocumentFactory );
         manager.setDocumentIndexStatusFactory( documentIndexStatusFactory );
+        indexManager = manager;
         return manager;
     }
 
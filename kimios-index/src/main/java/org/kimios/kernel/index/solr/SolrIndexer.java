@@ -25,6 +25,7 @@ import org.kimios.api.events.annotations.DmsEventName;
 import org.kimios.api.events.annotations.DmsEventOccur;
 import org.kimios.kernel.filetransfer.model.DataTransfer;
 import org.kimios.kernel.index.AbstractIndexManager;
+import org.kimios.kernel.index.ISolrIndexManager;
 import org.kimios.kernel.index.SolrIndexManager;
 import org.kimios.kernel.index.TransactionHelper;
 import org.kimios.kernel.jobs.JobImpl;
@@ -193,12 +194,11 @@ public class SolrIndexer extends GenericEventHandler
                         }
                     }
                 }
-                int i = 0;
-                for (Long uid : hash.keySet()) {
-                    indexManager.updateAcls(uid, hash.get(uid), false);
-                    i++;
-                    if((i % 200) == 0){
-                        indexManager.commit();
+                if (indexManager instanceof ISolrIndexManager) {
+                    ((ISolrIndexManager) indexManager).updateAcls(hash, false);
+                } else {
+                    for (Long uid : hash.keySet()) {
+                        indexManager.updateAcls(uid, hash.get(uid), false);
                     }
                 }
                 try{
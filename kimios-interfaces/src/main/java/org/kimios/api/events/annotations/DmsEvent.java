@@ -27,5 +27,11 @@ public @interface DmsEvent
     DmsEventName[] eventName();
 
     DmsEventOccur when() default DmsEventOccur.AFTER;
+
+    /**
+     * AFTER handlers only: run on the asynchronous event bus once the transaction is committed, with a
+     * snapshot of the event context, instead of on the calling thread. Ignored for BEFORE handlers.
+     */
+    boolean async() default false;
 }
 
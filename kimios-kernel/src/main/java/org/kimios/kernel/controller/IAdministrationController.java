@@ -317,4 +317,18 @@ public interface IAdministrationController
             ConfigException, DataSourceException;
 
     public List<SecurityEntity> searchSecurityEntities(String searchText, String sourceName, int securityEntityType) throws AccessDeniedException, ConfigException, DataSourceException;
+
+    /**
+     * Queue size and counters (published, executed, run by callers, dropped, failed, discarded calls) of
+     * the asynchronous event bus
+     */
+    public String getEventBusStatistics(Session session) throws AccessDeniedException, ConfigException,
+            DataSourceException;
+
+    /**
+     * Counters of the ldap context pools (one line by directory) and of the ldap search caches (one line
+     * by authentication source)
+     */
+    public String getLdapStatistics(Session session) throws AccessDeniedException, ConfigException,
+            DataSourceException;
 }
@@ -112,6 +112,13 @@ public interface IFileTransferController
             throws ConfigException, AccessDeniedException, DataSourceException, IOException;
 
 
+    /*
+      Get a range of the document version content, for ranged downloads
+    */
+    public void readVersionStream( Session session, long transactionId, long offset, long length,
+                                   OutputStream versionStream )
+            throws ConfigException, AccessDeniedException, DataSourceException, IOException;
+
     public void readVersionStream(String transactionToken, OutputStream versionStream)
             throws ConfigException, AccessDeniedException, DataSourceException, IOException;
 
@@ -44,5 +44,11 @@ public interface IPathController
     public List<DMEntity> getDMEntitiesByPath(String path)
             throws ConfigException, DataSourceException, AccessDeniedException;
 
+    /**
+     * Rewrite a block of the paths left to rewrite under the containers renamed, moved, trashed or restored;
+     * false when none was left
+     */
+    public boolean rewritePaths(int count) throws ConfigException, DataSourceException;
+
 
 }
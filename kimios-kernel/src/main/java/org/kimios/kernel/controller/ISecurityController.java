@@ -31,6 +31,7 @@ import org.kimios.kernel.jobs.model.TaskInfo;
 import org.kimios.kernel.ws.pojo.web.SessionUidParam;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ISecurityController
 {
@@ -82,6 +83,13 @@ public interface ISecurityController
     public boolean hasFullAccess(Session session, long dmEntityUid)
             throws ConfigException, DataSourceException;
 
+    /**
+     * Rights of the given user on each of the given entities, as EntityRights bitmasks
+     * (read, write, full access, owner, bookmarked)
+     */
+    public Map<Long, Integer> getRights(Session session, List<Long> dmEntityUids)
+            throws ConfigException, DataSourceException;
+
     /**
      * Return registered authentication sources list
      */
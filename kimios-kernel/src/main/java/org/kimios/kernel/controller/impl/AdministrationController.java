@@ -25,6 +25,7 @@ import org.kimios.api.events.annotations.DmsEventName;
 import org.kimios.api.events.annotations.DmsEventOccur;
 import org.kimios.exceptions.AccessDeniedException;
 import org.kimios.exceptions.DataSourceException;
+import org.kimios.kernel.events.AsyncEventBus;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.kernel.hibernate.HFactory;
 import org.kimios.kernel.security.model.Role;
@@ -32,6 +33,8 @@ import org.kimios.kernel.security.model.SecurityEntity;
 import org.kimios.kernel.security.model.SecurityEntityType;
 import org.kimios.kernel.security.model.Session;
 import org.kimios.kernel.security.SessionManager;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPContextPool;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPSearchCache;
 import org.kimios.kernel.user.model.*;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -64,8 +67,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public Vector<Role> getRoles(Session session, int role) throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         } else {
@@ -79,8 +81,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public Vector<Role> getRoles(Session session, String userName, String userSource)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         } else {
@@ -97,12 +98,12 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void createRole(Session session, int role, String userName, String userSource)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         } else {
             securityFactoryInstantiator.getRoleFactory().saveRole(new Role(role, userName, userSource));
+            getSecurityAgent().invalidateRole(role, userName, userSource);
         }
     }
 
@@ -115,8 +116,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void deleteRole(Session session, int role, String userName, String userSource)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         } else {
@@ -124,6 +124,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
                 throw new AccessDeniedException();
             }
             securityFactoryInstantiator.getRoleFactory().deleteRole(new Role(role, userName, userSource));
+            getSecurityAgent().invalidateRole(role, userName, userSource);
         }
     }
 
@@ -133,8 +134,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public AuthenticationSource getAuthenticationSource(Session session, String name) throws AccessDeniedException,
             ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -149,8 +149,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public String getAuthenticationSourceParamsXml(Session session, String name, String className) throws ConfigException,
             DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -168,8 +167,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public Map<String, String> getAuthenticationSourceParams(Session session, String name, String className) throws ConfigException,
             DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -188,8 +186,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void createAuthenticationSource(Session session, String name, String className, boolean enableSso, boolean enableMailCheck, String xmlParameters)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -211,8 +208,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
                                            Map<String, String> parameters)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -237,8 +233,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
                                            boolean enableMailCheck, String xmlParameters)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -256,8 +251,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
                                            boolean enableMailCheck, Map<String, String> params)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -275,8 +269,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void deleteAuthenticationSource(Session session, String name) throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, session.getUserName(),
-                session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -291,8 +284,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public String getAvailableAuthenticationSourceXml(Session session) throws ConfigException, DataSourceException,
             AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, session.getUserName(),
-                session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -303,8 +295,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public List<String> getAvailableAuthenticationSource(Session session) throws ConfigException, DataSourceException,
             AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, session.getUserName(),
-                session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -319,8 +310,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public String getAvailableAuthenticationSourceParamsXml(Session session, String className) throws ConfigException,
             DataSourceException, AccessDeniedException, ClassNotFoundException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, session.getUserName(),
-                session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -335,8 +325,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public List<String> getAvailableAuthenticationSourceParams(Session session, String className) throws ConfigException,
             DataSourceException, AccessDeniedException, ClassNotFoundException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, session.getUserName(),
-                session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -351,8 +340,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -369,8 +357,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             String authenticationSourceName, boolean enabled)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -394,8 +381,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     {
         boolean isHimself =
                 uid.equals(session.getUserName()) && authenticationSourceName.equals(session.getUserSource());
-        boolean isAdmin = securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null;
+        boolean isAdmin = getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource());
         if (!isHimself && !isAdmin) {
             throw new AccessDeniedException();
         }
@@ -423,8 +409,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
 
         boolean isHimself =
                 uid.equals(session.getUserName()) && authenticationSource.equals(session.getUserSource());
-        boolean isAdmin = securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null;
+        boolean isAdmin = getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource());
         if (!isHimself && !isAdmin) {
             throw new AccessDeniedException();
         }
@@ -449,8 +434,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -474,8 +458,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -495,8 +478,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -516,8 +498,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -537,8 +518,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -560,8 +540,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException,
             ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -585,8 +564,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public User getUser(Session session, String uid, String authenticationSourceName)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -606,8 +584,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             String authenticationSourceName) throws ConfigException,
             DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN,
-                session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -627,8 +604,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public Vector<User> getUsers(Session session,
                                  String authenticationSourceName) throws ConfigException,
             DataSourceException, AccessDeniedException {
-        if (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN,
-                session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -646,8 +622,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public Group getGroup(Session session, String gid, String authenticationSourceName)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -666,8 +641,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException, ConfigException,
             DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -685,8 +659,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public List<Document> getCheckedOutDocuments(Session session)
             throws ConfigException, DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null)
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             List<Document> docs = dmsFactoryInstantiator.getDocumentFactory().getDocuments();
             docs = getSecurityAgent()
@@ -713,8 +686,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void clearLock(Session session, long documentUid)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -741,8 +713,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws AccessDeniedException,
             ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -784,8 +755,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public org.kimios.kernel.ws.pojo.User[] getConnectedUsers(Session session)
             throws ConfigException, DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -806,8 +776,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public org.kimios.kernel.ws.pojo.Session[] getEnabledSessions(Session session)
             throws DataSourceException, ConfigException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -831,8 +800,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
             throws DataSourceException,
             ConfigException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -855,8 +823,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void removeEnabledSession(Session session, String sessionUidToRemove)
             throws DataSourceException, ConfigException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -872,8 +839,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     public void removeEnabledSessions(Session session, String userName, String userSource)
             throws ConfigException, DataSourceException, AccessDeniedException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -945,8 +911,7 @@ public class AdministrationController extends AKimiosController implements IAdmi
     }
 
     public void deleteUserPermissions(Session session, String uid, String authenticationSourceName) throws AccessDeniedException, ConfigException, DataSourceException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null)
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             throw new AccessDeniedException();
         }
@@ -971,6 +936,31 @@ public class AdministrationController extends AKimiosController implements IAdmi
         return securityEntities;
     }
 
+    public String getEventBusStatistics(Session session) throws AccessDeniedException, ConfigException,
+            DataSourceException {
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
+        {
+            throw new AccessDeniedException();
+        }
+        return AsyncEventBus.getInstance().toString();
+    }
+
+    public String getLdapStatistics(Session session) throws AccessDeniedException, ConfigException,
+            DataSourceException {
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
+        {
+            throw new AccessDeniedException();
+        }
+        StringBuilder statistics = new StringBuilder();
+        for (LDAPContextPool pool : LDAPContextPool.getInstances()) {
+            statistics.append(pool).append('\n');
+        }
+        for (Map.Entry<String, LDAPSearchCache> cache : LDAPSearchCache.getInstances().entrySet()) {
+            statistics.append(cache.getKey()).append(": ").append(cache.getValue()).append('\n');
+        }
+        return statistics.toString();
+    }
+
     private List<SecurityEntity> searchSecurityEntitiesFromAuthenticationSource(String searchText, AuthenticationSource authSource, int securityEntityType) {
         List<SecurityEntity> securityEntities = new ArrayList<SecurityEntity>();
         switch (securityEntityType) {
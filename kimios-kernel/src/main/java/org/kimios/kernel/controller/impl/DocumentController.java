@@ -1458,18 +1458,15 @@ public class DocumentController extends AKimiosController implements IDocumentCo
             throws AccessDeniedException, ConfigException, DataSourceException {
         List<Document> docs = this.getDocuments(session, folderUid);
         log.debug("documents loaded for folder " + folderUid + ": " + docs.size());
-        return dmsFactoryInstantiator.getDocumentFactory().getDocumentsPojos(docs)
-                .stream().map(doc -> {
-                    doc.setBookmarked(
-                            dmsFactoryInstantiator.getBookmarkFactory().isUserBookmark(
-                                    session.getUserName(),
-                                    session.getUserSource(),
-                                    doc.getUid(),
-                                    doc.getType()
-                            )
-                    );
-                    return doc;
-                }).collect(Collectors.toList());
+        List<org.kimios.kernel.ws.pojo.Document> pojos = dmsFactoryInstantiator.getDocumentFactory()
+                .getDocumentsPojos(docs);
+        List<Long> uids = pojos.stream().map(doc -> doc.getUid()).collect(Collectors.toList());
+        Set<Long> bookmarked = new HashSet<Long>(dmsFactoryInstantiator.getBookmarkFactory()
+                .getUserBookmarkedUids(session.getUserName(), session.getUserSource(), uids));
+        for (org.kimios.kernel.ws.pojo.Document doc : pojos) {
+            doc.setBookmarked(bookmarked.contains(doc.getUid()));
+        }
+        return pojos;
     }
 
     public List<org.kimios.kernel.ws.pojo.Document> convertToPojos(Session session, List<Document> docs)
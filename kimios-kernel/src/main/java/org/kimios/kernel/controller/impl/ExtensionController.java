@@ -27,7 +27,6 @@ import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventName;
 import org.kimios.kernel.mail.MailTemplate;
 import org.kimios.kernel.mail.Mailer;
-import org.kimios.kernel.security.model.Role;
 import org.kimios.kernel.security.SecurityAgent;
 import org.kimios.kernel.security.model.Session;
 import org.kimios.kernel.share.model.Share;
@@ -123,8 +122,7 @@ public class ExtensionController extends AKimiosController implements IExtension
     public String generatePasswordForUser(Session session, String userId, String userSource, boolean sendMail)
             throws ConfigException,
             DataSourceException, AccessDeniedException {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) == null) {
+        if (!getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             throw new AccessDeniedException();
         }
         AuthenticationSource authSource =
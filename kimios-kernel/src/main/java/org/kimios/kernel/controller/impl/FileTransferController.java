@@ -28,6 +28,7 @@ import org.kimios.kernel.controller.AKimiosController;
 import org.kimios.kernel.controller.IFileTransferController;
 import org.kimios.kernel.dms.FactoryInstantiator;
 import org.kimios.kernel.dms.model.*;
+import org.kimios.kernel.filetransfer.UploadDigests;
 import org.kimios.kernel.filetransfer.model.DataTransfer;
 import org.kimios.kernel.filetransfer.model.DataTransferStatus;
 import org.kimios.kernel.filetransfer.zip.FileCompressionHelper;
@@ -37,7 +38,6 @@ import org.kimios.kernel.share.model.Share;
 import org.kimios.kernel.user.model.User;
 import org.kimios.kernel.ws.pojo.DocumentWrapper;
 import org.kimios.utils.configuration.ConfigurationManager;
-import org.kimios.utils.hash.HashCalculator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -98,6 +98,9 @@ public class FileTransferController
         transac.setStatus(DataTransferStatus.ACTIVE);
         FileCompressionHelper.getTempFilePath(transac);
         transferFactoryInstantiator.getDataTransferFactory().addDataTransfer(transac);
+        if (!isCompressed) {
+            UploadDigests.start(transac.getUid());
+        }
         return transac;
     }
 
@@ -113,10 +116,20 @@ public class FileTransferController
                 session.getGroups())) {
             throw new AccessDeniedException();
         }
-        OutputStream out = new FileOutputStream(
-                new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath()), true);
+        File file = new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath());
+        UploadDigests digests = UploadDigests.get(transactionUid);
+        long written = file.length();
+        OutputStream out = new FileOutputStream(file, true);
         out.write(data);
         out.close();
+        if (digests != null) {
+            synchronized (digests) {
+                // chunks appended elsewhere since the last one digested here: hashed from the file at the end
+                if (digests.getLength() == written) {
+                    digests.update(data, 0, data.length);
+                }
+            }
+        }
     }
 
     /**
@@ -138,18 +151,18 @@ public class FileTransferController
             throw new AccessDeniedException();
         }
 
-        //Return inpustream on file transmitted
-        InputStream in = FileCompressionHelper.getTransactionFile(transac);
-
-        /* Hash Calculation */
+        /* Hash Calculation: digested while the chunks were written, else in a single read of the file */
+        File transactionFile =
+                new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath());
         String recHashMD5 = "";
         String recHashSHA1 = "";
         try {
-            HashCalculator hc = new HashCalculator("MD5");
-            recHashMD5 = (hc.hashToString(in).replaceAll(" ", ""));
-            in = FileCompressionHelper.getTransactionFile(transac);
-            hc.setAlgorithm("SHA-1");
-            recHashSHA1 = (hc.hashToString(in).replaceAll(" ", ""));
+            UploadDigests digests = UploadDigests.end(transactionUid, transactionFile.length());
+            if (digests == null) {
+                digests = UploadDigests.of(FileCompressionHelper.getTransactionFile(transac));
+            }
+            recHashMD5 = digests.getHashMD5();
+            recHashSHA1 = digests.getHashSHA1();
         } catch (NoSuchAlgorithmException nsae) {
             hashMD5 = ("error: No algothim defined");
             hashSHA1 = ("error: No algothim defined");
@@ -161,7 +174,6 @@ public class FileTransferController
             throw new TransferIntegrityException();
         }
 
-        in = FileCompressionHelper.getTransactionFile(transac);
         Vector<DocumentVersion> twoLast =
                 dmsFactoryInstantiator.getDocumentVersionFactory().getTwoLastDocumentVersion(d);
         DocumentVersion jBefore = null;
@@ -183,7 +195,7 @@ public class FileTransferController
                     dv.setHashSHA1(hashSHA1);
                     dv.setLastUpdateAuthor(session.getUserName());
                     dv.setLastUpdateAuthorSource(session.getUserSource());
-                    RepositoryManager.writeVersion(dv, in);
+                    storeTransactionFile(transac, dv);
                     FactoryInstantiator.getInstance().getDocumentVersionFactory().updateDocumentVersion(dv);
                 } else {
                     //nothing: same file
@@ -197,7 +209,7 @@ public class FileTransferController
                     dv.setHashSHA1(hashSHA1);
                     dv.setLastUpdateAuthor(session.getUserName());
                     dv.setLastUpdateAuthorSource(session.getUserSource());
-                    RepositoryManager.writeVersion(dv, in);
+                    storeTransactionFile(transac, dv);
                     FactoryInstantiator.getInstance().getDocumentVersionFactory().updateDocumentVersion(dv);
                 } else {
                 }
@@ -208,11 +220,11 @@ public class FileTransferController
             dv.setHashSHA1(hashSHA1);
             dv.setLastUpdateAuthor(session.getUserName());
             dv.setLastUpdateAuthorSource(session.getUserSource());
-            RepositoryManager.writeVersion(dv, in);
+            storeTransactionFile(transac, dv);
             FactoryInstantiator.getInstance().getDocumentVersionFactory().updateDocumentVersion(dv);
         }
 
-        new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath()).delete();
+        transactionFile.delete();
         if (transac.isHasBeenCheckedOutOnStart()) {
             dmsFactoryInstantiator.getLockFactory().checkin(d, u);
         }
@@ -223,6 +235,25 @@ public class FileTransferController
         return transac;
     }
 
+    /*
+        Store the uploaded content as the version content: the transaction file is moved into the
+        repository, compressed uploads are uncompressed into it
+     */
+    private void storeTransactionFile(DataTransfer transac, DocumentVersion dv)
+            throws ConfigException, IOException, DataSourceException, RepositoryException {
+        if (transac.getIsCompressed()) {
+            InputStream in = FileCompressionHelper.getTransactionFile(transac);
+            try {
+                RepositoryManager.writeVersion(dv, in);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        } else {
+            RepositoryManager.moveVersionFile(dv, new File(
+                    ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath()));
+        }
+    }
+
     /**
      * Start download transaction
      */
@@ -290,22 +321,10 @@ public class FileTransferController
                 dmsFactoryInstantiator.getDocumentVersionFactory().getDocumentVersion(transac.getDocumentVersionUid());
         if (getSecurityAgent().isReadable(dv.getDocument(), session.getUserName(), session.getUserSource(),
                 session.getGroups())) {
-            InputStream in = null;
             if (transac.getIsCompressed()) {
-                in = new FileInputStream(new File(
-                        ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath()));
-            } else {
-                in = RepositoryManager.accessVersionStream(dv);
-            }
-            byte[] b = new byte[chunkSize];
-            in.skip(offset);
-            int readBytes = in.read(b, 0, b.length);
-            if (readBytes > 0) {
-                byte[] toRet = new byte[readBytes];
-                System.arraycopy(b, 0, toRet, 0, readBytes);
-                return toRet;
+                return RepositoryManager.readFileChunk(transac.getFilePath(), offset, chunkSize);
             } else {
-                return new byte[0];
+                return RepositoryManager.readVersionChunk(dv, offset, chunkSize);
             }
         } else {
             throw new AccessDeniedException();
@@ -333,13 +352,20 @@ public class FileTransferController
                 session.getGroups())) {
             throw new AccessDeniedException();
         }
-        OutputStream out = new FileOutputStream(
-                new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath()), true);
+        File file = new File(ConfigurationManager.getValue(Config.DEFAULT_REPOSITORY_PATH) + transac.getFilePath());
+        UploadDigests digests = UploadDigests.get(transactionId);
+        if (digests != null && digests.getLength() != file.length()) {
+            digests = null;
+        }
+        OutputStream out = new FileOutputStream(file, true);
 
         byte[] b = new byte[2048];
         int readBytes;
         while ((readBytes = documentStream.read(b, 0, b.length)) > -1) {
             out.write(b, 0, readBytes);
+            if (digests != null) {
+                digests.update(b, 0, readBytes);
+            }
         }
         out.flush();
         out.close();
@@ -480,6 +506,46 @@ public class FileTransferController
         }
     }
 
+    /**
+     * Write length bytes of the version content, from offset, for ranged downloads. A download made of
+     * several ranges is recorded as one version read, on the range starting the content.
+     */
+    public void readVersionStream(Session session, long transactionId, long offset, long length,
+                                  OutputStream versionStream)
+            throws ConfigException, AccessDeniedException, DataSourceException, IOException {
+        if (offset == 0) {
+            readFirstVersionRange(session, transactionId, offset, length, versionStream);
+        } else {
+            writeVersionRange(session, transactionId, offset, length, versionStream);
+        }
+    }
+
+    @DmsEvent(eventName = {DmsEventName.DOCUMENT_VERSION_READ})
+    protected void readFirstVersionRange(Session session, long transactionId, long offset, long length,
+                                         OutputStream versionStream)
+            throws ConfigException, AccessDeniedException, DataSourceException, IOException {
+        writeVersionRange(session, transactionId, offset, length, versionStream);
+    }
+
+    private void writeVersionRange(Session session, long transactionId, long offset, long length,
+                                   OutputStream versionStream)
+            throws ConfigException, AccessDeniedException, DataSourceException, IOException {
+
+        DataTransfer transac = transferFactoryInstantiator.getDataTransferFactory().getDataTransfer(transactionId);
+        if (transac != null && transac.getTransferMode() == DataTransfer.DOWNLOAD) {
+            DocumentVersion dv = dmsFactoryInstantiator.getDocumentVersionFactory().getDocumentVersion(
+                    transac.getDocumentVersionUid());
+            if (getSecurityAgent().isReadable(dv.getDocument(), session.getUserName(), session.getUserSource(),
+                    session.getGroups())) {
+                RepositoryManager.readVersionRange(dv, offset, length, versionStream);
+            } else {
+                throw new AccessDeniedException();
+            }
+        } else {
+            throw new AccessDeniedException();
+        }
+    }
+
     public File readFileStream(Session session, long transactionId, OutputStream fileStream)
             throws ConfigException, AccessDeniedException, DataSourceException, IOException {
         DataTransfer transac = transferFactoryInstantiator.getDataTransferFactory().getDataTransfer(transactionId);
@@ -117,5 +117,10 @@ public class PathController extends AKimiosController implements IPathController
     {
         return dmsFactoryInstantiator.getDmEntityFactory().getEntities(path);
     }
+
+    public boolean rewritePaths(int count) throws ConfigException, DataSourceException
+    {
+        return dmsFactoryInstantiator.getDmEntityFactory().rewritePaths(count);
+    }
 }
 
@@ -24,6 +24,7 @@ import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.rules.model.EventBean;
 import org.kimios.kernel.rules.model.RuleBean;
 import org.kimios.kernel.rules.RuleBeanFactory;
+import org.kimios.kernel.rules.RuleManager;
 import org.kimios.kernel.rules.impl.RuleImpl;
 import org.kimios.kernel.security.SecurityAgent;
 import org.kimios.kernel.security.model.Session;
@@ -68,6 +69,7 @@ public class RuleManagementController extends AKimiosController implements IRule
         //TODO Implements role and rights management
         RuleBean rb = ruleFactory.loadRuleById(idRule);
         ruleFactory.deleleRuleBean(rb);
+        RuleManager.invalidateRules();
     }
 
     public RuleBean getRule(Session session, long uid) throws DataSourceException
@@ -151,7 +153,9 @@ public class RuleManagementController extends AKimiosController implements IRule
             cb.setRuleUpdateDate(new Date());
             cb.setPath(path);
             cb.setName(ruleName);
-            return ruleFactory.save(cb);
+            long ruleId = ruleFactory.save(cb);
+            RuleManager.invalidateRules();
+            return ruleId;
         } else {
             throw new AccessDeniedException();
         }
@@ -162,6 +166,7 @@ public class RuleManagementController extends AKimiosController implements IRule
     {
         if(getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())){
             long ruleId = ruleFactory.save(ruleBean);
+            RuleManager.invalidateRules();
             return ruleId;
         } else {
             throw new AccessDeniedException();
@@ -53,6 +53,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.stream.Collectors;
 
@@ -91,8 +92,7 @@ public class SecurityController extends AKimiosController implements ISecurityCo
             throws ConfigException,
             DataSourceException
     {
-        if(securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if(getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
 
             List<DMEntitySecurity> des = DMEntitySecurityUtil.getDMentitySecuritesFromXml(xmlStream, null);
             for(DMEntitySecurity security: des){
@@ -109,8 +109,7 @@ public class SecurityController extends AKimiosController implements ISecurityCo
             throws ConfigException,
             DataSourceException
     {
-        if(securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null) {
+        if(getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource())) {
             for(DMEntitySecurity security: des){
                 securityFactoryInstantiator.getDMEntitySecurityFactory()
                         .saveDefaultDMEntitySecurity(security, objectType, entityPath);
@@ -395,6 +394,16 @@ public class SecurityController extends AKimiosController implements ISecurityCo
                 .isFullAccess(entity, session.getUserName(), session.getUserSource(), session.getGroups());
     }
 
+    /* (non-Javadoc)
+    * @see org.kimios.kernel.controller.impl.ISecurityController#getRights(org.kimios.kernel.security.Session, java.util.List)
+    */
+    public Map<Long, Integer> getRights(Session session, List<Long> dmEntityUids)
+            throws ConfigException, DataSourceException
+    {
+        return getSecurityAgent()
+                .getRights(dmEntityUids, session.getUserName(), session.getUserSource(), session.getGroups());
+    }
+
     /* (non-Javadoc)
     * @see org.kimios.kernel.controller.impl.ISecurityController#getAuthenticationSources()
     */
@@ -512,8 +521,7 @@ public class SecurityController extends AKimiosController implements ISecurityCo
     */
     public boolean isAdmin(Session session) throws ConfigException, DataSourceException
     {
-        return (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null);
+        return getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource());
     }
 
     /* (non-Javadoc)
@@ -521,7 +529,7 @@ public class SecurityController extends AKimiosController implements ISecurityCo
     */
     public boolean isAdmin(String userName, String userSource) throws ConfigException, DataSourceException
     {
-        return (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, userName, userSource) != null);
+        return getSecurityAgent().isAdmin(userName, userSource);
     }
 
     public User getUser(String userName, String userSource) throws ConfigException, DataSourceException
@@ -535,8 +543,7 @@ public class SecurityController extends AKimiosController implements ISecurityCo
     public Session impersonnate(Session session, String userName, String userSource)
             throws AccessDeniedException, ConfigException, DataSourceException
     {
-        if (securityFactoryInstantiator.getRoleFactory()
-                .getRole(Role.ADMIN, session.getUserName(), session.getUserSource()) != null)
+        if (getSecurityAgent().isAdmin(session.getUserName(), session.getUserSource()))
         {
             return SessionManager.getInstance().startSession(userName, userSource);
         } else {
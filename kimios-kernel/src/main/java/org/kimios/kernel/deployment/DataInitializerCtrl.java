@@ -100,6 +100,8 @@ public class DataInitializerCtrl implements IDataInitializerCtrl {
                 }
             }
         }
+        // hierarchy of the containers, queried for the entities under a container
+        dmsFactoryInstantiator.getDmEntityFactory().checkHierarchy();
         log.info("Database Initialized.");
     }
 
@@ -41,5 +41,10 @@ public interface BookmarkFactory
             throws ConfigException, DataSourceException;
 
     public boolean isUserBookmark(String userName, String userSource, long dmentityUid, int dmentityType);
+
+    /**
+     * Uids of the given entities bookmarked by the user
+     */
+    public List<Long> getUserBookmarkedUids(String userName, String userSource, List<Long> dmentityUids);
 }
 
@@ -50,6 +50,14 @@ public interface DMEntityFactory {
                                                    List<Long> excludedIds, List<String> excludedExtension)
             throws ConfigException, DataSourceException;
 
+    /**
+     * Keyset pagination over entities of the given type under path: returns the next count entities
+     * (ordered by uid) whose uid is strictly greater than afterUid.
+     */
+    public List<DMEntity> getEntitiesByPathAndTypeAfter(String path, int dmEntityType, long afterUid, int count,
+                                                        List<Long> excludedIds, List<String> excludedExtension)
+            throws ConfigException, DataSourceException;
+
 
     public void deleteEntities(String path) throws ConfigException, DataSourceException;
 
@@ -59,6 +67,22 @@ public interface DMEntityFactory {
 
     public void updatePath(DMEntity entity, String newName) throws ConfigException, DataSourceException;
 
+    /**
+     * Add a new workspace or folder, once saved, to the hierarchy of the containers
+     */
+    public void addToHierarchy(DMEntity entity) throws ConfigException, DataSourceException;
+
+    /**
+     * Build the hierarchy of the containers when it is incomplete (schema upgrade, run at startup)
+     */
+    public void checkHierarchy() throws ConfigException, DataSourceException;
+
+    /**
+     * Rewrite at most count paths under the containers renamed, moved, trashed or restored, oldest first;
+     * false when none was left to rewrite
+     */
+    public boolean rewritePaths(int count) throws ConfigException, DataSourceException;
+
     public void trash(DMEntityImpl entity) throws ConfigException, DataSourceException;
 
     public List<DMEntity> listTrashedEntities(Integer start, Integer count)
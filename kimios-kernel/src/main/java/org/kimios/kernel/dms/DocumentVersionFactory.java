@@ -21,6 +21,7 @@ import org.kimios.kernel.dms.model.DocumentType;
 import org.kimios.kernel.dms.model.DocumentVersion;
 import org.kimios.exceptions.DataSourceException;
 
+import java.util.List;
 import java.util.Vector;
 
 public interface DocumentVersionFactory
@@ -29,6 +30,12 @@ public interface DocumentVersionFactory
 
     public DocumentVersion getLastDocumentVersion(Document d) throws ConfigException, DataSourceException;
 
+    /**
+     * Last version of each of the given documents, loaded with a single query
+     */
+    public List<DocumentVersion> getLastDocumentVersions(List<Long> documentUids)
+            throws ConfigException, DataSourceException;
+
     public Vector<DocumentVersion> getVersions(Document d) throws ConfigException, DataSourceException;
 
     public void saveDocumentVersion(DocumentVersion v) throws ConfigException, DataSourceException;
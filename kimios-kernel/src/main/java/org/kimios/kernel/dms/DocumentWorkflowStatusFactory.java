@@ -19,6 +19,7 @@ import org.kimios.exceptions.ConfigException;
 import org.kimios.kernel.dms.model.DocumentWorkflowStatus;
 import org.kimios.exceptions.DataSourceException;
 
+import java.util.List;
 import java.util.Vector;
 
 public interface DocumentWorkflowStatusFactory
@@ -30,6 +31,12 @@ public interface DocumentWorkflowStatusFactory
     public DocumentWorkflowStatus getLastDocumentWorkflowStatus(long documentUid)
             throws ConfigException, DataSourceException;
 
+    /**
+     * Last workflow status of each of the given documents, loaded with a single query
+     */
+    public List<DocumentWorkflowStatus> getLastDocumentWorkflowStatuses(List<Long> documentUids)
+            throws ConfigException, DataSourceException;
+
     public Vector<DocumentWorkflowStatus> getDocumentWorkflowStatuses(long documentUid)
             throws ConfigException, DataSourceException;
 
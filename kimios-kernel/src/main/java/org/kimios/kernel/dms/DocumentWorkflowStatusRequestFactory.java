@@ -22,6 +22,7 @@ import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.security.model.SecurityEntity;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 
 public interface DocumentWorkflowStatusRequestFactory
@@ -43,5 +44,11 @@ public interface DocumentWorkflowStatusRequestFactory
 
     public DocumentWorkflowStatusRequest getLastPendingRequest(Document doc)
             throws ConfigException, DataSourceException;
+
+    /**
+     * Pending requests of the given documents, most recent first
+     */
+    public List<DocumentWorkflowStatusRequest> getPendingRequests(List<Long> documentUids)
+            throws ConfigException, DataSourceException;
 }
 
@@ -23,10 +23,17 @@ import org.kimios.exceptions.CheckoutViolationException;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.user.model.User;
 
+import java.util.List;
+
 public interface LockFactory
 {
     public Lock getDocumentLock(Document d) throws ConfigException, DataSourceException;
 
+    /**
+     * Locks held on the given documents
+     */
+    public List<Lock> getDocumentLocks(List<Long> documentUids) throws ConfigException, DataSourceException;
+
     public boolean checkin(Document d, User u) throws AccessDeniedException, ConfigException, DataSourceException;
 
     public boolean checkout(Document d, User u) throws CheckoutViolationException, ConfigException, DataSourceException;
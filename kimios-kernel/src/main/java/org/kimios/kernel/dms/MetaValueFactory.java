@@ -31,6 +31,11 @@ public interface MetaValueFactory
 
     public List<MetaValue> getMetaValues(DocumentVersion documentVersion) throws ConfigException, DataSourceException;
 
+    /**
+     * Meta values of the given versions, loaded with a single query
+     */
+    public List<MetaValue> getMetaValues(List<Long> documentVersionUids) throws ConfigException, DataSourceException;
+
     public void saveMetaValue(MetaValue metaValue) throws ConfigException, DataSourceException;
 
     /*
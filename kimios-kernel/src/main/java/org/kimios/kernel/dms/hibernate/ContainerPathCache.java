@@ -0,0 +1,162 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.dms.hibernate;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full paths of workspaces and folders by uid, computed from the names of their ancestors.
+ *
+ * Bounded, least recently used paths are removed beyond. Cleared whenever a container is renamed, moved,
+ * trashed or deleted, and again once the transaction of the change completes, so a path computed
+ * meanwhile from the names before the change is not kept. Changes made on other nodes don't clear it:
+ * paths older than the time to live are computed again.
+ */
+class ContainerPathCache
+{
+    private static class Entry
+    {
+        private final String path;
+
+        private final long expires;
+
+        private Entry(String path, long expires)
+        {
+            this.path = path;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxEntries;
+
+    private final long ttl;
+
+    private final LinkedHashMap<Long, Entry> paths;
+
+    /* incremented when cleared */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries max number of paths kept
+     * @param ttl        time to live of a path (ms, 0: nothing is kept)
+     */
+    ContainerPathCache(final int maxEntries, long ttl)
+    {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.paths = new LinkedHashMap<Long, Entry>(256, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+            {
+                return size() > ContainerPathCache.this.maxEntries;
+            }
+        };
+    }
+
+    synchronized String get(long uid)
+    {
+        Entry entry = paths.get(uid);
+        if (entry != null && entry.expires <= System.currentTimeMillis()) {
+            paths.remove(uid);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.path;
+    }
+
+    /**
+     * @return the generation to give to put a path computed from now
+     */
+    synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Keep a path, unless the cache was cleared since it was computed
+     */
+    synchronized void put(long uid, String path, long pathGeneration)
+    {
+        if (pathGeneration == generation && ttl > 0) {
+            paths.put(uid, new Entry(path, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    synchronized void clear()
+    {
+        generation++;
+        paths.clear();
+    }
+
+    /**
+     * Clear now, and once the current transaction completes
+     */
+    void pathsChanged()
+    {
+        clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    clear();
+                }
+            });
+        }
+    }
+
+    synchronized int size()
+    {
+        return paths.size();
+    }
+
+    long getHits()
+    {
+        return hits.get();
+    }
+
+    long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ContainerPathCache{" +
+                "maxEntries=" + maxEntries +
+                ", ttl=" + ttl +
+                ", entries=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+}
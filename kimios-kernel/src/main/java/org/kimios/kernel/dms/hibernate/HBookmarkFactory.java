@@ -198,5 +198,21 @@ public class HBookmarkFactory extends HFactory implements BookmarkFactory
             throw new DataSourceException(e);
         }
     }
+
+    public List<Long> getUserBookmarkedUids(String userName, String userSource, List<Long> dmentityUids) {
+        if (dmentityUids.isEmpty()) {
+            return new ArrayList<Long>();
+        }
+        try {
+            return getSession().createQuery("select b.uid from Bookmark b where b.owner = :owner "
+                    + "and b.ownerSource = :ownerSource and b.ownerType = 1 and b.uid in (:uids)")
+                    .setString("owner", userName)
+                    .setString("ownerSource", userSource)
+                    .setParameterList("uids", dmentityUids)
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e);
+        }
+    }
 }
 
@@ -17,12 +17,15 @@ package org.kimios.kernel.dms.hibernate;
 
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.Query;
 import org.hibernate.criterion.*;
 import org.kimios.exceptions.ConfigException;
+import org.kimios.kernel.configuration.Config;
 import org.kimios.kernel.dms.*;
 import org.kimios.kernel.dms.model.*;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.hibernate.HFactory;
+import org.kimios.utils.configuration.ConfigurationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,9 +35,65 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * Entities by uid or by path. The paths of the entities are stored; when a container is renamed, moved, trashed
+ * or restored only its own row is changed, the rows under it are rewritten afterwards by blocks (dm_path_rewrite,
+ * see rewritePaths). The entities under a container are found through the hierarchy table of the containers
+ * (dm_entity_hierarchy), built at startup (checkHierarchy), rather than by their paths.
+ */
 public class HDMEntityFactory extends HFactory implements DMEntityFactory {
     private static Logger log = LoggerFactory.getLogger(DMEntityFactory.class);
 
+    private static final int PATH_CACHE_SIZE = 10000;
+
+    private static final int MAX_HIERARCHY_DEPTH = 1000;
+
+    private static final long DEFAULT_PATH_CACHE_TTL = 60;
+
+    /* max number of uids bound in one statement */
+    private static final int UID_LIST_SIZE = 500;
+
+    /* containers under a container, itself included */
+    private static final String SUBTREE_CONTAINERS =
+            "select h.descendantUid from DMEntityHierarchy h where h.ancestorUid = :rootUid";
+
+    /* a container and the entities under it */
+    private static final String HQL_SUBTREE_SCOPE = "(uid in (" + SUBTREE_CONTAINERS + ") " +
+            "or uid in (select d.uid from Document d where d.folderUid in (" + SUBTREE_CONTAINERS + ")))";
+
+    private static final String SQL_SUBTREE_CONTAINERS =
+            "SELECT h.descendant_id FROM dm_entity_hierarchy h WHERE h.ancestor_id = :rootUid";
+
+    private static final String SQL_SUBTREE_SCOPE = "(dm_entity.dm_entity_id IN (" + SQL_SUBTREE_CONTAINERS + ") " +
+            "OR dm_entity.dm_entity_id IN (SELECT d.id FROM document d WHERE d.folder_id IN (" +
+            SQL_SUBTREE_CONTAINERS + ")))";
+
+    private static volatile ContainerPathCache pathCache;
+
+    private static ContainerPathCache pathCache() {
+        if (pathCache == null) {
+            synchronized (ContainerPathCache.class) {
+                if (pathCache == null) {
+                    pathCache = new ContainerPathCache(PATH_CACHE_SIZE, pathCacheTtl() * 1000L);
+                }
+            }
+        }
+        return pathCache;
+    }
+
+    private static long pathCacheTtl() {
+        try {
+            String value = ConfigurationManager.getValue(Config.CONTAINER_PATH_CACHE_TTL);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}", Config.CONTAINER_PATH_CACHE_TTL,
+                    DEFAULT_PATH_CACHE_TTL);
+        }
+        return DEFAULT_PATH_CACHE_TTL;
+    }
+
     public DMEntity getEntity(long dmEntityUid) throws ConfigException, DataSourceException {
         try {
             return (DMEntity) getSession().createCriteria(DMEntityImpl.class)
@@ -60,23 +119,65 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
         try {
             Criteria c = getSession().createCriteria(DMEntityImpl.class)
                     .add(Restrictions.like("path", path, MatchMode.EXACT));
-            return (DMEntity) c.uniqueResult();
+            DMEntity entity = (DMEntity) c.uniqueResult();
+            return entity != null ? entity : getEntityByNames(path);
         } catch (HibernateException e) {
             throw new DataSourceException(e, e.getMessage());
         }
     }
 
-    public List<DMEntity> getEntities(String path) throws ConfigException, DataSourceException {
-        try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
+    /*
+        entity of a path, compared as is (no wildcard)
+     */
+    private DMEntity getEntityByExactPath(String path) {
+        DMEntity entity = (DMEntity) getSession().createCriteria(DMEntityImpl.class)
+                .add(Restrictions.eq("path", path))
+                .uniqueResult();
+        return entity != null ? entity : getEntityByNames(path);
+    }
+
+    /*
+        entity of a path not stored yet, under a container whose paths are left to rewrite: found from the
+        workspace down, by the names of the entities
+     */
+    private DMEntity getEntityByNames(String path) {
+        if (path == null || !path.startsWith(DMEntityImpl.DM_PATH_SEPARATOR)
+                || ((Long) getSession().createQuery("select count(id) from DMPathRewrite").uniqueResult()) == 0) {
+            return null;
+        }
+        String[] names = path.substring(1).split(DMEntityImpl.DM_PATH_SEPARATOR);
+        // the paths of the workspaces are always up to date
+        DMEntity entity = (DMEntity) getSession().createCriteria(DMEntityImpl.class)
+                .add(Restrictions.eq("path", DMEntityImpl.DM_PATH_SEPARATOR + names[0]))
+                .uniqueResult();
+        for (int i = 1; i < names.length && entity != null; i++) {
+            long parentUid = entity.getUid();
+            entity = (DMEntity) getSession()
+                    .createQuery("from Folder f where f.parentUid = :parentUid and f.name = :name " +
+                            "and (f.trashed is null or f.trashed = false)")
+                    .setLong("parentUid", parentUid)
+                    .setString("name", names[i])
+                    .setMaxResults(1)
+                    .uniqueResult();
+            if (entity == null && i == names.length - 1) {
+                entity = (DMEntity) getSession()
+                        .createQuery("from Document d where d.folderUid = :parentUid " +
+                                "and (d.trashed is null or d.trashed = false) " +
+                                "and (d.extension is null and d.name = :name " +
+                                "or concat(d.name, '" + DMEntityImpl.DM_EXTENSION_SEPARATOR + "', lower(d.extension)) = :name)")
+                        .setLong("parentUid", parentUid)
+                        .setString("name", names[i])
+                        .setMaxResults(1)
+                        .uniqueResult();
             }
+        }
+        return entity;
+    }
 
+    public List<DMEntity> getEntities(String path) throws ConfigException, DataSourceException {
+        try {
             List<Long> items = getSession().createCriteria(DMEntityImpl.class)
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .setProjection(Projections.distinct(Projections.id()))
                     .list();
 
@@ -97,15 +198,8 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
 
     public List<DMEntityImpl> getEntitiesImpl(String path) throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
-            }
-
             List<Long> items = getSession().createCriteria(DMEntityImpl.class)
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .setProjection(Projections.distinct(Projections.id()))
                     .list();
 
@@ -125,19 +219,8 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
     public List<DMEntity> getEntitiesByPathAndType(String path, int dmEntityType)
             throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
-            }
-
-
-            /**/
-
-
             List<Long> items = getSession().createCriteria(DMEntityImpl.class)
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .add(Restrictions.eq("type", dmEntityType))
                     .setProjection(Projections.distinct(Projections.id()))
                     .list();
@@ -158,15 +241,8 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
     public Long getEntitiesByPathAndTypeCount(String path, int dmEntityType)
             throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
-            }
-
             return (Long) getSession().createCriteria(DMEntityImpl.class)
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .add(Restrictions.eq("type", dmEntityType))
                     .setProjection(Projections.rowCount()).uniqueResult();
         } catch (HibernateException e) {
@@ -178,15 +254,8 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
     public Long getEntitiesByPathAndTypeCount(String path, int dmEntityType, List<Long> excludedIds, List<String> excludedExtensions)
             throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
-            }
-
             Criteria criteria = getSession().createCriteria(DMEntityImpl.class)
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .add(Restrictions.eq("type", dmEntityType));
 
             if (excludedIds != null && excludedIds.size() > 0) {
@@ -207,20 +276,12 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
                                                    List<Long> excludedIds, List<String> excludedExtensions)
             throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
-            }
-
-
             /*String sql = "select distinct d.dm_entity_id as uid, {d.*} " +
                     "from dm_entity d where d.dm_entity_type = :dmtype and d.dm_entity_path like :fpath order by d.creation_date offset " + start + " limit " + count;*/
 
             Criteria criteria = getSession().createCriteria(DMEntityImpl.class);
             criteria.setProjection(Projections.distinct(Projections.id()))
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .add(Restrictions.eq("type", dmEntityType))
                     .addOrder(Order.asc("uid"));
 
@@ -272,23 +333,52 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
         }
     }
 
-    public List<DMEntity> getEntitiesByPathAndType(String path, int dmEntityType, int start, int count)
+    public List<DMEntity> getEntitiesByPathAndTypeAfter(String path, int dmEntityType, long afterUid, int count,
+                                                        List<Long> excludedIds, List<String> excludedExtensions)
             throws ConfigException, DataSourceException {
         try {
-            String finalPath = path != null ? path : "";
-            if (finalPath.endsWith("/")) {
-                finalPath += "%";
-            } else {
-                finalPath += "/%";
+            /*
+                Seek on primary key instead of offset: each block costs the same,
+                whatever its position in the whole set
+             */
+            Criteria criteria = getSession().createCriteria(DMEntityImpl.class)
+                    .setProjection(Projections.id())
+                    .add(under(path))
+                    .add(Restrictions.eq("type", dmEntityType))
+                    .add(Restrictions.gt("uid", afterUid))
+                    .addOrder(Order.asc("uid"));
+
+            if (excludedIds != null && excludedIds.size() > 0) {
+                criteria.add(Restrictions.not(Restrictions.in("uid", excludedIds)));
             }
+            if (excludedExtensions != null && excludedExtensions.size() > 0) {
+                criteria.add(Restrictions.not(Restrictions.in("extension", excludedExtensions)));
+            }
+            List<Long> ids = criteria.setMaxResults(count).list();
 
+            if (ids.size() > 0) {
+                return getSession().createCriteria(DMEntityImpl.class)
+                        .add(Restrictions.in("uid", ids))
+                        .addOrder(Order.asc("uid"))
+                        .setResultTransformer(CriteriaSpecification.DISTINCT_ROOT_ENTITY)
+                        .list();
+            } else {
+                return new ArrayList<DMEntity>();
+            }
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
 
+    public List<DMEntity> getEntitiesByPathAndType(String path, int dmEntityType, int start, int count)
+            throws ConfigException, DataSourceException {
+        try {
             /*String sql = "select distinct d.dm_entity_id as uid, {d.*} " +
                     "from dm_entity d where d.dm_entity_type = :dmtype and d.dm_entity_path like :fpath order by d.creation_date offset " + start + " limit " + count;*/
 
             Criteria criteria = getSession().createCriteria(DMEntityImpl.class);
             criteria.setProjection(Projections.distinct(Projections.id()))
-                    .add(Restrictions.like("path", finalPath, MatchMode.START))
+                    .add(under(path))
                     .add(Restrictions.eq("type", dmEntityType))
                     .addOrder(Order.asc("uid"))
                     .setFirstResult(start)
@@ -334,64 +424,81 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
 
     public void deleteEntities(String path) throws ConfigException, DataSourceException {
         try {
+            DMEntity root = getEntityByExactPath(path);
+            boolean indexed = isContainer(root);
+            List<Long> containerUids = null;
+            List<Long> subtreeUids = null;
+            if (indexed) {
+                // read before dm_entity and the hierarchy are changed
+                containerUids = subtreeContainerUids(root.getUid());
+                subtreeUids = subtreeUids(root.getUid(), containerUids);
+            }
+            /*
+                entities under a container from the hierarchy (their paths may be left to rewrite), any other
+                path by its value
+             */
+            String hqlDocuments = indexed ? HQL_SUBTREE_SCOPE : "(path like :pathExact or path like :pathExt and type = 3)";
+            String sqlDocuments = indexed ? SQL_SUBTREE_SCOPE
+                    : "(dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt AND dm_entity_type = 3)";
+            String sqlEntities = indexed ? SQL_SUBTREE_SCOPE
+                    : "(dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt)";
             /*
                 Update versions
              */
             String updateVersions =
                     "update DocumentVersion set documentUid = null where documentUid in (select uid from DMEntityImpl where " +
-                            "path like :pathExact or path like :pathExt and type = 3)";
+                            hqlDocuments + ")";
 
-            getSession().createQuery(updateVersions)
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
+            scope(getSession().createQuery(updateVersions), root, indexed, path)
                     .executeUpdate();
 
             FactoryInstantiator.getInstance().getMetaValueFactory().cleanMetaValues();
 
             String cleanRelatedDocuments =
                     "DELETE FROM related_documents WHERE document_id IN (SELECT dm_entity_id FROM dm_entity " +
-                            "WHERE dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt AND dm_entity_type = 3) " +
+                            "WHERE " + sqlDocuments + ") " +
                             "OR related_document_id IN (SELECT dm_entity_id FROM dm_entity " +
-                            "WHERE dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt AND dm_entity_type = 3)";
+                            "WHERE " + sqlDocuments + ")";
 
-            getSession().createSQLQuery(cleanRelatedDocuments)
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
+            scope(getSession().createSQLQuery(cleanRelatedDocuments), root, indexed, path)
                     .executeUpdate();
 
             String cleanAttributes =
                     "DELETE FROM dm_entity_attributes " +
                             "WHERE dm_entity_id IN " +
-                            "(SELECT dm_entity_id FROM dm_entity WHERE dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt)";
+                            "(SELECT dm_entity_id FROM dm_entity WHERE " + sqlEntities + ")";
 
-            getSession().createSQLQuery(cleanAttributes)
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
+            scope(getSession().createSQLQuery(cleanAttributes), root, indexed, path)
                     .executeUpdate();
 
             String cleanSharesRules =
                     "DELETE FROM dm_security_rules"
                             + " WHERE dm_entity_share_id IN "
                             + "(SELECT id FROM dm_entity_share INNER JOIN dm_entity ON dm_entity_share.dm_entity_id = dm_entity.dm_entity_id "
-                            + " WHERE dm_entity.dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt)";
-            getSession().createSQLQuery(cleanSharesRules)
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
+                            + " WHERE " + sqlEntities + ")";
+            scope(getSession().createSQLQuery(cleanSharesRules), root, indexed, path)
                     .executeUpdate();
 
             String cleanShares =
                     "DELETE FROM dm_entity_share"
                     + " WHERE dm_entity_id IN "
-                    + "(SELECT dm_entity_id FROM dm_entity WHERE dm_entity_path LIKE :pathExact OR dm_entity_path LIKE :pathExt)";
-            getSession().createSQLQuery(cleanShares)
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
+                    + "(SELECT dm_entity_id FROM dm_entity WHERE " + sqlEntities + ")";
+            scope(getSession().createSQLQuery(cleanShares), root, indexed, path)
                     .executeUpdate();
 
-            getSession().createQuery("delete from DMEntityImpl where path like :pathExact or path like :pathExt")
-                    .setString("pathExact", path)
-                    .setString("pathExt", path + "/%")
-                    .executeUpdate();
+            if (indexed) {
+                executeByUids(getSession().createQuery("delete from DMEntityImpl where uid in (:uids)"), subtreeUids);
+                executeByUids(getSession().createQuery("delete from DMEntityHierarchy where descendantUid in (:uids)"),
+                        containerUids);
+                executeByUids(getSession().createQuery("delete from DMPathRewrite where containerUid in (:uids)"),
+                        containerUids);
+                pathCache().pathsChanged();
+            } else {
+                getSession().createQuery("delete from DMEntityImpl where (path like :pathExact or path like :pathExt)")
+                        .setString("pathExact", path)
+                        .setString("pathExt", path + "/%")
+                        .executeUpdate();
+            }
         } catch (HibernateException e) {
             throw new DataSourceException(e, e.getMessage());
         }
@@ -409,59 +516,71 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
     }
 
     public void generatePath(DMEntity entity) throws ConfigException, DataSourceException {
+        String path = path(entity, true);
+        log.debug("Entity " + entity.getUid() + " generated path " + path);
+        entity.setPath(path);
+    }
 
+    /*
+        path of an entity: the cached path of its parent container and its name
+     */
+    private String path(DMEntity entity, boolean loadParent) throws ConfigException, DataSourceException {
         DMEntity p = entity;
         StringBuilder path = new StringBuilder();
+        path.append(DMEntityImpl.DM_PATH_SEPARATOR);
+        path.append(p.getName());
         switch (p.getType()) {
-            case DMEntityType.WORKSPACE:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
-                break;
-
             case DMEntityType.FOLDER:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
                 p = initializeAndUnproxy(p);
-
-                if(((Folder)p).getParent() == null){
-                    p = this.getEntity(((Folder)entity).getParentUid());
+                if (loadParent && ((Folder) p).getParent() == null) {
+                    p = this.getEntity(((Folder) entity).getParentUid());
                 } else {
                     p = ((Folder) p).getParent();
                 }
-                while (p != null) {
-                    path.insert(0, DMEntityImpl.DM_PATH_SEPARATOR);
-                    path.insert(1, p.getName());
-                    if (p.getType() == DMEntityType.FOLDER) {
-                        p = initializeAndUnproxy(p);
-                        p = ((Folder) p).getParent();
-                    } else {
-                        p = null;
-                    }
+                if (p != null) {
+                    path.insert(0, containerPath(p));
                 }
                 break;
             case DMEntityType.DOCUMENT:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
                 p = initializeAndUnproxy(p);
                 if (((Document) p).getExtension() != null) {
                     path.append(DMEntityImpl.DM_EXTENSION_SEPARATOR);
                     path.append(((Document) p).getExtension().toLowerCase());
                 }
                 p = ((Document) p).getFolder();
-                while (p != null) {
-                    path.insert(0, DMEntityImpl.DM_PATH_SEPARATOR);
-                    path.insert(1, p.getName());
-                    if (p.getType() == DMEntityType.FOLDER) {
-                        p = initializeAndUnproxy(p);
-                        p = ((Folder) p).getParent();
-                    } else {
-                        p = null;
-                    }
+                if (p != null) {
+                    path.insert(0, containerPath(p));
                 }
                 break;
         }
-        log.debug("Entity " + entity.getUid() + " generated path " + path);
-        entity.setPath(path.toString());
+        return path.toString();
+    }
+
+    /*
+        path of a workspace or folder, from the names of its ancestors
+     */
+    private String containerPath(DMEntity container) {
+        long uid = container.getUid();
+        ContainerPathCache cache = pathCache();
+        String cached = cache.get(uid);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.getGeneration();
+        StringBuilder path = new StringBuilder();
+        DMEntity p = container;
+        while (p != null) {
+            path.insert(0, DMEntityImpl.DM_PATH_SEPARATOR);
+            path.insert(1, p.getName());
+            if (p.getType() == DMEntityType.FOLDER) {
+                p = initializeAndUnproxy(p);
+                p = ((Folder) p).getParent();
+            } else {
+                p = null;
+            }
+        }
+        cache.put(uid, path.toString(), generation);
+        return path.toString();
     }
 
     public void updatePath(DMEntity entity, String newName) throws ConfigException, DataSourceException {
@@ -474,78 +593,329 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
         /*
         * Generate new path
         */
-        StringBuilder path = new StringBuilder();
-        switch (p.getType()) {
-            case DMEntityType.WORKSPACE:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
-                break;
-
-            case DMEntityType.FOLDER:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
-                p = initializeAndUnproxy(p);
-                p = ((Folder) p).getParent();
-                while (p != null) {
-                    path.insert(0, DMEntityImpl.DM_PATH_SEPARATOR);
-                    path.insert(1, p.getName());
-                    if (p.getType() == DMEntityType.FOLDER) {
-                        p = initializeAndUnproxy(p);
-                        p = ((Folder) p).getParent();
-                    } else {
-                        p = null;
-                    }
-                }
-                break;
-            case DMEntityType.DOCUMENT:
-                path.append(DMEntityImpl.DM_PATH_SEPARATOR);
-                path.append(p.getName());
-                p = initializeAndUnproxy(p);
-                if (((Document) p).getExtension() != null) {
-                    path.append(DMEntityImpl.DM_EXTENSION_SEPARATOR);
-                    path.append(((Document) p).getExtension().toLowerCase());
-                }
-                p = ((Document) p).getFolder();
-                while (p != null) {
-                    path.insert(0, DMEntityImpl.DM_PATH_SEPARATOR);
-                    path.insert(1, p.getName());
-                    if (p.getType() == DMEntityType.FOLDER) {
-                        p = initializeAndUnproxy(p);
-                        p = ((Folder) p).getParent();
-                    } else {
-                        p = null;
-                    }
-                }
-                break;
-        }
+        String path = path(p, false);
         log.debug("oldPath: " + oldPath + " / newPath: " + path);
-        entity.setPath(path.toString());
+        entity.setPath(path);
         /*
         * Update entity path
         */
         String query = "update DMEntityImpl set path = " +
-                ":newPath where path = :oldPath";
+                ":newPath where uid = :uid";
 
         getSession()
                 .createQuery(query)
-                .setString("oldPath", oldPath)
+                .setLong("uid", entity.getUid())
                 .setString("newPath", entity.getPath())
                 .executeUpdate();
 
         /*
-        * Update children path
+        * Children path: rewritten afterwards from the hierarchy table (moved now)
         */
-        if (entity.getType() != 3) {
-            query = "update DMEntityImpl set path = " +
-                    "concat(:newPath,substring(path, :oldPathLength + 1, length(path))) " +
-                    "where substring(path,1, :oldPathLength) = :oldPath";
+        if (isContainer(entity)) {
+            if (entity.getType() == DMEntityType.FOLDER) {
+                long parentUid = ((Folder) initializeAndUnproxy(entity)).getParentUid();
+                Long hierarchyParentUid = (Long) getSession()
+                        .createQuery("select ancestorUid from DMEntityHierarchy " +
+                                "where descendantUid = :uid and depth = 1")
+                        .setLong("uid", entity.getUid())
+                        .uniqueResult();
+                if (hierarchyParentUid != null && hierarchyParentUid != parentUid) {
+                    moveInHierarchy(entity.getUid(), parentUid);
+                }
+            }
+            rewriteUnder(entity, null);
+        }
+    }
+
+    /*
+        hierarchy rows of a container and the containers under it: links to its former ancestors are removed,
+        links to its new parent and the ancestors of the parent added
+     */
+    private void moveInHierarchy(long uid, long newParentUid) {
+        // the former ancestors of the container are the only ones outside of its subtree
+        List<Long> formerAncestorUids = getSession()
+                .createQuery("select ancestorUid from DMEntityHierarchy where descendantUid = :uid and depth > 0")
+                .setLong("uid", uid)
+                .list();
+        if (!formerAncestorUids.isEmpty()) {
+            executeByUids(getSession()
+                    .createQuery("delete from DMEntityHierarchy where descendantUid in (:uids) " +
+                            "and ancestorUid in (:ancestorUids)")
+                    .setParameterList("ancestorUids", formerAncestorUids), subtreeContainerUids(uid));
+        }
+        getSession()
+                .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                        "SELECT p.ancestor_id, c.descendant_id, p.depth + c.depth + 1 " +
+                        "FROM dm_entity_hierarchy p, dm_entity_hierarchy c " +
+                        "WHERE p.descendant_id = :parentUid AND c.ancestor_id = :uid")
+                .setLong("parentUid", newParentUid)
+                .setLong("uid", uid)
+                .executeUpdate();
+    }
+
+    /*
+        paths under a container left to rewrite (see rewritePaths), with the trashed state given to the entities
+        under it, null to keep theirs
+     */
+    private void rewriteUnder(DMEntity container, Boolean trashed) {
+        getSession().save(new DMPathRewrite(container.getUid(), trashed));
+        pathCache().pathsChanged();
+    }
+
+    public boolean rewritePaths(int count) throws ConfigException, DataSourceException {
+        try {
+            DMPathRewrite rewrite = (DMPathRewrite) getSession().createCriteria(DMPathRewrite.class)
+                    .addOrder(Order.asc("id"))
+                    .setMaxResults(1)
+                    .uniqueResult();
+            if (rewrite == null) {
+                return false;
+            }
+            if (!rewrite.isDocuments()) {
+                // containers level by level: the path of their parent is rewritten first
+                List<Object[]> containers = getSession()
+                        .createQuery("select f.uid, f.name, f.path, p.path " +
+                                "from Folder f, DMEntityImpl p, DMEntityHierarchy h " +
+                                "where h.ancestorUid = :rootUid and h.depth = :depth and f.uid = h.descendantUid " +
+                                "and p.uid = f.parentUid and f.uid > :lastUid order by f.uid")
+                        .setLong("rootUid", rewrite.getContainerUid())
+                        .setInteger("depth", rewrite.getDepth())
+                        .setLong("lastUid", rewrite.getLastUid())
+                        .setMaxResults(count)
+                        .list();
+                for (Object[] c : containers) {
+                    rewritePath(rewrite, (Long) c[0], (String) c[3] + DMEntityImpl.DM_PATH_SEPARATOR + c[1],
+                            (String) c[2]);
+                }
+                if (containers.size() == count) {
+                    rewrite.setLastUid((Long) containers.get(count - 1)[0]);
+                } else if (containers.isEmpty() && rewrite.getLastUid() == 0) {
+                    rewrite.setDocuments(true);
+                } else {
+                    rewrite.setDepth(rewrite.getDepth() + 1);
+                    rewrite.setLastUid(0);
+                }
+                getSession().update(rewrite);
+            } else {
+                List<Object[]> documents = getSession()
+                        .createQuery("select d.uid, d.name, d.extension, d.path, p.path " +
+                                "from Document d, DMEntityImpl p, DMEntityHierarchy h " +
+                                "where h.ancestorUid = :rootUid and d.folderUid = h.descendantUid " +
+                                "and p.uid = d.folderUid and d.uid > :lastUid order by d.uid")
+                        .setLong("rootUid", rewrite.getContainerUid())
+                        .setLong("lastUid", rewrite.getLastUid())
+                        .setMaxResults(count)
+                        .list();
+                for (Object[] d : documents) {
+                    String path = (String) d[4] + DMEntityImpl.DM_PATH_SEPARATOR + d[1];
+                    if (d[2] != null) {
+                        path += DMEntityImpl.DM_EXTENSION_SEPARATOR + ((String) d[2]).toLowerCase();
+                    }
+                    rewritePath(rewrite, (Long) d[0], path, (String) d[3]);
+                }
+                if (documents.size() == count) {
+                    rewrite.setLastUid((Long) documents.get(count - 1)[0]);
+                    getSession().update(rewrite);
+                } else {
+                    // the documents indexed while their paths were rewritten are checked on the next index sync
+                    getSession().createQuery("update DMEntityImpl set updateDate = :upDate where uid = :uid")
+                            .setTimestamp("upDate", new Date())
+                            .setLong("uid", rewrite.getContainerUid())
+                            .executeUpdate();
+                    getSession().delete(rewrite);
+                    log.debug("paths under container {} rewritten", rewrite.getContainerUid());
+                }
+            }
+            return true;
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    /*
+        path of an entity under its rewritten parent: an entity trashed on its own keeps its prefix on a rename or
+        a move, all of them follow the container trashed or restored
+     */
+    private void rewritePath(DMPathRewrite rewrite, long uid, String path, String currentPath) {
+        if (rewrite.getTrashed() == null) {
+            if (currentPath.startsWith(TRASH_PREFIX) && !path.startsWith(TRASH_PREFIX)) {
+                path = TRASH_PREFIX + path;
+            }
+            if (!path.equals(currentPath)) {
+                getSession().createQuery("update DMEntityImpl set path = :path where uid = :uid")
+                        .setString("path", path)
+                        .setLong("uid", uid)
+                        .executeUpdate();
+            }
+        } else {
+            getSession().createQuery("update DMEntityImpl set path = :path, trashed = :trashed, " +
+                    "updateDate = :upDate where uid = :uid")
+                    .setString("path", path)
+                    .setBoolean("trashed", rewrite.getTrashed())
+                    .setTimestamp("upDate", rewrite.getCreationDate())
+                    .setLong("uid", uid)
+                    .executeUpdate();
+        }
+    }
+
+    public void addToHierarchy(DMEntity entity) throws ConfigException, DataSourceException {
+        if (!isContainer(entity)) {
+            return;
+        }
+        try {
+            // rows already there (container saved again) are kept
             getSession()
-                    .createQuery(query)
-                    .setInteger("oldPathLength", oldPath.length() + 1)
-                    .setString("oldPath", oldPath + "/")
-                    .setString("newPath", entity.getPath() + "/")
+                    .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                            "SELECT e.dm_entity_id, e.dm_entity_id, 0 FROM dm_entity e WHERE e.dm_entity_id = :uid " +
+                            "AND NOT EXISTS (SELECT 1 FROM dm_entity_hierarchy h " +
+                            "WHERE h.ancestor_id = :uid AND h.descendant_id = :uid)")
+                    .setLong("uid", entity.getUid())
+                    .executeUpdate();
+            if (entity.getType() == DMEntityType.FOLDER) {
+                getSession()
+                        .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                                "SELECT p.ancestor_id, :uid, p.depth + 1 FROM dm_entity_hierarchy p " +
+                                "WHERE p.descendant_id = :parentUid AND NOT EXISTS (SELECT 1 FROM dm_entity_hierarchy h " +
+                                "WHERE h.ancestor_id = p.ancestor_id AND h.descendant_id = :uid)")
+                        .setLong("uid", entity.getUid())
+                        .setLong("parentUid", ((Folder) initializeAndUnproxy(entity)).getParentUid())
+                        .executeUpdate();
+            }
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    public void checkHierarchy() throws ConfigException, DataSourceException {
+        try {
+            Long containers = (Long) getSession()
+                    .createQuery("select count(uid) from DMEntityImpl where type in (:types)")
+                    .setParameterList("types", new Integer[]{DMEntityType.WORKSPACE, DMEntityType.FOLDER})
+                    .uniqueResult();
+            Long indexed = (Long) getSession()
+                    .createQuery("select count(descendantUid) from DMEntityHierarchy where depth = 0")
+                    .uniqueResult();
+            if (!containers.equals(indexed)) {
+                log.info("hierarchy table holds {} containers out of {}, building it", indexed, containers);
+                buildHierarchy();
+            }
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
+    /*
+        the hierarchy table built from the parent of the folders (first start with the table, containers created
+        without it)
+     */
+    private long buildHierarchy() {
+        long start = System.currentTimeMillis();
+        getSession().createSQLQuery("DELETE FROM dm_entity_hierarchy").executeUpdate();
+        long containers = getSession()
+                .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                        "SELECT dm_entity_id, dm_entity_id, 0 FROM dm_entity " +
+                        "WHERE dm_entity_type IN (" + DMEntityType.WORKSPACE + ", " + DMEntityType.FOLDER + ")")
+                .executeUpdate();
+        int inserted = getSession()
+                .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                        "SELECT parent_id, id, 1 FROM folder")
+                .executeUpdate();
+        // one level of ancestors more on each pass
+        int depth = 1;
+        while (inserted > 0) {
+            if (depth >= MAX_HIERARCHY_DEPTH) {
+                log.error("folder tree deeper than {} levels (or with a cycle), hierarchy table left incomplete",
+                        MAX_HIERARCHY_DEPTH);
+                break;
+            }
+            inserted = getSession()
+                    .createSQLQuery("INSERT INTO dm_entity_hierarchy (ancestor_id, descendant_id, depth) " +
+                            "SELECT p.ancestor_id, c.descendant_id, c.depth + 1 " +
+                            "FROM dm_entity_hierarchy c, dm_entity_hierarchy p " +
+                            "WHERE c.depth = :depth AND p.descendant_id = c.ancestor_id AND p.depth = 1")
+                    .setInteger("depth", depth)
+                    .executeUpdate();
+            depth++;
+        }
+        log.info("hierarchy table built for {} containers, {} levels, in {} ms", containers, depth,
+                System.currentTimeMillis() - start);
+        return containers;
+    }
+
+    private static boolean isContainer(DMEntity entity) {
+        return entity != null
+                && (entity.getType() == DMEntityType.WORKSPACE || entity.getType() == DMEntityType.FOLDER);
+    }
+
+    /*
+        set the root of the subtree scope of a query, or the path compared when not under a container
+     */
+    private static Query scope(Query query, DMEntity root, boolean indexed, String path) {
+        if (indexed) {
+            return query.setLong("rootUid", root.getUid());
+        }
+        return query.setString("pathExact", path)
+                .setString("pathExt", path + "/%");
+    }
+
+    /*
+        uids of a container and of the containers under it
+     */
+    private List<Long> subtreeContainerUids(long rootUid) {
+        return getSession().createQuery(SUBTREE_CONTAINERS)
+                .setLong("rootUid", rootUid)
+                .list();
+    }
+
+    /*
+        uids of a container, of the containers under it and of their documents, bound as lists in the statements
+        changing dm_entity: MySQL can't read the table a statement changes in a subquery
+     */
+    private List<Long> subtreeUids(long rootUid, List<Long> containerUids) {
+        List<Long> uids = new ArrayList<Long>(containerUids);
+        uids.addAll(getSession()
+                .createQuery("select d.uid from Document d where d.folderUid in (" + SUBTREE_CONTAINERS + ")")
+                .setLong("rootUid", rootUid)
+                .list());
+        return uids;
+    }
+
+    /*
+        run a statement for a list of uids (its :uids parameter), by blocks of UID_LIST_SIZE
+     */
+    private static int executeByUids(Query query, List<Long> uids) {
+        int updated = 0;
+        for (int i = 0; i < uids.size(); i += UID_LIST_SIZE) {
+            updated += query
+                    .setParameterList("uids", uids.subList(i, Math.min(i + UID_LIST_SIZE, uids.size())))
                     .executeUpdate();
         }
+        return updated;
+    }
+
+    /*
+        restriction to the entities under a path: the entities of the hierarchy under a container (whatever their
+        stored paths, which may be left to rewrite), the paths starting with any other one
+     */
+    private Criterion under(String path) {
+        String finalPath = path != null ? path : "";
+        if (finalPath.endsWith("/")) {
+            finalPath += "%";
+        } else {
+            finalPath += "/%";
+        }
+        Criterion pathRestriction = Restrictions.like("path", finalPath, MatchMode.START);
+        DMEntity root = path != null && path.length() > 0 ? getEntityByExactPath(path) : null;
+        if (!isContainer(root)) {
+            return pathRestriction;
+        }
+        DetachedCriteria containers = DetachedCriteria.forClass(DMEntityHierarchy.class)
+                .add(Restrictions.eq("ancestorUid", root.getUid()))
+                .setProjection(Projections.property("descendantUid"));
+        DetachedCriteria documents = DetachedCriteria.forClass(Document.class)
+                .add(Subqueries.propertyIn("folderUid", containers))
+                .setProjection(Projections.id());
+        return Restrictions.or(Subqueries.propertyIn("uid", containers), Subqueries.propertyIn("uid", documents));
     }
 
     public static String TRASH_PREFIX = "__TRASHED_ENTITY__";
@@ -612,15 +982,12 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
             getSession().saveOrUpdate(entity);
             getSession().flush();
         }  else if( entity.getType() == DMEntityType.FOLDER || entity.getType() == DMEntityType.WORKSPACE){
-            Date updateDate = new Date();
-            getSession().createQuery("update DMEntityImpl set trashed = true, updateDate = :upDate, path = " +
-                    "concat('" + TRASH_PREFIX + "', path) where path like :pathExact or path like :pathExt ")
-                    .setDate("upDate", updateDate)
-                    .setString("pathExact", entity.getPath())
-                    .setString("pathExt", entity.getPath() + "/%")
-                    .executeUpdate();
-
+            entity.setPath(TRASH_PREFIX + entity.getPath());
+            entity.setUpdateDate(new Date());
+            entity.setTrashed(true);
+            getSession().saveOrUpdate(entity);
             getSession().flush();
+            rewriteUnder(entity, true);
         }
     }
 
@@ -632,17 +999,12 @@ public class HDMEntityFactory extends HFactory implements DMEntityFactory {
             getSession().saveOrUpdate(entity);
             getSession().flush();
         }  else if( entity.getType() == DMEntityType.FOLDER || entity.getType() == DMEntityType.WORKSPACE){
-
-            Date updateDate = new Date();
-            getSession().createQuery("update DMEntityImpl set trashed = false , updateDate = :upDate, path = " +
-                    "substring(path," + (TRASH_PREFIX.length()  + 1) + ", length(path) - " + TRASH_PREFIX.length() + ") " +
-                    "where path like :pathExact or path like :pathExt ")
-                    .setDate("upDate", updateDate)
-                    .setString("pathExact", entity.getPath())
-                    .setString("pathExt", entity.getPath() + "/%")
-                    .executeUpdate();
-
+            entity.setPath(entity.getPath().replaceAll(TRASH_PREFIX, ""));
+            entity.setUpdateDate(new Date());
+            entity.setTrashed(false);
+            getSession().saveOrUpdate(entity);
             getSession().flush();
+            rewriteUnder(entity, false);
         }
     }
 
@@ -71,6 +71,21 @@ public class HDocumentVersionFactory extends HFactory implements DocumentVersion
         }
     }
 
+    public List<DocumentVersion> getLastDocumentVersions(List<Long> documentUids)
+            throws ConfigException, DataSourceException
+    {
+        try {
+            String query = "from DocumentVersion v where v.documentUid in (:documentUids) "
+                    + "and v.creationDate = (select max(lv.creationDate) from DocumentVersion lv "
+                    + "where lv.documentUid = v.documentUid)";
+            return getSession().createQuery(query)
+                    .setParameterList("documentUids", documentUids)
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e);
+        }
+    }
+
     public DocumentVersion getLastDocumentVersionById(long documentUid) throws ConfigException, DataSourceException
     {
         try {
@@ -88,6 +88,21 @@ public class HDocumentWorkflowStatusFactory extends HFactory implements
         }
     }
 
+    public List<DocumentWorkflowStatus> getLastDocumentWorkflowStatuses(List<Long> documentUids)
+            throws ConfigException, DataSourceException
+    {
+        try {
+            String query = "from DocumentWorkflowStatus dws where dws.documentUid in (:documentUids) "
+                    + "and dws.statusDate = (select max(ldws.statusDate) from DocumentWorkflowStatus ldws "
+                    + "where ldws.documentUid = dws.documentUid)";
+            return getSession().createQuery(query)
+                    .setParameterList("documentUids", documentUids)
+                    .list();
+        } catch (HibernateException he) {
+            throw new DataSourceException(he);
+        }
+    }
+
     public void saveDocumentWorkflowStatus(DocumentWorkflowStatus dws)
             throws ConfigException, DataSourceException
     {
@@ -98,6 +98,22 @@ public class HDocumentWorkflowStatusRequestFactory extends HFactory implements
         }
     }
 
+    public List<DocumentWorkflowStatusRequest> getPendingRequests(List<Long> documentUids)
+            throws ConfigException, DataSourceException
+    {
+        try {
+            String hQuery = "from DocumentWorkflowStatusRequest where status = :reqStatus "
+                    + "and documentUid in (:documentIds)"
+                    + " ORDER BY date DESC";
+            return getSession().createQuery(hQuery)
+                    .setParameter("reqStatus", RequestStatus.PENDING)
+                    .setParameterList("documentIds", documentUids)
+                    .list();
+        } catch (HibernateException he) {
+            throw new DataSourceException(he);
+        }
+    }
+
     public Vector<DocumentWorkflowStatusRequest> getRequests(long documentVersionUid)
             throws ConfigException, DataSourceException
     {
@@ -19,6 +19,7 @@ import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.exception.ConstraintViolationException;
 import org.kimios.exceptions.ConfigException;
+import org.kimios.kernel.dms.FactoryInstantiator;
 import org.kimios.kernel.dms.model.DMEntityType;
 import org.kimios.kernel.dms.model.Folder;
 import org.kimios.kernel.dms.FolderFactory;
@@ -133,6 +134,7 @@ public class HFolderFactory extends HFactory implements FolderFactory
         try {
             getSession().save(f);
             flush();
+            FactoryInstantiator.getInstance().getDmEntityFactory().addToHierarchy(f);
         } catch (HibernateException e) {
             boolean integrity = e instanceof ConstraintViolationException;
             throw new DataSourceException(e, e.getMessage());
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.List;
 
 public class HLockFactory extends HFactory implements LockFactory
 {
@@ -46,6 +47,17 @@ public class HLockFactory extends HFactory implements LockFactory
         }
     }
 
+    public List<Lock> getDocumentLocks(List<Long> documentUids) throws ConfigException, DataSourceException
+    {
+        try {
+            return getSession().createQuery("from Lock l where l.uid in (:documentUids)")
+                    .setParameterList("documentUids", documentUids)
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e, e.getMessage());
+        }
+    }
+
     public boolean checkin(Document d, User u) throws AccessDeniedException, ConfigException, DataSourceException
     {
         try {
@@ -87,6 +87,19 @@ public class HMetaValueFactory extends HFactory implements MetaValueFactory {
         }
     }
 
+    public List<MetaValue> getMetaValues(List<Long> documentVersionUids)
+            throws ConfigException, DataSourceException {
+        try {
+            String query = "select mvb from MetaValueBean mvb join mvb.meta mt " +
+                    "where mvb.documentVersionUid in (:vuids) order by mt.position,mt.name,mt.id";
+            return getSession().createQuery(query)
+                    .setParameterList("vuids", documentVersionUids)
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e);
+        }
+    }
+
     public void saveMetaValue(MetaValue metaValue) throws ConfigException,
             DataSourceException {
         try {
@@ -19,6 +19,7 @@ import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.exception.ConstraintViolationException;
 import org.kimios.exceptions.ConfigException;
+import org.kimios.kernel.dms.FactoryInstantiator;
 import org.kimios.kernel.dms.model.Workspace;
 import org.kimios.kernel.dms.WorkspaceFactory;
 import org.kimios.exceptions.DataSourceException;
@@ -86,6 +87,7 @@ public class HWorkspaceFactory extends HFactory implements WorkspaceFactory
             long uid = ((Long) getSession().save(w)).longValue();
             flush();
             w.setUid(uid);
+            FactoryInstantiator.getInstance().getDmEntityFactory().addToHierarchy(w);
         } catch (HibernateException e) {
             boolean integrity = e instanceof ConstraintViolationException;
             throw new DataSourceException(e, e.getMessage());
@@ -0,0 +1,424 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.events;
+
+import org.kimios.kernel.configuration.Config;
+import org.kimios.kernel.events.model.EventContext;
+import org.kimios.utils.configuration.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous AFTER methods of the event handlers ({@code @DmsEvent(async = true)}) on a pool
+ * of worker threads, once the transaction of the event is committed (they are not run if it is rolled
+ * back), with a snapshot of the event context as thread context.
+ *
+ * The number of calls waiting or running is bounded (dms.events.async.queue.size). When it is reached,
+ * dms.events.async.policy tells what to do with a new call: run it on the calling thread (caller), wait
+ * for room (block) or drop it (drop). When dms.events.async.ordered is set, the calls of a handler are run
+ * one at a time, in the order of their events (except calls run on the calling thread by the caller
+ * policy). Without worker threads (dms.events.async.threads set to 0), asynchronous methods are run on
+ * the calling thread, in the transaction, like the other handler methods.
+ */
+public class AsyncEventBus {
+
+    private static Logger log = LoggerFactory.getLogger(AsyncEventBus.class);
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /* max calls of a handler run in a row before its lane gives its worker back */
+    private static final int LANE_BATCH_SIZE = 100;
+
+    public enum FullQueuePolicy {
+        CALLER, BLOCK, DROP
+    }
+
+    private static volatile AsyncEventBus instance;
+
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+
+    private final int queueSize;
+
+    private final FullQueuePolicy policy;
+
+    private final boolean ordered;
+
+    private final Map<GenericEventHandler, HandlerLane> lanes = new ConcurrentHashMap<GenericEventHandler, HandlerLane>();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * @param threads   number of worker threads. Zero or less runs the calls on the calling thread.
+     * @param queueSize max number of calls waiting or running
+     * @param policy    what to do with a call when queueSize is reached
+     * @param ordered   run the calls of a handler one at a time, in order
+     */
+    public AsyncEventBus(int threads, int queueSize, FullQueuePolicy policy, boolean ordered) {
+        this.queueSize = queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE;
+        this.policy = policy;
+        this.ordered = ordered;
+        this.permits = new Semaphore(this.queueSize);
+        if (threads > 0) {
+            final AtomicInteger count = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AsyncEventBus-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            this.executor = null;
+        }
+        log.info("asynchronous event bus: {} thread(s), queue size {}, policy {}, ordered {}",
+                threads, this.queueSize, policy, ordered);
+    }
+
+    public static AsyncEventBus getInstance() {
+        if (instance == null) {
+            synchronized (AsyncEventBus.class) {
+                if (instance == null) {
+                    instance = new AsyncEventBus(
+                            intSetting(Config.EVENTS_ASYNC_THREADS, DEFAULT_THREADS),
+                            intSetting(Config.EVENTS_ASYNC_QUEUE_SIZE, DEFAULT_QUEUE_SIZE),
+                            policySetting(),
+                            !"false".equalsIgnoreCase(setting(Config.EVENTS_ASYNC_ORDERED)));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Schedule the asynchronous methods of the handlers for the event of the given method: after the
+     * commit of the current transaction, or right away if there is none.
+     */
+    public void publish(List<GenericEventHandler> handlers, Method method, Object[] arguments,
+                        Object methodReturn, EventContext ctx) throws Throwable {
+        List<GenericEventHandler> asyncHandlers = new ArrayList<GenericEventHandler>();
+        for (GenericEventHandler handler : handlers) {
+            if (handler.hasAsyncMethods(method)) {
+                asyncHandlers.add(handler);
+            }
+        }
+        if (asyncHandlers.isEmpty()) {
+            return;
+        }
+        if (executor == null) {
+            for (GenericEventHandler handler : asyncHandlers) {
+                handler.processAsync(method, arguments, methodReturn, ctx);
+            }
+            return;
+        }
+
+        EventContext snapshot = ctx.snapshot();
+        final List<Call> calls = new ArrayList<Call>(asyncHandlers.size());
+        for (GenericEventHandler handler : asyncHandlers) {
+            calls.add(new Call(handler, method, arguments, methodReturn, snapshot));
+        }
+        published.addAndGet(calls.size());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        submit(calls);
+                    } else {
+                        discarded.addAndGet(calls.size());
+                    }
+                }
+            });
+        } else {
+            submit(calls);
+        }
+    }
+
+    /**
+     * Shut down the bus if it was started; a new one is started by the next getInstance
+     */
+    public static void shutdownInstance() {
+        AsyncEventBus bus;
+        synchronized (AsyncEventBus.class) {
+            bus = instance;
+            instance = null;
+        }
+        if (bus != null) {
+            log.info("shutting down asynchronous event bus: {}", bus);
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Stop the workers, after the calls already submitted
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void submit(List<Call> calls) {
+        for (Call call : calls) {
+            if (!permits.tryAcquire()) {
+                switch (policy) {
+                    case DROP:
+                        if (dropped.incrementAndGet() % 1000 == 1) {
+                            log.warn("asynchronous event queue full, dropping calls ({} dropped so far)", dropped);
+                        }
+                        continue;
+                    case BLOCK:
+                        try {
+                            permits.acquire();
+                            break;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            callerRuns.incrementAndGet();
+                            call.run(true);
+                            continue;
+                        }
+                    default:
+                        callerRuns.incrementAndGet();
+                        call.run(true);
+                        continue;
+                }
+            }
+            try {
+                if (ordered) {
+                    lane(call.handler).add(call);
+                } else {
+                    executor.execute(call);
+                }
+            } catch (RuntimeException e) {
+                // pool shut down
+                permits.release();
+                discarded.incrementAndGet();
+                log.error("asynchronous event call on " + call.handler.getClass().getName() + " rejected", e);
+            }
+        }
+    }
+
+    private HandlerLane lane(GenericEventHandler handler) {
+        HandlerLane lane = lanes.get(handler);
+        if (lane == null) {
+            lane = new HandlerLane();
+            HandlerLane existing = lanes.putIfAbsent(handler, lane);
+            if (existing != null) {
+                lane = existing;
+            }
+        }
+        return lane;
+    }
+
+    private class Call implements Runnable {
+        private final GenericEventHandler handler;
+        private final Method method;
+        private final Object[] arguments;
+        private final Object methodReturn;
+        private final EventContext snapshot;
+
+        private Call(GenericEventHandler handler, Method method, Object[] arguments, Object methodReturn,
+                     EventContext snapshot) {
+            this.handler = handler;
+            this.method = method;
+            this.arguments = arguments;
+            this.methodReturn = methodReturn;
+            this.snapshot = snapshot;
+        }
+
+        /*
+            On the calling thread (full queue), its context and live parameters are restored afterwards
+         */
+        private void run(boolean callerThread) {
+            EventContext callerContext = callerThread ? EventContext.current() : null;
+            Map<String, Object> callerParameters = callerThread ? EventContext.getParameters() : null;
+            EventContext.attach(snapshot);
+            try {
+                handler.processAsync(method, arguments, methodReturn, snapshot);
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                log.error("error while running asynchronous " + snapshot.getEvent() + " handler "
+                        + handler.getClass().getName(), t);
+            } finally {
+                if (callerThread) {
+                    EventContext.restore(callerContext, callerParameters);
+                } else {
+                    EventContext.detach();
+                }
+                executed.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                run(false);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /*
+        Calls of one handler, run one at a time on the pool
+     */
+    private class HandlerLane implements Runnable {
+        private final Queue<Call> calls = new ConcurrentLinkedQueue<Call>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void add(Call call) {
+            calls.add(call);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int count = 0;
+            Call call;
+            while (count < LANE_BATCH_SIZE && (call = calls.poll()) != null) {
+                call.run();
+                count++;
+            }
+            if (!calls.isEmpty()) {
+                // let the other lanes run before going on
+                executor.execute(this);
+                return;
+            }
+            scheduled.set(false);
+            if (!calls.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+    }
+
+    private static String setting(String name) {
+        try {
+            return ConfigurationManager.getValue(name);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int intSetting(String name, int defaultValue) {
+        String value = setting(name);
+        try {
+            if (value != null && value.trim().length() > 0) {
+                return Integer.parseInt(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            log.warn("unable to read setting {}, will use default value {}", name, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    private static FullQueuePolicy policySetting() {
+        String value = setting(Config.EVENTS_ASYNC_POLICY);
+        try {
+            if (value != null && value.trim().length() > 0) {
+                return FullQueuePolicy.valueOf(value.trim().toUpperCase());
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("unable to read setting {}, will use default value {}", Config.EVENTS_ASYNC_POLICY,
+                    FullQueuePolicy.CALLER);
+        }
+        return FullQueuePolicy.CALLER;
+    }
+
+    public int getQueueSize() {
+        return queueSize - permits.availablePermits();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Calls not run because their transaction was rolled back or the bus was shut down
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncEventBus{" +
+                "queueSize=" + getQueueSize() +
+                ", published=" + published +
+                ", executed=" + executed +
+                ", callerRuns=" + callerRuns +
+                ", dropped=" + dropped +
+                ", failed=" + failed +
+                ", discarded=" + discarded +
+                '}';
+    }
+}
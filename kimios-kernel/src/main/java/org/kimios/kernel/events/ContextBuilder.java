@@ -56,7 +56,8 @@ public class ContextBuilder
     private static String[] workspaceMethod = { "createWorkspace", "updateWorkspace", "deleteWorkspace" };
 
     private static String[] documentVersionMethod = { "createDocumentVersion", "createDocumentVersionFromLatest",
-            "updateDocumentVersion", "deleteDocumentVersion", "startDownloadTransaction", "updateDocumentVersionId", "readVersionStream" };
+            "updateDocumentVersion", "deleteDocumentVersion", "startDownloadTransaction", "updateDocumentVersionId", "readVersionStream",
+            "readFirstVersionRange" };
 
     private static String[] fileTransferMethod = { "endUploadTransaction" };
 
@@ -358,7 +359,7 @@ public class ContextBuilder
         }
 
         //read version stream
-        if (name.equalsIgnoreCase(documentVersionMethod[6])) {
+        if (name.equalsIgnoreCase(documentVersionMethod[6]) || name.equalsIgnoreCase(documentVersionMethod[7])) {
             try {
                 DataTransferFactory dtFactory =
                         org.kimios.kernel.filetransfer.FactoryInstantiator.getInstance().getDataTransferFactory();
@@ -0,0 +1,134 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.events;
+
+import org.kimios.api.events.annotations.DmsEvent;
+import org.kimios.api.events.annotations.DmsEventName;
+import org.kimios.api.events.annotations.DmsEventOccur;
+import org.kimios.kernel.events.model.EventContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handler methods of an event handler class by event and phase, read once from their {@link DmsEvent}
+ * annotations, as method handles of type (handler, arguments, method return, context) -> void.
+ *
+ * Asynchronous AFTER methods are kept apart from the methods run on the calling thread. Tables are
+ * built when handlers are registered and never modified afterwards.
+ */
+public final class EventDispatchTable {
+
+    private static Logger log = LoggerFactory.getLogger(EventDispatchTable.class);
+
+    private static final MethodType HANDLER_METHOD_TYPE = MethodType.methodType(void.class,
+            GenericEventHandler.class, Object[].class, Object.class, EventContext.class);
+
+    private static final MethodHandle[] NONE = new MethodHandle[0];
+
+    private final EnumMap<DmsEventName, EnumMap<DmsEventOccur, MethodHandle[]>> handles;
+
+    private final EnumMap<DmsEventName, MethodHandle[]> asyncHandles;
+
+    public EventDispatchTable(Class<? extends GenericEventHandler> handlerClass) {
+        EnumMap<DmsEventName, EnumMap<DmsEventOccur, List<MethodHandle>>> found =
+                new EnumMap<DmsEventName, EnumMap<DmsEventOccur, List<MethodHandle>>>(DmsEventName.class);
+        EnumMap<DmsEventName, List<MethodHandle>> asyncFound =
+                new EnumMap<DmsEventName, List<MethodHandle>>(DmsEventName.class);
+        for (Method it : handlerClass.getDeclaredMethods()) {
+            DmsEvent st = it.getAnnotation(DmsEvent.class);
+            if (st == null) {
+                continue;
+            }
+            MethodHandle handle;
+            try {
+                it.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(it).asType(HANDLER_METHOD_TYPE);
+            } catch (Exception e) {
+                log.error("event handler method " + handlerClass.getName() + "." + it.getName()
+                        + " can't be called with (Object[], Object, EventContext), ignored", e);
+                continue;
+            }
+            boolean async = st.async() && st.when() == DmsEventOccur.AFTER;
+            for (DmsEventName name : st.eventName()) {
+                if (async) {
+                    List<MethodHandle> list = asyncFound.get(name);
+                    if (list == null) {
+                        list = new ArrayList<MethodHandle>();
+                        asyncFound.put(name, list);
+                    }
+                    list.add(handle);
+                } else {
+                    EnumMap<DmsEventOccur, List<MethodHandle>> byOccur = found.get(name);
+                    if (byOccur == null) {
+                        byOccur = new EnumMap<DmsEventOccur, List<MethodHandle>>(DmsEventOccur.class);
+                        found.put(name, byOccur);
+                    }
+                    List<MethodHandle> list = byOccur.get(st.when());
+                    if (list == null) {
+                        list = new ArrayList<MethodHandle>();
+                        byOccur.put(st.when(), list);
+                    }
+                    list.add(handle);
+                }
+            }
+        }
+
+        handles = new EnumMap<DmsEventName, EnumMap<DmsEventOccur, MethodHandle[]>>(DmsEventName.class);
+        for (Map.Entry<DmsEventName, EnumMap<DmsEventOccur, List<MethodHandle>>> entry : found.entrySet()) {
+            EnumMap<DmsEventOccur, MethodHandle[]> byOccur =
+                    new EnumMap<DmsEventOccur, MethodHandle[]>(DmsEventOccur.class);
+            for (Map.Entry<DmsEventOccur, List<MethodHandle>> occur : entry.getValue().entrySet()) {
+                byOccur.put(occur.getKey(), occur.getValue().toArray(NONE));
+            }
+            handles.put(entry.getKey(), byOccur);
+        }
+        asyncHandles = new EnumMap<DmsEventName, MethodHandle[]>(DmsEventName.class);
+        for (Map.Entry<DmsEventName, List<MethodHandle>> entry : asyncFound.entrySet()) {
+            asyncHandles.put(entry.getKey(), entry.getValue().toArray(NONE));
+        }
+    }
+
+    /**
+     * Handler methods of an event and phase, asynchronous ones or the others. The returned array must not
+     * be modified.
+     */
+    public MethodHandle[] handles(DmsEventName event, DmsEventOccur when, boolean async) {
+        MethodHandle[] result;
+        if (async) {
+            result = when == DmsEventOccur.AFTER ? asyncHandles.get(event) : null;
+        } else {
+            EnumMap<DmsEventOccur, MethodHandle[]> byOccur = handles.get(event);
+            result = byOccur != null ? byOccur.get(when) : null;
+        }
+        return result != null ? result : NONE;
+    }
+
+    /**
+     * @return true if the class has no handler method at all
+     */
+    public boolean isEmpty() {
+        return handles.isEmpty() && asyncHandles.isEmpty();
+    }
+}
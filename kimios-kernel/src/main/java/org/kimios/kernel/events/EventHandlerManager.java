@@ -16,6 +16,7 @@
 package org.kimios.kernel.events;
 
 import org.kimios.kernel.events.impl.ActionLogger;
+import org.kimios.kernel.events.impl.UpdateNoticeRouter;
 import org.kimios.kernel.events.impl.WorkflowMailer;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.utils.configuration.ConfigurationManager;
@@ -54,6 +55,7 @@ public class EventHandlerManager extends ExtensionRegistry<GenericEventHandler>
     @Override
     synchronized public void addHandler(GenericEventHandler handler)
     {
+        handler.dispatchTable();
         handlers.add(handler);
     }
 
@@ -97,6 +99,7 @@ public class EventHandlerManager extends ExtensionRegistry<GenericEventHandler>
                     handlers.add(new WorkflowMailer());
                 }
                 handlers.add(handler);
+                buildDispatchTables();
                 log.info("instantiated event handler {}", classz);
                 instantiatedHandlers.add(handler.getClass());
             }
@@ -121,6 +124,15 @@ public class EventHandlerManager extends ExtensionRegistry<GenericEventHandler>
 
     }
 
+    /**
+     * Stop the asynchronous event bus workers and the update notices thread, when the context is closed
+     */
+    public void destroy()
+    {
+        AsyncEventBus.shutdownInstance();
+        UpdateNoticeRouter.shutdown();
+    }
+
     private void setup()
     {
         EventContext.init();
@@ -188,6 +200,17 @@ public class EventHandlerManager extends ExtensionRegistry<GenericEventHandler>
         } catch (Exception e) {
             log.error("Error while Loading event handlers", e);
         }
+        buildDispatchTables();
+    }
+
+    /*
+        Read the handler methods of the registered handlers now rather than on their first event
+     */
+    private void buildDispatchTables()
+    {
+        for (GenericEventHandler handler : handlers) {
+            handler.dispatchTable();
+        }
     }
 }
 
@@ -23,10 +23,8 @@ import org.kimios.api.events.annotations.DmsEventOccur;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 
 public abstract class GenericEventHandler implements org.kimios.api.EventHandler {
@@ -35,50 +33,76 @@ public abstract class GenericEventHandler implements org.kimios.api.EventHandler
 
     protected Set<Method> methods;
 
+    private volatile EventDispatchTable dispatchTable;
+
     public Set<Method> getMethods()
     {
         return this.methods;
     }
 
+    /**
+     * Call the handler methods of the event of the given method and phase, except the asynchronous ones
+     */
     @Override
     final public IEventContext process(Method method, Object[] arguments, DmsEventOccur _when, Object methodReturn,
                                        IEventContext iContext) throws Throwable
     {
+        return dispatch(method, arguments, _when, methodReturn, (EventContext) iContext, false);
+    }
+
+    /**
+     * Call the asynchronous AFTER handler methods of the event of the given method
+     */
+    final public IEventContext processAsync(Method method, Object[] arguments, Object methodReturn,
+                                            EventContext ctx) throws Throwable
+    {
+        return dispatch(method, arguments, DmsEventOccur.AFTER, methodReturn, ctx, true);
+    }
 
-        EventContext ctx = (EventContext)iContext;
+    /**
+     * @return true if the handler has asynchronous AFTER methods for the event of the given method
+     */
+    final public boolean hasAsyncMethods(Method method)
+    {
         DmsEvent evt = method.getAnnotation(DmsEvent.class);
         if (evt != null) {
-            for (Method it : this.getClass().getDeclaredMethods()) {
-                DmsEvent st = null;
-                st = it.getAnnotation(DmsEvent.class);
-                if (st != null) {
-
-                    DmsEventName[] names = st.eventName();
-                    List<DmsEventName> nameList = Arrays.asList(names);
-                    for (DmsEventName nCurrent : evt.eventName()) {
-
-                        if (nameList.contains(nCurrent) && st.when().equals(_when)) {
+            EventDispatchTable table = dispatchTable();
+            for (DmsEventName nCurrent : evt.eventName()) {
+                if (table.handles(nCurrent, DmsEventOccur.AFTER, true).length > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-                            if(logger.isTraceEnabled()){
-                                logger.trace(" will call " + it.getName() + " on " + this.getClass().getName() + " with "
-                                        + ctx + " ( " + ctx.getEntity() + ") on event " + nCurrent.name() + ". accepted ? " + nameList.contains(nCurrent) + " / " + _when.name());
-                            }
+    /**
+     * Handler methods of this handler by event and phase, built on first use (at registration for the
+     * handlers of the event handler manager)
+     */
+    final public EventDispatchTable dispatchTable()
+    {
+        EventDispatchTable table = dispatchTable;
+        if (table == null) {
+            table = new EventDispatchTable(this.getClass());
+            dispatchTable = table;
+        }
+        return table;
+    }
 
-                            /*
-                            *  Generate the before context
-                            */
-                            Object[] tab = new Object[1];
-                            tab[0] = arguments;
-                            try {
-                                it.invoke(this, tab[0], methodReturn, ctx);
-                            } catch (InvocationTargetException ex) {
-                                /*
-                                   Get thrown exception
-                                */
-                                throw ex.getCause();
-                            }
-                        }
+    private IEventContext dispatch(Method method, Object[] arguments, DmsEventOccur _when, Object methodReturn,
+                                   EventContext ctx, boolean async) throws Throwable
+    {
+        DmsEvent evt = method.getAnnotation(DmsEvent.class);
+        if (evt != null) {
+            EventDispatchTable table = dispatchTable();
+            for (DmsEventName nCurrent : evt.eventName()) {
+                for (MethodHandle it : table.handles(nCurrent, _when, async)) {
+                    if(logger.isTraceEnabled()){
+                        logger.trace(" will call " + it + " on " + this.getClass().getName() + " with "
+                                + ctx + " ( " + ctx.getEntity() + ") on event " + nCurrent.name() + " / " + _when.name());
                     }
+                    it.invokeExact(this, arguments, methodReturn, ctx);
                 }
             }
         }
@@ -32,6 +32,7 @@ import org.kimios.kernel.events.model.EventContext;
 import org.kimios.kernel.log.ActionType;
 import org.kimios.kernel.log.FactoryInstantiator;
 import org.kimios.kernel.log.model.DMEntityLog;
+import org.kimios.kernel.security.SessionManager;
 import org.kimios.kernel.security.model.Session;
 import org.kimios.kernel.ws.pojo.Share;
 import org.kimios.kernel.ws.pojo.ShareSessionWrapper;
@@ -41,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -56,13 +58,13 @@ public class ActionLogger extends GenericEventHandler
     private static String BROWSE_OPERATIONS = "browse operations";
 
     Gson gson = new Gson();
-    Map<String, RuleCheckFunctionalInterface> noticeSendingRules = new HashMap<>();
+    UpdateNoticeRouter noticeRouter = UpdateNoticeRouter.getInstance();
+    Map<String, RecipientsFunctionalInterface> noticeSendingRules = new HashMap<>();
     Map<String, List<UpdateNoticeType>> noticeTypeGroups = new HashMap<>();
 
     public ActionLogger() {
-        RuleCheckFunctionalInterface mustBeAdmin = (session, dmEntityId) ->  isAdmin(session);
-        RuleCheckFunctionalInterface mustHaveRead = (session, dmEntityId) ->
-                canRead(session, dmEntityId) || isAdmin(session);
+        RecipientsFunctionalInterface mustBeAdmin = dmEntityId -> noticeRouter.admins();
+        RecipientsFunctionalInterface mustHaveRead = dmEntityId -> noticeRouter.readers(dmEntityId);
 
         noticeTypeGroups.put(
                 USER_GROUP_OPERATIONS,
@@ -400,6 +402,7 @@ public class ActionLogger extends GenericEventHandler
         if (group == null || user == null || source == null) {
             return;
         }
+        SessionManager.getInstance().invalidateUserGroups(user, source);
         this.sendUserGroupChange(source, group, user, UpdateNoticeType.USER_GROUP_ADD);
     }
 
@@ -412,6 +415,7 @@ public class ActionLogger extends GenericEventHandler
         if (group == null || user == null || source == null) {
             return;
         }
+        SessionManager.getInstance().invalidateUserGroups(user, source);
         this.sendUserGroupChange(source, group, user, UpdateNoticeType.USER_GROUP_REMOVE);
     }
 
@@ -474,6 +478,9 @@ public class ActionLogger extends GenericEventHandler
     public void groupDelete(Object[] paramsObj, Object returnObj, EventContext ctx) {
         String group = (String) EventContext.getParameters().get("group");
         String source = (String) EventContext.getParameters().get("source");
+        if (source != null) {
+            SessionManager.getInstance().invalidateSourceGroups(source);
+        }
         Map<String, Object> messageProperties = this.makePropertiesMap(
                 new AbstractMap.SimpleEntry<String, Object>("group", group),
                 new AbstractMap.SimpleEntry<String, Object>("source", source)
@@ -524,23 +531,23 @@ public class ActionLogger extends GenericEventHandler
     }
 
     private void sendDocumentUpdateNotice(String sessionUid, Document document) {
-        FactoryInstantiator.getInstance().getSessionManager().getSessions().forEach(session -> {
-            if (FactoryInstantiator.getInstance().getSecurityController().canRead(session, document.getUid())) {
-                FactoryInstantiator.getInstance().getWebSocketManager().sendUpdateNotice(
+        String json = gson.toJson(document);
+        noticeRouter.send(
+                noticeRouter.readers(document).stream().map(session ->
                         new UpdateNoticeMessage(
                                 UpdateNoticeType.DOCUMENT,
                                 null,
                                 session.getUid(),
-                                gson.toJson(document)
+                                json
                         )
-                );
-            }
-        });
+                ).collect(Collectors.toList())
+        );
     }
 
     private void sendShareUpdateNotice(Session session, Share share) {
+        List<UpdateNoticeMessage> messages = new ArrayList<>();
         // to share creator
-        FactoryInstantiator.getInstance().getWebSocketManager().sendUpdateNotice(
+        messages.add(
                 new UpdateNoticeMessage(
                         UpdateNoticeType.SHARES_BY_ME,
                         null,
@@ -549,18 +556,16 @@ public class ActionLogger extends GenericEventHandler
         );
 
         // to all share target user sessions
-        FactoryInstantiator.getInstance().getSessionManager().getSessions().stream().filter(sess ->
-                sess.getUserName().equals(share.getTargetUserId())
-                && sess.getUserSource().equals(share.getTargetUserSource())
-        ).forEach(sess -> {
-            FactoryInstantiator.getInstance().getWebSocketManager().sendUpdateNotice(
+        noticeRouter.sessions(share.getTargetUserId(), share.getTargetUserSource()).forEach(sess ->
+            messages.add(
                     new UpdateNoticeMessage(
                             UpdateNoticeType.SHARES_WITH_ME,
                             null,
                             sess.getUid()
                     )
-            );
-        });
+            )
+        );
+        noticeRouter.send(messages);
     }
 
     private void sendUserGroupChange(String source, String group, String user, UpdateNoticeType updateNoticeType) {
@@ -593,18 +598,16 @@ public class ActionLogger extends GenericEventHandler
         }
 
         String finalJsonString = jsonString;
-        FactoryInstantiator.getInstance().getSessionManager().getSessions().stream().filter(sess ->
-                shouldReceiveNotice(sess, updateNoticeGroup, null)
-        ).forEach(sess -> {
-            FactoryInstantiator.getInstance().getWebSocketManager().sendUpdateNotice(
+        noticeRouter.send(
+                noticeRecipients(updateNoticeGroup, null).stream().map(sess ->
                     new UpdateNoticeMessage(
                             updateNoticeType,
                             null,
                             sess.getUid(),
                             finalJsonString
                     )
-            );
-        });
+                ).collect(Collectors.toList())
+        );
     }
 
     private Map<String, Object> makePropertiesMap(AbstractMap.SimpleEntry<String, Object>... entries) {
@@ -635,41 +638,35 @@ public class ActionLogger extends GenericEventHandler
             return;
         }
 
-        FactoryInstantiator.getInstance().getSessionManager().getSessions().stream().filter(sess ->
-                shouldReceiveNotice(sess, updateNoticeGroup, dmEntityId)
-        ).forEach(sess ->
-            FactoryInstantiator.getInstance().getWebSocketManager().sendUpdateNotice(
+        String json = gson.toJson(messageProperties);
+        noticeRouter.send(
+                noticeRecipients(updateNoticeGroup, dmEntityId).stream().map(sess ->
                     new UpdateNoticeMessage(
                             updateNoticeType,
                             null,
                             sess.getUid(),
-                            gson.toJson(messageProperties)
+                            json
                     )
-            )
+                ).collect(Collectors.toList())
         );
     }
 
-    private boolean shouldReceiveNotice(Session session, String updateNoticeGroup, Long dmEntityId) {
-        RuleCheckFunctionalInterface ruleCheckFunctionalInterface =
+    private List<Session> noticeRecipients(String updateNoticeGroup, Long dmEntityId) {
+        RecipientsFunctionalInterface recipientsFunctionalInterface =
                 this.noticeSendingRules.get(updateNoticeGroup);
 
-        if (ruleCheckFunctionalInterface == null) {
-            return true;
+        if (recipientsFunctionalInterface == null) {
+            return noticeRouter.sessions();
         }
-        return ruleCheckFunctionalInterface.check(session, dmEntityId);
-    }
-
-    private boolean isAdmin(Session session) {
-        return FactoryInstantiator.getInstance().getSecurityController().isAdmin(session);
-    }
-
-    private Boolean canRead(Session session, Long dmEntityId) {
-        return FactoryInstantiator.getInstance().getSecurityController().canRead(session, dmEntityId);
+        return recipientsFunctionalInterface.recipients(dmEntityId);
     }
 
+    /**
+     * Live sessions an update notice about an entity (or none) must be sent to
+     */
     @FunctionalInterface
-    public interface RuleCheckFunctionalInterface {
-        Boolean check(Session session, Long dmEntity);
+    public interface RecipientsFunctionalInterface {
+        List<Session> recipients(Long dmEntity);
     }
 }
 
@@ -0,0 +1,215 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.events.impl;
+
+import org.kimios.kernel.dms.model.DMEntity;
+import org.kimios.kernel.log.FactoryInstantiator;
+import org.kimios.kernel.security.LiveSessionIndex;
+import org.kimios.kernel.security.model.DMEntityACL;
+import org.kimios.kernel.security.model.Session;
+import org.kimios.kernel.ws.pojo.UpdateNoticeMessage;
+import org.kimios.websocket.client.controller.IWebSocketManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the recipients of update notices in the live sessions index, and sends the notices to the
+ * websocket server from a single background thread, once the transaction of the change is committed.
+ *
+ * The readers of an entity are resolved with one query (its ACL), whatever the number of live sessions.
+ * Batches of notices waiting to be sent are bounded: when the queue is full, new ones are dropped.
+ */
+public class UpdateNoticeRouter
+{
+    private static Logger log = LoggerFactory.getLogger(UpdateNoticeRouter.class);
+
+    private static final int QUEUE_SIZE = 10000;
+
+    private static final UpdateNoticeRouter instance = new UpdateNoticeRouter();
+
+    static UpdateNoticeRouter getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Stop the sending thread, after the notices already queued, when the context is closed
+     */
+    public static void shutdown()
+    {
+        instance.executor.shutdown();
+        try {
+            if (!instance.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("update notices still queued after 30 s, giving up");
+                instance.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final LiveSessionIndex liveSessions = LiveSessionIndex.getInstance();
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "UpdateNoticeRouter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private UpdateNoticeRouter()
+    {
+    }
+
+    /**
+     * Sessions allowed to read an entity, administrators only if it doesn't exist anymore
+     */
+    List<Session> readers(Long dmEntityId)
+    {
+        DMEntity entity = dmEntityId != null ?
+                org.kimios.kernel.dms.FactoryInstantiator.getInstance().getDmEntityFactory().getEntity(dmEntityId)
+                : null;
+        return entity != null ? readers(entity) : admins();
+    }
+
+    List<Session> readers(DMEntity entity)
+    {
+        resolveAdmins();
+        List<String> aclHashes = new ArrayList<String>();
+        for (DMEntityACL acl : org.kimios.kernel.security.FactoryInstantiator.getInstance()
+                .getDMEntitySecurityFactory().getDMEntityACL(entity)) {
+            aclHashes.add(acl.getRuleHash());
+        }
+        return liveSessions.readers(entity.getOwner(), entity.getOwnerSource(), aclHashes);
+    }
+
+    List<Session> admins()
+    {
+        resolveAdmins();
+        return liveSessions.admins();
+    }
+
+    List<Session> sessions(String userName, String userSource)
+    {
+        return liveSessions.sessions(userName, userSource);
+    }
+
+    List<Session> sessions()
+    {
+        return liveSessions.sessions();
+    }
+
+    /*
+        admin flags are read here, on the thread of the event, as it may need the database
+     */
+    private void resolveAdmins()
+    {
+        liveSessions.resolveAdmins(session ->
+                FactoryInstantiator.getInstance().getSecurityController().isAdmin(session));
+    }
+
+    /**
+     * Send notices once the current transaction is committed (none if it is rolled back), or right away
+     * without transaction
+     */
+    void send(final List<UpdateNoticeMessage> messages)
+    {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    if (status == STATUS_COMMITTED) {
+                        submit(messages);
+                    }
+                }
+            });
+        } else {
+            submit(messages);
+        }
+    }
+
+    private void submit(final List<UpdateNoticeMessage> messages)
+    {
+        try {
+            executor.execute(() -> deliver(messages));
+        } catch (RejectedExecutionException e) {
+            dropped.addAndGet(messages.size());
+            if (executor.isShutdown()) {
+                log.debug("update notices router shut down, {} notice(s) dropped", messages.size());
+                return;
+            }
+            log.warn("update notices queue is full, {} notice(s) of type {} dropped", messages.size(),
+                    messages.get(0).getUpdateNoticeType());
+        }
+    }
+
+    private void deliver(List<UpdateNoticeMessage> messages)
+    {
+        IWebSocketManager webSocketManager = FactoryInstantiator.getInstance().getWebSocketManager();
+        for (UpdateNoticeMessage message : messages) {
+            try {
+                webSocketManager.sendUpdateNotice(message);
+                sent.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("unable to send update notice " + message.getUpdateNoticeType()
+                        + " to session " + message.getSessionId(), e);
+            }
+        }
+    }
+
+    long getSent()
+    {
+        return sent.get();
+    }
+
+    long getDropped()
+    {
+        return dropped.get();
+    }
+
+    long getFailed()
+    {
+        return failed.get();
+    }
+}
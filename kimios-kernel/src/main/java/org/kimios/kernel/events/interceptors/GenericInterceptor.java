@@ -17,13 +17,14 @@ package org.kimios.kernel.events.interceptors;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.kimios.kernel.events.AsyncEventBus;
 import org.kimios.kernel.events.ContextBuilder;
 import org.kimios.kernel.events.IEventHandlerManager;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.kernel.events.GenericEventHandler;
 import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventOccur;
-import org.kimios.kernel.rules.model.RuleBean;
+import org.kimios.kernel.rules.CompiledRule;
 import org.kimios.kernel.rules.RuleManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,7 +71,7 @@ public class GenericInterceptor implements MethodInterceptor
             it.process(arg0.getMethod(), arg0.getArguments(),  DmsEventOccur.BEFORE, null, ctx);
         }
         //process rules before (before state)
-        List<RuleBean> rulesBeans = null;
+        List<CompiledRule> rulesBeans = null;
         if (rulesManagementEnabled) {
             //keep rules bean selected
             rulesBeans = ruleManager.processRulesBefore(arg0.getMethod(), arg0.getArguments());
@@ -87,6 +88,11 @@ public class GenericInterceptor implements MethodInterceptor
         for (GenericEventHandler it : eventHandlerManager.handlers()) {
             it.process(arg0.getMethod(), arg0.getArguments(), DmsEventOccur.AFTER, ret, ctx);
         }
+        //schedule asynchronous handlers after (once committed)
+        if (evt != null) {
+            AsyncEventBus.getInstance().publish(eventHandlerManager.handlers(), arg0.getMethod(),
+                    arg0.getArguments(), ret, ctx);
+        }
         EventContext.clear();
         return ret;
     }
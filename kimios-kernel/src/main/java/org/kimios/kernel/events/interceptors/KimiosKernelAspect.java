@@ -25,13 +25,14 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.kimios.kernel.dms.model.Document;
 import org.kimios.kernel.dms.model.Folder;
 import org.kimios.kernel.dms.model.Workspace;
+import org.kimios.kernel.events.AsyncEventBus;
 import org.kimios.kernel.events.ContextBuilder;
 import org.kimios.kernel.events.IEventHandlerManager;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.kernel.events.GenericEventHandler;
 import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventOccur;
-import org.kimios.kernel.rules.model.RuleBean;
+import org.kimios.kernel.rules.CompiledRule;
 import org.kimios.kernel.rules.RuleManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,7 +117,7 @@ public class KimiosKernelAspect {
             ctx.setCurrentOccur(DmsEventOccur.BEFORE);
             //process events (before state)
 
-            List<RuleBean> rulesBeans = null;
+            List<CompiledRule> rulesBeans = null;
             if(evt != null){
                 if(log.isTraceEnabled()){
                     log.trace("event entity context {} ", ctx.getEntity());
@@ -167,6 +168,8 @@ public class KimiosKernelAspect {
                     }
                     it.process(method, pjp.getArgs(), DmsEventOccur.AFTER, ret, ctx);
                 }
+                //schedule asynchronous handlers after (once committed)
+                AsyncEventBus.getInstance().publish(eventHandlerManager.handlers(), method, pjp.getArgs(), ret, ctx);
             }
 
             EventContext.clear();
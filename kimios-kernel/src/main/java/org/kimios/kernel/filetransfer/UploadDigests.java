@@ -0,0 +1,146 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.filetransfer;
+
+import org.kimios.utils.hash.HashCalculator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MD5 and SHA-1 of an upload, computed while its bytes are written to the transaction file, so the
+ * integrity check at the end of the upload does not read the file again.
+ *
+ * Digests are kept in memory by transaction uid, for uncompressed uploads only (the hashes sent by
+ * clients are those of the uncompressed content). They are only trusted when the number of bytes
+ * digested is the length of the transaction file: an upload whose chunks were received by another
+ * node or before a restart is hashed from its file instead.
+ */
+public class UploadDigests
+{
+    private static final int MAX_UPLOADS = 1000;
+
+    private static final ConcurrentHashMap<Long, UploadDigests> uploads = new ConcurrentHashMap<Long, UploadDigests>();
+
+    private final MessageDigest md5;
+
+    private final MessageDigest sha1;
+
+    private long length;
+
+    private String hashMD5;
+
+    private String hashSHA1;
+
+    private UploadDigests() throws NoSuchAlgorithmException
+    {
+        md5 = MessageDigest.getInstance(HashCalculator.MD5);
+        sha1 = MessageDigest.getInstance(HashCalculator.SHA1);
+    }
+
+    /**
+     * Start digesting the chunks of an upload transaction
+     */
+    public static void start(long transactionUid)
+    {
+        try {
+            if (uploads.size() >= MAX_UPLOADS) {
+                // abandoned uploads: the ones still running fall back to hashing their file
+                uploads.clear();
+            }
+            uploads.put(transactionUid, new UploadDigests());
+        } catch (NoSuchAlgorithmException e) {
+            // no digest: hashed from the file at the end of the upload
+        }
+    }
+
+    /**
+     * Digests of an upload transaction, if its chunks are being digested
+     */
+    public static UploadDigests get(long transactionUid)
+    {
+        return uploads.get(transactionUid);
+    }
+
+    /**
+     * Digests of an upload transaction, no longer updated, if all bytes of its file of the given length
+     * were digested
+     */
+    public static UploadDigests end(long transactionUid, long fileLength)
+    {
+        UploadDigests digests = uploads.remove(transactionUid);
+        return digests != null && digests.length == fileLength ? digests.finish() : null;
+    }
+
+    /**
+     * Digests of a whole stream, in a single read
+     */
+    public static UploadDigests of(InputStream in) throws IOException, NoSuchAlgorithmException
+    {
+        UploadDigests digests = new UploadDigests();
+        try {
+            byte[] buffer = new byte[65536];
+            int len;
+            while ((len = in.read(buffer)) > -1) {
+                digests.update(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return digests.finish();
+    }
+
+    public long getLength()
+    {
+        return length;
+    }
+
+    public void update(byte[] data, int offset, int len)
+    {
+        md5.update(data, offset, len);
+        sha1.update(data, offset, len);
+        length += len;
+    }
+
+    private UploadDigests finish()
+    {
+        hashMD5 = toHexString(md5.digest());
+        hashSHA1 = toHexString(sha1.digest());
+        return this;
+    }
+
+    public static String toHexString(byte[] digest)
+    {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public String getHashMD5()
+    {
+        return hashMD5;
+    }
+
+    public String getHashSHA1()
+    {
+        return hashSHA1;
+    }
+}
@@ -0,0 +1,46 @@
+package org.kimios.kernel.jobs;
+
+import org.kimios.kernel.controller.IPathController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+/**
+ * Rewrites the paths left to rewrite under the containers renamed, moved, trashed or restored, one block per
+ * transaction, until none is left.
+ */
+public class PathRewriterJob extends JobImpl<Integer> implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(PathRewriterJob.class);
+
+    /* paths rewritten in one transaction */
+    private static final int BLOCK_SIZE = 500;
+
+    private IPathController pathController;
+
+    public PathRewriterJob(IPathController pathController) {
+        //generate task id
+        super( UUID.randomUUID().toString() );
+
+        this.pathController = pathController;
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.execute();
+        } catch (Exception e) {
+            logger.error("path rewrite failed, will be resumed", e);
+        }
+    }
+
+    @Override
+    public Integer execute() throws Exception {
+        int blocks = 0;
+        while (!Thread.currentThread().isInterrupted() && pathController.rewritePaths(BLOCK_SIZE)) {
+            blocks++;
+        }
+        return blocks;
+    }
+}
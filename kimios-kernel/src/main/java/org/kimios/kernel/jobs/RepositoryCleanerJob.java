@@ -3,6 +3,7 @@ package org.kimios.kernel.jobs;
 import org.kimios.kernel.configuration.Config;
 import org.kimios.kernel.controller.IDocumentVersionController;
 import org.kimios.kernel.dms.model.DocumentVersion;
+import org.kimios.kernel.repositories.impl.RepositoryManager;
 import org.kimios.utils.configuration.ConfigurationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,8 +16,12 @@ public class RepositoryCleanerJob extends JobImpl<Integer> implements Runnable {
 
     private static Logger logger = LoggerFactory.getLogger(RepositoryCleanerJob.class);
 
+    private static final long DEFAULT_GC_INTERVAL = 60;
+
     private IDocumentVersionController versionController;
 
+    private long lastGarbageCollection = System.currentTimeMillis();
+
     public RepositoryCleanerJob(IDocumentVersionController versionController) {
         //generate task id
         super( UUID.randomUUID().toString() );
@@ -47,6 +52,23 @@ public class RepositoryCleanerJob extends JobImpl<Integer> implements Runnable {
             versionController.deleteDocumentVersion(v.getUid());
             deleted++;
         }
+        if (System.currentTimeMillis() - lastGarbageCollection > gcInterval() * 60000) {
+            lastGarbageCollection = System.currentTimeMillis();
+            RepositoryManager.collectGarbage();
+        }
         return deleted;
     }
+
+    private static long gcInterval() {
+        try {
+            String value = ConfigurationManager.getValue(Config.REPOSITORY_GC_INTERVAL);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            logger.warn("unable to read setting {}, will use default value {}",
+                    Config.REPOSITORY_GC_INTERVAL, DEFAULT_GC_INTERVAL);
+        }
+        return DEFAULT_GC_INTERVAL;
+    }
 }
@@ -0,0 +1,262 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.repositories.impl;
+
+import org.kimios.exceptions.ConfigException;
+import org.kimios.exceptions.DataSourceException;
+import org.kimios.exceptions.RepositoryException;
+import org.kimios.kernel.dms.model.DocumentVersion;
+import org.kimios.kernel.filetransfer.UploadDigests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * Repository storing each distinct content once, as a blob named by its SHA-1 under /cas/blobs.
+ *
+ * The storage path of a version is a hard link to its blob: versions with the same content (copies,
+ * versions created from the latest one, duplicate uploads) share one blob, copies are link creations
+ * only, and the storage path still reads as a regular file for the code accessing it directly. The
+ * reference count of a blob is its link count: a blob with no other link than its own name is no longer
+ * referenced and is removed by the garbage collection, run by the repository cleaner job.
+ *
+ * Blobs are never modified: writes store a new blob and relink the version to it. The repository must
+ * be on a file system supporting hard links and exposing link counts (unix:nlink).
+ *
+ * Selected with org.kimios.kernel.repositories.impl.ContentAddressedRepositoryAccessor as implementor
+ * of the default repository.
+ */
+public class ContentAddressedRepositoryAccessor extends DefaultRepositoryAccessor {
+
+    private static Logger log = LoggerFactory.getLogger(ContentAddressedRepositoryAccessor.class);
+
+    private static final String BLOBS_DIR = "/cas/blobs";
+
+    private static final String TMP_DIR = "/cas/tmp";
+
+    /* blob creations and removals of a SHA-1 are done under the same lock */
+    private final Object[] locks = new Object[64];
+
+    public ContentAddressedRepositoryAccessor(String repositoryPath) throws IOException {
+        super(repositoryPath);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        Files.createDirectories(Paths.get(defaultRepositoryPath + BLOBS_DIR));
+        Files.createDirectories(Paths.get(defaultRepositoryPath + TMP_DIR));
+        try {
+            linkCount(Paths.get(defaultRepositoryPath + BLOBS_DIR));
+        } catch (UnsupportedOperationException e) {
+            throw new RepositoryException("Content addressed repository " + repositoryPath
+                    + " needs a file system with hard links");
+        }
+    }
+
+    @Override
+    public void writeVersion(DocumentVersion version, InputStream in)
+            throws DataSourceException, ConfigException, RepositoryException {
+        try {
+            File tmp = tmpFile();
+            MessageDigest sha1 = sha1();
+            OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), sha1);
+            try {
+                byte[] buffer = new byte[65536];
+                int len;
+                while ((len = in.read(buffer)) > -1) {
+                    out.write(buffer, 0, len);
+                }
+            } finally {
+                out.close();
+            }
+            store(version, tmp, UploadDigests.toHexString(sha1.digest()));
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * The file content is stored under the version SHA-1, as checked by the upload integrity check;
+     * it is hashed when the version has none.
+     */
+    @Override
+    public void moveVersionFile(DocumentVersion version, File file)
+            throws DataSourceException, ConfigException, RepositoryException {
+        try {
+            String hash = version.getHashSHA1();
+            if (hash == null || hash.length() != 40) {
+                hash = UploadDigests.of(new FileInputStream(file)).getHashSHA1();
+            }
+            File tmp = tmpFile();
+            try {
+                Files.move(file.toPath(), tmp.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(file.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            store(version, tmp, hash.toLowerCase());
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * Content is stored once the returned stream is closed
+     */
+    @Override
+    public OutputStream accessOutputStreamVersion(final DocumentVersion version) throws Exception {
+        final File tmp = tmpFile();
+        final MessageDigest sha1 = sha1();
+        return new FilterOutputStream(new DigestOutputStream(new FileOutputStream(tmp), sha1)) {
+            private boolean closed;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                super.close();
+                store(version, tmp, UploadDigests.toHexString(sha1.digest()));
+            }
+        };
+    }
+
+    @Override
+    public RandomAccessFile randomAccessFile(DocumentVersion version, String mode) throws Exception {
+        if (!"r".equals(mode)) {
+            throw new RepositoryException("No random write access available for content addressed repository");
+        }
+        return super.randomAccessFile(version, mode);
+    }
+
+    @Override
+    public void initRepositoryStorage(DocumentVersion version) throws Exception {
+        if (!new File(defaultRepositoryPath + version.getStoragePath()).exists()) {
+            File tmp = tmpFile();
+            tmp.createNewFile();
+            store(version, tmp, UploadDigests.toHexString(sha1().digest()));
+        }
+    }
+
+    @Override
+    public void copyVersion(DocumentVersion source, DocumentVersion target)
+            throws DataSourceException, ConfigException, RepositoryException {
+        try {
+            link(Paths.get(defaultRepositoryPath + source.getStoragePath()),
+                    Paths.get(defaultRepositoryPath + target.getStoragePath()));
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * Remove the blobs no longer linked from a version storage path
+     *
+     * @return the number of blobs removed
+     */
+    public int collectGarbage() throws RepositoryException {
+        final int[] removed = new int[1];
+        try {
+            Files.walkFileTree(Paths.get(defaultRepositoryPath + BLOBS_DIR), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    synchronized (lock(file.getFileName().toString())) {
+                        if (linkCount(file) <= 1) {
+                            Files.deleteIfExists(file);
+                            removed[0]++;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+        if (removed[0] > 0) {
+            log.info("content addressed repository {}: {} unreferenced blobs removed", defaultRepositoryPath,
+                    removed[0]);
+        }
+        return removed[0];
+    }
+
+    /*
+        Make the written temporary file the version content: it becomes the blob of its hash unless the
+        blob already exists (it is then dropped), and the storage path is linked to the blob
+     */
+    private void store(DocumentVersion version, File tmp, String hash) throws IOException {
+        Path blob = Paths.get(defaultRepositoryPath + BLOBS_DIR + "/" + hash.substring(0, 2) + "/"
+                + hash.substring(2, 4) + "/" + hash);
+        long length = tmp.length();
+        synchronized (lock(hash)) {
+            if (Files.exists(blob)) {
+                Files.delete(tmp.toPath());
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.move(tmp.toPath(), blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            link(blob, Paths.get(defaultRepositoryPath + version.getStoragePath()));
+        }
+        version.setLength(length);
+    }
+
+    /*
+        Link the target path to the file of the existing path, replacing the target atomically
+     */
+    private void link(Path existing, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmpLink = Paths.get(defaultRepositoryPath + TMP_DIR + "/" + UUID.randomUUID() + ".lnk");
+        Files.createLink(tmpLink, existing);
+        try {
+            Files.move(tmpLink, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // left in place when the target already was a link to the same file
+            Files.deleteIfExists(tmpLink);
+        }
+    }
+
+    private File tmpFile() {
+        return new File(defaultRepositoryPath + TMP_DIR + "/" + UUID.randomUUID() + ".tmp");
+    }
+
+    private Object lock(String hash) {
+        return locks[(hash.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private static int linkCount(Path path) throws IOException {
+        return ((Number) Files.getAttribute(path, "unix:nlink")).intValue();
+    }
+
+    private static MessageDigest sha1() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -25,6 +25,14 @@ import org.kimios.exceptions.RepositoryException;
 import org.kimios.kernel.repositories.model.RepositoryAccessor;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * Created by farf on 7/12/14.
@@ -32,7 +40,7 @@ import java.io.*;
 public class DefaultRepositoryAccessor implements RepositoryAccessor {
 
 
-    private String defaultRepositoryPath;
+    protected String defaultRepositoryPath;
 
     public DefaultRepositoryAccessor(String repositoryPath){
         defaultRepositoryPath = repositoryPath;
@@ -58,18 +66,38 @@ public class DefaultRepositoryAccessor implements RepositoryAccessor {
                             defaultRepositoryPath + version.getStoragePath()));
             BufferedInputStream input = new BufferedInputStream(in);
             int len = 0;
+            long length = 0;
             byte[] buffer = new byte[10000];
             while ((len = input.read(buffer)) > 0) {
                 out.write(buffer, 0, len);
+                length += len;
             }
             out.flush();
             out.close();
+            version.setLength(length);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
 
-            FileInputStream fis =
-                    new FileInputStream(
-                            defaultRepositoryPath + version.getStoragePath());
-            version.setLength(fis.available());
-            fis.close();
+    public void moveVersionFile(DocumentVersion version, File file)
+            throws DataSourceException, ConfigException, RepositoryException
+    {
+        try {
+            String storageDirPath = version.getStoragePath().substring(0, version.getStoragePath().lastIndexOf("/"));
+            File f = new File(defaultRepositoryPath + storageDirPath);
+            if (!f.exists()) {
+                f.mkdirs();
+            }
+            File target = new File(defaultRepositoryPath + version.getStoragePath());
+            long length = file.length();
+            try {
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                // transaction files on another file system: copied, then deleted
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            version.setLength(length);
         } catch (IOException e) {
             throw new RepositoryException(e);
         }
@@ -150,6 +178,77 @@ public class DefaultRepositoryAccessor implements RepositoryAccessor {
         }
     }
 
+    public long readVersionRange(DocumentVersion version, long offset, long length, OutputStream out)
+            throws DataSourceException, ConfigException, RepositoryException {
+        try {
+            return readRange(new File(defaultRepositoryPath + version.getStoragePath()), offset, length, out);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    public byte[] readVersionChunk(DocumentVersion version, long offset, int length)
+            throws DataSourceException, ConfigException, RepositoryException {
+        try {
+            return readChunk(new File(defaultRepositoryPath + version.getStoragePath()), offset, length);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    public byte[] readFileChunk(String path, long offset, int length)
+            throws ConfigException, RepositoryException {
+        try {
+            return readChunk(new File(defaultRepositoryPath + path), offset, length);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * Write at most length bytes of the file, from offset, to the stream. Bytes are transferred by the
+     * file channel, without going through the heap when the stream is backed by a file or a socket.
+     */
+    public static long readRange(File file, long offset, long length, OutputStream out) throws IOException
+    {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = length < channel.size() - offset ? offset + length : channel.size();
+            long position = offset;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return Math.max(0, position - offset);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read at most length bytes of the file from offset, with positional reads
+     */
+    public static byte[] readChunk(File file, long offset, int length) throws IOException
+    {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - offset)));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return buffer.position() == buffer.capacity() ?
+                    buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+        } finally {
+            channel.close();
+        }
+    }
+
     public File directFileAccess(DocumentVersion version){
         File file =  new File(defaultRepositoryPath + version.getStoragePath());
         if(!file.exists()){
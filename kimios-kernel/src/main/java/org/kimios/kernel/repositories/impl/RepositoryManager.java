@@ -96,12 +96,36 @@ public class RepositoryManager
         init().defaultAccessor.writeVersion(version, in);
     }
 
+    public static void moveVersionFile(DocumentVersion version, File file)
+            throws DataSourceException, ConfigException, RepositoryException
+    {
+        init().defaultAccessor.moveVersionFile(version, file);
+    }
+
     public static void readVersionToStream(DocumentVersion version, OutputStream out)
             throws DataSourceException, ConfigException, RepositoryException
     {
         init().defaultAccessor.readVersionToStream(version, out);
     }
 
+    public static long readVersionRange(DocumentVersion version, long offset, long length, OutputStream out)
+            throws DataSourceException, ConfigException, RepositoryException
+    {
+        return init().defaultAccessor.readVersionRange(version, offset, length, out);
+    }
+
+    public static byte[] readVersionChunk(DocumentVersion version, long offset, int length)
+            throws DataSourceException, ConfigException, RepositoryException
+    {
+        return init().defaultAccessor.readVersionChunk(version, offset, length);
+    }
+
+    public static byte[] readFileChunk(String path, long offset, int length)
+            throws ConfigException, RepositoryException
+    {
+        return init().defaultAccessor.readFileChunk(path, offset, length);
+    }
+
     public static OutputStream accessOutputStreamVersion(DocumentVersion version) throws Exception
     {
         return init().defaultAccessor.accessOutputStreamVersion(version);
@@ -132,6 +156,21 @@ public class RepositoryManager
         this.repositoryService = repositoryService;
     }
 
+    /**
+     * Remove the contents no longer referenced by a version, for repositories sharing contents between
+     * versions
+     *
+     * @return the number of contents removed
+     */
+    public static int collectGarbage() throws RepositoryException
+    {
+        RepositoryAccessor accessor = init().defaultAccessor;
+        if (accessor instanceof ContentAddressedRepositoryAccessor) {
+            return ((ContentAddressedRepositoryAccessor) accessor).collectGarbage();
+        }
+        return 0;
+    }
+
     public static void copyVersion(DocumentVersion source, DocumentVersion target)
             throws DataSourceException, ConfigException, RepositoryException
     {
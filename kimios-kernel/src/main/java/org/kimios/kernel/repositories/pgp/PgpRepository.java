@@ -23,6 +23,7 @@ import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
 import org.kimios.exceptions.ConfigException;
 import org.kimios.kernel.dms.model.DocumentVersion;
+import org.kimios.kernel.repositories.impl.DefaultRepositoryAccessor;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.exceptions.RepositoryException;
 import org.kimios.kernel.repositories.model.RepositoryAccessor;
@@ -115,6 +116,21 @@ public class PgpRepository implements RepositoryAccessor {
         }
     }
 
+    public void moveVersionFile(DocumentVersion version, File file)
+            throws DataSourceException, ConfigException, RepositoryException {
+        // content is stored encrypted: written from the file, which is then removed
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            writeVersion(version, in);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        } finally {
+            org.apache.commons.io.IOUtils.closeQuietly(in);
+        }
+        file.delete();
+    }
+
     public OutputStream accessOutputStreamVersion(DocumentVersion version) throws Exception {
         throw new RepositoryException("No direct output stream access available for PGP Repository");
     }
@@ -176,6 +192,37 @@ public class PgpRepository implements RepositoryAccessor {
         }
     }
 
+    public long readVersionRange(DocumentVersion version, long offset, long length, OutputStream out)
+            throws DataSourceException, ConfigException, RepositoryException {
+        // no random access in encrypted content: decrypted up to the range
+        InputStream in = null;
+        try {
+            in = accessVersionStream(version);
+            return org.apache.commons.io.IOUtils.copyLarge(in, out, offset, length);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        } finally {
+            org.apache.commons.io.IOUtils.closeQuietly(in);
+        }
+    }
+
+    public byte[] readVersionChunk(DocumentVersion version, long offset, int length)
+            throws DataSourceException, ConfigException, RepositoryException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        readVersionRange(version, offset, length, out);
+        return out.toByteArray();
+    }
+
+    public byte[] readFileChunk(String path, long offset, int length)
+            throws ConfigException, RepositoryException {
+        // files apart from the versions are not encrypted
+        try {
+            return DefaultRepositoryAccessor.readChunk(new File(defaultRepositoryPath + path), offset, length);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
     @Override
     public File directFileAccess(DocumentVersion documentVersion) throws RepositoryException {
         throw new RepositoryException("method not available");
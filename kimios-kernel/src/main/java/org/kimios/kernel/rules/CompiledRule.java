@@ -0,0 +1,181 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.rules;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.kimios.api.events.annotations.DmsEventName;
+import org.kimios.api.events.annotations.DmsEventOccur;
+import org.kimios.kernel.rules.impl.RuleImpl;
+import org.kimios.kernel.rules.model.EventBean;
+import org.kimios.kernel.rules.model.RuleBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rule as stored in a {@link RuleBean}, with its class, parameter fields and json parameters resolved
+ * once. Instances are immutable and shared: each evaluation gets a new {@link RuleImpl} from
+ * {@link #newInstance()}.
+ */
+public final class CompiledRule
+{
+    private static Logger log = LoggerFactory.getLogger(CompiledRule.class);
+
+    private final long id;
+
+    private final String name;
+
+    private final String path;
+
+    private final boolean recursive;
+
+    /* event name ordinals, by event status ordinal */
+    private final BitSet[] events;
+
+    private final Constructor<? extends RuleImpl> constructor;
+
+    private final Field[] fields;
+
+    private final Object[] values;
+
+    private final Map<String, String> parametersData;
+
+    public CompiledRule(RuleBean bean, ObjectMapper objectMapper) throws Exception
+    {
+        this.id = bean.getId();
+        this.name = bean.getName();
+        this.path = bean.getPath();
+        this.recursive = Boolean.TRUE.equals(bean.isRecursive());
+
+        DmsEventOccur[] occurs = DmsEventOccur.values();
+        this.events = new BitSet[occurs.length];
+        for (int i = 0; i < occurs.length; i++) {
+            events[i] = new BitSet();
+        }
+        if (bean.getEvents() != null) {
+            for (EventBean event : bean.getEvents()) {
+                if (event.getDmsEventStatus() >= 0 && event.getDmsEventStatus() < occurs.length
+                        && event.getDmsEventName() >= 0) {
+                    events[event.getDmsEventStatus()].set(event.getDmsEventName());
+                }
+            }
+        }
+
+        Class<? extends RuleImpl> ruleClass = Class.forName(bean.getJavaClass()).asSubclass(RuleImpl.class);
+        this.constructor = ruleClass.getDeclaredConstructor();
+        this.constructor.setAccessible(true);
+
+        Map<String, Serializable> parameters = bean.getParameters() != null ? bean.getParameters()
+                : Collections.<String, Serializable>emptyMap();
+        this.fields = new Field[parameters.size()];
+        this.values = new Object[parameters.size()];
+        int i = 0;
+        for (Map.Entry<String, Serializable> parameter : parameters.entrySet()) {
+            Field f = ruleClass.getDeclaredField(parameter.getKey());
+            f.setAccessible(true);
+            fields[i] = f;
+            values[i] = f.getType().equals(Class.class) ? Class.forName(parameter.getValue().toString())
+                    : parameter.getValue();
+            i++;
+        }
+
+        Map<String, String> data = null;
+        if (!StringUtils.isEmpty(bean.getParametersJson())) {
+            try {
+                data = Collections.unmodifiableMap(objectMapper.<Map<String, String>>readValue(
+                        bean.getParametersJson(), new TypeReference<Map<String, String>>() {
+                        }));
+            } catch (Exception ex) {
+                log.error("error while parsing rule parameters from json", ex);
+            }
+        }
+        this.parametersData = data;
+    }
+
+    /**
+     * New rule instance, with its parameters set, to be evaluated once
+     */
+    public RuleImpl newInstance() throws Exception
+    {
+        RuleImpl liveInstance = constructor.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+            fields[i].set(liveInstance, values[i]);
+        }
+        if (parametersData != null) {
+            liveInstance.setParameters(new HashMap<String, String>(parametersData));
+        }
+        return liveInstance;
+    }
+
+    public boolean matches(DmsEventName eventName, DmsEventOccur occur)
+    {
+        return events[occur.ordinal()].get(eventName.ordinal());
+    }
+
+    /**
+     * @return true if the rule is set on the event, before or after
+     */
+    public boolean hasEvent(DmsEventName eventName)
+    {
+        for (BitSet names : events) {
+            if (names.get(eventName.ordinal())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public boolean isRecursive()
+    {
+        return recursive;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompiledRule{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", path='" + path + '\'' +
+                ", recursive=" + recursive +
+                ", class=" + constructor.getDeclaringClass().getName() +
+                '}';
+    }
+}
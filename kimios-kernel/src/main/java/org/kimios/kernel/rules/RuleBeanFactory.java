@@ -16,6 +16,7 @@
 package org.kimios.kernel.rules;
 
 import org.hibernate.HibernateException;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.kimios.api.events.annotations.DmsEventName;
 import org.kimios.api.events.annotations.DmsEventOccur;
@@ -50,6 +51,17 @@ public class RuleBeanFactory extends HFactory
         }
     }
 
+    public List<RuleBean> loadRules() throws DataSourceException
+    {
+        try {
+            return getSession().createCriteria(RuleBean.class)
+                    .addOrder(Order.asc("id"))
+                    .list();
+        } catch (HibernateException e) {
+            throw new DataSourceException(e);
+        }
+    }
+
     public List<RuleBean> loadConditionByEvent(DmsEventName name, DmsEventOccur occur) throws DataSourceException
     {
         try {
@@ -0,0 +1,151 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kimios.api.events.annotations.DmsEventName;
+import org.kimios.kernel.rules.model.RuleBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled rules by event, in a trie of their path segments.
+ *
+ * The rules of an entity are found in one walk from the root to the entity path: the recursive rules
+ * of every node on the way (root, ancestors and the entity itself), and the other rules of the parent
+ * of the entity. Built from all the rules at once, never modified afterwards.
+ */
+class RuleIndex
+{
+    private static Logger log = LoggerFactory.getLogger(RuleIndex.class);
+
+    private static final String SLASH_SEPARATOR = "/";
+
+    private static class Node
+    {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+
+        private final List<CompiledRule> recursiveRules = new ArrayList<CompiledRule>();
+
+        private final List<CompiledRule> rules = new ArrayList<CompiledRule>();
+    }
+
+    private final EnumMap<DmsEventName, Node> roots = new EnumMap<DmsEventName, Node>(DmsEventName.class);
+
+    private final long generation;
+
+    private final long expiresAt;
+
+    private int size;
+
+    /**
+     * @param beans      all the rules
+     * @param generation rule changes count the beans were loaded at
+     * @param expiresAt  time after which the index must be loaded again
+     */
+    RuleIndex(List<RuleBean> beans, ObjectMapper objectMapper, long generation, long expiresAt)
+    {
+        this.generation = generation;
+        this.expiresAt = expiresAt;
+        for (RuleBean bean : beans) {
+            if (bean.getPath() == null) {
+                continue;
+            }
+            CompiledRule rule;
+            try {
+                rule = new CompiledRule(bean, objectMapper);
+            } catch (Exception e) {
+                log.error("rule " + bean.getId() + " (" + bean.getName() + ") can't be loaded, ignored", e);
+                continue;
+            }
+            for (DmsEventName eventName : DmsEventName.values()) {
+                if (rule.hasEvent(eventName)) {
+                    Node node = roots.get(eventName);
+                    if (node == null) {
+                        node = new Node();
+                        roots.put(eventName, node);
+                    }
+                    for (String segment : rule.getPath().split(SLASH_SEPARATOR)) {
+                        if (segment.length() > 0) {
+                            Node child = node.children.get(segment);
+                            if (child == null) {
+                                child = new Node();
+                                node.children.put(segment, child);
+                            }
+                            node = child;
+                        }
+                    }
+                    (rule.isRecursive() ? node.recursiveRules : node.rules).add(rule);
+                }
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Rules of an event applying to the entity of the given path, before or after the event
+     */
+    List<CompiledRule> match(DmsEventName eventName, String entityPath)
+    {
+        Node node = roots.get(eventName);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> segments = new ArrayList<String>();
+        for (String segment : entityPath.split(SLASH_SEPARATOR)) {
+            if (segment.length() > 0) {
+                segments.add(segment);
+            }
+        }
+        List<CompiledRule> matches = new ArrayList<CompiledRule>(node.recursiveRules);
+        for (int depth = 1; depth <= segments.size(); depth++) {
+            node = node.children.get(segments.get(depth - 1));
+            if (node == null) {
+                break;
+            }
+            matches.addAll(node.recursiveRules);
+            if (depth == segments.size() - 1) {
+                matches.addAll(node.rules);
+            }
+        }
+        return matches;
+    }
+
+    long getGeneration()
+    {
+        return generation;
+    }
+
+    boolean isExpired()
+    {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * @return number of rules loaded
+     */
+    int size()
+    {
+        return size;
+    }
+}
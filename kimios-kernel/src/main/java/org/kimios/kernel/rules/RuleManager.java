@@ -16,35 +16,39 @@
 package org.kimios.kernel.rules;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-import org.apache.commons.lang.StringUtils;
 import org.kimios.api.events.annotations.DmsEventName;
+import org.kimios.exceptions.DataSourceException;
+import org.kimios.kernel.configuration.Config;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventOccur;
 import org.kimios.kernel.rules.impl.RuleImpl;
-import org.kimios.kernel.rules.model.EventBean;
-import org.kimios.kernel.rules.model.RuleBean;
+import org.kimios.utils.configuration.ConfigurationManager;
 import org.kimios.utils.context.ContextHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RuleManager
 {
     private static Logger log = LoggerFactory.getLogger(RuleManager.class);
 
-    private static String SLASH_SEPARATOR = "/";
+    private static final long DEFAULT_RULES_CACHE_TTL = 300;
+
+    /* rule changes count, compiled rules loaded before the last change are loaded again */
+    private static final AtomicLong rulesGeneration = new AtomicLong();
 
     private ContextHolder contextHolder;
 
     private RuleBeanFactory ruleBeanFactory;
 
+    private volatile RuleIndex ruleIndex;
+
     public RuleBeanFactory getRuleBeanFactory()
     {
         return ruleBeanFactory;
@@ -69,102 +73,98 @@ public class RuleManager
         objectMapper = new ObjectMapper();
     }
 
-    public List<RuleBean> processRulesBefore(Method method, Object[] arguments) throws Throwable
+    public List<CompiledRule> processRulesBefore(Method method, Object[] arguments) throws Throwable
     {
         DmsEvent evt = method.getAnnotation(DmsEvent.class);
         EventContext ctx = null;
-        String path = null;
-        List<RuleBean> beans = null;
+        List<CompiledRule> rules = null;
         if (evt != null) {
             ctx = EventContext.get();
             if (ctx != null && ctx.getEntity() != null) {
-                path = ctx.getEntity().getPath();
-                String[] allPath = path.split(SLASH_SEPARATOR);
-                String pPath = "";
-                List<String> fPaths = new ArrayList<String>();
-                for (String aP : allPath) {
-                    aP = pPath + aP;
-                    pPath = aP + SLASH_SEPARATOR;
-                    if (aP.equalsIgnoreCase("")) {
-                        aP = "/";
-                    }
-                    fPaths.add(aP);
-                }
-
+                rules = ruleIndex().match(evt.eventName()[0], ctx.getEntity().getPath());
                 if (log.isTraceEnabled()) {
-                    for (String finalPaths : fPaths) {
-                        log.trace("Fpath: " + finalPaths);
-                    }
+                    log.trace("rules of {} on {}: {}", evt.eventName()[0], ctx.getEntity().getPath(), rules);
+                }
+                if (rules.size() > 0) {
+                    evaluate(rules, evt.eventName()[0], DmsEventOccur.BEFORE, ctx);
                 }
-                path = path.substring(0, path.lastIndexOf("/"));
-                beans = ruleBeanFactory.loadConditionByEventAndPath(ctx.getEvent(), path, fPaths);
-                if (beans != null && beans.size() > 0) {
-                    evaluate(beans, evt.eventName()[0], DmsEventOccur.BEFORE, ctx);
+            }
+        }
+        return rules;
+    }
+
+    public void processRulesAfter(List<CompiledRule> rules, DmsEventName eventName, EventContext ctx) throws Throwable
+    {
+        if (ctx != null && rules != null && rules.size() > 0) {
+            evaluate(rules, eventName, DmsEventOccur.AFTER, ctx);
+        }
+    }
+
+    /**
+     * Make every rule manager load the rules again, now and once the current transaction is committed
+     */
+    public static void invalidateRules()
+    {
+        rulesGeneration.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    // rules loaded while the change was not committed yet
+                    rulesGeneration.incrementAndGet();
                 }
+            });
+        }
+    }
+
+    private RuleIndex ruleIndex() throws DataSourceException
+    {
+        RuleIndex index = ruleIndex;
+        long generation = rulesGeneration.get();
+        if (index == null || index.getGeneration() != generation || index.isExpired()) {
+            long ttl = rulesCacheTtl();
+            index = new RuleIndex(ruleBeanFactory.loadRules(), objectMapper, generation,
+                    ttl > 0 ? System.currentTimeMillis() + ttl * 1000 : 0);
+            ruleIndex = index;
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded rules count: " + index.size());
             }
         }
-        return beans;
+        return index;
     }
 
-    public void processRulesAfter(List<RuleBean> beans, DmsEventName eventName, EventContext ctx) throws Throwable
+    private static long rulesCacheTtl()
     {
-        if (ctx != null && beans != null && beans.size() > 0) {
-            evaluate(beans, eventName, DmsEventOccur.AFTER, ctx);
+        try {
+            String value = ConfigurationManager.getValue(Config.RULES_CACHE_TTL);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}",
+                    Config.RULES_CACHE_TTL, DEFAULT_RULES_CACHE_TTL);
         }
+        return DEFAULT_RULES_CACHE_TTL;
     }
 
-    private void evaluate(List<RuleBean> beans, DmsEventName eventName, DmsEventOccur occur, EventContext ctx)
+    private void evaluate(List<CompiledRule> rules, DmsEventName eventName, DmsEventOccur occur, EventContext ctx)
     {
-        EventBean currentEvent = new EventBean(eventName.ordinal(), occur.ordinal());
         if(log.isDebugEnabled()){
             log.debug(eventName.name() + "/" +eventName.ordinal() + ", Status: " + occur.name() + " / " +
                     occur.ordinal());
-            log.debug("Loaded rules count: " + beans.size());
+            log.debug("Matching rules count: " + rules.size());
         }
 
-        for (RuleBean each : beans) {
+        for (CompiledRule each : rules) {
             if(log.isDebugEnabled()){
                 log.debug(occur.name() + " " + eventName.name() + ": " + each.getName() + " Match event: " +
-                        each.getEvents().contains(currentEvent));
+                        each.matches(eventName, occur));
             }
-            if (each.getEvents().contains(currentEvent)) {
+            if (each.matches(eventName, occur)) {
                 try {
-                    Class<?> cClass = Class.forName(each.getJavaClass());
-                    cClass.asSubclass(RuleImpl.class);
-                    RuleImpl liveInstance = (RuleImpl) cClass.newInstance();
-                    /*
-                    *  set true parameters (reflection)
-                    */
-                    for (String fName : each.getParameters().keySet()) {
-                        if(log.isDebugEnabled()) {
-                            log.debug(
-                                    "Set parameter " + fName + ": " + each.getParameters().get(fName).getClass().getName());
-                            log.debug("Set parameter " + fName + ": " + each.getParameters().get(fName).toString());
-                        }
-                        Field f = cClass.getDeclaredField(fName);
-                        f.setAccessible(true);
-                        if (f.getType().equals(Class.class)) {
-                            f.set(liveInstance, Class.forName(each.getParameters().get(fName).toString()));
-                        } else {
-                            f.set(liveInstance, each.getParameters().get(fName));
-                        }
-                    }
-
-                    //load others parameters from json
-                    if(!StringUtils.isEmpty(each.getParametersJson())){
-                        try{
-
-                            Map<String, String> result =
-                                    objectMapper.readValue(each.getParametersJson(),
-                                            new TypeReference<Map<String, String>>() {
-                                            });
-                            each.setParametersData(result);
-                            liveInstance.setParameters(result);
-                        } catch (Exception ex){
-                            log.error("error while parsing rule parameters from json", ex);
-                        }
-                    }
-
+                    RuleImpl liveInstance = each.newInstance();
                     liveInstance.setConditionContext(ctx);
                     liveInstance.setContextHolder(contextHolder);
                     if (liveInstance.isTrue()) {
@@ -177,4 +177,3 @@ public class RuleManager
         }
     }
 }
-
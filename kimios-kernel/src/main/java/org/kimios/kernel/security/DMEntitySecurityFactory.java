@@ -31,6 +31,11 @@ public interface DMEntitySecurityFactory {
 
     public List<DMEntityACL> getDMEntityACL(DMEntity e) throws ConfigException, DataSourceException;
 
+    /**
+     * ACL entries of the given entities, loaded with a single query
+     */
+    public List<DMEntityACL> getDMEntityACLs(List<Long> dmEntityUids) throws ConfigException, DataSourceException;
+
     public void saveDMEntityACL(DMEntityACL dmEntityACL) throws ConfigException, DataSourceException;
 
     public List<DMEntityACL> saveDMEntitySecurity(DMEntitySecurity des, Share share) throws ConfigException, DataSourceException;
@@ -52,6 +57,14 @@ public interface DMEntitySecurityFactory {
     public boolean hasAnyChildNotWritable(DMEntity e, String userName, String userSource, Vector<String> writeHash,
                                           String noAccessHash) throws ConfigException, DataSourceException;
 
+    /**
+     * Rule hashes among the given ones set on each of the given entities, as rows of
+     * {entity uid, entity type, owner, owner source, rule hash}. Entities without any have a single row
+     * with a null rule hash.
+     */
+    public List<Object[]> getEntitiesRuleHashes(List<Long> dmEntityUids, Vector<String> hashs)
+            throws ConfigException, DataSourceException;
+
     public boolean hasAnyChildCheckedOut(DMEntity e, String userName, String userSource)
             throws ConfigException, DataSourceException;
 
@@ -7,6 +7,7 @@ import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.user.model.Group;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 /**
@@ -46,6 +47,30 @@ public interface ISecurityAgent {
 
     boolean isAdmin(String userName, String userSource) throws ConfigException, DataSourceException;
 
+    /**
+     * Whether the user has the role, read once from the role factory and then cached
+     */
+    boolean hasRole(int role, String userName, String userSource) throws ConfigException, DataSourceException;
+
+    /**
+     * Forget the cached role of the user, after it was created or deleted
+     */
+    void invalidateRole(int role, String userName, String userSource);
+
+    long getRoleCacheHits();
+
+    long getRoleCacheMisses();
+
+    int getRoleCacheSize();
+
+    /**
+     * Rights of the user on each of the given entities, as bitmasks of EntityRights flags, resolved with
+     * set based queries instead of one query per entity and right. Same rules as isReadable, isWritable
+     * and isFullAccess; unknown entities are not in the result.
+     */
+    Map<Long, Integer> getRights(List<Long> dmEntityUids, String userName, String userSource, Vector<Group> groups)
+            throws ConfigException, DataSourceException;
+
     boolean canCancelWorkFlow(Document doc, String userName, String userSource, Vector<Group> groups)
                                             throws ConfigException, DataSourceException;
 
@@ -58,4 +58,8 @@ public interface ISessionManager
     void removeSession(String sessionUid) throws DataSourceException, ConfigException;
 
     void removeSessions(String userName, String userSource) throws DataSourceException, ConfigException;
+
+    void invalidateUserGroups(String userName, String userSource);
+
+    void invalidateSourceGroups(String userSource);
 }
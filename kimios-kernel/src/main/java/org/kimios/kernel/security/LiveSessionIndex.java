@@ -0,0 +1,286 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.security;
+
+import org.kimios.kernel.security.model.Session;
+import org.kimios.kernel.user.model.Group;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Live sessions by user, and users by the read rule hashes of themselves and their groups, so the
+ * sessions allowed to read an entity are found from the rule hashes of its ACL without a query per
+ * session.
+ *
+ * Kept up to date by the session manager: sessions are added when they start, indexed again when the
+ * groups of their user are reloaded, and removed when they stop. Whether a user is an administrator is
+ * read on first need, and again after its roles change.
+ */
+public class LiveSessionIndex
+{
+    private static Logger log = LoggerFactory.getLogger(LiveSessionIndex.class);
+
+    private static final LiveSessionIndex instance = new LiveSessionIndex();
+
+    public static LiveSessionIndex getInstance()
+    {
+        return instance;
+    }
+
+    private static class UserEntry
+    {
+        private final String userName;
+
+        private final String userSource;
+
+        private final Map<String, Session> sessions = new LinkedHashMap<String, Session>();
+
+        /* groups the hashes were computed from */
+        private Collection<Group> groups;
+
+        private SecurityRuleHashes hashes;
+
+        /* null until read */
+        private Boolean admin;
+
+        /* incremented on role changes, so an admin flag read meanwhile is not kept */
+        private int roleVersion;
+
+        private UserEntry(String userName, String userSource)
+        {
+            this.userName = userName;
+            this.userSource = userSource;
+        }
+    }
+
+    private final Map<String, UserEntry> users = new HashMap<String, UserEntry>();
+
+    private final Map<String, Set<UserEntry>> byHash = new HashMap<String, Set<UserEntry>>();
+
+    private final Set<UserEntry> admins = new HashSet<UserEntry>();
+
+    private final Set<UserEntry> unresolved = new HashSet<UserEntry>();
+
+    protected LiveSessionIndex()
+    {
+    }
+
+    private static String key(String userName, String userSource)
+    {
+        return userName + "@" + userSource;
+    }
+
+    /**
+     * Add a session, or index it again after the groups of its user changed
+     */
+    public synchronized void update(Session session)
+    {
+        if (session == null || session.getUserName() == null || session.getUserSource() == null) {
+            return;
+        }
+        String key = key(session.getUserName(), session.getUserSource());
+        UserEntry entry = users.get(key);
+        if (entry == null) {
+            entry = new UserEntry(session.getUserName(), session.getUserSource());
+            users.put(key, entry);
+            unresolved.add(entry);
+        }
+        entry.sessions.put(session.getUid(), session);
+        if (entry.hashes == null || entry.groups != session.getGroups()) {
+            unindexHashes(entry);
+            entry.groups = session.getGroups();
+            entry.hashes = SecurityRuleHashes.getInstance(entry.userName, entry.userSource, entry.groups);
+            for (String hash : entry.hashes.getReadHashes()) {
+                Set<UserEntry> entries = byHash.get(hash);
+                if (entries == null) {
+                    entries = new HashSet<UserEntry>();
+                    byHash.put(hash, entries);
+                }
+                entries.add(entry);
+            }
+        }
+    }
+
+    public synchronized void remove(Session session)
+    {
+        if (session == null) {
+            return;
+        }
+        String key = key(session.getUserName(), session.getUserSource());
+        UserEntry entry = users.get(key);
+        if (entry != null && entry.sessions.remove(session.getUid()) != null && entry.sessions.isEmpty()) {
+            unindexHashes(entry);
+            users.remove(key);
+            admins.remove(entry);
+            unresolved.remove(entry);
+        }
+    }
+
+    private void unindexHashes(UserEntry entry)
+    {
+        if (entry.hashes == null) {
+            return;
+        }
+        for (String hash : entry.hashes.getReadHashes()) {
+            Set<UserEntry> entries = byHash.get(hash);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    byHash.remove(hash);
+                }
+            }
+        }
+    }
+
+    /**
+     * The roles of a user changed: whether it is an administrator is read again on next need
+     */
+    public synchronized void roleChanged(String userName, String userSource)
+    {
+        UserEntry entry = users.get(key(userName, userSource));
+        if (entry != null) {
+            entry.roleVersion++;
+            entry.admin = null;
+            admins.remove(entry);
+            unresolved.add(entry);
+        }
+    }
+
+    public synchronized void clear()
+    {
+        users.clear();
+        byHash.clear();
+        admins.clear();
+        unresolved.clear();
+    }
+
+    /**
+     * Read whether the users not checked yet are administrators, with one of their sessions, outside of
+     * the index lock. Must be called from a thread able to run the check (in a transaction).
+     */
+    public void resolveAdmins(Predicate<Session> isAdmin)
+    {
+        List<UserEntry> pending;
+        List<Integer> versions = new ArrayList<Integer>();
+        List<Session> sessions = new ArrayList<Session>();
+        synchronized (this) {
+            if (unresolved.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<UserEntry>(unresolved);
+            for (UserEntry entry : pending) {
+                versions.add(entry.roleVersion);
+                sessions.add(entry.sessions.values().iterator().next());
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            UserEntry entry = pending.get(i);
+            boolean admin;
+            try {
+                admin = isAdmin.test(sessions.get(i));
+            } catch (Exception e) {
+                log.error("unable to check if " + key(entry.userName, entry.userSource) + " is administrator", e);
+                continue;
+            }
+            synchronized (this) {
+                if (entry.roleVersion == versions.get(i) && unresolved.remove(entry)) {
+                    entry.admin = admin;
+                    if (admin) {
+                        admins.add(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sessions allowed to read an entity: sessions of administrators, of its owner, and of the users
+     * holding one of the read, write or full access hashes of the ACL (directly or through a group) unless
+     * the ACL holds their no access hash. Users whose admin flag is not resolved are not taken as
+     * administrators.
+     *
+     * @param aclHashes rule hashes of the entity ACL
+     */
+    public synchronized List<Session> readers(String owner, String ownerSource, Collection<String> aclHashes)
+    {
+        Set<String> acl = new HashSet<String>(aclHashes);
+        Set<UserEntry> found = new HashSet<UserEntry>(admins);
+        for (String hash : acl) {
+            Set<UserEntry> entries = byHash.get(hash);
+            if (entries != null) {
+                found.addAll(entries);
+            }
+        }
+        if (owner != null && ownerSource != null) {
+            UserEntry ownerEntry = users.get(key(owner, ownerSource));
+            if (ownerEntry != null) {
+                found.add(ownerEntry);
+            }
+        }
+        List<Session> readers = new ArrayList<Session>();
+        for (UserEntry entry : found) {
+            if (Boolean.TRUE.equals(entry.admin) || !acl.contains(entry.hashes.getNoAccessHash())) {
+                readers.addAll(entry.sessions.values());
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * Sessions of the administrators
+     */
+    public synchronized List<Session> admins()
+    {
+        List<Session> sessions = new ArrayList<Session>();
+        for (UserEntry entry : admins) {
+            sessions.addAll(entry.sessions.values());
+        }
+        return sessions;
+    }
+
+    public synchronized List<Session> sessions(String userName, String userSource)
+    {
+        UserEntry entry = users.get(key(userName, userSource));
+        return entry != null ? new ArrayList<Session>(entry.sessions.values()) : new ArrayList<Session>();
+    }
+
+    public synchronized List<Session> sessions()
+    {
+        List<Session> sessions = new ArrayList<Session>();
+        for (UserEntry entry : users.values()) {
+            sessions.addAll(entry.sessions.values());
+        }
+        return sessions;
+    }
+
+    /**
+     * @return number of users with live sessions
+     */
+    public synchronized int size()
+    {
+        return users.size();
+    }
+}
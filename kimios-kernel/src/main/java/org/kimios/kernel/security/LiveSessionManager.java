@@ -81,10 +81,7 @@ public class LiveSessionManager extends SessionManager
             Session sUser = (Session) sessions.get(sessionUid);
             if (sUser != null) {
                 sUser.setLastUse(new Date());
-                sUser.setGroups(
-                        authenticationSourceFactory.getAuthenticationSource(sUser.getUserSource()).getGroupFactory()
-                                .getGroups(sUser.getUserName()));
-
+                sUser.setGroups(getUserGroups(sUser.getUserName(), sUser.getUserSource()));
                 sUser.setMetaDatas(ClientInformationUtil.getInfos());
             }
             return sUser;
@@ -18,15 +18,24 @@ package org.kimios.kernel.security;
 import org.kimios.exceptions.ConfigException;
 import org.kimios.kernel.dms.model.*;
 import org.kimios.exceptions.DataSourceException;
-import org.kimios.kernel.security.model.DMSecurityRule;
+import org.kimios.kernel.security.model.EntityRights;
 import org.kimios.kernel.security.model.Role;
 import org.kimios.kernel.security.model.SecurityEntityType;
 import org.kimios.kernel.user.model.Group;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SecurityAgent implements ISecurityAgent {
 
@@ -41,6 +50,21 @@ public class SecurityAgent implements ISecurityAgent {
         return instance;
     }
 
+    private static final int ROLE_CACHE_SIZE = 10000;
+
+    /*
+        Whether a user has a role, by role:user@source, as read on first use. Entries are removed when
+        roles are created or deleted through the administration controller.
+     */
+    private final static ConcurrentHashMap<String, Boolean> roles = new ConcurrentHashMap<String, Boolean>();
+
+    /* incremented on invalidation, so a lookup running meanwhile does not cache what it read before */
+    private final static AtomicLong rolesGeneration = new AtomicLong();
+
+    private final static AtomicLong roleCacheHits = new AtomicLong();
+
+    private final static AtomicLong roleCacheMisses = new AtomicLong();
+
     private FactoryInstantiator securityFactoryInstantiator;
 
     private org.kimios.kernel.dms.FactoryInstantiator dmsFactoryInstantiator;
@@ -75,31 +99,10 @@ public class SecurityAgent implements ISecurityAgent {
 //    }
 //    entities.removeAll(readables);
         if (entities.size() > 0) {
-            /* Generate read hash */
-            Vector<String> hashs = new Vector<String>();
-            Vector<String> noAccessHash = new Vector<String>();
-            noAccessHash.add(DMSecurityRule
-                    .getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS).getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.READRULE)
-                    .getRuleHash());
-            hashs.add(
-                    DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.WRITERULE)
-                            .getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                    .getRuleHash());
-            for (Group g : groups) {
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.READRULE).getRuleHash());
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.WRITERULE).getRuleHash());
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.FULLRULE).getRuleHash());
-            }
+            SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
             readables.addAll(securityFactoryInstantiator.getDMEntitySecurityFactory()
-                    .authorizedEntities(entities, userName, userSource, hashs, noAccessHash));
+                    .authorizedEntities(entities, userName, userSource, hashes.getReadHashes(),
+                            hashes.getNoAccessHashes()));
             Collections.sort(readables);
         }
         return readables;
@@ -122,26 +125,10 @@ public class SecurityAgent implements ISecurityAgent {
 //    }
         entities.removeAll(writables);
         if (entities.size() > 0) {
-            /* Generate read hash */
-            Vector<String> hashs = new Vector<String>();
-            Vector<String> noAccessHash = new Vector<String>();
-            noAccessHash.add(DMSecurityRule
-                    .getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS).getRuleHash());
-            hashs.add(
-                    DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.WRITERULE)
-                            .getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                    .getRuleHash());
-            for (Group g : groups) {
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.WRITERULE).getRuleHash());
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.FULLRULE).getRuleHash());
-            }
+            SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
             writables.addAll(securityFactoryInstantiator.getDMEntitySecurityFactory()
-                    .authorizedEntities(entities, userName, userSource, hashs, noAccessHash));
+                    .authorizedEntities(entities, userName, userSource, hashes.getWriteHashes(),
+                            hashes.getNoAccessHashes()));
             Collections.sort(writables);
         }
         return writables;
@@ -164,20 +151,10 @@ public class SecurityAgent implements ISecurityAgent {
 //    }
         entities.removeAll(fullAccessAble);
         if (entities.size() > 0) {
-            /* Generate read hash */
-            Vector<String> hashs = new Vector<String>();
-            Vector<String> noAccessHash = new Vector<String>();
-            noAccessHash.add(DMSecurityRule
-                    .getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS).getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                    .getRuleHash());
-            for (Group g : groups) {
-                hashs.add(DMSecurityRule
-                        .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                                DMSecurityRule.FULLRULE).getRuleHash());
-            }
+            SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
             fullAccessAble.addAll(securityFactoryInstantiator.getDMEntitySecurityFactory()
-                    .authorizedEntities(entities, userName, userSource, hashs, noAccessHash));
+                    .authorizedEntities(entities, userName, userSource, hashes.getFullAccessHashes(),
+                            hashes.getNoAccessHashes()));
             Collections.sort(fullAccessAble);
         }
         return fullAccessAble;
@@ -196,30 +173,9 @@ public class SecurityAgent implements ISecurityAgent {
             return true;
         }
 
-        String noAccessUserHash =
-                DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS)
-                        .getRuleHash();
-        /* Generate read hash */
-        Vector<String> hashs = new Vector<String>();
-        Vector<String> noAccessHash = new Vector<String>();
-        noAccessHash.add(noAccessUserHash);
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.READRULE)
-                .getRuleHash());
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.WRITERULE)
-                .getRuleHash());
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                .getRuleHash());
-        for (Group g : groups) {
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.READRULE).getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.WRITERULE).getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.FULLRULE).getRuleHash());
-        }
-        boolean secReturn = securityFactoryInstantiator.getDMEntitySecurityFactory()
-                .ruleExists(dm, userName, userSource, hashs, noAccessHash);
-        return secReturn;
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
+        return securityFactoryInstantiator.getDMEntitySecurityFactory()
+                .ruleExists(dm, userName, userSource, hashes.getReadHashes(), hashes.getNoAccessHashes());
     }
 
     @Override
@@ -254,29 +210,9 @@ public class SecurityAgent implements ISecurityAgent {
             return true;
         }
 
-        String noAccessUserHash =
-                DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS)
-                        .getRuleHash();
-
-        /*
-        *  if user is owner and hasn't limitation
-        */
-        /* Generate read hash */
-        Vector<String> hashs = new Vector<String>();
-        Vector<String> noAccessHash = new Vector<String>();
-        noAccessHash.add(noAccessUserHash);
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.WRITERULE)
-                .getRuleHash());
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                .getRuleHash());
-        for (Group g : groups) {
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.WRITERULE).getRuleHash());
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.FULLRULE).getRuleHash());
-        }
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
         return securityFactoryInstantiator.getDMEntitySecurityFactory()
-                .ruleExists(dm, userName, userSource, hashs, noAccessHash);
+                .ruleExists(dm, userName, userSource, hashes.getWriteHashes(), hashes.getNoAccessHashes());
     }
 
     /*
@@ -294,25 +230,9 @@ public class SecurityAgent implements ISecurityAgent {
             return false;
         }
 
-        String noAccessUserHash =
-                DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS)
-                        .getRuleHash();
-        Vector<String> writeHash = new Vector<String>();
-        writeHash
-                .add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.WRITERULE)
-                        .getRuleHash());
-        writeHash.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                .getRuleHash());
-        for (Group g : groups) {
-            writeHash.add(DMSecurityRule
-                    .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                            DMSecurityRule.WRITERULE).getRuleHash());
-            writeHash.add(DMSecurityRule
-                    .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                            DMSecurityRule.FULLRULE).getRuleHash());
-        }
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
         return securityFactoryInstantiator.getDMEntitySecurityFactory()
-                .hasAnyChildNotWritable(dm, userName, userSource, writeHash, noAccessUserHash);
+                .hasAnyChildNotWritable(dm, userName, userSource, hashes.getWriteHashes(), hashes.getNoAccessHash());
     }
 
     @Override
@@ -327,19 +247,10 @@ public class SecurityAgent implements ISecurityAgent {
             return false;
         }
 
-        String noAccessUserHash =
-                DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS)
-                        .getRuleHash();
-        Vector<String> writeHash = new Vector<String>();
-        writeHash.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                .getRuleHash());
-        for (Group g : groups) {
-            writeHash.add(DMSecurityRule
-                    .getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                            DMSecurityRule.FULLRULE).getRuleHash());
-        }
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
         return securityFactoryInstantiator.getDMEntitySecurityFactory()
-                .hasAnyChildNotWritable(dm, userName, userSource, writeHash, noAccessUserHash);
+                .hasAnyChildNotWritable(dm, userName, userSource, hashes.getFullAccessHashes(),
+                        hashes.getNoAccessHash());
     }
 
     @Override
@@ -383,27 +294,162 @@ public class SecurityAgent implements ISecurityAgent {
             return true;
         }
 
-        String noAccessUserHash =
-                DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS)
-                        .getRuleHash();
-        /* Generate read hash */
-        Vector<String> hashs = new Vector<String>();
-        Vector<String> noAccessHash = new Vector<String>();
-        noAccessHash.add(noAccessUserHash);
-        hashs.add(DMSecurityRule.getInstance(userName, userSource, SecurityEntityType.USER, DMSecurityRule.FULLRULE)
-                .getRuleHash());
-        for (Group g : groups) {
-            hashs.add(DMSecurityRule.getInstance(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP,
-                    DMSecurityRule.FULLRULE).getRuleHash());
-        }
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
         return securityFactoryInstantiator.getDMEntitySecurityFactory()
-                .ruleExists(dm, userName, userSource, hashs, noAccessHash);
+                .ruleExists(dm, userName, userSource, hashes.getFullAccessHashes(), hashes.getNoAccessHashes());
     }
 
     @Override
     public boolean isAdmin(String userName, String userSource) throws ConfigException, DataSourceException
     {
-        return (securityFactoryInstantiator.getRoleFactory().getRole(Role.ADMIN, userName, userSource) != null);
+        return hasRole(Role.ADMIN, userName, userSource);
+    }
+
+    @Override
+    public boolean hasRole(int role, String userName, String userSource)
+            throws ConfigException, DataSourceException
+    {
+        String key = role + ":" + userName + "@" + userSource;
+        Boolean granted = roles.get(key);
+        if (granted != null) {
+            roleCacheHits.incrementAndGet();
+            return granted;
+        }
+        roleCacheMisses.incrementAndGet();
+        long generation = rolesGeneration.get();
+        granted = securityFactoryInstantiator.getRoleFactory().getRole(role, userName, userSource) != null;
+        if (roles.size() >= ROLE_CACHE_SIZE) {
+            roles.clear();
+        }
+        roles.put(key, granted);
+        if (generation != rolesGeneration.get()) {
+            roles.remove(key);
+        }
+        return granted;
+    }
+
+    @Override
+    public void invalidateRole(final int role, final String userName, final String userSource)
+    {
+        forgetRole(role, userName, userSource);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    // role read while the change was not committed yet
+                    forgetRole(role, userName, userSource);
+                }
+            });
+        }
+    }
+
+    private static void forgetRole(int role, String userName, String userSource)
+    {
+        rolesGeneration.incrementAndGet();
+        roles.remove(role + ":" + userName + "@" + userSource);
+        LiveSessionIndex.getInstance().roleChanged(userName, userSource);
+    }
+
+    @Override
+    public long getRoleCacheHits()
+    {
+        return roleCacheHits.get();
+    }
+
+    @Override
+    public long getRoleCacheMisses()
+    {
+        return roleCacheMisses.get();
+    }
+
+    @Override
+    public int getRoleCacheSize()
+    {
+        return roles.size();
+    }
+
+    @Override
+    public Map<Long, Integer> getRights(List<Long> dmEntityUids, String userName, String userSource,
+                                        Vector<Group> groups) throws ConfigException, DataSourceException
+    {
+        Map<Long, Integer> rights = new HashMap<Long, Integer>();
+        if (dmEntityUids == null || dmEntityUids.isEmpty() || userName == null || userSource == null) {
+            return rights;
+        }
+        boolean admin = isAdmin(userName, userSource);
+        int allRights = EntityRights.READ | EntityRights.WRITE | EntityRights.FULL_ACCESS;
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(userName, userSource, groups);
+
+        Set<Long> noAccess = new HashSet<Long>();
+        Set<Long> owned = new HashSet<Long>();
+        List<Long> documents = new ArrayList<Long>();
+        for (Object[] row : securityFactoryInstantiator.getDMEntitySecurityFactory()
+                .getEntitiesRuleHashes(dmEntityUids, hashes.getAllHashes()))
+        {
+            Long uid = (Long) row[0];
+            Integer entityRights = rights.get(uid);
+            if (entityRights == null) {
+                entityRights = admin ? allRights : 0;
+                if (userName.equals(row[2]) && userSource.equals(row[3])) {
+                    entityRights |= allRights | EntityRights.OWNER;
+                }
+                if (userName.equalsIgnoreCase((String) row[2]) && userSource.equalsIgnoreCase((String) row[3])) {
+                    owned.add(uid);
+                }
+                if (((Integer) row[1]) == DMEntityType.DOCUMENT) {
+                    documents.add(uid);
+                }
+            }
+            String ruleHash = (String) row[4];
+            if (ruleHash != null && ruleHash.equals(hashes.getNoAccessHash())) {
+                noAccess.add(uid);
+            } else if (ruleHash != null) {
+                entityRights |= hashes.getRights(ruleHash);
+            }
+            rights.put(uid, entityRights);
+        }
+        if (!admin) {
+            for (Long uid : noAccess) {
+                rights.put(uid, rights.get(uid) & ~allRights);
+            }
+        }
+
+        /* locked documents and documents in workflow, as in isWritable and isFullAccess */
+        List<Long> writableDocuments = new ArrayList<Long>();
+        for (Long uid : documents) {
+            if ((rights.get(uid) & (EntityRights.WRITE | EntityRights.FULL_ACCESS)) != 0) {
+                writableDocuments.add(uid);
+            }
+        }
+        if (!writableDocuments.isEmpty()) {
+            int writeRights = EntityRights.WRITE | EntityRights.FULL_ACCESS;
+            for (Lock lock : dmsFactoryInstantiator.getLockFactory().getDocumentLocks(writableDocuments)) {
+                if (!lock.getUser().equals(userName) || !lock.getUserSource().equals(userSource)) {
+                    rights.put(lock.getUid(), rights.get(lock.getUid()) & ~writeRights);
+                }
+            }
+            Set<Long> checked = new HashSet<Long>();
+            for (DocumentWorkflowStatusRequest dwsr : dmsFactoryInstantiator.getDocumentWorkflowStatusRequestFactory()
+                    .getPendingRequests(writableDocuments))
+            {
+                // most recent request of each document first
+                if (checked.add(dwsr.getDocumentUid())
+                        && !canWriteDuringWorkflow(dwsr, admin || owned.contains(dwsr.getDocumentUid()),
+                        userName, userSource, groups))
+                {
+                    rights.put(dwsr.getDocumentUid(), rights.get(dwsr.getDocumentUid()) & ~writeRights);
+                }
+            }
+        }
+
+        for (Long uid : dmsFactoryInstantiator.getBookmarkFactory()
+                .getUserBookmarkedUids(userName, userSource, new ArrayList<Long>(rights.keySet())))
+        {
+            rights.put(uid, rights.get(uid) | EntityRights.BOOKMARKED);
+        }
+        return rights;
     }
 
     private boolean canWriteDuringWorkflow(Document doc, String userName, String userSource, Vector<Group> groups)
@@ -413,34 +459,43 @@ public class SecurityAgent implements ISecurityAgent {
                 dmsFactoryInstantiator.getDocumentWorkflowStatusRequestFactory().getLastPendingRequest(doc);
         if (dwsr == null) {
             return true;
-        } else {
-            if (isAdmin(userName, userSource)) {
-                return true;
-            }
-            if (doc.getOwner().equalsIgnoreCase(userName) && doc.getOwnerSource().equalsIgnoreCase(userSource)) {
+        }
+        return canWriteDuringWorkflow(dwsr,
+                isAdmin(userName, userSource)
+                        || (doc.getOwner().equalsIgnoreCase(userName) && doc.getOwnerSource().equalsIgnoreCase(userSource)),
+                userName, userSource, groups);
+    }
+
+    /*
+        Is the user admin, owner or manager of the status pending for a document
+     */
+    private boolean canWriteDuringWorkflow(DocumentWorkflowStatusRequest dwsr, boolean adminOrOwner, String userName,
+                                           String userSource, Vector<Group> groups)
+            throws ConfigException, DataSourceException
+    {
+        if (adminOrOwner) {
+            return true;
+        }
+        Vector<WorkflowStatusManager> v = dmsFactoryInstantiator.getWorkflowStatusManagerFactory()
+                .getWorkflowStatusManagers(dwsr.getWorkflowStatusUid());
+        for (int i = 0; i < v.size(); i++) {
+            if (v.elementAt(i).getSecurityEntityName().equals(userName) &&
+                    v.elementAt(i).getSecurityEntitySource().equals(userSource) &&
+                    v.elementAt(i).getSecurityEntityType() == SecurityEntityType.USER)
+            {
                 return true;
             }
-            Vector<WorkflowStatusManager> v = dmsFactoryInstantiator.getWorkflowStatusManagerFactory()
-                    .getWorkflowStatusManagers(dwsr.getWorkflowStatusUid());
-            for (int i = 0; i < v.size(); i++) {
-                if (v.elementAt(i).getSecurityEntityName().equals(userName) &&
-                        v.elementAt(i).getSecurityEntitySource().equals(userSource) &&
-                        v.elementAt(i).getSecurityEntityType() == SecurityEntityType.USER)
+            for (int j = 0; j < groups.size(); j++) {
+                if (v.elementAt(i).getSecurityEntityName().equals(groups.elementAt(j).getID()) &&
+                        v.elementAt(i).getSecurityEntitySource()
+                                .equals(groups.elementAt(j).getAuthenticationSourceName()) &&
+                        v.elementAt(i).getSecurityEntityType() == SecurityEntityType.GROUP)
                 {
                     return true;
                 }
-                for (int j = 0; j < groups.size(); j++) {
-                    if (v.elementAt(i).getSecurityEntityName().equals(groups.elementAt(j).getID()) &&
-                            v.elementAt(i).getSecurityEntitySource()
-                                    .equals(groups.elementAt(j).getAuthenticationSourceName()) &&
-                            v.elementAt(i).getSecurityEntityType() == SecurityEntityType.GROUP)
-                    {
-                        return true;
-                    }
-                }
             }
-            return false;
         }
+        return false;
     }
 
     @Override
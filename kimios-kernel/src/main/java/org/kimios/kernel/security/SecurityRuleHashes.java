@@ -0,0 +1,161 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.security;
+
+import org.kimios.kernel.security.model.DMSecurityRule;
+import org.kimios.kernel.security.model.EntityRights;
+import org.kimios.kernel.security.model.SecurityEntityType;
+import org.kimios.kernel.user.model.Group;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Rule hashes granting read, write and full access to a user and its groups, and the user no access
+ * rule hash, as checked against entity ACLs.
+ *
+ * They are built once per user and group set, so permission checks of a session do no digest work.
+ * A change of the user groups gives a new set of hashes. Sets of hashes are bounded, least recently used
+ * ones are removed beyond. The hash vectors returned are copies, callers may modify them.
+ */
+public class SecurityRuleHashes {
+
+    private static final int CACHE_SIZE = 10000;
+
+    private static final Map<String, SecurityRuleHashes> cache =
+            new LinkedHashMap<String, SecurityRuleHashes>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SecurityRuleHashes> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final List<String> readHashes = new ArrayList<String>();
+
+    private final List<String> writeHashes = new ArrayList<String>();
+
+    private final List<String> fullAccessHashes = new ArrayList<String>();
+
+    private final String noAccessHash;
+
+    /* read, write and full access hashes and the no access hash */
+    private final List<String> allHashes = new ArrayList<String>();
+
+    private final Map<String, Integer> hashRights = new HashMap<String, Integer>();
+
+    private SecurityRuleHashes(String userName, String userSource, Collection<Group> groups) {
+        addHashes(userName, userSource, SecurityEntityType.USER);
+        if (groups != null) {
+            for (Group g : groups) {
+                addHashes(g.getGid(), g.getAuthenticationSourceName(), SecurityEntityType.GROUP);
+            }
+        }
+        noAccessHash = ruleHash(userName, userSource, SecurityEntityType.USER, DMSecurityRule.NOACCESS);
+        allHashes.addAll(readHashes);
+        allHashes.add(noAccessHash);
+    }
+
+    public static SecurityRuleHashes getInstance(String userName, String userSource, Collection<Group> groups) {
+        String key = key(userName, userSource, groups);
+        SecurityRuleHashes hashes;
+        synchronized (cache) {
+            hashes = cache.get(key);
+        }
+        if (hashes == null) {
+            hashes = new SecurityRuleHashes(userName, userSource, groups);
+            synchronized (cache) {
+                cache.put(key, hashes);
+            }
+        }
+        return hashes;
+    }
+
+    private static String key(String userName, String userSource, Collection<Group> groups) {
+        StringBuilder key = new StringBuilder().append(userName).append('@').append(userSource);
+        if (groups != null) {
+            for (Group g : groups) {
+                key.append(':').append(g.getGid()).append('@').append(g.getAuthenticationSourceName());
+            }
+        }
+        return key.toString();
+    }
+
+    private void addHashes(String uid, String source, int type) {
+        String read = ruleHash(uid, source, type, DMSecurityRule.READRULE);
+        String write = ruleHash(uid, source, type, DMSecurityRule.WRITERULE);
+        String full = ruleHash(uid, source, type, DMSecurityRule.FULLRULE);
+        readHashes.add(read);
+        readHashes.add(write);
+        readHashes.add(full);
+        writeHashes.add(write);
+        writeHashes.add(full);
+        fullAccessHashes.add(full);
+        hashRights.put(read, EntityRights.READ);
+        hashRights.put(write, EntityRights.READ | EntityRights.WRITE);
+        hashRights.put(full, EntityRights.READ | EntityRights.WRITE | EntityRights.FULL_ACCESS);
+    }
+
+    private static String ruleHash(String uid, String source, int type, short rights) {
+        return DMSecurityRule.getInstance(uid, source, type, rights).getRuleHash();
+    }
+
+    /**
+     * Read, write and full access rule hashes of the user and its groups
+     */
+    public Vector<String> getReadHashes() {
+        return new Vector<String>(readHashes);
+    }
+
+    /**
+     * Write and full access rule hashes of the user and its groups
+     */
+    public Vector<String> getWriteHashes() {
+        return new Vector<String>(writeHashes);
+    }
+
+    public Vector<String> getFullAccessHashes() {
+        return new Vector<String>(fullAccessHashes);
+    }
+
+    public Vector<String> getNoAccessHashes() {
+        return new Vector<String>(Collections.singletonList(noAccessHash));
+    }
+
+    public String getNoAccessHash() {
+        return noAccessHash;
+    }
+
+    /**
+     * Read, write, full access and no access rule hashes of the user and its groups
+     */
+    public Vector<String> getAllHashes() {
+        return new Vector<String>(allHashes);
+    }
+
+    /**
+     * Rights granted by one of the hashes, as EntityRights flags (0 for other hashes)
+     */
+    public int getRights(String ruleHash) {
+        Integer rights = hashRights.get(ruleHash);
+        return rights != null ? rights : 0;
+    }
+}
@@ -17,6 +17,7 @@ package org.kimios.kernel.security;
 
 import org.hibernate.HibernateException;
 import org.kimios.exceptions.ConfigException;
+import org.kimios.kernel.configuration.Config;
 import org.kimios.kernel.events.model.EventContext;
 import org.kimios.api.events.annotations.DmsEvent;
 import org.kimios.api.events.annotations.DmsEventName;
@@ -31,6 +32,7 @@ import org.kimios.kernel.user.model.Group;
 import org.kimios.kernel.user.model.User;
 import org.kimios.kernel.user.model.UserFactory;
 import org.kimios.kernel.utils.ClientInformationUtil;
+import org.kimios.utils.configuration.ConfigurationManager;
 import org.kimios.utils.session.SessionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +50,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SessionManager extends HFactory implements ISessionManager
 {
@@ -225,6 +228,36 @@ public class SessionManager extends HFactory implements ISessionManager
 
     private final static ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
 
+    private final static LiveSessionIndex liveSessions = LiveSessionIndex.getInstance();
+
+    private static final int DEFAULT_GROUPS_CACHE_TTL = 60;
+
+    /*
+        groups of a user, as loaded from its authentication source
+     */
+    private static class CachedGroups
+    {
+        private final Vector<Group> groups;
+
+        private final long expires;
+
+        private CachedGroups(Vector<Group> groups, long expires)
+        {
+            this.groups = groups;
+            this.expires = expires;
+        }
+    }
+
+    private final static ConcurrentHashMap<String, CachedGroups> userGroups =
+            new ConcurrentHashMap<String, CachedGroups>();
+
+    /* incremented on each invalidation, so a load started before is not cached */
+    private final static AtomicLong groupsGeneration = new AtomicLong();
+
+    private final static AtomicLong groupsCacheHits = new AtomicLong();
+
+    private final static AtomicLong groupsCacheMisses = new AtomicLong();
+
     protected Session createSession(String userName, String userSource) throws DataSourceException, ConfigException
     {
         try {
@@ -242,7 +275,9 @@ public class SessionManager extends HFactory implements ISessionManager
                 grps.add(g);
             }
             sUser.setGroups(grps);
+            cacheUserGroups(u.getUid(), userSource, grps, groupsGeneration.get());
             sessions.put(sUser.getUid(), sUser);
+            liveSessions.update(sUser);
             return sUser;
         } catch (Exception he) {
             he.printStackTrace();
@@ -259,10 +294,13 @@ public class SessionManager extends HFactory implements ISessionManager
             if (sUser != null) {
                 log.debug("session found {} {}", sUser, sUser.getUserName());
                 sUser.setLastUse(new Date());
-                sUser.setGroups(
-                        authenticationSourceFactory.getAuthenticationSource(sUser.getUserSource()).getGroupFactory()
-                                .getGroups(sUser.getUserName()));
-
+                Vector<Group> groups = getUserGroups(sUser.getUserName(), sUser.getUserSource());
+                if (groups != sUser.getGroups()) {
+                    sUser.setGroups(groups);
+                    if (sessions.containsKey(sUser.getUid())) {
+                        liveSessions.update(sUser);
+                    }
+                }
                 sUser.setMetaDatas(ClientInformationUtil.getInfos());
             }
             return sUser;
@@ -272,6 +310,89 @@ public class SessionManager extends HFactory implements ISessionManager
         }
     }
 
+    /**
+     * Groups of a user, reloaded from its authentication source once the cached ones are older than
+     * the groups cache ttl (seconds, 0 to always reload). The returned vector is shared and must not
+     * be modified.
+     */
+    protected Vector<Group> getUserGroups(String userName, String userSource)
+            throws DataSourceException, ConfigException
+    {
+        String key = userName + "@" + userSource;
+        CachedGroups cached = userGroups.get(key);
+        if (cached != null && cached.expires > System.currentTimeMillis()) {
+            groupsCacheHits.incrementAndGet();
+            return cached.groups;
+        }
+        groupsCacheMisses.incrementAndGet();
+        long generation = groupsGeneration.get();
+        Vector<Group> groups = authenticationSourceFactory.getAuthenticationSource(userSource).getGroupFactory()
+                .getGroups(userName);
+        cacheUserGroups(userName, userSource, groups, generation);
+        return groups;
+    }
+
+    private void cacheUserGroups(String userName, String userSource, Vector<Group> groups, long generation)
+    {
+        long ttl = groupsCacheTtl();
+        if (ttl <= 0 || groups == null) {
+            return;
+        }
+        String key = userName + "@" + userSource;
+        userGroups.put(key, new CachedGroups(groups, System.currentTimeMillis() + ttl * 1000));
+        if (generation != groupsGeneration.get()) {
+            // invalidated while loading
+            userGroups.remove(key);
+        }
+    }
+
+    private static long groupsCacheTtl()
+    {
+        try {
+            String value = ConfigurationManager.getValue(Config.SECURITY_GROUPS_CACHE_TTL);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}",
+                    Config.SECURITY_GROUPS_CACHE_TTL, DEFAULT_GROUPS_CACHE_TTL);
+        }
+        return DEFAULT_GROUPS_CACHE_TTL;
+    }
+
+    /**
+     * Forget the cached groups of a user: its sessions reload them on their next call
+     */
+    public void invalidateUserGroups(String userName, String userSource)
+    {
+        groupsGeneration.incrementAndGet();
+        userGroups.remove(userName + "@" + userSource);
+    }
+
+    /**
+     * Forget the cached groups of all the users of an authentication source
+     */
+    public void invalidateSourceGroups(String userSource)
+    {
+        groupsGeneration.incrementAndGet();
+        String suffix = "@" + userSource;
+        for (String key : userGroups.keySet()) {
+            if (key.endsWith(suffix)) {
+                userGroups.remove(key);
+            }
+        }
+    }
+
+    public long getGroupsCacheHits()
+    {
+        return groupsCacheHits.get();
+    }
+
+    public long getGroupsCacheMisses()
+    {
+        return groupsCacheMisses.get();
+    }
+
     @Transactional
     @DmsEvent(eventName = DmsEventName.SESSION_STOP, when = DmsEventOccur.AFTER)
     public synchronized void cleanSessionContext(long sessionExpire)
@@ -290,6 +411,7 @@ public class SessionManager extends HFactory implements ISessionManager
             for (Session d : sessionList) {
                 log.debug("Cleaning Session: " + d.getUid());
                 sessions.remove(d.getUid());
+                liveSessions.remove(d);
             }
             EventContext.getParameters().put("sessions", sessionList);
         } catch (Exception e) {
@@ -331,6 +453,7 @@ public class SessionManager extends HFactory implements ISessionManager
                     }
                     s.setGroups(grps);
                     sessions.put(s.getUid(), s);
+                    liveSessions.update(s);
                     getSession().delete(s);
                     nbSessions++;
                 } catch (NullPointerException e) {
@@ -391,6 +514,7 @@ public class SessionManager extends HFactory implements ISessionManager
     {
         Session s = sessions.get(sessionUid);
         sessions.remove(sessionUid);
+        liveSessions.remove(s);
         List<Session> items = new ArrayList<Session>();
         items.add(s);
         EventContext.getParameters().put("sessions", items);
@@ -407,6 +531,7 @@ public class SessionManager extends HFactory implements ISessionManager
             if (s.getUserName().equals(userName) && s.getUserSource().equals(userSource)) {
                 items.add(s);
                 sessions.remove(sessionUid);
+                liveSessions.remove(s);
             }
         }
         EventContext.getParameters().put("sessions", items);
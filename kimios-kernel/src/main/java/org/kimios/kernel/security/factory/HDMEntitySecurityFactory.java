@@ -19,7 +19,9 @@ import org.hibernate.HibernateException;
 import org.hibernate.NonUniqueObjectException;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.type.IntegerType;
 import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
 import org.kimios.exceptions.ConfigException;
 import org.kimios.kernel.dms.model.DMEntity;
 import org.kimios.kernel.dms.model.DMEntityImpl;
@@ -122,6 +124,30 @@ public class HDMEntitySecurityFactory extends HFactory implements DMEntitySecuri
         }
     }
 
+    public List<Object[]> getEntitiesRuleHashes(List<Long> dmEntityUids, Vector<String> hashs)
+            throws ConfigException, DataSourceException {
+        try {
+            String rightQuery = "select dm.dm_entity_id, dm.dm_entity_type, dm.dm_entity_owner, "
+                    + "dm.dm_entity_owner_source, acl.rule_hash "
+                    + "from dm_entity dm "
+                    + "left join dm_entity_acl acl "
+                    + "on (dm.dm_entity_id = acl.dm_entity_id and acl.rule_hash in (:hash)) "
+                    + "where dm.dm_entity_id in (:uids)";
+
+            return getSession().createSQLQuery(rightQuery)
+                    .addScalar("dm_entity_id", LongType.INSTANCE)
+                    .addScalar("dm_entity_type", IntegerType.INSTANCE)
+                    .addScalar("dm_entity_owner", StringType.INSTANCE)
+                    .addScalar("dm_entity_owner_source", StringType.INSTANCE)
+                    .addScalar("rule_hash", StringType.INSTANCE)
+                    .setParameterList("uids", dmEntityUids)
+                    .setParameterList("hash", hashs)
+                    .list();
+        } catch (HibernateException ex) {
+            throw new DataSourceException(ex);
+        }
+    }
+
     public boolean hasAnyChildCheckedOut(DMEntity e, String userName, String userSource)
             throws ConfigException, DataSourceException {
         try {
@@ -555,6 +581,18 @@ public class HDMEntitySecurityFactory extends HFactory implements DMEntitySecuri
         }
     }
 
+    public List<DMEntityACL> getDMEntityACLs(List<Long> dmEntityUids)
+            throws ConfigException, DataSourceException {
+        try {
+            String query = "from DMEntityACL acl where dmEntityUid in (:dmEntityUids)";
+            return getSession().createQuery(query)
+                    .setParameterList("dmEntityUids", dmEntityUids)
+                    .list();
+        } catch (HibernateException ex) {
+            throw new DataSourceException(ex);
+        }
+    }
+
     public List<DMEntityACL> saveDMEntitySecurity(DMEntitySecurity des, Share share)
             throws ConfigException, DataSourceException {
 
@@ -0,0 +1,63 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.system;
+
+import org.kimios.kernel.controller.IPathController;
+import org.kimios.kernel.jobs.PathRewriterJob;
+import org.kimios.utils.system.CustomScheduledThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+public class PathRewriter {
+
+    private static Logger log = LoggerFactory.getLogger(PathRewriter.class);
+
+    private IPathController pathController;
+    private CustomScheduledThreadPoolExecutor customScheduledThreadPoolExecutor;
+
+    public IPathController getPathController() {
+        return pathController;
+    }
+
+    public void setPathController(IPathController pathController) {
+        this.pathController = pathController;
+    }
+
+    public void startJob() {
+        log.info("Kimios Path Rewriter - Starting...");
+
+        this.customScheduledThreadPoolExecutor = new CustomScheduledThreadPoolExecutor(1);
+        PathRewriterJob job = new PathRewriterJob(pathController);
+        this.customScheduledThreadPoolExecutor.scheduleWithFixedDelay(job, 0, 1, TimeUnit.SECONDS);
+
+        log.info("Kimios Path Rewriter - Started");
+    }
+
+    public void stopJob() {
+        log.info("Kimios Path Rewriter - closing ...");
+        try {
+            if(this.customScheduledThreadPoolExecutor != null){
+                this.customScheduledThreadPoolExecutor.shutdownNow();
+                this.customScheduledThreadPoolExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+        log.info("Kimios Path Rewriter - closed");
+    }
+}
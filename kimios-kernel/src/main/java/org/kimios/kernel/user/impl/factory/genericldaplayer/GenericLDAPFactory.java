@@ -38,6 +38,13 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
+/**
+ * Searches of the generic LDAP factories, run with contexts of the pool of the directory (bound with the
+ * root dn). Results of the searches, other than paged ones, are cached by authentication source.
+ *
+ * @see LDAPContextPool
+ * @see LDAPSearchCache
+ */
 public abstract class GenericLDAPFactory
 {
 
@@ -70,28 +77,40 @@ public abstract class GenericLDAPFactory
                     }
                 }
             }
-            DirContext context =
-                    this.getContext(source.getProviderUrl() + "/" + source.getBaseDn(), source.getAuthenticationMode(),
-                            source.getReferralMode(),
-                            source.getUsersPrefix() + source.getRootDn() + source.getUsersSuffix(),
-                            source.getRootDnPassword());
-
             SearchControls sc = new SearchControls();
             sc.setSearchScope(source.isSubtreeScope() ? SearchControls.SUBTREE_SCOPE : SearchControls.ONELEVEL_SCOPE);
 
-
-
-
-            List<SearchResult> searchResults = new ArrayList<SearchResult>();
-            if (nodes == null) {
-                buildResults(s, where, context, sc, searchResults);
-            } else {
-                for (String node : nodes) {
-                    buildResults(s, node, context, sc, searchResults);
-                    logger.debug(" > Loaded data from node " + node + " > " + searchResults.size());
+            LDAPSearchCache cache = LDAPSearchCache.getInstance(source.getName());
+            String cacheKey = source.getProviderUrl() + "/" + source.getBaseDn() + "|" + type + "|" + dn + "|"
+                    + sc.getSearchScope() + "|" + s;
+            List<SearchResult> searchResults = cache.get(cacheKey);
+            if (searchResults != null) {
+                return searchResults;
+            }
+            long cacheGeneration = cache.getGeneration();
+
+            LDAPContextPool pool = getContextPool();
+            InitialLdapContext context = pool.borrow();
+            boolean failed = true;
+            try {
+                searchResults = new ArrayList<SearchResult>();
+                if (nodes == null) {
+                    buildResults(s, where, context, sc, searchResults);
+                } else {
+                    for (String node : nodes) {
+                        buildResults(s, node, context, sc, searchResults);
+                        logger.debug(" > Loaded data from node " + node + " > " + searchResults.size());
+                    }
+                }
+                failed = false;
+            } finally {
+                if (failed) {
+                    pool.invalidate(context);
+                } else {
+                    pool.release(context);
                 }
             }
-            context.close();
+            cache.put(cacheKey, searchResults, cacheGeneration);
             return searchResults;
         } catch (NamingException ne) {
             // If connection to LDAP server is lost
@@ -133,14 +152,6 @@ public abstract class GenericLDAPFactory
                     }
                 }
             }
-            InitialLdapContext context =
-                    this.getPagedLdapContext(source.getProviderUrl() + "/" + source.getBaseDn(),
-                            source.getAuthenticationMode(),
-                            source.getReferralMode(),
-                            source.getUsersPrefix() + source.getRootDn() + source.getUsersSuffix(),
-                            source.getRootDnPassword(), -1);
-
-
             VirtualListViewControl virtualListViewControl = new VirtualListViewControl(
                     0, 0, 0, ((page * pageSize) + pageSize), Control.CRITICAL);
             /* Sort Control is required for VLV to work */
@@ -149,23 +160,34 @@ public abstract class GenericLDAPFactory
                     Control.CRITICAL
             );
 
-            context.setRequestControls(new Control[]{sctl, virtualListViewControl});
-
-
             SearchControls sc = new SearchControls();
             sc.setSearchScope(source.isSubtreeScope() ? SearchControls.SUBTREE_SCOPE : SearchControls.ONELEVEL_SCOPE);
 
-            List<SearchResult> searchResults = new ArrayList<SearchResult>();
-            if (nodes == null) {
-                buildResults(s, where, context, sc, searchResults);
-            } else {
-                for (String node : nodes) {
-                    buildResults(s, node, context, sc, searchResults);
-                    logger.debug(" > Loaded data from node " + node + " > " + searchResults.size());
+            // the pool resets the request controls when the context is given back
+            LDAPContextPool pool = getContextPool();
+            InitialLdapContext context = pool.borrow();
+            boolean failed = true;
+            try {
+                context.setRequestControls(new Control[]{sctl, virtualListViewControl});
+
+                List<SearchResult> searchResults = new ArrayList<SearchResult>();
+                if (nodes == null) {
+                    buildResults(s, where, context, sc, searchResults);
+                } else {
+                    for (String node : nodes) {
+                        buildResults(s, node, context, sc, searchResults);
+                        logger.debug(" > Loaded data from node " + node + " > " + searchResults.size());
+                    }
+                }
+                failed = false;
+                return searchResults;
+            } finally {
+                if (failed) {
+                    pool.invalidate(context);
+                } else {
+                    pool.release(context);
                 }
             }
-            context.close();
-            return searchResults;
         }catch (IOException ne) {
             // If connection to LDAP server is lost
             if (ne.getCause() != null && ne.getCause().getClass().getName().equals("java.net.SocketException")) {
@@ -219,45 +241,36 @@ public abstract class GenericLDAPFactory
             return "";
     }
 
+    /**
+     * Pool of the contexts bound with the root dn of the source
+     */
+    protected LDAPContextPool getContextPool()
+    {
+        return LDAPContextPool.getInstance(
+                getEnvironment(source.getProviderUrl() + "/" + source.getBaseDn(), source.getAuthenticationMode(),
+                        source.getReferralMode(),
+                        source.getUsersPrefix() + source.getRootDn() + source.getUsersSuffix(),
+                        source.getRootDnPassword()));
+    }
+
     protected DirContext getContext(String ldapUrl, String ldapAuthenticateMode, String ldapReferralMode,
             String ldapUser, String ldapPassword)
             throws NamingException, AuthenticationException
     {
-        String LDAP_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
-        Hashtable<String, String> env = new Hashtable<String, String>();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, LDAP_CONTEXT_FACTORY);
-        env.put(Context.PROVIDER_URL, ldapUrl);
-        env.put(Context.SECURITY_AUTHENTICATION, ldapAuthenticateMode);
-        env.put(Context.SECURITY_PRINCIPAL, ldapUser);
-        env.put(Context.SECURITY_CREDENTIALS, ldapPassword);
-        env.put(Context.REFERRAL, ldapReferralMode);
-
-
-
-        try{
-            int cnxTimeout = Integer.parseInt(ConfigurationManager.getValue("dms.ldap.cnx.timeout"));
-            env.put("com.sun.jndi.ldap.connect.timeout", Integer.toString(cnxTimeout));
-
-        } catch (Exception ex){
-
-        }
-
-        try{
-            int cnxReadTimeout = Integer.parseInt(ConfigurationManager.getValue("dms.ldap.cnx.read.timeout"));
-            env.put("com.sun.jndi.ldap.read.timeout", Integer.toString(cnxReadTimeout));
-
-        } catch (Exception ex){
-
-        }
-
-
-
-        return new InitialDirContext(env);
+        return new InitialDirContext(
+                getEnvironment(ldapUrl, ldapAuthenticateMode, ldapReferralMode, ldapUser, ldapPassword));
     }
 
     protected InitialLdapContext getPagedLdapContext(String ldapUrl, String ldapAuthenticateMode, String ldapReferralMode,
                                     String ldapUser, String ldapPassword, int pageSize)
             throws NamingException, IOException, AuthenticationException
+    {
+        return new InitialLdapContext(
+                getEnvironment(ldapUrl, ldapAuthenticateMode, ldapReferralMode, ldapUser, ldapPassword), null);
+    }
+
+    private Hashtable<String, String> getEnvironment(String ldapUrl, String ldapAuthenticateMode,
+            String ldapReferralMode, String ldapUser, String ldapPassword)
     {
         String LDAP_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
         Hashtable<String, String> env = new Hashtable<String, String>();
@@ -283,7 +296,7 @@ public abstract class GenericLDAPFactory
 
         }
 
-        return new InitialLdapContext(env, null);
+        return env;
     }
 
     /**
@@ -0,0 +1,318 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.user.impl.factory.genericldaplayer;
+
+import org.kimios.kernel.configuration.Config;
+import org.kimios.utils.configuration.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ldap contexts bound with the same environment (directory url, credentials, options), kept open between
+ * searches instead of paying a connection and a bind for each one.
+ *
+ * Contexts are borrowed for one search and given back once its results are read. Up to max idle contexts
+ * are kept; a context is closed when it stayed idle longer than the idle timeout, and checked with a read
+ * of the base entry when it stayed idle longer than the validation interval. Contexts a search failed on
+ * are closed, never given back.
+ */
+public class LDAPContextPool
+{
+    private static Logger log = LoggerFactory.getLogger(LDAPContextPool.class);
+
+    private static final int DEFAULT_MAX_IDLE = 8;
+
+    private static final long DEFAULT_IDLE_TIMEOUT = 300;
+
+    private static final long DEFAULT_VALIDATION_INTERVAL = 30;
+
+    private static final ConcurrentMap<String, LDAPContextPool> pools =
+            new ConcurrentHashMap<String, LDAPContextPool>();
+
+    private static class IdleContext
+    {
+        private final InitialLdapContext context;
+
+        private final long since;
+
+        private IdleContext(InitialLdapContext context, long since)
+        {
+            this.context = context;
+            this.since = since;
+        }
+    }
+
+    private final Hashtable<String, String> environment;
+
+    private final int maxIdle;
+
+    private final long idleTimeout;
+
+    private final long validationInterval;
+
+    /* most recently given back first */
+    private final Deque<IdleContext> idle = new ArrayDeque<IdleContext>();
+
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * @param environment        environment of the contexts
+     * @param maxIdle            max number of idle contexts kept (0: contexts are closed once used)
+     * @param idleTimeout        time after which an idle context is closed (ms)
+     * @param validationInterval time after which an idle context is checked before being reused (ms)
+     */
+    public LDAPContextPool(Hashtable<String, String> environment, int maxIdle, long idleTimeout,
+            long validationInterval)
+    {
+        this.environment = new Hashtable<String, String>(environment);
+        this.maxIdle = Math.max(maxIdle, 0);
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * Pool of the contexts of an environment, created with the pool settings on first use
+     */
+    public static LDAPContextPool getInstance(Hashtable<String, String> environment)
+    {
+        String key = key(environment);
+        LDAPContextPool pool = pools.get(key);
+        if (pool == null) {
+            LDAPContextPool created = new LDAPContextPool(environment,
+                    (int) longSetting(Config.LDAP_POOL_SIZE, DEFAULT_MAX_IDLE),
+                    longSetting(Config.LDAP_POOL_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT) * 1000L,
+                    longSetting(Config.LDAP_POOL_VALIDATION_INTERVAL, DEFAULT_VALIDATION_INTERVAL) * 1000L);
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+                log.info("ldap context pool for {}: max idle {}, idle timeout {} ms, validation interval {} ms",
+                        environment.get(Context.PROVIDER_URL), pool.maxIdle, pool.idleTimeout,
+                        pool.validationInterval);
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Close the idle contexts of all the pools, and forget them (after the settings of a directory changed)
+     */
+    public static void closeAll()
+    {
+        for (String key : pools.keySet()) {
+            LDAPContextPool pool = pools.remove(key);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Pools in use, for statistics
+     */
+    public static Collection<LDAPContextPool> getInstances()
+    {
+        return Collections.unmodifiableCollection(pools.values());
+    }
+
+    private static String key(Hashtable<String, String> environment)
+    {
+        // the credentials are part of the key, only as a hash
+        String credentials = environment.get(Context.SECURITY_CREDENTIALS);
+        return environment.get(Context.PROVIDER_URL) + "|" + environment.get(Context.SECURITY_PRINCIPAL) + "|"
+                + (credentials != null ? Integer.toHexString(credentials.hashCode()) : "") + "|"
+                + environment.get(Context.SECURITY_AUTHENTICATION) + "|" + environment.get(Context.REFERRAL) + "|"
+                + environment.get("com.sun.jndi.ldap.connect.timeout") + "|"
+                + environment.get("com.sun.jndi.ldap.read.timeout");
+    }
+
+    private static long longSetting(String key, long defaultValue)
+    {
+        try {
+            String value = ConfigurationManager.getValue(key);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}", key, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * An idle context still valid, or a new one
+     */
+    public InitialLdapContext borrow() throws NamingException
+    {
+        while (true) {
+            IdleContext entry;
+            synchronized (this) {
+                entry = idle.pollFirst();
+            }
+            if (entry == null) {
+                break;
+            }
+            long idleTime = System.currentTimeMillis() - entry.since;
+            if (idleTime >= idleTimeout) {
+                close(entry.context);
+                continue;
+            }
+            if (idleTime >= validationInterval && !isValid(entry.context)) {
+                validationFailures.incrementAndGet();
+                close(entry.context);
+                continue;
+            }
+            reused.incrementAndGet();
+            return entry.context;
+        }
+        InitialLdapContext context = new InitialLdapContext(environment, null);
+        created.incrementAndGet();
+        return context;
+    }
+
+    /**
+     * Give back a context once the results of its search are read
+     */
+    public void release(InitialLdapContext context)
+    {
+        if (context == null) {
+            return;
+        }
+        try {
+            // controls set for a paged search must not apply to the next one
+            context.setRequestControls(null);
+        } catch (NamingException e) {
+            invalidate(context);
+            return;
+        }
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.addFirst(new IdleContext(context, System.currentTimeMillis()));
+                return;
+            }
+        }
+        close(context);
+    }
+
+    /**
+     * Close a context a search failed on, instead of giving it back
+     */
+    public void invalidate(InitialLdapContext context)
+    {
+        if (context != null) {
+            discarded.incrementAndGet();
+            close(context);
+        }
+    }
+
+    /**
+     * Close the idle contexts, and the ones given back from now on
+     */
+    public void close()
+    {
+        Deque<IdleContext> contexts;
+        synchronized (this) {
+            closed = true;
+            contexts = new ArrayDeque<IdleContext>(idle);
+            idle.clear();
+        }
+        for (IdleContext entry : contexts) {
+            close(entry.context);
+        }
+    }
+
+    /*
+        health check: the context is bound on the base dn, read its entry without attributes
+     */
+    private boolean isValid(InitialLdapContext context)
+    {
+        try {
+            context.getAttributes("", new String[]{"1.1"});
+            return true;
+        } catch (NamingException e) {
+            log.debug("idle ldap context of {} is not valid anymore: {}", environment.get(Context.PROVIDER_URL),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private static void close(InitialLdapContext context)
+    {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            // already broken
+        }
+    }
+
+    public synchronized int getIdle()
+    {
+        return idle.size();
+    }
+
+    public long getCreated()
+    {
+        return created.get();
+    }
+
+    public long getReused()
+    {
+        return reused.get();
+    }
+
+    public long getValidationFailures()
+    {
+        return validationFailures.get();
+    }
+
+    public long getDiscarded()
+    {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPContextPool{" +
+                "url=" + environment.get(Context.PROVIDER_URL) +
+                ", maxIdle=" + maxIdle +
+                ", idle=" + getIdle() +
+                ", created=" + created +
+                ", reused=" + reused +
+                ", validationFailures=" + validationFailures +
+                ", discarded=" + discarded +
+                '}';
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.user.impl.factory.genericldaplayer;
+
+import org.kimios.kernel.configuration.Config;
+import org.kimios.utils.configuration.ConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.directory.SearchResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of the ldap searches of an authentication source (users, groups, memberships), by search.
+ *
+ * Bounded in number of searches, least recently used ones are removed beyond; results older than the time
+ * to live are loaded again. Results of a search started before an invalidation are not kept.
+ */
+public class LDAPSearchCache
+{
+    private static Logger log = LoggerFactory.getLogger(LDAPSearchCache.class);
+
+    private static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    private static final long DEFAULT_TTL = 300;
+
+    private static final ConcurrentMap<String, LDAPSearchCache> caches =
+            new ConcurrentHashMap<String, LDAPSearchCache>();
+
+    private static class Entry
+    {
+        private final List<SearchResult> results;
+
+        private final long expires;
+
+        private Entry(List<SearchResult> results, long expires)
+        {
+            this.results = results;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxEntries;
+
+    private final long ttl;
+
+    /* search -> results, in access order */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+
+    /* incremented on invalidation */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries max number of searches kept (0: nothing is kept)
+     * @param ttl        time to live of the results of a search (ms)
+     */
+    public LDAPSearchCache(int maxEntries, long ttl)
+    {
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Cache of an authentication source, created with the cache settings on first use
+     */
+    public static LDAPSearchCache getInstance(String sourceName)
+    {
+        LDAPSearchCache cache = caches.get(sourceName);
+        if (cache == null) {
+            LDAPSearchCache created = new LDAPSearchCache(
+                    (int) longSetting(Config.LDAP_CACHE_SIZE, DEFAULT_MAX_ENTRIES),
+                    longSetting(Config.LDAP_CACHE_TTL, DEFAULT_TTL) * 1000L);
+            cache = caches.putIfAbsent(sourceName, created);
+            if (cache == null) {
+                cache = created;
+                log.info("ldap search cache of {}: max entries {}, ttl {} ms", sourceName, cache.maxEntries,
+                        cache.ttl);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forget the results of an authentication source: its users, groups or memberships changed
+     */
+    public static void invalidate(String sourceName)
+    {
+        LDAPSearchCache cache = caches.get(sourceName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Caches in use by authentication source, for statistics
+     */
+    public static Map<String, LDAPSearchCache> getInstances()
+    {
+        return Collections.unmodifiableMap(caches);
+    }
+
+    public static void invalidateAll()
+    {
+        for (LDAPSearchCache cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    private static long longSetting(String key, long defaultValue)
+    {
+        try {
+            String value = ConfigurationManager.getValue(key);
+            if (value != null && value.trim().length() > 0) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (Exception e) {
+            log.warn("unable to read setting {}, will use default value {}", key, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return a copy of the results of a search, null if not cached
+     */
+    public List<SearchResult> get(String search)
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(search);
+            if (entry != null && entry.expires <= System.currentTimeMillis()) {
+                entries.remove(search);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<SearchResult>(entry.results);
+    }
+
+    /**
+     * @return the generation to give to put the results of a search started now
+     */
+    public synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Keep the results of a search, unless the cache was invalidated since the search started
+     */
+    public void put(String search, List<SearchResult> results, long searchGeneration)
+    {
+        if (maxEntries == 0) {
+            return;
+        }
+        Entry entry = new Entry(new ArrayList<SearchResult>(results), System.currentTimeMillis() + ttl);
+        synchronized (this) {
+            if (searchGeneration != generation) {
+                return;
+            }
+            entries.put(search, entry);
+            while (entries.size() > maxEntries) {
+                String eldest = entries.keySet().iterator().next();
+                entries.remove(eldest);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPSearchCache{" +
+                "maxEntries=" + maxEntries +
+                ", ttl=" + ttl +
+                ", entries=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -21,7 +21,10 @@ import org.hibernate.exception.ConstraintViolationException;
 import org.kimios.exceptions.ConfigException;
 import org.kimios.exceptions.DataSourceException;
 import org.kimios.kernel.hibernate.HFactory;
+import org.kimios.kernel.user.impl.GenericLDAPImpl;
 import org.kimios.kernel.user.impl.HAuthenticationSource;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPContextPool;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPSearchCache;
 import org.kimios.kernel.user.model.AuthenticationSource;
 import org.kimios.kernel.user.model.AuthenticationSourceBean;
 import org.kimios.kernel.user.AuthenticationSourceFactory;
@@ -96,6 +99,18 @@ public class HAuthenticationSourceFactory extends HFactory implements Authentica
         a.setEnableSso(source.getEnableSSOCheck());
         a = (AuthenticationSourceBean) getSession().merge(a);
         getSession().delete(a);
+        directoryChanged(source);
+    }
+
+    /*
+        ldap connections and search results of a source are not valid anymore once its settings changed
+     */
+    private void directoryChanged(AuthenticationSource source)
+    {
+        if (source instanceof GenericLDAPImpl) {
+            LDAPSearchCache.invalidate(source.getName());
+            LDAPContextPool.closeAll();
+        }
     }
 
     public AuthenticationSource getAuthenticationSource(String name) throws ConfigException, DataSourceException
@@ -184,6 +199,7 @@ public class HAuthenticationSourceFactory extends HFactory implements Authentica
             }
             getSession().update(a);
             getSession().flush();
+            directoryChanged(source);
         } catch (HibernateException e) {
             boolean integrity = e instanceof ConstraintViolationException;
             throw new DataSourceException(e, e.getMessage());
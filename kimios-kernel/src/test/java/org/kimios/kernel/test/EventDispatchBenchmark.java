@@ -0,0 +1,177 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kimios.api.events.annotations.DmsEvent;
+import org.kimios.api.events.annotations.DmsEventName;
+import org.kimios.api.events.annotations.DmsEventOccur;
+import org.kimios.kernel.events.EventDispatchTable;
+import org.kimios.kernel.events.GenericEventHandler;
+import org.kimios.kernel.events.impl.ActionLogger;
+import org.kimios.kernel.events.impl.AddonDataHandler;
+import org.kimios.kernel.events.impl.WorkflowMailer;
+import org.kimios.kernel.events.model.EventContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cost of finding the handler methods of an event in the built-in handler set (ActionLogger,
+ * WorkflowMailer, AddonDataHandler), for every event and phase: declared methods scanned on each call
+ * as before, and lookups in the dispatch tables built at registration. The handler methods are not
+ * called (they need a database); the cost of a whole dispatch, calls included, is measured on a handler
+ * with empty methods.
+ *
+ * Run with: java -cp ... org.kimios.kernel.test.EventDispatchBenchmark [iterations]
+ */
+public class EventDispatchBenchmark {
+
+    private static final DmsEventOccur[] OCCURS = DmsEventOccur.values();
+
+    public static void main(String[] args) throws Throwable {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        EventContext.init();
+        EventContext ctx = EventContext.get();
+
+        GenericEventHandler[] builtIns = new GenericEventHandler[]{
+                new ActionLogger(), new WorkflowMailer(), new AddonDataHandler(new ObjectMapper())};
+        EventDispatchTable[] tables = new EventDispatchTable[builtIns.length];
+        for (int i = 0; i < builtIns.length; i++) {
+            tables[i] = builtIns[i].dispatchTable();
+        }
+        DmsEventName[] events = DmsEventName.values();
+        int lookups = events.length * OCCURS.length * builtIns.length;
+
+        EmptyHandler emptyHandler = new EmptyHandler();
+        Method documentCreate = EventDispatchBenchmark.class.getMethod("documentCreate");
+        Object[] arguments = new Object[]{"session", 1L};
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round + " (" + iterations + " x " + lookups + " lookups)");
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                for (GenericEventHandler handler : builtIns) {
+                    for (DmsEventName event : events) {
+                        for (DmsEventOccur occur : OCCURS) {
+                            sink += scan(handler, event, occur);
+                        }
+                    }
+                }
+            }
+            report("declared methods scan", start, (long) iterations * lookups, sink);
+
+            start = System.nanoTime();
+            sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                for (EventDispatchTable table : tables) {
+                    for (DmsEventName event : events) {
+                        for (DmsEventOccur occur : OCCURS) {
+                            sink += table.handles(event, occur, false).length;
+                        }
+                    }
+                }
+            }
+            report("dispatch table", start, (long) iterations * lookups, sink);
+
+            int calls = iterations * 100;
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                reflectiveProcess(emptyHandler, documentCreate, arguments, DmsEventOccur.AFTER, null, ctx);
+            }
+            report("reflective dispatch", start, calls, emptyHandler.calls);
+
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                emptyHandler.process(documentCreate, arguments, DmsEventOccur.AFTER, null, ctx);
+            }
+            report("table dispatch", start, calls, emptyHandler.calls);
+        }
+    }
+
+    @DmsEvent(eventName = DmsEventName.DOCUMENT_CREATE)
+    public static void documentCreate() {
+    }
+
+    public static class EmptyHandler extends GenericEventHandler {
+
+        private long calls;
+
+        @DmsEvent(eventName = DmsEventName.DOCUMENT_CREATE, when = DmsEventOccur.BEFORE)
+        public void beforeDocumentCreate(Object[] paramsObj, Object returnObj, EventContext ctx) {
+            calls++;
+        }
+
+        @DmsEvent(eventName = {DmsEventName.DOCUMENT_CREATE, DmsEventName.DOCUMENT_UPDATE})
+        public void afterDocumentChange(Object[] paramsObj, Object returnObj, EventContext ctx) {
+            calls++;
+        }
+
+        @DmsEvent(eventName = DmsEventName.DOCUMENT_DELETE)
+        public void afterDocumentDelete(Object[] paramsObj, Object returnObj, EventContext ctx) {
+            calls++;
+        }
+    }
+
+    private static void report(String name, long start, long operations, long sink) {
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("  %-22s %10d ns/op  (%d)", name, elapsed / operations, sink));
+    }
+
+    /*
+        what finding the methods of an event and phase did before
+     */
+    private static int scan(GenericEventHandler handler, DmsEventName event, DmsEventOccur occur) {
+        int count = 0;
+        for (Method it : handler.getClass().getDeclaredMethods()) {
+            DmsEvent st = it.getAnnotation(DmsEvent.class);
+            if (st != null) {
+                List<DmsEventName> nameList = Arrays.asList(st.eventName());
+                if (nameList.contains(event) && st.when().equals(occur)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+        what a dispatch did before
+     */
+    private static void reflectiveProcess(GenericEventHandler handler, Method method, Object[] arguments,
+                                          DmsEventOccur when, Object methodReturn, EventContext ctx)
+            throws Throwable {
+        DmsEvent evt = method.getAnnotation(DmsEvent.class);
+        for (Method it : handler.getClass().getDeclaredMethods()) {
+            DmsEvent st = it.getAnnotation(DmsEvent.class);
+            if (st != null) {
+                List<DmsEventName> nameList = Arrays.asList(st.eventName());
+                for (DmsEventName nCurrent : evt.eventName()) {
+                    if (nameList.contains(nCurrent) && st.when().equals(when)) {
+                        try {
+                            it.invoke(handler, arguments, methodReturn, ctx);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPContextPool;
+import org.kimios.kernel.user.impl.factory.genericldaplayer.LDAPSearchCache;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ldap context pool and search cache, against an in memory directory
+ */
+public class LDAPContextPoolTest {
+
+    private static final String BASE_DN = "dc=kimios,dc=org";
+
+    private static final String USERS = "(objectClass=inetOrgPerson)";
+
+    private InMemoryDirectoryServer server;
+
+    private Hashtable<String, String> environment;
+
+    @Before
+    public void startDirectory() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.addAdditionalBindCredentials("cn=admin", "secret");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: " + BASE_DN, "objectClass: top", "objectClass: domain", "dc: kimios");
+        server.add("dn: ou=users," + BASE_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: users");
+        for (int i = 1; i <= 3; i++) {
+            server.add("dn: uid=user" + i + ",ou=users," + BASE_DN, "objectClass: top", "objectClass: person",
+                    "objectClass: organizationalPerson", "objectClass: inetOrgPerson", "uid: user" + i,
+                    "cn: User " + i, "sn: User");
+        }
+        server.startListening();
+
+        environment = new Hashtable<String, String>();
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        environment.put(Context.PROVIDER_URL, "ldap://localhost:" + server.getListenPort() + "/" + BASE_DN);
+        environment.put(Context.SECURITY_AUTHENTICATION, "simple");
+        environment.put(Context.SECURITY_PRINCIPAL, "cn=admin");
+        environment.put(Context.SECURITY_CREDENTIALS, "secret");
+        environment.put(Context.REFERRAL, "ignore");
+    }
+
+    @After
+    public void stopDirectory() {
+        LDAPContextPool.closeAll();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void contextIsReusedOnceReleased() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool(environment, 2, 60000, 60000);
+        InitialLdapContext first = pool.borrow();
+        assertEquals(3, searchUsers(first).size());
+        pool.release(first);
+        assertEquals(1, pool.getIdle());
+
+        InitialLdapContext second = pool.borrow();
+        assertSame(first, second);
+        assertEquals(3, searchUsers(second).size());
+        pool.release(second);
+        assertEquals(1, pool.getCreated());
+        assertEquals(1, pool.getReused());
+        pool.close();
+        assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void idleContextsAreBounded() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool(environment, 2, 60000, 60000);
+        List<InitialLdapContext> contexts = new ArrayList<InitialLdapContext>();
+        for (int i = 0; i < 3; i++) {
+            contexts.add(pool.borrow());
+        }
+        for (InitialLdapContext context : contexts) {
+            pool.release(context);
+        }
+        assertEquals(3, pool.getCreated());
+        assertEquals(2, pool.getIdle());
+        pool.close();
+    }
+
+    @Test
+    public void brokenContextIsReplaced() throws Exception {
+        // validated whenever reused
+        LDAPContextPool pool = new LDAPContextPool(environment, 2, 60000, 0);
+        InitialLdapContext first = pool.borrow();
+        pool.release(first);
+        server.closeAllConnections(false);
+
+        InitialLdapContext second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(3, searchUsers(second).size());
+        pool.release(second);
+        assertEquals(1, pool.getValidationFailures());
+        assertEquals(2, pool.getCreated());
+        pool.close();
+    }
+
+    @Test
+    public void expiredOrInvalidatedContextIsNotReused() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool(environment, 2, 0, 60000);
+        pool.release(pool.borrow());
+        InitialLdapContext context = pool.borrow();
+        assertEquals(0, pool.getReused());
+        pool.invalidate(context);
+        assertEquals(1, pool.getDiscarded());
+        assertEquals(0, pool.getIdle());
+        pool.close();
+    }
+
+    @Test
+    public void poolIsSharedByEnvironment() throws Exception {
+        LDAPContextPool pool = LDAPContextPool.getInstance(environment);
+        assertSame(pool, LDAPContextPool.getInstance(new Hashtable<String, String>(environment)));
+        assertTrue(LDAPContextPool.getInstances().contains(pool));
+        LDAPContextPool.closeAll();
+        assertTrue(LDAPContextPool.getInstances().isEmpty());
+    }
+
+    @Test
+    public void searchResultsAreCached() throws Exception {
+        LDAPSearchCache cache = new LDAPSearchCache(10, 60000);
+        assertNull(cache.get(USERS));
+        long generation = cache.getGeneration();
+        cache.put(USERS, search(), generation);
+
+        List<SearchResult> results = cache.get(USERS);
+        assertEquals(3, results.size());
+        // a copy
+        results.clear();
+        assertEquals(3, cache.get(USERS).size());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void resultsOfSearchStartedBeforeInvalidationAreNotKept() throws Exception {
+        LDAPSearchCache cache = new LDAPSearchCache(10, 60000);
+        long generation = cache.getGeneration();
+        List<SearchResult> results = search();
+        cache.clear();
+        cache.put(USERS, results, generation);
+        assertNull(cache.get(USERS));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cacheIsBoundedAndExpires() throws Exception {
+        List<SearchResult> results = search();
+        LDAPSearchCache cache = new LDAPSearchCache(2, 60000);
+        cache.put("first", results, cache.getGeneration());
+        cache.put("second", results, cache.getGeneration());
+        // most recently used
+        cache.get("first");
+        cache.put("third", results, cache.getGeneration());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("second"));
+        assertEquals(3, cache.get("first").size());
+
+        LDAPSearchCache expiring = new LDAPSearchCache(2, 0);
+        expiring.put(USERS, results, expiring.getGeneration());
+        assertNull(expiring.get(USERS));
+    }
+
+    private List<SearchResult> search() throws NamingException {
+        LDAPContextPool pool = new LDAPContextPool(environment, 1, 60000, 60000);
+        InitialLdapContext context = pool.borrow();
+        try {
+            return searchUsers(context);
+        } finally {
+            pool.release(context);
+            pool.close();
+        }
+    }
+
+    private static List<SearchResult> searchUsers(InitialLdapContext context) throws NamingException {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        NamingEnumeration<SearchResult> enumeration = context.search("ou=users", USERS, controls);
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        while (enumeration.hasMore()) {
+            results.add(enumeration.next());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.test;
+
+import org.junit.Test;
+import org.kimios.kernel.security.SecurityRuleHashes;
+import org.kimios.kernel.security.model.DMSecurityRule;
+import org.kimios.kernel.security.model.EntityRights;
+import org.kimios.kernel.security.model.SecurityEntityType;
+import org.kimios.kernel.user.model.Group;
+import org.kimios.utils.hash.HashCalculator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Memoized rule hashes, and the rule hashes precomputed per user and group set
+ */
+public class SecurityRuleHashesTest {
+
+    private static final String USER = "jdoe";
+
+    private static final String SOURCE = "kimios";
+
+    private static Vector<Group> groups(int count) {
+        Vector<Group> groups = new Vector<Group>();
+        for (int i = 0; i < count; i++) {
+            groups.add(new Group("group" + i, "Group " + i, SOURCE));
+        }
+        return groups;
+    }
+
+    /*
+        what the rule hash was before it was memoized: two digests of the rule properties
+     */
+    private static String digest(String uid, String source, int type, short rights) throws Exception {
+        byte[] bytes = (uid + source + type + rights).getBytes("UTF-8");
+        return new HashCalculator("MD5").hashToString(bytes).replaceAll(" ", "") + ":"
+                + new HashCalculator("SHA-1").hashToString(bytes).replaceAll(" ", "");
+    }
+
+    @Test
+    public void memoizedRuleHashIsTheDigestOfTheRule() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            assertEquals(digest(USER, SOURCE, SecurityEntityType.USER, DMSecurityRule.READRULE),
+                    DMSecurityRule.getInstance(USER, SOURCE, SecurityEntityType.USER, DMSecurityRule.READRULE)
+                            .getRuleHash());
+            assertEquals(digest("group1", SOURCE, SecurityEntityType.GROUP, DMSecurityRule.FULLRULE),
+                    DMSecurityRule.getInstance("group1", SOURCE, SecurityEntityType.GROUP, DMSecurityRule.FULLRULE)
+                            .getRuleHash());
+        }
+    }
+
+    @Test
+    public void hashesOfUserAndGroups() throws Exception {
+        Vector<Group> groups = groups(3);
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(USER, SOURCE, groups);
+
+        assertEquals(12, hashes.getReadHashes().size());
+        assertEquals(8, hashes.getWriteHashes().size());
+        assertEquals(4, hashes.getFullAccessHashes().size());
+        assertEquals(13, hashes.getAllHashes().size());
+
+        String noAccess = digest(USER, SOURCE, SecurityEntityType.USER, DMSecurityRule.NOACCESS);
+        assertEquals(noAccess, hashes.getNoAccessHash());
+        assertEquals(noAccess, hashes.getNoAccessHashes().get(0));
+        assertTrue(hashes.getAllHashes().contains(noAccess));
+        assertEquals(0, hashes.getRights(noAccess));
+
+        for (Group g : groups) {
+            String read = digest(g.getGid(), SOURCE, SecurityEntityType.GROUP, DMSecurityRule.READRULE);
+            String write = digest(g.getGid(), SOURCE, SecurityEntityType.GROUP, DMSecurityRule.WRITERULE);
+            String full = digest(g.getGid(), SOURCE, SecurityEntityType.GROUP, DMSecurityRule.FULLRULE);
+            assertTrue(hashes.getReadHashes().containsAll(Arrays.asList(read, write, full)));
+            assertTrue(hashes.getWriteHashes().containsAll(Arrays.asList(write, full)));
+            assertFalse(hashes.getWriteHashes().contains(read));
+            assertTrue(hashes.getFullAccessHashes().contains(full));
+            assertEquals(EntityRights.READ, hashes.getRights(read));
+            assertEquals(EntityRights.READ | EntityRights.WRITE, hashes.getRights(write));
+            assertEquals(EntityRights.READ | EntityRights.WRITE | EntityRights.FULL_ACCESS, hashes.getRights(full));
+        }
+        assertTrue(hashes.getReadHashes().contains(
+                digest(USER, SOURCE, SecurityEntityType.USER, DMSecurityRule.READRULE)));
+        assertEquals(12, new HashSet<String>(hashes.getReadHashes()).size());
+    }
+
+    @Test
+    public void hashesAreSharedByUserAndGroupSet() {
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(USER, SOURCE, groups(2));
+        assertSame(hashes, SecurityRuleHashes.getInstance(USER, SOURCE, groups(2)));
+        assertNotSame(hashes, SecurityRuleHashes.getInstance(USER, SOURCE, groups(3)));
+        assertNotSame(hashes, SecurityRuleHashes.getInstance("other", SOURCE, groups(2)));
+    }
+
+    @Test
+    public void returnedHashesCanBeModified() {
+        SecurityRuleHashes hashes = SecurityRuleHashes.getInstance(USER, SOURCE, groups(1));
+        Vector<String> read = hashes.getReadHashes();
+        read.clear();
+        hashes.getNoAccessHashes().add("modified");
+        hashes.getAllHashes().remove(0);
+
+        SecurityRuleHashes again = SecurityRuleHashes.getInstance(USER, SOURCE, groups(1));
+        assertEquals(6, again.getReadHashes().size());
+        assertEquals(1, again.getNoAccessHashes().size());
+        assertEquals(7, again.getAllHashes().size());
+    }
+}
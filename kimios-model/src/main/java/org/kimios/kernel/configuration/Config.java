@@ -72,4 +72,54 @@ public class Config
 
     public static String ZIP_EXPORT_PATH = "dms.zip.export.tmp.path";
 
+    public static String INDEX_UPDATE_QUEUE_SIZE = "dms.index.solr.update.queue.size";
+
+    public static String INDEX_UPDATE_BATCH_SIZE = "dms.index.solr.update.batch.size";
+
+    public static String INDEX_UPDATE_BATCH_DELAY = "dms.index.solr.update.batch.delay";
+
+    public static String INDEX_COMMIT_WITHIN = "dms.index.solr.commitwithin";
+
+    public static String INDEX_REINDEX_QUEUE_SIZE = "dms.index.reindex.queue.size";
+
+    public static String INDEX_EXTRACTION_THREADS = "dms.index.extraction.threads";
+
+    public static String INDEX_EXTRACTION_QUEUE_SIZE = "dms.index.extraction.queue.size";
+
+    public static String INDEX_EXTRACTION_TIMEOUT = "dms.index.extraction.timeout";
+
+    public static String INDEX_EXTRACTION_CACHE_PATH = "dms.index.extraction.cache.path";
+
+    public static String INDEX_EXTRACTION_CACHE_SIZE = "dms.index.extraction.cache.size";
+
+    public static String SECURITY_GROUPS_CACHE_TTL = "dms.security.groups.cache.ttl";
+
+    public static String REPOSITORY_GC_INTERVAL = "dms.repository.gc.interval";
+
+    public static String EVENTS_ASYNC_THREADS = "dms.events.async.threads";
+
+    public static String EVENTS_ASYNC_QUEUE_SIZE = "dms.events.async.queue.size";
+
+    public static String EVENTS_ASYNC_POLICY = "dms.events.async.policy";
+
+    public static String EVENTS_ASYNC_ORDERED = "dms.events.async.ordered";
+
+    public static String RULES_CACHE_TTL = "dms.rules.cache.ttl";
+
+    public static String PREVIEW_CACHE_SIZE = "dms.preview.cache.size";
+
+    public static String PREVIEW_CACHE_TTL = "dms.preview.cache.ttl";
+
+    public static String LDAP_POOL_SIZE = "dms.ldap.pool.size";
+
+    public static String LDAP_POOL_IDLE_TIMEOUT = "dms.ldap.pool.idle.timeout";
+
+    public static String LDAP_POOL_VALIDATION_INTERVAL = "dms.ldap.pool.validation.interval";
+
+    public static String LDAP_CACHE_SIZE = "dms.ldap.cache.size";
+
+    public static String LDAP_CACHE_TTL = "dms.ldap.cache.ttl";
+
+    public static String CONTAINER_PATH_CACHE_TTL = "dms.container.path.cache.ttl";
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.dms.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Closure of the container tree: one row for each workspace or folder and each of its ancestors (itself
+ * included, at depth 0). Documents are found from the containers, by their folder.
+ *
+ * The containers under a folder are read by its uid instead of matching the paths of the whole table, and
+ * moving a folder only changes the rows of the containers it holds.
+ */
+@Entity
+@IdClass(DMEntityHierarchyPK.class)
+@Table(name = "dm_entity_hierarchy",
+        indexes = {@Index(name = "dm_entity_hierarchy_descendant_idx", columnList = "descendant_id")})
+public class DMEntityHierarchy implements Serializable
+{
+    @Id @Column(name = "ancestor_id")
+    private long ancestorUid;
+
+    @Id @Column(name = "descendant_id")
+    private long descendantUid;
+
+    @Column(name = "depth", nullable = false)
+    private int depth;
+
+    public DMEntityHierarchy()
+    {
+    }
+
+    public DMEntityHierarchy(long ancestorUid, long descendantUid, int depth)
+    {
+        this.ancestorUid = ancestorUid;
+        this.descendantUid = descendantUid;
+        this.depth = depth;
+    }
+
+    public long getAncestorUid()
+    {
+        return ancestorUid;
+    }
+
+    public void setAncestorUid(long ancestorUid)
+    {
+        this.ancestorUid = ancestorUid;
+    }
+
+    public long getDescendantUid()
+    {
+        return descendantUid;
+    }
+
+    public void setDescendantUid(long descendantUid)
+    {
+        this.descendantUid = descendantUid;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public void setDepth(int depth)
+    {
+        this.depth = depth;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.dms.model;
+
+import java.io.Serializable;
+
+public class DMEntityHierarchyPK implements Serializable
+{
+    private long ancestorUid;
+
+    private long descendantUid;
+
+    public long getAncestorUid()
+    {
+        return ancestorUid;
+    }
+
+    public void setAncestorUid(long ancestorUid)
+    {
+        this.ancestorUid = ancestorUid;
+    }
+
+    public long getDescendantUid()
+    {
+        return descendantUid;
+    }
+
+    public void setDescendantUid(long descendantUid)
+    {
+        this.descendantUid = descendantUid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DMEntityHierarchyPK that = (DMEntityHierarchyPK) o;
+
+        return ancestorUid == that.ancestorUid && descendantUid == that.descendantUid;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (ancestorUid ^ (ancestorUid >>> 32));
+        result = 31 * result + (int) (descendantUid ^ (descendantUid >>> 32));
+        return result;
+    }
+}
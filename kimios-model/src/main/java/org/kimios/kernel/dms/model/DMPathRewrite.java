@@ -0,0 +1,152 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.dms.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Paths of the entities under a container left to rewrite, after the container was renamed, moved, trashed or
+ * restored: only the container row is changed by the request, the rows under it are rewritten afterwards by
+ * blocks, the containers level by level (depth in the hierarchy of the container) and then the documents.
+ */
+@Entity
+@Table(name = "dm_path_rewrite")
+@SequenceGenerator(name = "seq", allocationSize = 1, sequenceName = "dm_path_rewrite_id_seq")
+public class DMPathRewrite implements Serializable
+{
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(generator = "seq", strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Column(name = "container_id", nullable = false)
+    private long containerUid;
+
+    /* trashed state given to the entities under the container, null to keep theirs (rename or move) */
+    @Column(name = "trashed", nullable = true)
+    private Boolean trashed;
+
+    @Column(name = "creation_date", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creationDate = new Date();
+
+    /* depth of the containers being rewritten */
+    @Column(name = "depth", nullable = false)
+    private int depth = 1;
+
+    /* containers done, documents being rewritten */
+    @Column(name = "documents", nullable = false)
+    private boolean documents = false;
+
+    /* last uid rewritten at the current step */
+    @Column(name = "last_uid", nullable = false)
+    private long lastUid = 0;
+
+    public DMPathRewrite()
+    {
+    }
+
+    public DMPathRewrite(long containerUid, Boolean trashed)
+    {
+        this.containerUid = containerUid;
+        this.trashed = trashed;
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public long getContainerUid()
+    {
+        return containerUid;
+    }
+
+    public void setContainerUid(long containerUid)
+    {
+        this.containerUid = containerUid;
+    }
+
+    public Boolean getTrashed()
+    {
+        return trashed;
+    }
+
+    public void setTrashed(Boolean trashed)
+    {
+        this.trashed = trashed;
+    }
+
+    public Date getCreationDate()
+    {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate)
+    {
+        this.creationDate = creationDate;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public void setDepth(int depth)
+    {
+        this.depth = depth;
+    }
+
+    public boolean isDocuments()
+    {
+        return documents;
+    }
+
+    public void setDocuments(boolean documents)
+    {
+        this.documents = documents;
+    }
+
+    public long getLastUid()
+    {
+        return lastUid;
+    }
+
+    public void setLastUid(long lastUid)
+    {
+        this.lastUid = lastUid;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DMPathRewrite{" +
+                "id=" + id +
+                ", containerUid=" + containerUid +
+                ", trashed=" + trashed +
+                ", depth=" + depth +
+                ", documents=" + documents +
+                ", lastUid=" + lastUid +
+                '}';
+    }
+}
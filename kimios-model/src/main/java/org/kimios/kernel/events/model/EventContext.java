@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -48,6 +49,13 @@ public class EventContext implements IEventContext
 
     private DmsEventOccur currentOccur;
 
+    /*
+    *
+    *   live parameters of a snapshot (null for the thread context)
+    *
+    */
+    private Map<String, Object> snapshotParameters;
+
     public DmsEventOccur getCurrentOccur()
     {
         return currentOccur;
@@ -55,6 +63,7 @@ public class EventContext implements IEventContext
 
     public void setCurrentOccur(DmsEventOccur currentOccur)
     {
+        checkMutable();
         this.currentOccur = currentOccur;
     }
 
@@ -85,6 +94,83 @@ public class EventContext implements IEventContext
         contexts.set(this);
     }
 
+    private EventContext(EventContext source, Map<String, Object> parameters)
+    {
+        this.event = source.event;
+        this.contextParameters = source.contextParameters != null ? source.contextParameters.clone() : null;
+        this.entity = source.entity;
+        this.parentEntity = source.parentEntity;
+        this.session = source.session;
+        this.currentOccur = source.currentOccur;
+        this.snapshotParameters = Collections.unmodifiableMap(
+                parameters != null ? new HashMap<String, Object>(parameters) : new HashMap<String, Object>());
+    }
+
+    /**
+     * Read only copy of this context and of the live parameters of the current thread, to be handled on
+     * another thread. The entities are shared, not copied: once the session that loaded them is closed,
+     * their lazy associations can no longer be read.
+     */
+    public EventContext snapshot()
+    {
+        return new EventContext(this, snapshotParameters != null ? snapshotParameters : liveParameters.get());
+    }
+
+    public boolean isSnapshot()
+    {
+        return snapshotParameters != null;
+    }
+
+    /**
+     * Make a snapshot the context of the current thread, with its parameters as live parameters
+     */
+    public static void attach(EventContext snapshot)
+    {
+        contexts.set(snapshot);
+        liveParameters.set(snapshot.snapshotParameters);
+    }
+
+    /**
+     * Remove the context and live parameters of the current thread
+     */
+    public static void detach()
+    {
+        contexts.remove();
+        liveParameters.remove();
+    }
+
+    /**
+     * Context of the current thread, null if none was created (unlike get)
+     */
+    public static EventContext current()
+    {
+        return contexts.get();
+    }
+
+    /**
+     * Give back to the current thread a context and live parameters read before an attach
+     */
+    public static void restore(EventContext context, Map<String, Object> parameters)
+    {
+        if (context != null) {
+            contexts.set(context);
+        } else {
+            contexts.remove();
+        }
+        if (parameters != null) {
+            liveParameters.set(parameters);
+        } else {
+            liveParameters.remove();
+        }
+    }
+
+    private void checkMutable()
+    {
+        if (snapshotParameters != null) {
+            throw new UnsupportedOperationException("Event context snapshot can't be modified");
+        }
+    }
+
     public static void clear()
     {
         logger.trace("Removing event context instance " + contexts.get());
@@ -108,6 +194,7 @@ public class EventContext implements IEventContext
 
     public void setEvent(DmsEventName event)
     {
+        checkMutable();
         this.event = event;
     }
 
@@ -118,6 +205,7 @@ public class EventContext implements IEventContext
 
     public void setContextParameters(Object[] contextParameters)
     {
+        checkMutable();
         this.contextParameters = contextParameters;
     }
 
@@ -143,6 +231,7 @@ public class EventContext implements IEventContext
 
     public void setEntity(DMEntity entity)
     {
+        checkMutable();
         this.entity = entity;
     }
 
@@ -153,6 +242,7 @@ public class EventContext implements IEventContext
 
     public void setParentEntity(DMEntity parentEntity)
     {
+        checkMutable();
         this.parentEntity = parentEntity;
     }
 
@@ -163,6 +253,7 @@ public class EventContext implements IEventContext
 
     public void setSession(Session session)
     {
+        checkMutable();
         this.session = session;
     }
 
@@ -0,0 +1,117 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index.query.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Start date of the last completed index synchronization of a path: the next incremental
+ * synchronization only checks the documents modified since.
+ */
+@Entity
+@Table(name = "dm_index_sync_cursor")
+@SequenceGenerator(name = "seq", allocationSize = 1, sequenceName = "dm_index_sync_cursor_seq")
+public class IndexSyncCursor {
+
+    @Id
+    @Column(name = "dm_index_sync_cursor_id")
+    @GeneratedValue(generator = "seq", strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Column(name = "dm_entity_path", columnDefinition = "text", nullable = false, unique = true)
+    private String path;
+
+    @Column(name = "last_sync_date", nullable = true)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastSyncDate;
+
+    @Column(name = "checked_count", nullable = false)
+    private long checkedCount;
+
+    @Column(name = "repaired_count", nullable = false)
+    private long repairedCount;
+
+    @Column(name = "update_date", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updateDate = new Date();
+
+    public IndexSyncCursor() {
+    }
+
+    public IndexSyncCursor(String path) {
+        this.path = path;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Date getLastSyncDate() {
+        return lastSyncDate;
+    }
+
+    public void setLastSyncDate(Date lastSyncDate) {
+        this.lastSyncDate = lastSyncDate;
+    }
+
+    public long getCheckedCount() {
+        return checkedCount;
+    }
+
+    public void setCheckedCount(long checkedCount) {
+        this.checkedCount = checkedCount;
+    }
+
+    public long getRepairedCount() {
+        return repairedCount;
+    }
+
+    public void setRepairedCount(long repairedCount) {
+        this.repairedCount = repairedCount;
+    }
+
+    public Date getUpdateDate() {
+        return updateDate;
+    }
+
+    public void setUpdateDate(Date updateDate) {
+        this.updateDate = updateDate;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexSyncCursor{" +
+                "path='" + path + '\'' +
+                ", lastSyncDate=" + lastSyncDate +
+                ", checkedCount=" + checkedCount +
+                ", repairedCount=" + repairedCount +
+                ", updateDate=" + updateDate +
+                '}';
+    }
+}
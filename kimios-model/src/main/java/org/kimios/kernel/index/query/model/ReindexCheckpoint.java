@@ -0,0 +1,117 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.index.query.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Last entity id reached by a path reindex process, so an interrupted reindex can be resumed.
+ */
+@Entity
+@Table(name = "dm_index_checkpoint",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"dm_entity_path", "dm_entity_type"}))
+@SequenceGenerator(name = "seq", allocationSize = 1, sequenceName = "dm_index_checkpoint_seq")
+public class ReindexCheckpoint {
+
+    @Id
+    @Column(name = "dm_index_checkpoint_id")
+    @GeneratedValue(generator = "seq", strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Column(name = "dm_entity_path", columnDefinition = "text", nullable = false)
+    private String path;
+
+    @Column(name = "dm_entity_type", nullable = false)
+    private int entityType;
+
+    @Column(name = "last_entity_id", nullable = false)
+    private long lastEntityId;
+
+    @Column(name = "indexed_count", nullable = false)
+    private long indexedCount;
+
+    @Column(name = "update_date", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updateDate = new Date();
+
+    public ReindexCheckpoint() {
+    }
+
+    public ReindexCheckpoint(String path, int entityType) {
+        this.path = path;
+        this.entityType = entityType;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(int entityType) {
+        this.entityType = entityType;
+    }
+
+    public long getLastEntityId() {
+        return lastEntityId;
+    }
+
+    public void setLastEntityId(long lastEntityId) {
+        this.lastEntityId = lastEntityId;
+    }
+
+    public long getIndexedCount() {
+        return indexedCount;
+    }
+
+    public void setIndexedCount(long indexedCount) {
+        this.indexedCount = indexedCount;
+    }
+
+    public Date getUpdateDate() {
+        return updateDate;
+    }
+
+    public void setUpdateDate(Date updateDate) {
+        this.updateDate = updateDate;
+    }
+
+    @Override
+    public String toString() {
+        return "ReindexCheckpoint{" +
+                "path='" + path + '\'' +
+                ", entityType=" + entityType +
+                ", lastEntityId=" + lastEntityId +
+                ", indexedCount=" + indexedCount +
+                ", updateDate=" + updateDate +
+                '}';
+    }
+}
@@ -35,6 +35,13 @@ public interface RepositoryAccessor {
     public void writeVersion(DocumentVersion version, InputStream in)
             throws DataSourceException, ConfigException, RepositoryException;
 
+    /**
+     * Store the given file as the content of the version, moving it into the repository when it can
+     * instead of copying it. The file no longer exists once stored.
+     */
+    public void moveVersionFile(DocumentVersion version, File file)
+            throws DataSourceException, ConfigException, RepositoryException;
+
     public OutputStream accessOutputStreamVersion(DocumentVersion version) throws Exception;
 
     public RandomAccessFile randomAccessFile(DocumentVersion version, String mode) throws Exception;
@@ -47,6 +54,27 @@ public interface RepositoryAccessor {
     public void readVersionToStream(DocumentVersion version, OutputStream out)
             throws DataSourceException, ConfigException, RepositoryException;
 
+    /**
+     * Write at most length bytes of the version content, starting at offset, to the stream
+     *
+     * @return the number of bytes written
+     */
+    public long readVersionRange(DocumentVersion version, long offset, long length, OutputStream out)
+            throws DataSourceException, ConfigException, RepositoryException;
+
+    /**
+     * Read at most length bytes of the version content, starting at offset (less at the end of the content)
+     */
+    public byte[] readVersionChunk(DocumentVersion version, long offset, int length)
+            throws DataSourceException, ConfigException, RepositoryException;
+
+    /**
+     * Read at most length bytes, starting at offset, of a file stored in the repository apart from the
+     * versions (compressed download), given by its path in the repository
+     */
+    public byte[] readFileChunk(String path, long offset, int length)
+            throws ConfigException, RepositoryException;
+
     public File directFileAccess(DocumentVersion documentVersion)
             throws RepositoryException;
 }
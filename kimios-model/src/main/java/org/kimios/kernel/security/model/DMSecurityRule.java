@@ -20,6 +20,8 @@ import org.kimios.utils.hash.HashCalculator;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 @Entity
@@ -35,6 +37,23 @@ public class DMSecurityRule implements Serializable
 
     public static short NOACCESS = 8;
 
+    private static final int RULE_HASH_CACHE_SIZE = 50000;
+
+    /*
+        rule hash by aggregated rule properties (entity uid, source, type, rights and share id):
+        the hash only depends on them, so entries never need invalidation. Bounded, least recently
+        used hashes are removed beyond.
+     */
+    private static final Map<String, String> ruleHashes =
+            new LinkedHashMap<String, String>(256, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+                {
+                    return size() > RULE_HASH_CACHE_SIZE;
+                }
+            };
+
     public static DMSecurityRule getInstance(String securityEntityUid, String securityEntitySource,
                                              int securityEntityType,
                                              short securityRule)
@@ -99,7 +118,13 @@ public class DMSecurityRule implements Serializable
         propsAggregatedStr += (withShare && this.getShare() != null) ?
                 share.getId() :
                 "";
-        String ruleHash = null;
+        String ruleHash;
+        synchronized (ruleHashes) {
+            ruleHash = ruleHashes.get(propsAggregatedStr);
+        }
+        if (ruleHash != null) {
+            return ruleHash;
+        }
         try {
             byte[] propsAggregated = (propsAggregatedStr).getBytes("UTF-8");
 
@@ -109,8 +134,11 @@ public class DMSecurityRule implements Serializable
             ruleHash = md5hash + ":" + sha1Hash;
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
+        }
+        synchronized (ruleHashes) {
+            ruleHashes.put(propsAggregatedStr, ruleHash);
         }
-
         return ruleHash;
     }
 
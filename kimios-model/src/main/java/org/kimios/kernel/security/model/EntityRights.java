@@ -0,0 +1,37 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.kernel.security.model;
+
+/**
+ * Flags of the rights bitmask of a user on an entity, as resolved for a list of entities at once
+ */
+public class EntityRights
+{
+    public final static int READ = 1;
+
+    public final static int WRITE = 2;
+
+    public final static int FULL_ACCESS = 4;
+
+    public final static int OWNER = 8;
+
+    public final static int BOOKMARKED = 16;
+
+    public static boolean has(Integer rights, int flag)
+    {
+        return rights != null && (rights & flag) == flag;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Kimios - Document Management System Software
+ * Copyright (C) 2008-2015  DevLib'
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * aong with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kimios.osgi.karaf;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import java.util.Arrays;
+
+
+/**
+ */
+@Service
+@Command(
+        scope = "kimios",
+        name = "index-sync",
+        description = "Reindex documents missing or outdated in the index (progress: viewreindex)")
+public class IndexSyncCommand extends KimiosCommand {
+
+    @Option(name = "-b",
+            aliases = "--blocksize",
+            description = "Check n document by n document",
+            required = false, multiValued = false)
+    Integer blockSize = null;
+
+    @Option(name = "-f",
+            aliases = "--full",
+            description = "Check all documents and remove orphans, instead of documents modified since the last sync",
+            required = false, multiValued = false)
+    boolean full = false;
+
+    @Argument(index = 0, name = "path",
+            description = "Kimios Path to synchronize",
+            required = true, multiValued = true)
+    String[] paths = null;
+
+
+    @Override
+    protected void doExecuteKimiosCommand() throws Exception {
+        if (this.isConnected()) {
+            searchManagementController.syncIndex(this.getCurrentSession(), Arrays.asList(paths), blockSize, full);
+        }
+    }
+}
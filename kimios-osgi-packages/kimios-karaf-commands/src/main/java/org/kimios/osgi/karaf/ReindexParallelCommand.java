@@ -65,7 +65,7 @@ public class ReindexParallelCommand extends KimiosCommand {
 
     @Option(name = "-tps",
             aliases = "--thread-pool-size",
-            description = "Thread Pool Size",
+            description = "Content extraction Thread Pool Size (default: number of processors)",
             required = false, multiValued = false)
     Integer threadPoolSize = null;
 
@@ -75,6 +75,12 @@ public class ReindexParallelCommand extends KimiosCommand {
             required = false, multiValued = false)
     Integer entityType = 3;
 
+    @Option(name = "-r",
+            aliases = "--resume",
+            description = "Resume from the last checkpoint of each path",
+            required = false, multiValued = false)
+    boolean resume = false;
+
 
     @Argument(index = 0, name = "path",
             description = "Kimios Path to reindex",
@@ -97,10 +103,11 @@ public class ReindexParallelCommand extends KimiosCommand {
                         block,
                         readTimeOut,
                         readTimeOutUnit != null ? TimeUnit.valueOf(readTimeOutUnit) : null,
-                        threadPoolSize != null ? threadPoolSize : 5,
+                        threadPoolSize != null ? threadPoolSize : 0,
                         regenerateMetaWrapper,
                         disableThreading,
-                        entityType
+                        entityType,
+                        resume
                 );
             } else if(ids != null && ids.length > 0){
                 searchManagementController.parallelReindex(
@@ -109,7 +116,7 @@ public class ReindexParallelCommand extends KimiosCommand {
                         block,
                         readTimeOut,
                         readTimeOutUnit != null ? TimeUnit.valueOf(readTimeOutUnit) : null,
-                        threadPoolSize != null ? threadPoolSize : 5,
+                        threadPoolSize != null ? threadPoolSize : 0,
                         regenerateMetaWrapper,
                         disableThreading,
                         entityType
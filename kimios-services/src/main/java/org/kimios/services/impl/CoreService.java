@@ -19,10 +19,19 @@ import org.kimios.kernel.controller.*;
 import org.kimios.converter.controller.IConverterController;
 import org.kimios.kernel.index.controller.ISearchController;
 import org.kimios.kernel.index.controller.ISearchManagementController;
+import org.kimios.kernel.security.model.EntityRights;
+import org.kimios.kernel.security.model.Session;
+import org.kimios.kernel.ws.pojo.DMEntity;
+import org.kimios.kernel.ws.pojo.DMEntityWrapper;
 import org.kimios.services.utils.CamelTool;
 import org.kimios.utils.media.controller.IMediaUtilsController;
 import org.kimios.webservices.IServiceHelper;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public abstract class CoreService
 {
     private IServiceHelper helper;
@@ -263,5 +272,34 @@ public abstract class CoreService
     public void setMediaUtilsController(IMediaUtilsController mediaUtilsController) {
         this.mediaUtilsController = mediaUtilsController;
     }
+
+    /**
+     * Wrap entities with the rights of the session user, resolved for the whole list at once
+     */
+    protected List<DMEntityWrapper> wrap(Session session, List<? extends DMEntity> entities)
+    {
+        List<Long> uids = new ArrayList<Long>();
+        for (DMEntity entity : entities) {
+            uids.add(entity.getUid());
+        }
+        Map<Long, Integer> rights = securityController.getRights(session, uids);
+        List<DMEntityWrapper> wrappers = new ArrayList<DMEntityWrapper>();
+        for (DMEntity entity : entities) {
+            Integer entityRights = rights.get(entity.getUid());
+            entity.setBookmarked(EntityRights.has(entityRights, EntityRights.BOOKMARKED));
+            wrappers.add(new DMEntityWrapper(
+                    entity,
+                    EntityRights.has(entityRights, EntityRights.READ),
+                    EntityRights.has(entityRights, EntityRights.WRITE),
+                    EntityRights.has(entityRights, EntityRights.FULL_ACCESS)
+            ));
+        }
+        return wrappers;
+    }
+
+    protected DMEntityWrapper wrap(Session session, DMEntity entity)
+    {
+        return wrap(session, Collections.singletonList(entity)).get(0);
+    }
 }
 
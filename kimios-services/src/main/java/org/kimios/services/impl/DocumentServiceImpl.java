@@ -35,7 +35,6 @@ import javax.jws.WebService;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @WebService(targetNamespace = "http://kimios.org", serviceName = "DocumentService", name = "DocumentService")
 public class DocumentServiceImpl extends CoreService implements DocumentService {
@@ -65,12 +64,7 @@ public class DocumentServiceImpl extends CoreService implements DocumentService
             org.kimios.kernel.dms.model.Document doc = documentController.getDocument(session, documentId);
             Document document = documentController.getDocumentPojo(doc);
 
-            return new DMEntityWrapper(
-                    document,
-                    this.securityController.canRead(session, document.getUid()),
-                    this.securityController.canWrite(session, document.getUid()),
-                    this.securityController.hasFullAccess(session, document.getUid())
-            );
+            return wrap(session, document);
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -102,16 +96,7 @@ public class DocumentServiceImpl extends CoreService implements DocumentService
     public List<DMEntityWrapper> getDocumentWrappers(String sessionId, long folderId) throws DMServiceException {
         try {
             Session session = getHelper().getSession(sessionId);
-            return this.documentController.getDocumentsPojos(session, folderId).stream()
-                    .map(
-                            document -> new DMEntityWrapper(
-                                    document,
-                                    this.securityController.canRead(session, document.getUid()),
-                                    this.securityController.canWrite(session, document.getUid()),
-                                    this.securityController.hasFullAccess(session, document.getUid())
-                            )
-                    )
-                    .collect(Collectors.toList());
+            return wrap(session, this.documentController.getDocumentsPojos(session, folderId));
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -768,15 +753,7 @@ public class DocumentServiceImpl extends CoreService implements DocumentService
         try {
             Session session = getHelper().getSession(sessionId);
             List<DMEntity> parents = this.documentController.retrieveDocumentParents(session, documentId);
-            return parents.stream()
-                    .map(
-                            dmEntity -> new DMEntityWrapper(
-                                    dmEntity,
-                                    this.securityController.canRead(session, dmEntity.getUid()),
-                                    this.securityController.canWrite(session, dmEntity.getUid()),
-                                    this.securityController.hasFullAccess(session, dmEntity.getUid())
-                            )
-                    ).collect(Collectors.toList());
+            return wrap(session, parents);
         } catch (Exception e) {
             throw getHelper().convertException(e);
 
@@ -790,12 +767,7 @@ public class DocumentServiceImpl extends CoreService implements DocumentService
 
             Document document = this.getDocument(sessionId, documentId);
 
-            return new DMEntityWrapper(
-                    document,
-                    this.securityController.canRead(session, documentId),
-                    this.securityController.canWrite(session, documentId),
-                    this.securityController.hasFullAccess(session, documentId)
-            );
+            return wrap(session, document);
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -158,33 +158,13 @@ public class FileTransferServiceImpl
     }
 
     @WebMethod(exclude = true)
-    public Response downloadDocumentVersion(String sessionId, final long transactionId, Boolean inline)
+    public Response downloadDocumentVersion(String sessionId, final long transactionId, Boolean inline,
+                                            String range)
             throws DMServiceException {
         try {
             final Session session = getHelper().getSession(sessionId);
             DocumentWrapper dw = transferController.getDocumentVersionWrapper(session, transactionId);
-            StreamingOutput sOutput = new StreamingOutput() {
-                @Override
-                public void write(OutputStream output) throws IOException, WebApplicationException {
-                    try {
-                        transferController.readVersionStream(session, transactionId, output);
-                        output.flush();
-                        output.close();
-                    } catch (Exception ex) {
-                        logger.error("error on streaming", ex);
-                    }
-                }
-            };
-            Response.ResponseBuilder response = Response.ok(sOutput);
-            response.header("Content-Description", "File Transfer");
-            response.header("Content-Type", dw.getContentType());
-            response.header("Content-Transfer-Encoding", "binary");
-            response.header("Expires", "0");
-            response.header("Cache-Control", "must-revalidate, post-check=0, pre-check=0");
-            response.header("Pragma", "public");
-            response.header("Content-Length", dw.getLength());
-            response.header("Content-Disposition", (inline ? "inline;" : "attachment;") + " filename=\"" + dw.getFilename() + "\"");
-            return response.build();
+            return versionResponse(session, transactionId, dw, inline, range);
         } catch (Exception e) {
             logger.error("error", e);
             throw getHelper().convertException(e);
@@ -193,9 +173,71 @@ public class FileTransferServiceImpl
 
 
     @WebMethod(exclude = true)
-    public Response downloadDocument(String sessionId, final long transactionId, Boolean inline)
+    public Response downloadDocument(String sessionId, final long transactionId, Boolean inline, String range)
             throws DMServiceException {
-        return this.downloadDocument(sessionId, transactionId, inline, null);
+        return this.downloadDocument(sessionId, transactionId, inline, null, range);
+    }
+
+    /*
+        Version content of a download transaction, or the byte range of it asked by the Range header (a single
+        range: several ranges get the whole content)
+     */
+    private Response versionResponse(Session session, long transactionId, DocumentWrapper dw, Boolean inline,
+                                     String range) {
+        long total = dw.getLength();
+        long[] bytes = byteRange(range);
+        Response.ResponseBuilder response;
+        if (bytes == null) {
+            response = Response.ok(new FileStreamingOutput(transferController, session, transactionId, 0,
+                    Long.MAX_VALUE));
+            response.header("Content-Length", total);
+        } else {
+            long first = bytes[0] < 0 ? Math.max(0, total + bytes[0]) : bytes[0];
+            long last = bytes[1] < 0 || bytes[1] >= total ? total - 1 : bytes[1];
+            if (first > last || bytes[0] == Long.MIN_VALUE) {
+                return Response.status(416).header("Content-Range", "bytes */" + total).build();
+            }
+            response = Response.status(206).entity(new FileStreamingOutput(transferController, session,
+                    transactionId, first, last - first + 1));
+            response.header("Content-Range", "bytes " + first + "-" + last + "/" + total);
+            response.header("Content-Length", last - first + 1);
+        }
+        response.header("Accept-Ranges", "bytes");
+        response.header("Content-Description", "File Transfer");
+        response.header("Content-Type", dw.getContentType());
+        response.header("Content-Transfer-Encoding", "binary");
+        response.header("Expires", "0");
+        response.header("Cache-Control", "must-revalidate, post-check=0, pre-check=0");
+        response.header("Pragma", "public");
+        response.header("Content-Disposition", (inline ? "inline;" : "attachment;") + " filename=\"" + dw.getFilename() + "\"");
+        return response.build();
+    }
+
+    /*
+        First and last byte of "bytes=first-last" and "bytes=first-" (last -1), or the length of "bytes=-suffix"
+        as a negative first byte (Long.MIN_VALUE for an empty suffix). Null for no range, several ranges or
+        unparsable values.
+     */
+    private static long[] byteRange(String range) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') > -1) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1).trim());
+                return new long[]{suffix > 0 ? -suffix : Long.MIN_VALUE, -1};
+            }
+            long first = Long.parseLong(spec.substring(0, dash).trim());
+            long last = dash == spec.length() - 1 ? -1 : Long.parseLong(spec.substring(dash + 1).trim());
+            return first < 0 || (last > -1 && last < first) ? null : new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     @Override
@@ -229,35 +271,13 @@ public class FileTransferServiceImpl
 
 
     @WebMethod(exclude = true)
-    public Response downloadDocument(String sessionId, final long transactionId, Boolean inline, List<Long> metaIds)
+    public Response downloadDocument(String sessionId, final long transactionId, Boolean inline, List<Long> metaIds,
+                                     String range)
             throws DMServiceException {
         try {
             final Session session = getHelper().getSession(sessionId);
             DocumentWrapper dw = transferController.getDocumentVersionWrapper(session, transactionId, metaIds);
-            StreamingOutput sOutput = new StreamingOutput() {
-                @Override
-                public void write(OutputStream output) throws IOException, WebApplicationException {
-                    try {
-                        transferController.readVersionStream(session, transactionId, output);
-                        output.flush();
-                        output.close();
-                    } catch (Exception ex) {
-                        logger.error("error on streaming", ex);
-                    }
-                }
-            };
-            Response.ResponseBuilder response = Response.ok(sOutput);
-            response.header("Content-Description", "File Transfer");
-            response.header("Content-Type", dw.getContentType());
-            response.header("Content-Transfer-Encoding", "binary");
-            response.header("Expires", "0");
-            response.header("Cache-Control", "must-revalidate, post-check=0, pre-check=0");
-            response.header("Pragma", "public");
-            response.header("Content-Length", dw.getLength());
-            response.header("Content-Disposition", (inline ? "inline;" : "attachment;") + " filename=\"" + dw.getFilename() + "\"");
-            return response.build();
-
-
+            return versionResponse(session, transactionId, dw, inline, range);
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
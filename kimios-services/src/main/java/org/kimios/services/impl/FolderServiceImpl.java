@@ -60,12 +60,7 @@ public class FolderServiceImpl extends CoreService implements FolderService
 
             Folder f = folderController.getFolder(session, folderUid).toPojo();
 
-            return new DMEntityWrapper(
-                    f,
-                    this.securityController.canRead(session, f.getUid()),
-                    this.securityController.canWrite(session, f.getUid()),
-                    this.securityController.hasFullAccess(session, f.getUid())
-            );
+            return wrap(session, f);
         } catch (Exception e) {
 
             throw getHelper().convertException(e);
@@ -93,15 +88,9 @@ public class FolderServiceImpl extends CoreService implements FolderService
     public List<DMEntityWrapper> getFolderWrappers(String sessionId, long parentId) throws DMServiceException {
         try {
             Session session = getHelper().getSession(sessionId);
-            return this.folderController.getFolders(session, parentId).stream()
+            return wrap(session, this.folderController.getFolders(session, parentId).stream()
                     .map(folder -> folder.toPojo())
-                    .map(folder -> new DMEntityWrapper(
-                            folder,
-                            this.securityController.canRead(session, folder.getUid()),
-                            this.securityController.canWrite(session, folder.getUid()),
-                            this.securityController.hasFullAccess(session, folder.getUid())
-                    ))
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()));
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -53,12 +53,7 @@ public class WorkspaceServiceImpl extends CoreService implements WorkspaceServic
 
             org.kimios.kernel.ws.pojo.Workspace ws = workspaceController.getWorkspace(session, workspaceUid).toPojo();
 
-            return new DMEntityWrapper(
-                            ws,
-                            this.securityController.canRead(session, ws.getUid()),
-                            this.securityController.canWrite(session, ws.getUid()),
-                            this.securityController.hasFullAccess(session, ws.getUid())
-                    );
+            return wrap(session, ws);
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -91,15 +86,9 @@ public class WorkspaceServiceImpl extends CoreService implements WorkspaceServic
 
             Session session = getHelper().getSession(sessionUid);
 
-            return workspaceController.getWorkspaces(session).stream()
+            return wrap(session, workspaceController.getWorkspaces(session).stream()
                     .map(workspace -> workspace.toPojo())
-                    .map(workspace -> new DMEntityWrapper(
-                            workspace,
-                            this.securityController.canRead(session, workspace.getUid()),
-                            this.securityController.canWrite(session, workspace.getUid()),
-                            this.securityController.hasFullAccess(session, workspace.getUid())
-                    ))
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()));
         } catch (Exception e) {
             throw getHelper().convertException(e);
         }
@@ -17,16 +17,34 @@ public class FileStreamingOutput implements StreamingOutput {
     private Session session;
     private long transactionId;
 
+    /* range of the version content of the download transaction, or the whole transaction file when null */
+    private Long offset;
+    private long length;
+
     public FileStreamingOutput(IFileTransferController transferController, Session session, long transactionId) {
         this.transferController = transferController;
         this.session = session;
         this.transactionId = transactionId;
     }
 
+    /**
+     * Stream length bytes of the version content of the download transaction, from offset
+     */
+    public FileStreamingOutput(IFileTransferController transferController, Session session, long transactionId,
+                               long offset, long length) {
+        this(transferController, session, transactionId);
+        this.offset = offset;
+        this.length = length;
+    }
+
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
         try {
-            transferController.readFileStream(session, transactionId, output);
+            if (offset != null) {
+                transferController.readVersionStream(session, transactionId, offset, length, output);
+            } else {
+                transferController.readFileStream(session, transactionId, output);
+            }
             output.flush();
             output.close();
         } catch (Exception ex) {
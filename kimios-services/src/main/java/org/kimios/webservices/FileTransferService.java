@@ -102,7 +102,8 @@ public interface FileTransferService
     @Produces( value = {MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON} )
     public Response downloadDocumentVersion( @QueryParam("sessionId") String sessionId,
                                                 @QueryParam("transactionId") long transactionId,
-                                                @DefaultValue("true") @QueryParam("inline") Boolean inline)
+                                                @DefaultValue("true") @QueryParam("inline") Boolean inline,
+                                                @HeaderParam("Range") String range)
             throws DMServiceException;
 
 
@@ -111,7 +112,8 @@ public interface FileTransferService
     @Produces( MediaType.APPLICATION_OCTET_STREAM )
     public Response downloadDocument( @QueryParam("sessionId") String sessionId,
                                       @QueryParam("transactionId") long transactionId,
-                                      @DefaultValue("true") @QueryParam("inline") Boolean inline)
+                                      @DefaultValue("true") @QueryParam("inline") Boolean inline,
+                                      @HeaderParam("Range") String range)
             throws DMServiceException;
 
     @GET @ApiOperation(value ="")
@@ -127,7 +129,8 @@ public interface FileTransferService
     public Response downloadDocument( @QueryParam("sessionId") String sessionId,
                                                 @QueryParam("transactionId") long transactionId,
                                                 @DefaultValue("true") @QueryParam("inline") Boolean inline,
-                                                @DefaultValue("") @QueryParam("metaIds") List<Long> metaIds)
+                                                @DefaultValue("") @QueryParam("metaIds") List<Long> metaIds,
+                                                @HeaderParam("Range") String range)
             throws DMServiceException;
 
 
@@ -9,12 +9,12 @@ import org.kimios.kernel.ws.pojo.UpdateNoticeMessage;
 import org.kimios.kernel.ws.pojo.UpdateNoticeMessageEncoder;
 import org.kimios.websocket.client.controller.IWebSocketManager;
 import org.kimios.websocket.client.controller.KimiosWebSocketClientEndpointConfigConfigurator;
+import org.kimios.websocket.client.queue.OutboundQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.websocket.ClientEndpoint;
 import javax.websocket.DeploymentException;
-import javax.websocket.EncodeException;
 import javax.websocket.EndpointConfig;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
@@ -23,6 +23,7 @@ import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
 
 
 @ClientEndpoint(
@@ -36,16 +37,35 @@ public class WebSocketManager implements IWebSocketManager {
 
     private String webSocketUrl;
 
+    /* notices of all the sessions go through the one connection */
+    private static final int QUEUE_CAPACITY = 100000;
+
     private Session session;
 
+    private volatile OutboundQueue outboundQueue;
+
+    private ScheduledExecutorService scheduler;
+
     private WebSocketContainer containerProvider;
 
     public WebSocketManager(){}
 
     public void init() {
+        this.scheduler = OutboundQueue.newScheduler("websocket-client");
         logger.info("websocket manager started");
     }
 
+    public synchronized void destroy() {
+        if (this.outboundQueue != null) {
+            this.outboundQueue.close();
+            logger.info("websocket outbound queue closed: " + this.outboundQueue);
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        logger.info("websocket manager stopped");
+    }
+
     public void connect(String connectionUrl) {
         WebSocketContainer container = this.getWebSocketContainer();
         try {
@@ -73,38 +93,45 @@ public class WebSocketManager implements IWebSocketManager {
 
     @Override
     public void sendUpdateNotice(UpdateNoticeMessage updateNoticeMessage) {
-        if (this.session == null || !this.session.isOpen()) {
-            String urlConnection = this.webSocketUrl + "/" + updateNoticeMessage.getToken();
-            this.connect(urlConnection);
-        }
-        try {
-            session.getBasicRemote().sendObject(updateNoticeMessage);
-        } catch (IOException e) {
-            logger.debug("is webSocket open (session.isOpen())? " + (session.isOpen() ? "true" : "false"));
-            e.printStackTrace();
-        } catch (EncodeException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        OutboundQueue queue = this.outboundQueue(updateNoticeMessage.getToken());
+        if (queue != null) {
+            queue.offer(updateNoticeMessage,
+                    updateNoticeMessage.getSessionId() + ":" + OutboundQueue.coalescingKey(updateNoticeMessage));
         }
     }
 
     @Override
     public void sendData(DataMessage dataMessage) {
+        OutboundQueue queue = this.outboundQueue(dataMessage.getToken());
+        if (queue != null) {
+            queue.offer(dataMessage, null);
+        }
+    }
+
+    /*
+        queue of the connection to the websocket server, connecting again if it was closed
+     */
+    private synchronized OutboundQueue outboundQueue(String token) {
         if (this.session == null || !this.session.isOpen()) {
-            String urlConnection = this.webSocketUrl + "/" + dataMessage.getToken();
+            String urlConnection = this.webSocketUrl + "/" + token;
             this.connect(urlConnection);
         }
-        try {
-            session.getBasicRemote().sendObject(dataMessage);
-        } catch (IOException e) {
-            logger.debug("is webSocket open (session.isOpen())? " + (session.isOpen() ? "true" : "false"));
-            e.printStackTrace();
-        } catch (EncodeException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (this.session == null) {
+            return null;
         }
+        if (this.outboundQueue == null || this.outboundQueue.getSession() != this.session) {
+            if (this.outboundQueue != null) {
+                this.outboundQueue.close();
+                logger.info("websocket outbound queue closed: " + this.outboundQueue);
+            }
+            this.outboundQueue = new OutboundQueue(this.webSocketUrl, this.session, this.scheduler, QUEUE_CAPACITY,
+                    OutboundQueue.DEFAULT_COALESCE_WINDOW, OutboundQueue.DEFAULT_SLOW_CONSUMER_TIMEOUT);
+        }
+        return this.outboundQueue;
+    }
+
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
     }
 
     public String getWebSocketUrl() {
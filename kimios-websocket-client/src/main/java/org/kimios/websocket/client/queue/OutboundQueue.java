@@ -0,0 +1,315 @@
+package org.kimios.websocket.client.queue;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.kimios.kernel.ws.pojo.UpdateNoticeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Messages waiting to be sent to one websocket session, sent one at a time with its asynchronous remote
+ * so a slow peer never blocks the senders.
+ *
+ * Messages offered with the same coalescing key while an earlier one is still waiting replace it (the
+ * first one is held for the coalescing window, so bursts are merged). The queue is bounded: once full,
+ * new messages are dropped, and the session is closed when it stays full or a send stays pending longer
+ * than the slow consumer timeout.
+ *
+ * Sends run on the scheduler given by the owner of the queue (see {@link #newScheduler(String)}), which
+ * shuts it down once its queues are closed.
+ */
+public class OutboundQueue {
+
+    private static Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    public static final long DEFAULT_COALESCE_WINDOW = 50;
+
+    public static final long DEFAULT_SLOW_CONSUMER_TIMEOUT = 30000;
+
+    private final String name;
+
+    private final Session session;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int capacity;
+
+    private final long coalesceWindow;
+
+    private final long slowConsumerTimeout;
+
+    /* payloads by coalescing key (a new object for messages never coalesced), in offer order */
+    private final LinkedHashMap<Object, Object> pending = new LinkedHashMap<>();
+
+    /* a send is pending or scheduled */
+    private boolean sending;
+
+    private long sendStartedAt;
+
+    /* time the queue was found full, 0 if it isn't */
+    private long fullSince;
+
+    private boolean closed;
+
+    private final AtomicLong offered = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    public OutboundQueue(String name, Session session, ScheduledExecutorService scheduler) {
+        this(name, session, scheduler, DEFAULT_CAPACITY, DEFAULT_COALESCE_WINDOW, DEFAULT_SLOW_CONSUMER_TIMEOUT);
+    }
+
+    /**
+     * @param capacity            max number of messages waiting
+     * @param coalesceWindow      time a message waits for others to coalesce with (ms)
+     * @param slowConsumerTimeout time the queue can stay full or a send pending before the session is
+     *                            closed (ms)
+     */
+    public OutboundQueue(String name, Session session, ScheduledExecutorService scheduler, int capacity,
+                         long coalesceWindow, long slowConsumerTimeout) {
+        this.name = name;
+        this.session = session;
+        this.scheduler = scheduler;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.coalesceWindow = coalesceWindow;
+        this.slowConsumerTimeout = slowConsumerTimeout;
+    }
+
+    /**
+     * Single daemon thread sending the messages of the queues of one owner
+     */
+    public static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "OutboundQueue-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Coalescing key of an update notice: its type and the entity it is about (the whole message when
+     * it doesn't tell any)
+     */
+    public static String coalescingKey(UpdateNoticeMessage message) {
+        String entity = null;
+        String text = message.getMessage();
+        if (text != null && text.startsWith("{")) {
+            try {
+                JsonElement element = new JsonParser().parse(text);
+                if (element.isJsonObject()) {
+                    JsonObject object = element.getAsJsonObject();
+                    JsonElement uid = object.has("dmEntityId") ? object.get("dmEntityId") : object.get("uid");
+                    if (uid != null && uid.isJsonPrimitive()) {
+                        entity = uid.getAsString();
+                    }
+                }
+            } catch (Exception e) {
+                // not json, the whole message is the key
+            }
+        }
+        return message.getUpdateNoticeType() + ":" + (entity != null ? entity : text);
+    }
+
+    /**
+     * Queue a message, encoded by the encoders of the session when sent
+     *
+     * @param key coalescing key, null to never coalesce the message
+     * @return false if the message was dropped
+     */
+    public boolean offer(Object payload, String key) {
+        boolean schedule = false;
+        boolean stalled = false;
+        synchronized (this) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            offered.incrementAndGet();
+            long now = System.currentTimeMillis();
+            if (key != null && pending.containsKey(key)) {
+                pending.put(key, payload);
+                coalesced.incrementAndGet();
+            } else if (pending.size() >= capacity) {
+                if (dropped.incrementAndGet() % 1000 == 1) {
+                    log.warn("outbound queue {} full, dropping messages ({} dropped so far)", name, dropped);
+                }
+                if (fullSince == 0) {
+                    fullSince = now;
+                }
+                stalled = now - fullSince >= slowConsumerTimeout;
+            } else {
+                pending.put(key != null ? key : new Object(), payload);
+                if (!sending) {
+                    sending = true;
+                    schedule = true;
+                }
+            }
+            stalled |= sendStartedAt > 0 && now - sendStartedAt >= slowConsumerTimeout;
+        }
+        if (stalled) {
+            disconnect("too slow");
+            return false;
+        }
+        if (schedule) {
+            schedule(coalesceWindow);
+        }
+        return true;
+    }
+
+    private void schedule(long delay) {
+        try {
+            scheduler.schedule(this::sendNext, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler shut down by the owner of the queue
+            close();
+            synchronized (this) {
+                sending = false;
+            }
+        }
+    }
+
+    private void sendNext() {
+        Object payload;
+        synchronized (this) {
+            sendStartedAt = 0;
+            if (pending.size() < capacity) {
+                fullSince = 0;
+            }
+            if (closed || pending.isEmpty()) {
+                sending = false;
+                return;
+            }
+            Iterator<Object> it = pending.values().iterator();
+            payload = it.next();
+            it.remove();
+            sendStartedAt = System.currentTimeMillis();
+        }
+        try {
+            session.getAsyncRemote().sendObject(payload, this::sent);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            if (!session.isOpen()) {
+                close();
+            }
+            next();
+        }
+    }
+
+    private void sent(SendResult result) {
+        if (result.isOK()) {
+            sent.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            if (!session.isOpen()) {
+                close();
+            }
+        }
+        // next one from the scheduler thread, the handler may be called from the sending thread
+        next();
+    }
+
+    private void next() {
+        synchronized (this) {
+            if (closed) {
+                // the scheduler may be shut down already
+                sending = false;
+                return;
+            }
+        }
+        schedule(0);
+    }
+
+    /**
+     * Drop the messages waiting, and the ones offered from now on
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            dropped.addAndGet(pending.size());
+            pending.clear();
+        }
+    }
+
+    /**
+     * Close the queue and the session
+     */
+    public void disconnect(String reason) {
+        close();
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+        } catch (IOException | IllegalStateException e) {
+            // already closed
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public long getOffered() {
+        return offered.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "OutboundQueue{" +
+                "name='" + name + '\'' +
+                ", pending=" + getPending() +
+                ", offered=" + offered.get() +
+                ", coalesced=" + coalesced.get() +
+                ", sent=" + sent.get() +
+                ", dropped=" + dropped.get() +
+                ", failed=" + failed.get() +
+                ", closed=" + isClosed() +
+                '}';
+    }
+}
@@ -11,6 +11,9 @@ import org.kimios.kernel.ws.pojo.UpdateNoticeMessageEncoder;
 import org.kimios.kernel.ws.pojo.UpdateNoticeType;
 import org.kimios.kernel.ws.pojo.web.SessionUidParam;
 import org.kimios.websocket.IKimiosWebSocketController;
+import org.kimios.websocket.client.queue.OutboundQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -24,12 +27,14 @@ import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledExecutorService;
 
 @ServerEndpoint(
         value = "/chat/{username}",
@@ -37,11 +42,15 @@ import java.util.concurrent.CopyOnWriteArraySet;
         encoders = { MessageEncoder.class, UpdateNoticeMessageEncoder.class, DataMessageEncoder.class}
 )
 public class ChatEndpoint implements IKimiosWebSocketController {
+    private static Logger log = LoggerFactory.getLogger(ChatEndpoint.class);
+
     private Session session;
     private static final Set<ChatEndpoint> chatEndpoints = new CopyOnWriteArraySet<>();
     private static final Map<String, ChatEndpoint> chatEndpointsMap = new HashMap<String, ChatEndpoint>();
     private static HashMap<String, String> users = new HashMap<>();
     private static final ConcurrentMap<String, Session> webSocketSessions = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, OutboundQueue> outboundQueues = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService outboundScheduler = OutboundQueue.newScheduler("websocket");
 
     private ISecurityController securityController;
     private Gson gson = new Gson();
@@ -82,6 +91,11 @@ public class ChatEndpoint implements IKimiosWebSocketController {
             }
             this.session = session;
             webSocketSessions.put(sessionUidParam.getSessionUid(), session);
+            OutboundQueue previous = outboundQueues.put(sessionUidParam.getSessionUid(),
+                    new OutboundQueue(session.getId(), session, outboundScheduler));
+            if (previous != null) {
+                previous.close();
+            }
             message = new Message(sessionUidParam.getWebSocketToken(), null);
             this.sendMessage(sessionUidParam.getSessionUid(), message);
         } catch (Exception e) {
@@ -128,6 +142,12 @@ public class ChatEndpoint implements IKimiosWebSocketController {
                 .orElse(null);
         if (entryToRemove != null) {
             webSocketSessions.remove(entryToRemove.getKey());
+            OutboundQueue queue = outboundQueues.get(entryToRemove.getKey());
+            if (queue != null && queue.getSession() == session) {
+                outboundQueues.remove(entryToRemove.getKey());
+                queue.close();
+                log.debug("websocket outbound queue closed: {}", queue);
+            }
             System.out.println("WebSocket session removed for kimios session: "
                     + entryToRemove.getKey()
                     + " ("
@@ -144,127 +164,71 @@ public class ChatEndpoint implements IKimiosWebSocketController {
 
     @Override
     public void sendUpdateNotice(String sessionId, UpdateNoticeMessage updateNoticeMessage) {
-        System.out.println("sendUpdateNotice() " + updateNoticeMessage.getUpdateNoticeType().name() + " : " + this.hashCode());
-        try {
-            // ChatEndpoint chatEndpoint = chatEndpointsMap.get(sessionId);
-            Session sessionDestination = webSocketSessions.get(sessionId);
-            if (sessionDestination == null) {
-                // System.out.println("message not sent, no websocket session found");
-                return;
-            }
-            updateNoticeMessage.clearSessionId();
-            synchronized (sessionDestination) {
-                sessionDestination.getBasicRemote()
-                        .sendObject(gson.toJson(updateNoticeMessage, UpdateNoticeMessage.class));
-                /*System.out.println(
-                        "UpdateNoticeMessage ("
-                                + updateNoticeMessage.getUpdateNoticeType().getValue()
-                                + ") sent to "
-                                + users.get(sessionDestination.getId())
-                                + " (" + sessionId + ")"
-                );*/
-            }
-        } catch (IOException | EncodeException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        OutboundQueue queue = outboundQueues.get(sessionId);
+        if (queue == null) {
+            // System.out.println("message not sent, no websocket session found");
+            return;
         }
+        updateNoticeMessage.clearSessionId();
+        queue.offer(gson.toJson(updateNoticeMessage, UpdateNoticeMessage.class),
+                OutboundQueue.coalescingKey(updateNoticeMessage));
     }
 
     @Override
     public void sendData(String sessionId, DataMessage dataMessage) {
-        try {
-            // ChatEndpoint chatEndpoint = chatEndpointsMap.get(sessionId);
-            Session sessionDestination = webSocketSessions.get(sessionId);
-            if (sessionDestination == null) {
-                return;
-            }
-            dataMessage.clearSessionId();
-            synchronized (sessionDestination) {
-                sessionDestination.getBasicRemote().sendObject(dataMessage);
-                /*System.out.println(
-                        "DataMessage (with list size of "
-                                + dataMessage.getDmEntityList().size()
-                                + ") sent to "
-                                + users.get(sessionDestination.getId())
-                                + " (" + sessionId + ")"
-                );*/
-            }
-        } catch (IOException | EncodeException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        OutboundQueue queue = outboundQueues.get(sessionId);
+        if (queue == null) {
+            return;
         }
+        dataMessage.clearSessionId();
+        queue.offer(dataMessage, null);
     }
 
     @Override
     public void sendMessage(String sessionId, Message message) {
-        try {
-            // ChatEndpoint chatEndpoint = chatEndpointsMap.get(sessionId);
-            Session sessionDestination = webSocketSessions.get(sessionId);
-            if (sessionDestination == null) {
-                return;
-            }
-            message.clearSessionId();
-            synchronized (sessionDestination) {
-                sessionDestination.getBasicRemote().sendObject(message);
-                /*System.out.println(
-                        "DataMessage (with list size of "
-                                + dataMessage.getDmEntityList().size()
-                                + ") sent to "
-                                + users.get(sessionDestination.getId())
-                                + " (" + sessionId + ")"
-                );*/
-            }
-        } catch (IOException | EncodeException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        OutboundQueue queue = outboundQueues.get(sessionId);
+        if (queue == null) {
+            return;
         }
+        message.clearSessionId();
+        queue.offer(message, null);
     }
 
     @Override
     public void sendKeepAliveToAll() {
         System.out.println("sendKeepAliveToAll() : " + this.hashCode());
-        webSocketSessions.forEach((key, sessionDestination) -> {
-            try {
-                if (sessionDestination == null) {
-                    return;
-                }
-                UpdateNoticeMessage updateNoticeMessage = new UpdateNoticeMessage(
-                        UpdateNoticeType.KEEP_ALIVE_PING,
-                        key,
-                        null
-                );
-                synchronized (sessionDestination) {
-                    /*System.out.println(
-                            "sending UpdateNoticeMessage to "
-                                    + users.get(sessionDestination.getId())
-                                    + " (" + key + ")"
-                    );
-                    System.out.println("webSocketSessions.size() : " + webSocketSessions.size());
-*/                    sessionDestination.getBasicRemote()
-                            .sendObject(gson.toJson(updateNoticeMessage, UpdateNoticeMessage.class));
-                    /*System.out.println(
-                            "UpdateNoticeMessage sent to "
-                                    + users.get(sessionDestination.getId())
-                                    + " (" + key + ")"
-                    );*/
-                }
-            } catch (IOException | EncodeException e) {
-                // System.out.println(e.getClass());
-                // System.out.println(this);
-                try {
-                    sessionDestination.close();
-                } catch (IOException ioException) {
-                    // System.out.println("catch " + ioException.getClass() + " when closing websocket session");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        outboundQueues.forEach((key, queue) -> {
+            UpdateNoticeMessage updateNoticeMessage = new UpdateNoticeMessage(
+                    UpdateNoticeType.KEEP_ALIVE_PING,
+                    key,
+                    null
+            );
+            queue.offer(gson.toJson(updateNoticeMessage, UpdateNoticeMessage.class),
+                    UpdateNoticeType.KEEP_ALIVE_PING.name());
         });
     }
 
+    /**
+     * Outbound queues of the open websocket sessions, by kimios session
+     */
+    public static Map<String, OutboundQueue> getOutboundQueues() {
+        return Collections.unmodifiableMap(outboundQueues);
+    }
+
+    /**
+     * Close the outbound queues and stop their sending thread, when the web application is stopped
+     */
+    public static void closeOutboundQueues() {
+        for (String sessionId : outboundQueues.keySet()) {
+            OutboundQueue queue = outboundQueues.remove(sessionId);
+            if (queue != null) {
+                queue.close();
+            }
+        }
+        outboundScheduler.shutdownNow();
+        log.info("websocket outbound queues closed");
+    }
+
     public ISecurityController getSecurityController() {
         return securityController;
     }
@@ -0,0 +1,19 @@
+package org.kimios.websocket.websocket;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Closes the websocket outbound queues and stops their sending thread when the web application is stopped
+ */
+public class OutboundQueuesListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent servletContextEvent) {
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        ChatEndpoint.closeOutboundQueues();
+    }
+}
@@ -11,6 +11,7 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 @Path("/zip-rest-only")
 @CrossOriginResourceSharing(allowAllOrigins = true)
@@ -24,4 +25,13 @@ public interface ZipperRestService {
     long make(
             @ApiParam() DMEntityTreeParam dmEntityTree
     ) throws Exception;
+
+    @POST
+    @ApiOperation(value ="")
+    @Path("/stream-from-tree")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    Response stream(
+            @ApiParam() DMEntityTreeParam dmEntityTree
+    ) throws Exception;
 }
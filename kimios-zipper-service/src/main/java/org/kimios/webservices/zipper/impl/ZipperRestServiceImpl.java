@@ -6,11 +6,21 @@ import org.kimios.kernel.ws.pojo.web.DMEntityTreeParam;
 import org.kimios.webservices.IServiceHelper;
 import org.kimios.webservices.zipper.ZipperRestService;
 import org.kimios.zipper.controller.IZipperController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 
 public class ZipperRestServiceImpl implements ZipperRestService {
 
+    private static Logger logger = LoggerFactory.getLogger(ZipperRestServiceImpl.class);
+
     IZipperController zipperController;
     IFileTransferController fileTransferController;
     private IServiceHelper helper;
@@ -51,4 +61,29 @@ public class ZipperRestServiceImpl implements ZipperRestService {
             throw helper.convertException(e);
         }
     }
+
+    @Override
+    public Response stream(final DMEntityTreeParam dmEntityTreeParam) throws Exception {
+        try {
+            final Session session = helper.getSession(dmEntityTreeParam.getSessionId());
+            StreamingOutput sOutput = new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    try {
+                        zipperController.writeZipFromEntityTree(session, dmEntityTreeParam.getDmEntityTree(), output);
+                        output.flush();
+                    } catch (Exception ex) {
+                        logger.error("error on zip streaming", ex);
+                        throw new WebApplicationException(ex);
+                    }
+                }
+            };
+            return Response.ok(sOutput)
+                    .header("Content-Disposition", "attachment; filename=\"files_from_kimios.zip\"")
+                    .header("Content-Type", MediaType.APPLICATION_OCTET_STREAM)
+                    .build();
+        } catch (Exception e) {
+            throw helper.convertException(e);
+        }
+    }
 }
@@ -5,17 +5,23 @@ import org.kimios.webservices.IServiceHelper;
 import org.kimios.webservices.exceptions.DMServiceException;
 import org.kimios.webservices.zipper.ZipperService;
 import org.kimios.zipper.controller.IZipperController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.jws.WebService;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.File;
-import java.io.FileInputStream;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 @WebService(targetNamespace = "http://kimios.org", serviceName = "ZipperService")
 public class ZipperServiceImpl implements ZipperService {
 
+    private static Logger logger = LoggerFactory.getLogger(ZipperServiceImpl.class);
+
     IZipperController zipperController;
     private IServiceHelper helper;
 
@@ -36,21 +42,30 @@ public class ZipperServiceImpl implements ZipperService {
     }
 
     @Override
-    public Response makeZip(String sessionId, List<Long> ids) throws DMServiceException {
-        File zip = null;
+    public Response makeZip(String sessionId, final List<Long> ids) throws DMServiceException {
         try {
-            Session session = helper.getSession(sessionId);
-            zip = zipperController.makeZipWithEntities(session, ids);
+            final Session session = helper.getSession(sessionId);
+            // written to the response as the entities are walked, without temporary zip file
+            StreamingOutput sOutput = new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    try {
+                        zipperController.writeZipWithEntities(session, ids, output);
+                        output.flush();
+                    } catch (Exception ex) {
+                        logger.error("error on zip streaming", ex);
+                        throw new WebApplicationException(ex);
+                    }
+                }
+            };
             String fileName = "files_from_kimios.zip";
-            return Response.ok(new FileInputStream(zip)).header(
+            return Response.ok(sOutput).header(
                     "Content-Disposition",
                     "attachment; filename=\"" + fileName + "\"")
                     .header("Content-Type", MediaType.APPLICATION_OCTET_STREAM)
                     .build();
         } catch (Exception e) {
             throw helper.convertException(e);
-        } finally {
-            zipperController.markFileDownloaded(zip);
         }
     }
 }
@@ -6,6 +6,7 @@ import org.kimios.kernel.ws.pojo.DMEntityTree;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface IZipperController {
@@ -15,6 +16,18 @@ public interface IZipperController {
     File makeZipFromEntityTree(Session session, DMEntityTree dmEntityTree)
             throws ConfigException, IOException;
 
+    /**
+     * Write the zip of the entities to the stream, as the entities are walked
+     */
+    void writeZipWithEntities(Session session, List<Long> dmEntityList, OutputStream out)
+            throws ConfigException, IOException;
+
+    /**
+     * Write the zip of the entity tree to the stream, as the tree is walked
+     */
+    void writeZipFromEntityTree(Session session, DMEntityTree dmEntityTree, OutputStream out)
+            throws ConfigException, IOException;
+
     void markFileDownloaded(File file);
 
     long makeZipFromEntityTreeAndStartDownloadTransaction(Session session, DMEntityTree dmEntityTree) throws IOException;
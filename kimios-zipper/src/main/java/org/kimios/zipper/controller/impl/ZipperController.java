@@ -16,21 +16,26 @@ import org.kimios.kernel.ws.pojo.DMEntityTree;
 import org.kimios.kernel.ws.pojo.DMEntityTreeNode;
 import org.kimios.zipper.controller.IZipperController;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -42,6 +47,15 @@ public class ZipperController implements IZipperController {
     private IFolderController folderController;
     private IFileTransferController fileTransferController;
     private String zipFilesPath;
+    private boolean storeCompressedFormats = true;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar",
+            "jpg", "jpeg", "png", "gif", "webp",
+            "mp3", "ogg", "mp4", "m4a", "mov", "avi", "mkv",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp"));
 
     public void init() throws IOException {
         if (! Files.isDirectory(Paths.get(zipFilesPath))) {
@@ -51,62 +65,57 @@ public class ZipperController implements IZipperController {
 
     @Override
     public File makeZipWithEntities(Session session, List<Long> dmEntityUidList) throws ConfigException, IOException {
-        String zipFileName =
-                session.getUserName()
-                + "@"
-                + session.getUserSource()
-                + "_"
-                + new Date().toInstant().toEpochMilli()
-                + ".zip";
-        LinkedHashMap<String, InputStream> inputStreamLinkedHashMap = new LinkedHashMap<>();
+        File zipFile = Paths.get(zipFilesPath, zipFileName(session)).toFile();
+        OutputStream out = new FileOutputStream(zipFile);
+        try {
+            writeZipWithEntities(session, dmEntityUidList, out);
+        } finally {
+            out.close();
+        }
+        return zipFile;
+    }
+
+    @Override
+    public File makeZipFromEntityTree(Session session, DMEntityTree dmEntityTree) throws ConfigException, IOException {
+        File zipFile = Paths.get(zipFilesPath, zipFileName(session)).toFile();
+        OutputStream out = new FileOutputStream(zipFile);
+        try {
+            writeZipFromEntityTree(session, dmEntityTree, out);
+        } finally {
+            out.close();
+        }
+        return zipFile;
+    }
+
+    @Override
+    public void writeZipWithEntities(Session session, List<Long> dmEntityUidList, OutputStream out)
+            throws ConfigException, IOException {
         List<DMEntityImpl> dmEntityList = new ArrayList<>();
         for (Long uid: dmEntityUidList) {
             dmEntityList.add(this.dmEntityController.getEntity(session, uid));
         }
-        this.prepareZipFileInputStreams(session, dmEntityList, inputStreamLinkedHashMap, "");
-        File zipFile = Paths.get(zipFilesPath, zipFileName).toFile();
-        makeZipFromLinkedHashMap(inputStreamLinkedHashMap, zipFile);
-        return zipFile;
+        ZipWriter zip = new ZipWriter(out);
+        this.writeEntities(session, dmEntityList, zip, "");
+        zip.finish();
     }
 
     @Override
-    public File makeZipFromEntityTree(Session session, DMEntityTree dmEntityTree) throws ConfigException, IOException {
-        String zipFileName =
-                session.getUserName()
-                        + "@"
-                        + session.getUserSource()
-                        + "_"
-                        + new Date().toInstant().toEpochMilli()
-                        + ".zip";
-        LinkedHashMap<String, InputStream> inputStreamLinkedHashMap = new LinkedHashMap<>();
+    public void writeZipFromEntityTree(Session session, DMEntityTree dmEntityTree, OutputStream out)
+            throws ConfigException, IOException {
+        ZipWriter zip = new ZipWriter(out);
         for (DMEntityTreeNode node : dmEntityTree.getTreeNodeList()) {
-            this.prepareZipFileInputStreamsFromDMEntityTreeNode(session, node, inputStreamLinkedHashMap, "");
+            this.writeEntityTreeNode(session, node, zip, "");
         }
-        File zipFile = Paths.get(zipFilesPath, zipFileName).toFile();
-        makeZipFromLinkedHashMap(inputStreamLinkedHashMap, zipFile);
-        return zipFile;
+        zip.finish();
     }
 
-    private void prepareZipFileInputStreamsFromDMEntityUid(
-            Session session,
-            Long dmEntityUid,
-            LinkedHashMap<String, InputStream> inputStreamLinkedHashMap,
-            String s
-    ) throws IOException {
-        DMEntityImpl dmEntity = dmEntityController.getEntity(session, dmEntityUid);
-        inputStreamLinkedHashMap.put(
-                dmEntity.getName()
-                        +
-                        ((dmEntity instanceof Document
-                                && ((Document) dmEntity).getExtension() != null
-                                && !((Document) dmEntity).getExtension().isEmpty()) ?
-                                "." + ((Document) dmEntity).getExtension() :
-                                ""),
-                InputSourceFactory.getInputSource(
-                        documentVersionController.getLastDocumentVersion(session, dmEntity.getUid()),
-                        UUID.randomUUID().toString()
-                ).getInputStream()
-        );
+    private static String zipFileName(Session session) {
+        return session.getUserName()
+                + "@"
+                + session.getUserSource()
+                + "_"
+                + new Date().toInstant().toEpochMilli()
+                + ".zip";
     }
 
     @Override
@@ -122,69 +131,93 @@ public class ZipperController implements IZipperController {
         return this.fileTransferController.startDownloadTransaction(session, zip).getUid();
     }
 
-    private static void makeZipFromLinkedHashMap(
-            LinkedHashMap<String, InputStream> inputStreamLinkedHashMap,
-            File zipFile
-    ) throws IOException {
-        FileOutputStream fos = new FileOutputStream(zipFile);
-        ZipOutputStream zipOut = new ZipOutputStream(fos, StandardCharsets.UTF_8);
-        for (String entityName : inputStreamLinkedHashMap.keySet()) {
-            InputStream inputStream = inputStreamLinkedHashMap.get(entityName);
-            entityName = Normalizer.normalize(entityName, Normalizer.Form.NFD);
-            // entityName = entityName.replaceAll("[^\\x00-\\x7F]", "");
-            String entryName = inputStream == null ?
-                    entityName + "/" :
-                    entityName;
-            ZipEntry zipEntry = new ZipEntry(entryName);
-            zipOut.putNextEntry(zipEntry);
-
-            if (inputStream != null) {
-                byte[] bytes = new byte[1024];
+    /*
+        Zip entries written as the entities are walked: a single version stream is open at a time
+     */
+    private class ZipWriter {
+
+        private final ZipOutputStream zipOut;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private final Set<String> entryNames = new HashSet<>();
+
+        private ZipWriter(OutputStream out) {
+            this.zipOut = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8);
+        }
+
+        private void addFolder(String entityName) throws IOException {
+            String entryName = Normalizer.normalize(entityName, Normalizer.Form.NFD) + "/";
+            if (entryNames.add(entryName)) {
+                zipOut.putNextEntry(new ZipEntry(entryName));
+                zipOut.closeEntry();
+            }
+        }
+
+        private void addDocument(Session session, Document document, String entityName) throws IOException {
+            String entryName = Normalizer.normalize(entityName, Normalizer.Form.NFD);
+            if (!entryNames.add(entryName)) {
+                return;
+            }
+            // already compressed contents are not deflated again
+            zipOut.setLevel(isCompressedFormat(document.getExtension()) ?
+                    Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zipOut.putNextEntry(new ZipEntry(entryName));
+            InputStream inputStream = InputSourceFactory.getInputSource(
+                    documentVersionController.getLastDocumentVersion(session, document.getUid()),
+                    UUID.randomUUID().toString()
+            ).getInputStream();
+            try {
                 int length;
-                while ((length = inputStream.read(bytes)) >= 0) {
-                    zipOut.write(bytes, 0, length);
+                while ((length = inputStream.read(buffer)) >= 0) {
+                    zipOut.write(buffer, 0, length);
                 }
+            } finally {
                 inputStream.close();
             }
             zipOut.closeEntry();
         }
-        zipOut.close();
+
+        private void finish() throws IOException {
+            zipOut.finish();
+            zipOut.flush();
+        }
+    }
+
+    private boolean isCompressedFormat(String extension) {
+        return storeCompressedFormats && extension != null
+                && COMPRESSED_EXTENSIONS.contains(extension.toLowerCase());
     }
 
-    private void prepareZipFileInputStreams(
+    private static String documentEntryName(String name, String extension, String path) {
+        return (path.equals("") ? path : path + "/")
+                + name
+                + ((extension != null && !extension.isEmpty()) ? "." + extension : "");
+    }
+
+    private void writeEntities(
             Session session,
             List<? extends DMEntityImpl> dmEntityList,
-            LinkedHashMap<String, InputStream> inputStreamLinkedHashMap,
+            ZipWriter zip,
             String path
     ) throws IOException {
         for (DMEntityImpl dmEntity : dmEntityList) {
             if (dmEntity instanceof Document) {
-                inputStreamLinkedHashMap.put(
-                        (path.equals("") ? path : path + "/")
-                                + dmEntity.getName()
-                                +
-                                ((((Document) dmEntity).getExtension() != null
-                                && !((Document) dmEntity).getExtension().isEmpty()) ?
-                                "." + ((Document) dmEntity).getExtension() :
-                                ""),
-                        InputSourceFactory.getInputSource(
-                                documentVersionController.getLastDocumentVersion(session, dmEntity.getUid()),
-                                UUID.randomUUID().toString()
-                        ).getInputStream()
-                );
+                zip.addDocument(session, (Document) dmEntity,
+                        documentEntryName(dmEntity.getName(), ((Document) dmEntity).getExtension(), path));
             } else {
                 if (dmEntity instanceof Folder) {
-                    inputStreamLinkedHashMap.put(path + "/" + dmEntity.getName() + "/", null);
+                    zip.addFolder(path + "/" + dmEntity.getName());
                     List<DMEntityImpl> entities =  Stream.concat(
                             this.documentController.getDocuments(session, dmEntity.getUid())
                                     .stream().map(document -> (DMEntityImpl)document),
                             this.folderController.getFolders(session, dmEntity.getUid())
                                     .stream().map(folder -> (DMEntityImpl)folder)
                     ).collect(Collectors.toList());
-                    this.prepareZipFileInputStreams(
+                    this.writeEntities(
                             session,
                             entities,
-                            inputStreamLinkedHashMap,
+                            zip,
                             (path.equals("") ? path : path + "/") + dmEntity.getName()
                     );
                 }
@@ -192,10 +225,10 @@ public class ZipperController implements IZipperController {
         }
     }
 
-    private void prepareZipFileInputStreamsFromDMEntityTreeNode(
+    private void writeEntityTreeNode(
             Session session,
             DMEntityTreeNode dmEntityTreeNode,
-            LinkedHashMap<String, InputStream> inputStreamLinkedHashMap,
+            ZipWriter zip,
             String path
     ) throws IOException {
         DMEntityImpl dmEntity = dmEntityController.getEntity(session, dmEntityTreeNode.getDmEntityUid());
@@ -206,19 +239,7 @@ public class ZipperController implements IZipperController {
 
         }
         if (document != null) {
-            inputStreamLinkedHashMap.put(
-                    (path.equals("") ? path : path + "/")
-                            + dmEntity.getName()
-                            +
-                            (document.getExtension() != null
-                                    && !(document.getExtension().isEmpty()) ?
-                                    "." + document.getExtension() :
-                                    ""),
-                    InputSourceFactory.getInputSource(
-                            documentVersionController.getLastDocumentVersion(session, document.getUid()),
-                            UUID.randomUUID().toString()
-                    ).getInputStream()
-            );
+            zip.addDocument(session, document, documentEntryName(dmEntity.getName(), document.getExtension(), path));
         } else {
             Folder folder = null;
             try {
@@ -229,12 +250,12 @@ public class ZipperController implements IZipperController {
             if (folder != null
                     && dmEntityTreeNode.getChildren() != null
                     && dmEntityTreeNode.getChildren().size() > 0) {
-                inputStreamLinkedHashMap.put(path + "/" + folder.getName() + "/", null);
+                zip.addFolder(path + "/" + folder.getName());
                 for (DMEntityTreeNode node : dmEntityTreeNode.getChildren()) {
-                    this.prepareZipFileInputStreamsFromDMEntityTreeNode(
+                    this.writeEntityTreeNode(
                             session,
                             node,
-                            inputStreamLinkedHashMap,
+                            zip,
                             (path.equals("") ? path : path + "/") + folder.getName()
                     );
                 }
@@ -242,6 +263,14 @@ public class ZipperController implements IZipperController {
         }
     }
 
+    public boolean isStoreCompressedFormats() {
+        return storeCompressedFormats;
+    }
+
+    public void setStoreCompressedFormats(boolean storeCompressedFormats) {
+        this.storeCompressedFormats = storeCompressedFormats;
+    }
+
     public IDmEntityController getDmEntityController() {
         return dmEntityController;
     }